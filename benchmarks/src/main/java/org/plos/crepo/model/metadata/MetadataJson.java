@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.model.metadata;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Builds realistic metadata responses for the benchmarks.
+ */
+public class MetadataJson {
+
+  private static final Gson GSON = new Gson();
+
+  public static Map<String, Object> object(int index) {
+    Map<String, Object> object = new LinkedHashMap<>();
+    object.put("key", "10.1371/journal.pone." + String.format("%07d", index) + ".xml");
+    object.put("uuid", new UUID(0L, index).toString());
+    object.put("versionNumber", 0);
+    object.put("tag", "final");
+    object.put("status", "USED");
+    object.put("timestamp", "2017-01-02 03:04:05.0");
+    object.put("creationDate", "2017-01-02 03:04:05.0");
+    object.put("userMetadata", userMetadata(index));
+    object.put("size", 48213 + index);
+    object.put("checksum", "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12");
+    object.put("contentType", "text/xml");
+    object.put("downloadName", "journal.pone." + index + ".xml");
+    object.put("bucketId", 1);
+    return object;
+  }
+
+  public static String userMetadata(int index) {
+    Map<String, Object> userMetadata = new LinkedHashMap<>();
+    userMetadata.put("doi", "10.1371/journal.pone." + index);
+    userMetadata.put("revision", 3);
+    userMetadata.put("authors", new String[]{"A. Author", "B. Author", "C. Author"});
+    Map<String, Object> ingestion = new LinkedHashMap<>();
+    ingestion.put("source", "ingest-" + index + ".zip");
+    ingestion.put("validated", true);
+    userMetadata.put("ingestion", ingestion);
+    return GSON.toJson(userMetadata);
+  }
+
+  public static List<Map<String, Object>> objects(int count) {
+    List<Map<String, Object>> objects = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      objects.add(object(i));
+    }
+    return objects;
+  }
+
+  public static Map<String, Object> collection(int objectCount) {
+    Map<String, Object> collection = object(0);
+    collection.remove("size");
+    collection.remove("checksum");
+    collection.remove("contentType");
+    collection.remove("downloadName");
+    collection.put("key", "collection");
+    collection.put("objects", objects(objectCount));
+    return collection;
+  }
+
+  public static String toJson(Object value) {
+    return GSON.toJson(value);
+  }
+
+  /**
+   * Round-trips through JSON, so that values have the types that Gson produces when parsing a response.
+   */
+  @SuppressWarnings("unchecked")
+  public static Map<String, Object> asParsed(Map<String, Object> value) {
+    return GSON.fromJson(GSON.toJson(value), Map.class);
+  }
+
+}
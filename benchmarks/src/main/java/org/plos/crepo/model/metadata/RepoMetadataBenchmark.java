@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.model.metadata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building object metadata and decoding its fields. Each benchmark starts from a new metadata object, because
+ * decoded values are memoized.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RepoMetadataBenchmark {
+
+  private static final String BUCKET_NAME = "corpus";
+
+  private Map<String, Object> parsedMap;
+  private String json;
+  private RepoMetadataTypeAdapter<RepoObjectMetadata> adapter;
+
+  @Setup
+  public void setUp() {
+    parsedMap = MetadataJson.asParsed(MetadataJson.object(1));
+    json = MetadataJson.toJson(parsedMap);
+    adapter = RepoMetadataTypeAdapter.forObjects(BUCKET_NAME);
+  }
+
+  @Benchmark
+  public RepoObjectMetadata constructFromMap() {
+    return new RepoObjectMetadata(BUCKET_NAME, parsedMap);
+  }
+
+  @Benchmark
+  public RepoObjectMetadata readWithTypeAdapter() throws IOException {
+    return adapter.fromJson(json);
+  }
+
+  @Benchmark
+  public Map<String, Object> getMapView() {
+    return new RepoObjectMetadata(BUCKET_NAME, parsedMap).getMapView();
+  }
+
+  @Benchmark
+  public Optional<Object> getJsonUserMetadata() {
+    return new RepoObjectMetadata(BUCKET_NAME, parsedMap).getJsonUserMetadata();
+  }
+
+  @Benchmark
+  public Object decodeAccessors() {
+    RepoObjectMetadata metadata = new RepoObjectMetadata(BUCKET_NAME, parsedMap);
+    return new Object[]{metadata.getVersion(), metadata.getVersionNumber(), metadata.getTimestamp(),
+        metadata.getCreationDate(), metadata.getStatus(), metadata.getSize()};
+  }
+
+}
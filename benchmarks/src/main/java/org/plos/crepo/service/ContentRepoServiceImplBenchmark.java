@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.metadata.MetadataJson;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures {@link ContentRepoServiceImpl} from request to parsed metadata, against a stubbed HTTP client.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContentRepoServiceImplBenchmark {
+
+  private static final String REPO_SERVER = "http://content-repo.example.com:8080/v1";
+  private static final String BUCKET_NAME = "corpus";
+  private static final RepoVersion VERSION = RepoVersion.create(BUCKET_NAME, "10.1371/journal.pone.0000001.xml",
+      new UUID(0L, 1L));
+
+  @Param({"100", "1000"})
+  public int pageSize;
+
+  private ContentRepoService service;
+
+  @Setup
+  public void setUp() {
+    String objectJson = MetadataJson.toJson(MetadataJson.object(1));
+    String listJson = MetadataJson.toJson(MetadataJson.objects(pageSize));
+    String collectionJson = MetadataJson.toJson(MetadataJson.collection(pageSize));
+    service = new ContentRepoServiceImpl(REPO_SERVER, new StubHttpClient(uri -> {
+      if (uri.startsWith(REPO_SERVER + "/objects?")) return listJson;
+      if (uri.startsWith(REPO_SERVER + "/collections/")) return collectionJson;
+      return objectJson;
+    }));
+  }
+
+  @Benchmark
+  public RepoObjectMetadata getRepoObjectMetadata() {
+    return service.getRepoObjectMetadata(VERSION);
+  }
+
+  @Benchmark
+  public List<RepoObjectMetadata> getRepoObjects() {
+    return service.getRepoObjects(BUCKET_NAME, 0, pageSize, false, null);
+  }
+
+  @Benchmark
+  public long streamRepoObjects() {
+    try (Stream<RepoObjectMetadata> stream = service.streamRepoObjects(BUCKET_NAME, 0, pageSize, false, null)) {
+      return stream.count();
+    }
+  }
+
+  @Benchmark
+  public RepoCollectionList getCollection() {
+    return service.getCollection(VERSION);
+  }
+
+}
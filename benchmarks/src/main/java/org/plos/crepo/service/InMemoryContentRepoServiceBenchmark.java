@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures create, read, list and delete operations on {@link InMemoryContentRepoService}. The service is rebuilt
+ * before each iteration, so that versions created by earlier iterations don't accumulate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InMemoryContentRepoServiceBenchmark {
+
+  private static final String BUCKET_NAME = "corpus";
+  private static final byte[] CONTENT = new byte[4096];
+
+  @Param({"1000"})
+  public int objectCount;
+
+  private InMemoryContentRepoService service;
+  private RepoVersion[] versions;
+  private int next;
+
+  private static RepoObjectInput input(String key) {
+    return RepoObjectInput.builder(BUCKET_NAME, key).setByteContent(CONTENT).setContentType("text/plain").build();
+  }
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    service = new InMemoryContentRepoService(BUCKET_NAME);
+    versions = new RepoVersion[objectCount];
+    for (int i = 0; i < objectCount; i++) {
+      versions[i] = service.createRepoObject(input("object" + i)).getVersion();
+    }
+    next = 0;
+  }
+
+  private int nextIndex() {
+    next = (next + 1) % objectCount;
+    return next;
+  }
+
+  @Benchmark
+  public RepoObjectMetadata autoCreateRepoObject() {
+    return service.autoCreateRepoObject(input("object" + nextIndex()));
+  }
+
+  @Benchmark
+  public RepoObjectMetadata getRepoObjectMetadata() {
+    return service.getRepoObjectMetadata(versions[nextIndex()]);
+  }
+
+  @Benchmark
+  public List<RepoObjectMetadata> getRepoObjects() {
+    return service.getRepoObjects(BUCKET_NAME, nextIndex(), 100, false, null);
+  }
+
+  @Benchmark
+  public boolean deleteRepoObject() {
+    return service.deleteRepoObject(versions[nextIndex()]);
+  }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.plos.crepo.config.HttpClientFunction;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Answers every request with a canned JSON body, so that benchmarks measure the client without a network.
+ */
+class StubHttpClient implements HttpClientFunction {
+
+  private static class StubResponse extends BasicHttpResponse implements CloseableHttpResponse {
+    private StubResponse(byte[] body) {
+      super(HttpVersion.HTTP_1_1, 200, "OK");
+      setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private final Function<String, String> bodyForUri;
+
+  /**
+   * @param bodyForUri returns the JSON body to answer a request URI with
+   */
+  StubHttpClient(Function<String, String> bodyForUri) {
+    this.bodyForUri = bodyForUri;
+  }
+
+  @Override
+  public CloseableHttpResponse open(HttpUriRequest request) {
+    String body = bodyForUri.apply(request.getURI().toString());
+    return new StubResponse(body.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
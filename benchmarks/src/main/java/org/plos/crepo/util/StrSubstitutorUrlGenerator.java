@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.util;
+
+import org.apache.commons.lang3.text.StrSubstitutor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The URL generation that {@link UrlTemplate} replaced, kept as a baseline for {@link UrlTemplateBenchmark}. Builds a
+ * map of values and runs a new {@link StrSubstitutor} over the template for every URL, without encoding the values.
+ */
+class StrSubstitutorUrlGenerator {
+
+  static final String OBJECT_META_USING_UUID_URL = "${repoServer}/objects/meta/${bucketName}?key=${objectKey}&uuid=${uuid}";
+  static final String OBJECTS_USING_TAG_URL = "${repoServer}/objects?bucketName=${bucketName}&offset=${offset}&limit=${limit}&includeDeleted=${includeDeleted}&tag=${tag}";
+
+  static String replaceUrl(String url, Map<String, String> values) {
+    StrSubstitutor sub = new StrSubstitutor(values);
+    return sub.replace(url);
+  }
+
+  static String getObjectMetaUsingUuidUrl(String repoServer, String bucketName, String repoObjKey, String uuid) {
+    Map<String, String> values = new HashMap<String, String>();
+    values.put("repoServer", repoServer);
+    values.put("bucketName", bucketName);
+    values.put("objectKey", repoObjKey);
+    values.put("uuid", uuid);
+    return replaceUrl(OBJECT_META_USING_UUID_URL, values);
+  }
+
+  static String getGetObjectsUrl(String repoServer, String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    Map<String, String> values = new HashMap<String, String>();
+    values.put("repoServer", repoServer);
+    values.put("bucketName", bucketName);
+    values.put("offset", String.valueOf(offset));
+    values.put("limit", String.valueOf(limit));
+    values.put("includeDeleted", String.valueOf(includeDeleted));
+    values.put("tag", tag);
+    return replaceUrl(OBJECTS_USING_TAG_URL, values);
+  }
+
+}
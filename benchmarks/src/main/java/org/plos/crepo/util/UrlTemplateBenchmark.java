@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares URL generation with compiled {@link UrlTemplate}s against the {@link StrSubstitutorUrlGenerator} baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UrlTemplateBenchmark {
+
+  private static final String REPO_SERVER = "http://content-repo.example.com:8080/v1";
+  private static final String UUID = "8bd6a5e2-5a3b-4b7c-9c3e-b1f0f7a3c9d1";
+
+  private static final UrlTemplate OBJECT_VERSION = BaseUrlGenerator.compile(
+      "${repoServer}/objects/${bucketName}?key=${key}&version=${versionNumber}",
+      BaseUrlGenerator.REPO_SERVER, BaseUrlGenerator.BUCKET_NAME, "key", BaseUrlGenerator.VERSION_NUMBER);
+
+  @Param({"10.1371/journal.pone.0012345", "10.1371/journal.pone.0012345 figure&table#1"})
+  public String key;
+
+  @Benchmark
+  public String objectMetaUrlStrSubstitutor() {
+    return StrSubstitutorUrlGenerator.getObjectMetaUsingUuidUrl(REPO_SERVER, "corpus", key, UUID);
+  }
+
+  @Benchmark
+  public String objectMetaUrlTemplate() {
+    return ObjectUrlGenerator.getObjectMetaUsingUuidUrl(REPO_SERVER, "corpus", key, UUID);
+  }
+
+  @Benchmark
+  public String listObjectsUrlStrSubstitutor() {
+    return StrSubstitutorUrlGenerator.getGetObjectsUrl(REPO_SERVER, "corpus", 1000, 100, false, key);
+  }
+
+  @Benchmark
+  public String listObjectsUrlTemplate() {
+    return ObjectUrlGenerator.getGetObjectsUrl(REPO_SERVER, "corpus", 1000, 100, false, key);
+  }
+
+  @Benchmark
+  public String replaceUrl() {
+    return BaseUrlGenerator.replaceUrl(OBJECT_VERSION, REPO_SERVER, "corpus", key, 3);
+  }
+
+}
@@ -24,6 +24,7 @@ package org.plos.crepo.config;
 
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.plos.crepo.metrics.RequestMetrics;
 
 import java.io.IOException;
 import java.util.Objects;
@@ -32,10 +33,21 @@ public class ContentRepoAccessConfig {
 
   private final String repoServer;
   private final HttpClientFunction client;
+  private final RequestMetrics metrics;
 
   public ContentRepoAccessConfig(String repoServer, HttpClientFunction client) {
+    this(repoServer, client, RequestMetrics.noOp());
+  }
+
+  /**
+   * @param repoServer the root URL of the content repo server
+   * @param client     the client that opens HTTP requests
+   * @param metrics    receives latency and outcome of every request
+   */
+  public ContentRepoAccessConfig(String repoServer, HttpClientFunction client, RequestMetrics metrics) {
     this.repoServer = Objects.requireNonNull(repoServer);
     this.client = Objects.requireNonNull(client);
+    this.metrics = Objects.requireNonNull(metrics);
   }
 
   /**
@@ -47,6 +59,15 @@ public class ContentRepoAccessConfig {
     return repoServer;
   }
 
+  /**
+   * Provide the metrics that requests to the repo are reported to.
+   *
+   * @return the request metrics
+   */
+  public RequestMetrics getMetrics() {
+    return metrics;
+  }
+
   public CloseableHttpResponse open(HttpUriRequest request) throws IOException {
     return client.open(request);
   }
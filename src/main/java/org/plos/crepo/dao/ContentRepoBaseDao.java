@@ -24,6 +24,8 @@ package org.plos.crepo.dao;
 
 import com.google.common.base.Preconditions;
 import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpRequestBase;
@@ -31,6 +33,9 @@ import org.plos.crepo.config.ContentRepoAccessConfig;
 import org.plos.crepo.exceptions.ContentRepoException;
 import org.plos.crepo.exceptions.ErrorType;
 import org.plos.crepo.exceptions.NotFoundException;
+import org.plos.crepo.metrics.RequestMetrics;
+import org.plos.crepo.metrics.RequestOutcome;
+import org.plos.crepo.metrics.RequestTags;
 import org.plos.crepo.util.HttpResponseUtil;
 import org.slf4j.Logger;
 
@@ -48,11 +53,42 @@ public abstract class ContentRepoBaseDao {
     return accessConfig.getRepoServer();
   }
 
+  /**
+   * Send a request to the repo and check its response status. Metrics identify the operation by the name of the error
+   * type.
+   */
   protected CloseableHttpResponse executeRequest(HttpRequestBase request, ErrorType errorType) {
+    return executeRequest(request, errorType.name(), errorType, null);
+  }
+
+  /**
+   * Send a request to the repo and check its response status.
+   *
+   * @param request    the request
+   * @param operation  the name of the repo operation, to tag metrics
+   * @param errorType  the error to report if the request fails
+   * @param bucketName the bucket that the request touches, or {@code null}; only used to tag metrics
+   * @return the response, which the caller must close
+   */
+  protected CloseableHttpResponse executeRequest(HttpRequestBase request, String operation, ErrorType errorType,
+                                                 String bucketName) {
+    RequestMetrics metrics = accessConfig.getMetrics();
+    RequestTags tags = new RequestTags(operation, request.getMethod(), bucketName);
+    long bytesSent = (request instanceof HttpEntityEnclosingRequest)
+        ? getContentLength(((HttpEntityEnclosingRequest) request).getEntity())
+        : 0L;
+    metrics.requestStarted(tags);
+    long startTime = System.nanoTime();
+
     CloseableHttpResponse response;
     try {
       response = accessConfig.open(request);
-    } catch (IOException e) {
+    } catch (IOException | RuntimeException e) {
+      metrics.requestCompleted(tags, new RequestOutcome(RequestOutcome.NO_RESPONSE, System.nanoTime() - startTime,
+          bytesSent, RequestOutcome.UNKNOWN_LENGTH));
+      if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      }
       getLog().error("Error handling the response, uri: " + request.getURI().toString() + " repoMessage: ", e);
       throw new ContentRepoException.ContentRepoExceptionBuilder(errorType)
           .baseException(e)
@@ -62,16 +98,20 @@ public abstract class ContentRepoBaseDao {
 
     try {
       final int statusCode = response.getStatusLine().getStatusCode();
+      metrics.requestCompleted(tags, new RequestOutcome(statusCode, System.nanoTime() - startTime,
+          bytesSent, getContentLength(response.getEntity())));
 
       if( statusCode == HttpStatus.SC_NOT_FOUND) {
         throw new NotFoundException(HttpResponseUtil.getErrorMessage(response));
-      } else if ( statusCode != HttpStatus.SC_OK && statusCode != HttpStatus.SC_CREATED) {
+      } else if ( statusCode != HttpStatus.SC_OK && statusCode != HttpStatus.SC_CREATED
+          && statusCode != HttpStatus.SC_PARTIAL_CONTENT) {
         final String cause = HttpResponseUtil.getErrorMessage(response);
 
         getLog().error("uri: " + request.getURI().toString() + " repoMessage: " + cause);
         throw new ContentRepoException.ContentRepoExceptionBuilder(errorType)
             .url(request.getURI().toString())
             .repoMessage(cause)
+            .statusCode(statusCode)
             .build();
       }
 
@@ -84,6 +124,10 @@ public abstract class ContentRepoBaseDao {
     }
   }
 
+  private static long getContentLength(HttpEntity entity) {
+    return (entity == null) ? 0L : entity.getContentLength();
+  }
+
   public abstract Logger getLog();
 
 }
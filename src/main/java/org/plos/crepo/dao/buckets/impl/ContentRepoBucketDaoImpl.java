@@ -56,19 +56,19 @@ public class ContentRepoBucketDaoImpl extends ContentRepoBaseDao implements Cont
     params.add(new BasicNameValuePair("name", bucketName));
     request.setEntity(new UrlEncodedFormEntity(params, Consts.UTF_8));
 
-    return executeRequest(request, ErrorType.ErrorCreatingBucket);
+    return executeRequest(request, "createBucket", ErrorType.ErrorCreatingBucket, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getBuckets() {
     HttpGet request = new HttpGet(BucketUrlGenerator.getBucketsUrl(getRepoServer()));
-    return executeRequest(request, ErrorType.ErrorFetchingBucketMeta);
+    return executeRequest(request, "listBuckets", ErrorType.ErrorFetchingBucketMeta, null);
   }
 
   @Override
   public CloseableHttpResponse getBucket(String bucketName) {
     HttpGet request = new HttpGet(BucketUrlGenerator.getBucketUrl(getRepoServer(), bucketName));
-    return executeRequest(request, ErrorType.ErrorFetchingBucketMeta);
+    return executeRequest(request, "getBucket", ErrorType.ErrorFetchingBucketMeta, bucketName);
   }
 
   @Override
@@ -62,7 +62,7 @@ public class ContentRepoCollectionDaoImpl extends ContentRepoBaseDao implements
     HttpPost request = new HttpPost(CollectionUrlGenerator.getCreateCollUrl(getRepoServer()));
     request.setEntity(getCollectionEntity(bucketName, repoCollectionInput, CreationMethod.NEW));
     request.addHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
-    return executeRequest(request, ErrorType.ErrorCreatingCollection);
+    return executeRequest(request, "createCollection", ErrorType.ErrorCreatingCollection, bucketName);
   }
 
   @Override
@@ -70,68 +70,68 @@ public class ContentRepoCollectionDaoImpl extends ContentRepoBaseDao implements
     HttpPost request = new HttpPost(CollectionUrlGenerator.getCreateCollUrl(getRepoServer()));
     request.addHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
     request.setEntity(getCollectionEntity(bucketName, repoCollectionInput, CreationMethod.VERSION));
-    return executeRequest(request, ErrorType.ErrorVersioningCollection);
+    return executeRequest(request, "versionCollection", ErrorType.ErrorVersioningCollection, bucketName);
   }
 
   @Override
   public CloseableHttpResponse deleteCollectionUsingUuid(String bucketName, String key, String uuid) {
     HttpDelete request = new HttpDelete(CollectionUrlGenerator.getCollectionUuidUrl(getRepoServer(), bucketName, key, uuid));
-    return executeRequest(request, ErrorType.ErrorDeletingCollection);
+    return executeRequest(request, "deleteCollection", ErrorType.ErrorDeletingCollection, bucketName);
   }
 
   public CloseableHttpResponse autoCreateCollection(String bucketName, RepoCollectionInput repoCollectionInput) {
     HttpPost request = new HttpPost(CollectionUrlGenerator.getCreateCollUrl(getRepoServer()));
     request.setEntity(getCollectionEntity(bucketName, repoCollectionInput, CreationMethod.AUTO));
     request.addHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
-    return executeRequest(request, ErrorType.ErrorAutoCreatingCollection);
+    return executeRequest(request, "autoCreateCollection", ErrorType.ErrorAutoCreatingCollection, bucketName);
   }
 
   @Override
   public CloseableHttpResponse deleteCollectionUsingVersionNumber(String bucketName, String key, int versionNumber) {
     HttpDelete request = new HttpDelete(CollectionUrlGenerator.getCollectionVersionNumUrl(getRepoServer(), bucketName, key, versionNumber));
-    return executeRequest(request, ErrorType.ErrorDeletingCollection);
+    return executeRequest(request, "deleteCollection", ErrorType.ErrorDeletingCollection, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getCollectionUsingUuid(String bucketName, String key, String uuid) {
     HttpGet request = new HttpGet(CollectionUrlGenerator.getCollectionUuidUrl(getRepoServer(), bucketName, key, uuid));
-    return executeRequest(request, ErrorType.ErrorFetchingCollection);
+    return executeRequest(request, "getCollection", ErrorType.ErrorFetchingCollection, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getCollectionUsingVersionNumber(String bucketName, String key, int versionNumber) {
     HttpGet request = new HttpGet(CollectionUrlGenerator.getCollectionVersionNumUrl(getRepoServer(), bucketName, key, versionNumber));
-    return executeRequest(request, ErrorType.ErrorFetchingCollection);
+    return executeRequest(request, "getCollection", ErrorType.ErrorFetchingCollection, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getCollectionUsingTag(String bucketName, String key, String tag) {
     HttpGet request = new HttpGet(CollectionUrlGenerator.getCollectionTagUrl(getRepoServer(), bucketName, key, tag));
-    return executeRequest(request, ErrorType.ErrorFetchingCollection);
+    return executeRequest(request, "getCollection", ErrorType.ErrorFetchingCollection, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getLatestCollection(String bucketName, String key) {
     HttpGet request = new HttpGet(CollectionUrlGenerator.getLatestCollectionUrl(getRepoServer(), bucketName, key));
-    return executeRequest(request, ErrorType.ErrorFetchingCollection);
+    return executeRequest(request, "getCollection", ErrorType.ErrorFetchingCollection, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getCollectionVersions(String bucketName, String key) {
     HttpGet request = new HttpGet(CollectionUrlGenerator.getCollectionVersionsUrl(getRepoServer(), bucketName, key));
-    return executeRequest(request, ErrorType.ErrorFetchingCollectionVersions);
+    return executeRequest(request, "getCollectionVersions", ErrorType.ErrorFetchingCollectionVersions, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getCollectionsUsingTag(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
     HttpGet request = new HttpGet(CollectionUrlGenerator.getCollectionsUsingTagUrl(getRepoServer(), bucketName, offset, limit, includeDeleted, tag));
-    return executeRequest(request, ErrorType.ErrorFetchingCollections);
+    return executeRequest(request, "listCollections", ErrorType.ErrorFetchingCollections, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getCollections(String bucketName, int offset, int limit, boolean includeDeleted) {
     HttpGet request = new HttpGet(CollectionUrlGenerator.getGetCollectionsUrl(getRepoServer(), bucketName, offset, limit, includeDeleted));
-    return executeRequest(request, ErrorType.ErrorFetchingCollections);
+    return executeRequest(request, "listCollections", ErrorType.ErrorFetchingCollections, bucketName);
   }
 
   private StringEntity getCollectionEntity(String bucketName, RepoCollectionInput repoCollectionInput, CreationMethod creationType) {
@@ -43,19 +43,19 @@ public class ContentRepoConfigDaoImpl extends ContentRepoBaseDao implements Cont
   @Override
   public CloseableHttpResponse hasReProxy() {
     HttpGet request = new HttpGet(ConfigUrlGenerator.getHasReproxyUrl(getRepoServer()));
-    return executeRequest(request, ErrorType.ErrorFetchingReproxyData);
+    return executeRequest(request, "hasReproxy", ErrorType.ErrorFetchingReproxyData, null);
   }
 
   @Override
   public CloseableHttpResponse getRepoConfig() {
     HttpGet request = new HttpGet(ConfigUrlGenerator.getRepoConfigUrl(getRepoServer()));
-    return executeRequest(request, ErrorType.ErrorFetchingConfig);
+    return executeRequest(request, "getConfig", ErrorType.ErrorFetchingConfig, null);
   }
 
   @Override
   public CloseableHttpResponse getRepoStatus() {
     HttpGet request = new HttpGet(ConfigUrlGenerator.getRepoStatusUrl(getRepoServer()));
-    return executeRequest(request, ErrorType.ErrorFetchingStatus);
+    return executeRequest(request, "getStatus", ErrorType.ErrorFetchingStatus, null);
   }
 
 
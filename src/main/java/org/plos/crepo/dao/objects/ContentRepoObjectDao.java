@@ -26,6 +26,9 @@ package org.plos.crepo.dao.objects;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.plos.crepo.model.input.RepoObjectInput;
 
+import java.net.URL;
+import java.security.MessageDigest;
+
 public interface ContentRepoObjectDao {
 
   CloseableHttpResponse getLatestRepoObj(String bucketName, String key);
@@ -34,6 +37,24 @@ public interface ContentRepoObjectDao {
 
   CloseableHttpResponse getRepoObjUsingVersionNum(String bucketName, String key, int versionNumber);
 
+  /**
+   * Request a byte range of an object's content. The response status is 206 if the server honored the range, or 200
+   * with the full content if it ignored it.
+   *
+   * @param offset the index of the first byte to fetch
+   * @param length the number of bytes to fetch, or {@link Long#MAX_VALUE} to fetch through the end of the content
+   */
+  CloseableHttpResponse getRepoObjRangeUsingUuid(String bucketName, String key, String uuid, long offset, long length);
+
+  /**
+   * Request an object's content directly from one of the backing storage URLs that the repo reported in the object's
+   * metadata, bypassing the repo server.
+   *
+   * @param bucketName the object's bucket; only used to tag metrics
+   * @param reproxyUrl a URL from {@link org.plos.crepo.model.metadata.RepoObjectMetadata#getReproxyUrls()}
+   */
+  CloseableHttpResponse getReproxiedContent(String bucketName, URL reproxyUrl);
+
   CloseableHttpResponse getRepoObjMetaLatestVersion(String bucketName, String key);
 
   CloseableHttpResponse getRepoObjMetaUsingUuid(String bucketName, String key, String uuid);
@@ -54,6 +75,27 @@ public interface ContentRepoObjectDao {
 
   CloseableHttpResponse autoCreateRepoObj(String bucketName, RepoObjectInput repoObjectInput, String contentType);
 
+  /**
+   * Same as {@link #createRepoObj(String, RepoObjectInput, String)}, and also feeds the uploaded content to {@code
+   * contentDigest} as it is written to the request.
+   */
+  CloseableHttpResponse createRepoObj(String bucketName, RepoObjectInput repoObjectInput, String contentType,
+                                      MessageDigest contentDigest);
+
+  /**
+   * Same as {@link #versionRepoObj(String, RepoObjectInput, String)}, and also feeds the uploaded content to {@code
+   * contentDigest} as it is written to the request.
+   */
+  CloseableHttpResponse versionRepoObj(String bucketName, RepoObjectInput repoObjectInput, String contentType,
+                                       MessageDigest contentDigest);
+
+  /**
+   * Same as {@link #autoCreateRepoObj(String, RepoObjectInput, String)}, and also feeds the uploaded content to {@code
+   * contentDigest} as it is written to the request.
+   */
+  CloseableHttpResponse autoCreateRepoObj(String bucketName, RepoObjectInput repoObjectInput, String contentType,
+                                          MessageDigest contentDigest);
+
   CloseableHttpResponse getRedirectURL(String bucketName, String key);
 
   CloseableHttpResponse getObjects(String bucketName, int offset, int limit, boolean includeDeleted);
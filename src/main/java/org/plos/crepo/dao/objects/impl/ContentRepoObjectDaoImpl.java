@@ -22,13 +22,18 @@
 
 package org.plos.crepo.dao.objects.impl;
 
+import com.google.common.base.Preconditions;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.ContentBody;
+import org.apache.http.entity.mime.content.InputStreamBody;
 import org.plos.crepo.config.ContentRepoAccessConfig;
 import org.plos.crepo.dao.ContentRepoBaseDao;
 import org.plos.crepo.dao.objects.ContentRepoObjectDao;
@@ -39,8 +44,13 @@ import org.plos.crepo.util.ObjectUrlGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Objects;
 
 public class ContentRepoObjectDaoImpl extends ContentRepoBaseDao implements ContentRepoObjectDao {
 
@@ -54,7 +64,7 @@ public class ContentRepoObjectDaoImpl extends ContentRepoBaseDao implements Cont
   public CloseableHttpResponse getLatestRepoObj(String bucketName, String key) {
 
     HttpGet request = new HttpGet(ObjectUrlGenerator.getLatestObjectUrl(getRepoServer(), bucketName, key));
-    return executeRequest(request, ErrorType.ErrorFetchingObject);
+    return executeRequest(request, "getObject", ErrorType.ErrorFetchingObject, bucketName);
 
   }
 
@@ -62,7 +72,7 @@ public class ContentRepoObjectDaoImpl extends ContentRepoBaseDao implements Cont
   public CloseableHttpResponse getRepoObjUsingUuid(String bucketName, String key, String uuid) {
 
     HttpGet request = new HttpGet(ObjectUrlGenerator.getObjectUsingUuidUrl(getRepoServer(), bucketName, key, uuid));
-    return executeRequest(request, ErrorType.ErrorFetchingObject);
+    return executeRequest(request, "getObject", ErrorType.ErrorFetchingObject, bucketName);
 
   }
 
@@ -70,79 +80,134 @@ public class ContentRepoObjectDaoImpl extends ContentRepoBaseDao implements Cont
   public CloseableHttpResponse getRepoObjUsingVersionNum(String bucketName, String key, int versionNumber) {
 
     HttpGet request = new HttpGet(ObjectUrlGenerator.getObjectUsingVersionNumUrl(getRepoServer(), bucketName, key, versionNumber));
-    return executeRequest(request, ErrorType.ErrorFetchingObject);
+    return executeRequest(request, "getObject", ErrorType.ErrorFetchingObject, bucketName);
 
   }
 
+  @Override
+  public CloseableHttpResponse getRepoObjRangeUsingUuid(String bucketName, String key, String uuid, long offset, long length) {
+    Preconditions.checkArgument(offset >= 0L);
+    Preconditions.checkArgument(length > 0L);
+    HttpGet request = new HttpGet(ObjectUrlGenerator.getObjectUsingUuidUrl(getRepoServer(), bucketName, key, uuid));
+    request.setHeader(HttpHeaders.RANGE, getRangeHeader(offset, length));
+    return executeRequest(request, "getObjectRange", ErrorType.ErrorFetchingObject, bucketName);
+  }
+
+  @Override
+  public CloseableHttpResponse getReproxiedContent(String bucketName, URL reproxyUrl) {
+    HttpGet request = new HttpGet(reproxyUrl.toString());
+    return executeRequest(request, "getReproxiedContent", ErrorType.ErrorFetchingObject, bucketName);
+  }
+
+  static String getRangeHeader(long offset, long length) {
+    long last = offset + length - 1L;
+    if (length == Long.MAX_VALUE || last < offset) {
+      return "bytes=" + offset + "-"; // through the end
+    }
+    return "bytes=" + offset + "-" + last;
+  }
+
   @Override
   public CloseableHttpResponse getRepoObjMetaLatestVersion(String bucketName, String key) {
     HttpGet request = new HttpGet(ObjectUrlGenerator.getLatestObjectMetaUrl(getRepoServer(), bucketName, key));
-    return executeRequest(request, ErrorType.ErrorFetchingObjectMeta);
+    return executeRequest(request, "getObjectMeta", ErrorType.ErrorFetchingObjectMeta, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getRepoObjMetaUsingUuid(String bucketName, String key, String uuid) {
     HttpGet request = new HttpGet(ObjectUrlGenerator.getObjectMetaUsingUuidUrl(getRepoServer(), bucketName, key, uuid));
-    return executeRequest(request, ErrorType.ErrorFetchingObjectMeta);
+    return executeRequest(request, "getObjectMeta", ErrorType.ErrorFetchingObjectMeta, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getRepoObjMetaUsingVersionNumber(String bucketName, String key, int versionNumber) {
     HttpGet request = new HttpGet(ObjectUrlGenerator.getObjectMetaUsingVersionNumUrl(getRepoServer(), bucketName, key, versionNumber));
-    return executeRequest(request, ErrorType.ErrorFetchingObjectMeta);
+    return executeRequest(request, "getObjectMeta", ErrorType.ErrorFetchingObjectMeta, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getRepoObjVersionsMeta(String bucketName, String key) {
     HttpGet request = new HttpGet(ObjectUrlGenerator.getObjectVersionsUrl(getRepoServer(), bucketName, key));
-    return executeRequest(request, ErrorType.ErrorFetchingObjectVersions);
+    return executeRequest(request, "getObjectVersions", ErrorType.ErrorFetchingObjectVersions, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getRepoObjMetaUsingTag(String bucketName, String key, String tag) {
     HttpGet request = new HttpGet(ObjectUrlGenerator.getGetObjMetaUsingTagUrl(getRepoServer(), bucketName, key, tag));
-    return executeRequest(request, ErrorType.ErrorFetchingObjectMeta);
+    return executeRequest(request, "getObjectMeta", ErrorType.ErrorFetchingObjectMeta, bucketName);
   }
 
   @Override
   public CloseableHttpResponse deleteRepoObjUsingUuid(String bucketName, String key, String uuid) {
     HttpDelete request = new HttpDelete(ObjectUrlGenerator.getObjectUsingUuidUrl(getRepoServer(), bucketName, key, uuid));
-    return executeRequest(request, ErrorType.ErrorDeletingObject);
+    return executeRequest(request, "deleteObject", ErrorType.ErrorDeletingObject, bucketName);
   }
 
   @Override
   public CloseableHttpResponse deleteRepoObjUsingVersionNumber(String bucketName, String key, int versionNumber) {
     HttpDelete request = new HttpDelete(ObjectUrlGenerator.getObjectUsingVersionNumUrl(getRepoServer(), bucketName, key, versionNumber));
-    return executeRequest(request, ErrorType.ErrorDeletingObject);
+    return executeRequest(request, "deleteObject", ErrorType.ErrorDeletingObject, bucketName);
   }
 
   @Override
   public CloseableHttpResponse createRepoObj(String bucketName, RepoObjectInput repoObjectInput, String contentType) {
-    return executePost(bucketName, repoObjectInput, contentType, CreationMethod.NEW, ErrorType.ErrorCreatingObject);
+    return executePost(bucketName, repoObjectInput, contentType, CreationMethod.NEW, "createObject", ErrorType.ErrorCreatingObject, null);
+  }
+
+  @Override
+  public CloseableHttpResponse createRepoObj(String bucketName, RepoObjectInput repoObjectInput, String contentType,
+                                      MessageDigest contentDigest) {
+    return executePost(bucketName, repoObjectInput, contentType, CreationMethod.NEW, "createObject", ErrorType.ErrorCreatingObject,
+        Objects.requireNonNull(contentDigest));
   }
 
   @Override
   public CloseableHttpResponse versionRepoObj(String bucketName, RepoObjectInput repoObjectInput, String contentType) {
-    return executePost(bucketName, repoObjectInput, contentType, CreationMethod.VERSION, ErrorType.ErrorVersioningObject);
+    return executePost(bucketName, repoObjectInput, contentType, CreationMethod.VERSION, "versionObject", ErrorType.ErrorVersioningObject, null);
+  }
+
+  @Override
+  public CloseableHttpResponse versionRepoObj(String bucketName, RepoObjectInput repoObjectInput, String contentType,
+                                              MessageDigest contentDigest) {
+    return executePost(bucketName, repoObjectInput, contentType, CreationMethod.VERSION, "versionObject", ErrorType.ErrorVersioningObject,
+        Objects.requireNonNull(contentDigest));
   }
 
   @Override
   public CloseableHttpResponse autoCreateRepoObj(String bucketName, RepoObjectInput repoObjectInput, String contentType) {
-    return executePost(bucketName, repoObjectInput, contentType, CreationMethod.AUTO, ErrorType.ErrorAutoCreatingObject);
+    return executePost(bucketName, repoObjectInput, contentType, CreationMethod.AUTO, "autoCreateObject", ErrorType.ErrorAutoCreatingObject, null);
+  }
+
+  @Override
+  public CloseableHttpResponse autoCreateRepoObj(String bucketName, RepoObjectInput repoObjectInput, String contentType,
+                                                 MessageDigest contentDigest) {
+    return executePost(bucketName, repoObjectInput, contentType, CreationMethod.AUTO, "autoCreateObject", ErrorType.ErrorAutoCreatingObject,
+        Objects.requireNonNull(contentDigest));
   }
 
   private CloseableHttpResponse executePost(String bucketName, RepoObjectInput repoObjectInput, String contentType,
-                                            CreationMethod creationMethod, ErrorType errorType) {
+                                            CreationMethod creationMethod, String operation, ErrorType errorType,
+                                            MessageDigest contentDigest) {
     HttpPost request = new HttpPost(ObjectUrlGenerator.getCreateObjectUrl(getRepoServer()));
+
+    File file = repoObjectInput.getContentFile();
+    if (file != null) {
+      ContentBody body = new FileChannelBody(file, ContentType.DEFAULT_BINARY, contentDigest);
+      request.setEntity(getObjectEntity(bucketName, repoObjectInput, body, creationMethod, contentType));
+      return executeRequest(request, operation, errorType, bucketName);
+    }
+
     try (InputStream stream = repoObjectInput.getContentAccessor().open()) {
-      request.setEntity(getObjectEntity(bucketName, repoObjectInput, stream, creationMethod, contentType));
-      return executeRequest(request, errorType);
+      InputStream content = (contentDigest == null) ? stream : new DigestInputStream(stream, contentDigest);
+      ContentBody body = new InputStreamBody(content, ContentType.DEFAULT_BINARY);
+      request.setEntity(getObjectEntity(bucketName, repoObjectInput, body, creationMethod, contentType));
+      return executeRequest(request, operation, errorType, bucketName);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
-  private HttpEntity getObjectEntity(String bucketName, RepoObjectInput repoObjectInput, InputStream stream, CreationMethod creationType, String contentType) {
+  private HttpEntity getObjectEntity(String bucketName, RepoObjectInput repoObjectInput, ContentBody body, CreationMethod creationType, String contentType) {
     MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create();
     multipartEntityBuilder.setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
 
@@ -150,7 +215,7 @@ public class ContentRepoObjectDaoImpl extends ContentRepoBaseDao implements Cont
     multipartEntityBuilder.addTextBody("bucketName", bucketName);
     multipartEntityBuilder.addTextBody("create", creationType.toString());
     multipartEntityBuilder.addTextBody("contentType", contentType);
-    multipartEntityBuilder.addBinaryBody("file", stream);
+    multipartEntityBuilder.addPart("file", body);
 
     if (repoObjectInput.getDownloadName() != null) {
       multipartEntityBuilder.addTextBody("downloadName", repoObjectInput.getDownloadName());
@@ -176,19 +241,19 @@ public class ContentRepoObjectDaoImpl extends ContentRepoBaseDao implements Cont
   public CloseableHttpResponse getRedirectURL(String bucketName, String key) {
     HttpGet request = new HttpGet(ObjectUrlGenerator.getLatestObjectUrl(getRepoServer(), bucketName, key));
     request.setHeader("X-Proxy-Capabilities", "reproxy-file");
-    return executeRequest(request, ErrorType.ErrorCreatingObject);
+    return executeRequest(request, "getRedirectUrl", ErrorType.ErrorCreatingObject, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getObjects(String bucketName, int offset, int limit, boolean includeDeleted) {
     HttpGet request = new HttpGet(ObjectUrlGenerator.getGetObjectsUrl(getRepoServer(), bucketName, offset, limit, includeDeleted));
-    return executeRequest(request, ErrorType.ErrorFetchingCollection);
+    return executeRequest(request, "listObjects", ErrorType.ErrorFetchingCollection, bucketName);
   }
 
   @Override
   public CloseableHttpResponse getObjectsUsingTag(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
     HttpGet request = new HttpGet(ObjectUrlGenerator.getGetObjectsUrl(getRepoServer(), bucketName, offset, limit, includeDeleted, tag));
-    return executeRequest(request, ErrorType.ErrorFetchingCollection);
+    return executeRequest(request, "listObjects", ErrorType.ErrorFetchingCollection, bucketName);
   }
 
   @Override
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.dao.objects.impl;
+
+import com.google.common.base.Preconditions;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * A multipart body that streams a file through {@link FileChannel#transferTo}. Unlike an {@code InputStreamBody}, it
+ * reports its length, so the multipart entity is sent with a {@code Content-Length} header instead of chunked. The file
+ * is read in a single pass, through fixed-size buffers, without being loaded into memory. Because the request's output
+ * is a stream, the channel it is wrapped in still copies the data through a buffer on the heap.
+ * <p/>
+ * If a digest is given, the file is instead copied through a buffer of its own so that the digest can be updated in the
+ * same pass as the write.
+ * <p/>
+ * The length is fixed when the body is created. If the file changes size before the upload finishes, exactly that many
+ * bytes are sent, or the upload fails if the file has become shorter.
+ */
+class FileChannelBody extends AbstractContentBody {
+
+  private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+  private final File file;
+  private final long length;
+  private final MessageDigest digest;
+
+  FileChannelBody(File file, ContentType contentType) {
+    this(file, contentType, null);
+  }
+
+  /**
+   * @param digest if not null, is updated with the file content as it is written; it is reset each time the body is
+   *               written, so that it holds the content of the last write if the request is retried
+   */
+  FileChannelBody(File file, ContentType contentType, MessageDigest digest) {
+    super(contentType);
+    this.file = Preconditions.checkNotNull(file);
+    this.length = file.length();
+    this.digest = digest;
+  }
+
+  @Override
+  public String getFilename() {
+    // Match InputStreamBody as created by MultipartEntityBuilder.addBinaryBody(String, InputStream)
+    return null;
+  }
+
+  @Override
+  public String getTransferEncoding() {
+    return MIME.ENC_BINARY;
+  }
+
+  @Override
+  public long getContentLength() {
+    return length;
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (digest == null) {
+        transfer(channel, out);
+      } else {
+        digest.reset();
+        copyWithDigest(channel, out);
+      }
+    }
+    out.flush();
+  }
+
+  private void transfer(FileChannel channel, OutputStream out) throws IOException {
+    WritableByteChannel target = Channels.newChannel(out);
+    long position = 0L;
+    while (position < length) {
+      long transferred = channel.transferTo(position, length - position, target);
+      if (transferred <= 0L) {
+        throw truncated();
+      }
+      position += transferred;
+    }
+  }
+
+  private void copyWithDigest(FileChannel channel, OutputStream out) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(DIGEST_BUFFER_SIZE, Math.max(length, 1L)));
+    long remaining = length;
+    while (remaining > 0L) {
+      buffer.clear();
+      if (remaining < buffer.capacity()) {
+        buffer.limit((int) remaining);
+      }
+      int read = channel.read(buffer);
+      if (read <= 0) {
+        throw truncated();
+      }
+      digest.update(buffer.array(), 0, read);
+      out.write(buffer.array(), 0, read);
+      remaining -= read;
+    }
+  }
+
+  private IOException truncated() {
+    return new IOException("File was truncated during upload: " + file);
+  }
+
+}
@@ -24,6 +24,7 @@ package org.plos.crepo.exceptions;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.OptionalInt;
 
 /**
  * Cross layer exception that wraps all the exceptions of content-repo-library
@@ -32,11 +33,19 @@ public class ContentRepoException extends RuntimeException {
 
   private static final long serialVersionUID = -7747202126932506670L;
   private ErrorType errorType;
+  private Integer statusCode;
 
   public ErrorType getErrorType() {
     return errorType;
   }
 
+  /**
+   * @return the HTTP status of the repo's error response, or empty if the failure was not an error response
+   */
+  public OptionalInt getStatusCode() {
+    return (statusCode == null) ? OptionalInt.empty() : OptionalInt.of(statusCode);
+  }
+
   public ContentRepoException(ErrorType errorType, String message) {
     super(message);
     this.errorType = errorType;
@@ -59,6 +68,7 @@ public class ContentRepoException extends RuntimeException {
     private ErrorType errorType;
     private Map<String,String> properties;
     private Throwable baseException;
+    private Integer statusCode;
 
     public ContentRepoExceptionBuilder(ErrorType errorType){
       this.errorType = errorType;
@@ -70,6 +80,11 @@ public class ContentRepoException extends RuntimeException {
       return this;
     }
 
+    public ContentRepoExceptionBuilder statusCode(int statusCode){
+      this.statusCode = statusCode;
+      return this;
+    }
+
     public ContentRepoExceptionBuilder url(String url){
       properties.put(URL, url);
       return this;
@@ -96,10 +111,11 @@ public class ContentRepoException extends RuntimeException {
           message.append(properties.get(key));
         }
       }
-      if (baseException != null){
-        return new ContentRepoException(errorType, message.toString(), baseException);
-      }
-      return new ContentRepoException(errorType, message.toString());
+      ContentRepoException exception = (baseException != null)
+          ? new ContentRepoException(errorType, message.toString(), baseException)
+          : new ContentRepoException(errorType, message.toString());
+      exception.statusCode = statusCode;
+      return exception;
     }
 
   }
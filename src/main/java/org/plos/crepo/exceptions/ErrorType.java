@@ -45,6 +45,7 @@ public enum ErrorType {
   ErrorFetchingReProxyUrl(109, "Problem fetching reproxy URLs"),
   ErrorDeletingObject(110,"Error deleting object"),
   ErrorFetchingObject(111, "Error fetching object from content repo"),
+  ChecksumMismatch(112, "Checksum of the stored object does not match the uploaded content"),
 
 
   ErrorFetchingBucketMeta(200, "Error fetching buckets meta"),
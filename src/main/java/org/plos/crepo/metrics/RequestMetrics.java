@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.metrics;
+
+/**
+ * Receives a callback around every HTTP request that the DAOs send to the repo. Implementations are called from
+ * whichever thread makes the request, and so must be thread-safe, and should be cheap enough not to add noticeably to
+ * the request latency.
+ * <p/>
+ * The latency of a request is measured until its response status is available. Reading the response body happens
+ * afterward, in the caller, so the reported response length comes from the {@code Content-Length} header.
+ */
+public interface RequestMetrics {
+
+  /**
+   * Called immediately before a request is sent.
+   *
+   * @param tags identifies the request
+   */
+  void requestStarted(RequestTags tags);
+
+  /**
+   * Called once for every call to {@link #requestStarted}, after the response status is available or the request
+   * failed.
+   *
+   * @param tags    identifies the request
+   * @param outcome how the request ended
+   */
+  void requestCompleted(RequestTags tags, RequestOutcome outcome);
+
+  /**
+   * @return metrics that discard everything
+   */
+  public static RequestMetrics noOp() {
+    return NoOpRequestMetrics.INSTANCE;
+  }
+
+}
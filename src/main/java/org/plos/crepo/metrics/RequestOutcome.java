@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.metrics;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Describes how one request to the repo ended.
+ */
+public final class RequestOutcome {
+
+  /**
+   * The status code of a request that failed before any response was received.
+   */
+  public static final int NO_RESPONSE = -1;
+
+  /**
+   * The byte count of a request or response body whose length is not known in advance.
+   */
+  public static final long UNKNOWN_LENGTH = -1L;
+
+  private final int statusCode;
+  private final long latencyNanos;
+  private final long bytesSent;
+  private final long bytesReceived;
+
+  /**
+   * @param statusCode    the response status, or {@link #NO_RESPONSE}
+   * @param latencyNanos  the time from sending the request until the response status was available
+   * @param bytesSent     the length of the request body, or {@link #UNKNOWN_LENGTH}
+   * @param bytesReceived the length of the response body, or {@link #UNKNOWN_LENGTH}
+   */
+  public RequestOutcome(int statusCode, long latencyNanos, long bytesSent, long bytesReceived) {
+    Preconditions.checkArgument(latencyNanos >= 0L);
+    this.statusCode = statusCode;
+    this.latencyNanos = latencyNanos;
+    this.bytesSent = bytesSent;
+    this.bytesReceived = bytesReceived;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public long getLatencyNanos() {
+    return latencyNanos;
+  }
+
+  public long getBytesSent() {
+    return bytesSent;
+  }
+
+  public long getBytesReceived() {
+    return bytesReceived;
+  }
+
+  @Override
+  public String toString() {
+    return "RequestOutcome{statusCode=" + statusCode + ", latencyNanos=" + latencyNanos
+        + ", bytesSent=" + bytesSent + ", bytesReceived=" + bytesReceived + '}';
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.metrics;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Objects;
+
+/**
+ * Identifies the kind of request that a metric was recorded for. The operation names the repo call, such as {@code
+ * getObjectMeta} for every metadata lookup.
+ */
+public final class RequestTags {
+
+  private final String operation;
+  private final String method;
+  private final String bucketName;
+
+  /**
+   * @param operation  the name of the repo operation
+   * @param method     the HTTP method
+   * @param bucketName the bucket that the request touches, or {@code null} if the request is not about one bucket
+   */
+  public RequestTags(String operation, String method, String bucketName) {
+    this.operation = Preconditions.checkNotNull(operation);
+    this.method = Preconditions.checkNotNull(method);
+    this.bucketName = bucketName;
+  }
+
+  public String getOperation() {
+    return operation;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  /**
+   * @return the bucket that the request touches, or {@code null} if the request is not about one bucket
+   */
+  public String getBucketName() {
+    return bucketName;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    RequestTags that = (RequestTags) o;
+    return operation.equals(that.operation) && method.equals(that.method) && Objects.equals(bucketName, that.bucketName);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * operation.hashCode() + method.hashCode()) + Objects.hashCode(bucketName);
+  }
+
+  @Override
+  public String toString() {
+    return operation + " " + method + (bucketName == null ? "" : " bucket=" + bucketName);
+  }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates request metrics in memory and writes them to an SLF4J logger on demand or on a schedule. Counts are
+ * cumulative from construction. Latencies are kept in a histogram with power-of-two microsecond buckets, so reported
+ * percentiles are upper bounds that are accurate to within a factor of two.
+ */
+public class Slf4jRequestMetrics implements RequestMetrics {
+
+  private static final int LATENCY_BUCKETS = 40;
+
+  private final Logger log;
+  private final ConcurrentMap<RequestTags, Stats> stats = new ConcurrentHashMap<>();
+
+  public Slf4jRequestMetrics() {
+    this(LoggerFactory.getLogger(Slf4jRequestMetrics.class));
+  }
+
+  /**
+   * @param log the logger to report to
+   */
+  public Slf4jRequestMetrics(Logger log) {
+    this.log = Preconditions.checkNotNull(log);
+  }
+
+  private static final class Stats {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ConcurrentMap<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0L);
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKETS);
+
+    private void record(RequestOutcome outcome) {
+      statusCounts.computeIfAbsent(outcome.getStatusCode(), code -> new LongAdder()).increment();
+      if (outcome.getBytesSent() > 0L) {
+        bytesSent.add(outcome.getBytesSent());
+      }
+      if (outcome.getBytesReceived() > 0L) {
+        bytesReceived.add(outcome.getBytesReceived());
+      }
+      long latencyNanos = outcome.getLatencyNanos();
+      totalLatencyNanos.add(latencyNanos);
+      maxLatencyNanos.accumulate(latencyNanos);
+      latencyHistogram.incrementAndGet(getLatencyBucket(latencyNanos));
+    }
+  }
+
+  /**
+   * Bucket 0 holds latencies under one microsecond; bucket {@code i} holds latencies under {@code 2^i} microseconds.
+   */
+  static int getLatencyBucket(long latencyNanos) {
+    long micros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+    int bucket = 64 - Long.numberOfLeadingZeros(micros);
+    return Math.min(bucket, LATENCY_BUCKETS - 1);
+  }
+
+  private static long getBucketUpperBoundNanos(int bucket) {
+    return TimeUnit.MICROSECONDS.toNanos(1L << bucket);
+  }
+
+  private Stats getStats(RequestTags tags) {
+    return stats.computeIfAbsent(tags, t -> new Stats());
+  }
+
+  @Override
+  public void requestStarted(RequestTags tags) {
+    getStats(tags).inFlight.incrementAndGet();
+  }
+
+  @Override
+  public void requestCompleted(RequestTags tags, RequestOutcome outcome) {
+    Stats s = getStats(tags);
+    s.inFlight.decrementAndGet();
+    s.record(outcome);
+  }
+
+  /**
+   * A point-in-time copy of the metrics for one kind of request.
+   */
+  public static final class Snapshot {
+    private final int inFlight;
+    private final long count;
+    private final ImmutableSortedMap<Integer, Long> statusCounts;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final long totalLatencyNanos;
+    private final long maxLatencyNanos;
+    private final long[] latencyHistogram;
+
+    private Snapshot(Stats stats) {
+      this.inFlight = stats.inFlight.get();
+      ImmutableSortedMap.Builder<Integer, Long> statusCounts = ImmutableSortedMap.naturalOrder();
+      for (Map.Entry<Integer, LongAdder> entry : stats.statusCounts.entrySet()) {
+        statusCounts.put(entry.getKey(), entry.getValue().sum());
+      }
+      this.statusCounts = statusCounts.build();
+      this.bytesSent = stats.bytesSent.sum();
+      this.bytesReceived = stats.bytesReceived.sum();
+      this.totalLatencyNanos = stats.totalLatencyNanos.sum();
+      this.maxLatencyNanos = stats.maxLatencyNanos.get();
+      this.latencyHistogram = new long[LATENCY_BUCKETS];
+      long count = 0L;
+      for (int i = 0; i < LATENCY_BUCKETS; i++) {
+        latencyHistogram[i] = stats.latencyHistogram.get(i);
+        count += latencyHistogram[i];
+      }
+      // Count from the histogram so that the percentiles are consistent with it under concurrent updates
+      this.count = count;
+    }
+
+    /**
+     * @return the number of requests that have started but not completed
+     */
+    public int getInFlight() {
+      return inFlight;
+    }
+
+    /**
+     * @return the number of completed requests
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @return the number of completed requests for each response status, with {@link RequestOutcome#NO_RESPONSE} for
+     * requests that failed before a response was received
+     */
+    public ImmutableSortedMap<Integer, Long> getStatusCounts() {
+      return statusCounts;
+    }
+
+    /**
+     * @return the total length of request bodies whose length was known
+     */
+    public long getBytesSent() {
+      return bytesSent;
+    }
+
+    /**
+     * @return the total length of response bodies whose length was known
+     */
+    public long getBytesReceived() {
+      return bytesReceived;
+    }
+
+    public long getMeanLatencyNanos() {
+      return count == 0L ? 0L : totalLatencyNanos / count;
+    }
+
+    public long getMaxLatencyNanos() {
+      return maxLatencyNanos;
+    }
+
+    /**
+     * @param quantile a number between 0 and 1
+     * @return an upper bound for the latency at the given quantile, or 0 if no requests have completed
+     */
+    public long getLatencyPercentileNanos(double quantile) {
+      Preconditions.checkArgument(quantile >= 0.0 && quantile <= 1.0);
+      if (count == 0L) return 0L;
+      long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+      long seen = 0L;
+      for (int i = 0; i < LATENCY_BUCKETS; i++) {
+        seen += latencyHistogram[i];
+        if (seen >= rank) {
+          return Math.min(getBucketUpperBoundNanos(i), maxLatencyNanos);
+        }
+      }
+      return maxLatencyNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("count=%d inFlight=%d status=%s latencyMs[mean=%.3f p50=%.3f p95=%.3f p99=%.3f max=%.3f]"
+              + " bytesSent=%d bytesReceived=%d",
+          count, inFlight, statusCounts, toMillis(getMeanLatencyNanos()), toMillis(getLatencyPercentileNanos(0.5)),
+          toMillis(getLatencyPercentileNanos(0.95)), toMillis(getLatencyPercentileNanos(0.99)),
+          toMillis(maxLatencyNanos), bytesSent, bytesReceived);
+    }
+
+    private static double toMillis(long nanos) {
+      return nanos / 1e6;
+    }
+  }
+
+  /**
+   * @return a copy of the current metrics for each kind of request that has been seen
+   */
+  public ImmutableMap<RequestTags, Snapshot> getSnapshots() {
+    ImmutableMap.Builder<RequestTags, Snapshot> snapshots = ImmutableMap.builder();
+    for (Map.Entry<RequestTags, Stats> entry : stats.entrySet()) {
+      snapshots.put(entry.getKey(), new Snapshot(entry.getValue()));
+    }
+    return snapshots.build();
+  }
+
+  /**
+   * Log the current metrics, one line for each kind of request, at INFO level.
+   */
+  public void report() {
+    if (!log.isInfoEnabled()) return;
+    for (Map.Entry<RequestTags, Snapshot> entry : getSnapshots().entrySet()) {
+      log.info("{}: {}", entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Log the current metrics periodically.
+   *
+   * @param executor the executor to run reports on
+   * @param period   the time between reports
+   * @param unit     the unit of {@code period}
+   * @return a future that can be cancelled to stop reporting
+   */
+  public ScheduledFuture<?> scheduleReports(ScheduledExecutorService executor, long period, TimeUnit unit) {
+    return executor.scheduleAtFixedRate(this::report, period, period, unit);
+  }
+
+}
@@ -78,6 +78,7 @@ public class RepoObjectInput {
   private final Timestamp timestamp;   // last modification time
   private final String userMetadata;
   private final ContentAccessor contentAccessor;
+  private final boolean verifyChecksum;
 
   private RepoObjectInput(Builder builder) {
     this.bucketName = builder.bucketName;
@@ -89,6 +90,7 @@ public class RepoObjectInput {
     this.timestamp = builder.timestamp;
     this.userMetadata = builder.userMetadata;
     this.contentAccessor = builder.contentAccessor;
+    this.verifyChecksum = builder.verifyChecksum;
   }
 
   public String getBucketName() {
@@ -127,6 +129,25 @@ public class RepoObjectInput {
     return contentAccessor;
   }
 
+  /**
+   * @return whether the service should hash the content while uploading it and check the hash against the checksum
+   * that the repo reports for the stored object
+   * @see Builder#setVerifyChecksum
+   */
+  public boolean isVerifyChecksum() {
+    return verifyChecksum;
+  }
+
+  /**
+   * Return the file on disk that this object's content comes from, if it was supplied via {@link
+   * Builder#setFileContent}. Uploads use this to send the file with a known length.
+   *
+   * @return the content file, or {@code null} if the content does not come from a file
+   */
+  public File getContentFile() {
+    return (contentAccessor instanceof FileAccessor) ? ((FileAccessor) contentAccessor).file : null;
+  }
+
 
   /**
    * Return the set content type or, if this object was supplied with a file on disk via {@link Builder#setFileContent},
@@ -165,6 +186,7 @@ public class RepoObjectInput {
     private Timestamp timestamp;   // last modification time
     private String userMetadata;
     private ContentAccessor contentAccessor;
+    private boolean verifyChecksum;
 
     public Builder(String bucketName, String key) {
       this.bucketName = Objects.requireNonNull(bucketName);
@@ -216,6 +238,16 @@ public class RepoObjectInput {
       return this;
     }
 
+    /**
+     * Compute a checksum of the content in the same pass that uploads it, and fail with {@link
+     * ErrorType#ChecksumMismatch} if the checksum that the repo reports for the stored object is different. This
+     * verifies the upload without downloading the object again.
+     */
+    public Builder setVerifyChecksum(boolean verifyChecksum) {
+      this.verifyChecksum = verifyChecksum;
+      return this;
+    }
+
     public RepoObjectInput build() {
       return new RepoObjectInput(this);
     }
@@ -236,6 +268,7 @@ public class RepoObjectInput {
     if (creationDate != null ? !creationDate.equals(that.creationDate) : that.creationDate != null) return false;
     if (timestamp != null ? !timestamp.equals(that.timestamp) : that.timestamp != null) return false;
     if (userMetadata != null ? !userMetadata.equals(that.userMetadata) : that.userMetadata != null) return false;
+    if (verifyChecksum != that.verifyChecksum) return false;
     return contentAccessor != null ? contentAccessor.equals(that.contentAccessor) : that.contentAccessor == null;
 
   }
@@ -251,6 +284,7 @@ public class RepoObjectInput {
     result = 31 * result + (timestamp != null ? timestamp.hashCode() : 0);
     result = 31 * result + (userMetadata != null ? userMetadata.hashCode() : 0);
     result = 31 * result + (contentAccessor != null ? contentAccessor.hashCode() : 0);
+    result = 31 * result + (verifyChecksum ? 1 : 0);
     return result;
   }
 }
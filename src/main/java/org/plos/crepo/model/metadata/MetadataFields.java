@@ -0,0 +1,342 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.model.metadata;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fields of a metadata object. The fields that the content repo is known to send are held in typed fields, and all
+ * others are kept as an immutable map. This avoids holding a map entry per field, and lets a streaming reader decode
+ * each known value directly without an intermediate map.
+ * <p>
+ * A known field whose value does not have the expected type is kept with the unknown fields, so that {@link #toMap()}
+ * always reproduces the values it was given.
+ */
+final class MetadataFields {
+
+  private String key;
+  private String uuid;
+  private Number versionNumber;
+  private String tag;
+  private String status;
+  private String timestamp;
+  private String creationDate;
+  private String userMetadata;
+
+  // Object fields
+  private Number size;
+  private String checksum;
+  private String contentType;
+  private String downloadName;
+  private ImmutableList<String> reproxyUrls;
+
+  private ImmutableMap<String, Object> extras;
+
+  private MetadataFields() {
+  }
+
+  /**
+   * Copies fields from a map. Values that are kept as unknown fields are deep-copied into immutable collections, unless
+   * the caller guarantees that they already are deeply immutable.
+   *
+   * @param raw            the metadata fields, with no null values
+   * @param valuesAreCopies true if the values are already deeply immutable and need not be copied
+   */
+  static MetadataFields fromMap(Map<String, Object> raw, boolean valuesAreCopies) {
+    MetadataFields fields = new MetadataFields();
+    ImmutableMap.Builder<String, Object> extras = ImmutableMap.builder();
+    for (Map.Entry<String, Object> entry : raw.entrySet()) {
+      String name = entry.getKey();
+      Object value = Preconditions.checkNotNull(entry.getValue());
+      if (!fields.setKnown(name, value)) {
+        extras.put(name, valuesAreCopies ? value : recursiveImmutableCopy(value));
+      }
+    }
+    fields.extras = extras.build();
+    return fields;
+  }
+
+  /**
+   * Reads fields from a JSON object. Numbers are read as {@code Double}s and nested values as immutable lists and maps,
+   * as {@link com.google.gson.Gson} would read them into a map. Fields with a null value are omitted.
+   */
+  static MetadataFields read(JsonReader in) throws IOException {
+    MetadataFields fields = new MetadataFields();
+    ImmutableMap.Builder<String, Object> extras = ImmutableMap.builder();
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      Object value = readValue(in);
+      if (value != null && !fields.setKnown(name, value)) {
+        extras.put(name, value);
+      }
+    }
+    in.endObject();
+    fields.extras = extras.build();
+    return fields;
+  }
+
+  private static Object readValue(JsonReader in) throws IOException {
+    JsonToken token = in.peek();
+    switch (token) {
+      case STRING:
+        return in.nextString();
+      case NUMBER:
+        return in.nextDouble();
+      case BOOLEAN:
+        return in.nextBoolean();
+      case NULL:
+        in.nextNull();
+        return null;
+      case BEGIN_ARRAY:
+        ImmutableList.Builder<Object> list = ImmutableList.builder();
+        in.beginArray();
+        while (in.hasNext()) {
+          Object element = readValue(in);
+          if (element == null) {
+            throw new JsonSyntaxException("Null array element in metadata: " + in);
+          }
+          list.add(element);
+        }
+        in.endArray();
+        return list.build();
+      case BEGIN_OBJECT:
+        ImmutableMap.Builder<String, Object> map = ImmutableMap.builder();
+        in.beginObject();
+        while (in.hasNext()) {
+          String name = in.nextName();
+          Object value = readValue(in);
+          if (value != null) {
+            map.put(name, value);
+          }
+        }
+        in.endObject();
+        return map.build();
+      default:
+        throw new JsonSyntaxException("Unexpected " + token + " in metadata: " + in);
+    }
+  }
+
+  private static String asString(Object value) {
+    return (value instanceof String) ? (String) value : null;
+  }
+
+  private static Number asNumber(Object value) {
+    return (value instanceof Number) ? (Number) value : null;
+  }
+
+  private static ImmutableList<String> asStringList(Object value) {
+    if (!(value instanceof List)) return null;
+    for (Object element : (List<?>) value) {
+      if (!(element instanceof String)) return null;
+    }
+    @SuppressWarnings("unchecked") // checked each element above
+        List<String> strings = (List<String>) value;
+    return ImmutableList.copyOf(strings);
+  }
+
+  /**
+   * Stores a value in its typed field.
+   *
+   * @return false if the name is not a known field, or the value does not have the known field's type
+   */
+  private boolean setKnown(String name, Object value) {
+    switch (name) {
+      case "key":
+        return (key = asString(value)) != null;
+      case "uuid":
+        return (uuid = asString(value)) != null;
+      case "versionNumber":
+        return (versionNumber = asNumber(value)) != null;
+      case "tag":
+        return (tag = asString(value)) != null;
+      case "status":
+        return (status = asString(value)) != null;
+      case "timestamp":
+        return (timestamp = asString(value)) != null;
+      case "creationDate":
+        return (creationDate = asString(value)) != null;
+      case "userMetadata":
+        return (userMetadata = asString(value)) != null;
+      case "size":
+        return (size = asNumber(value)) != null;
+      case "checksum":
+        return (checksum = asString(value)) != null;
+      case "contentType":
+        return (contentType = asString(value)) != null;
+      case "downloadName":
+        return (downloadName = asString(value)) != null;
+      case "reproxyURL":
+        return (reproxyUrls = asStringList(value)) != null;
+      default:
+        return false;
+    }
+  }
+
+  private static void putIfPresent(ImmutableMap.Builder<String, Object> builder, String name, Object value) {
+    if (value != null) {
+      builder.put(name, value);
+    }
+  }
+
+  /**
+   * @return all fields as an immutable map, equal to the map that these fields were read from
+   */
+  ImmutableMap<String, Object> toMap() {
+    ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
+    putIfPresent(builder, "key", key);
+    putIfPresent(builder, "uuid", uuid);
+    putIfPresent(builder, "versionNumber", versionNumber);
+    putIfPresent(builder, "tag", tag);
+    putIfPresent(builder, "status", status);
+    putIfPresent(builder, "timestamp", timestamp);
+    putIfPresent(builder, "creationDate", creationDate);
+    putIfPresent(builder, "userMetadata", userMetadata);
+    putIfPresent(builder, "size", size);
+    putIfPresent(builder, "checksum", checksum);
+    putIfPresent(builder, "contentType", contentType);
+    putIfPresent(builder, "downloadName", downloadName);
+    putIfPresent(builder, "reproxyURL", reproxyUrls);
+    return builder.putAll(extras).build();
+  }
+
+  static void writeValue(JsonWriter out, Object value) throws IOException {
+    if (value instanceof String) {
+      out.value((String) value);
+    } else if (value instanceof Number) {
+      out.value((Number) value);
+    } else if (value instanceof Boolean) {
+      out.value((Boolean) value);
+    } else if (value instanceof List) {
+      out.beginArray();
+      for (Object element : (List<?>) value) {
+        writeValue(out, element);
+      }
+      out.endArray();
+    } else if (value instanceof Map) {
+      out.beginObject();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        out.name((String) entry.getKey());
+        writeValue(out, entry.getValue());
+      }
+      out.endObject();
+    } else {
+      throw new IllegalArgumentException("Not a JSON value: " + value);
+    }
+  }
+
+  /**
+   * Make a deep immutable copy of the raw metadata. Requires all elements to be non-null. Because it was parsed from
+   * JSON, require all maps to have only {@code String}s as keys.
+   */
+  static Object recursiveImmutableCopy(Object obj) {
+    Preconditions.checkNotNull(obj);
+    if (obj instanceof Iterable) {
+      ImmutableList.Builder<Object> builder = ImmutableList.builder();
+      for (Object element : (Iterable<?>) obj) {
+        builder.add(recursiveImmutableCopy(element));
+      }
+      return builder.build();
+    }
+    if (obj instanceof Map) {
+      ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
+        String key = (String) entry.getKey();
+        Object value = recursiveImmutableCopy(entry.getValue());
+        builder.put(key, value);
+      }
+      return builder.build();
+    }
+    if (!(obj instanceof String || obj instanceof Number || obj instanceof Boolean)) {
+      // TODO: Throw an exception if a non-JSON-compatible, possibly mutable type is detected?
+    }
+    return obj;
+  }
+
+  String getKey() {
+    return key;
+  }
+
+  String getUuid() {
+    return uuid;
+  }
+
+  Number getVersionNumber() {
+    return versionNumber;
+  }
+
+  String getTag() {
+    return tag;
+  }
+
+  String getStatus() {
+    return status;
+  }
+
+  String getTimestamp() {
+    return timestamp;
+  }
+
+  String getCreationDate() {
+    return creationDate;
+  }
+
+  String getUserMetadata() {
+    return userMetadata;
+  }
+
+  Number getSize() {
+    return size;
+  }
+
+  String getChecksum() {
+    return checksum;
+  }
+
+  String getContentType() {
+    return contentType;
+  }
+
+  String getDownloadName() {
+    return downloadName;
+  }
+
+  ImmutableList<String> getReproxyUrls() {
+    return reproxyUrls;
+  }
+
+  Object getExtra(String name) {
+    return extras.get(name);
+  }
+
+}
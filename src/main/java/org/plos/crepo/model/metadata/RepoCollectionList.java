@@ -24,7 +24,6 @@ package org.plos.crepo.model.metadata;
 
 import com.google.common.collect.ImmutableList;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -37,16 +36,22 @@ public class RepoCollectionList extends RepoCollectionMetadata {
 
   public RepoCollectionList(String bucketName, Map<String, Object> raw) {
     super(bucketName, raw);
-    objects = parseObjects(bucketName, raw);
+    objects = parseObjects(bucketName, fields);
   }
 
-  private static ImmutableList<RepoObjectMetadata> parseObjects(String bucketName, Map<String, Object> raw) {
-    List<Map<String, Object>> rawObjects = (List<Map<String, Object>>) raw.get("objects");
-    List<RepoObjectMetadata> builtObjects = new ArrayList<>(rawObjects.size());
+  RepoCollectionList(String bucketName, MetadataFields fields) {
+    super(bucketName, fields);
+    objects = parseObjects(bucketName, fields);
+  }
+
+  @SuppressWarnings("unchecked") // the fields' values are deeply immutable JSON values
+  private static ImmutableList<RepoObjectMetadata> parseObjects(String bucketName, MetadataFields fields) {
+    List<Map<String, Object>> rawObjects = (List<Map<String, Object>>) fields.getExtra("objects");
+    ImmutableList.Builder<RepoObjectMetadata> builtObjects = ImmutableList.builder();
     for (Map<String, Object> rawObject : rawObjects) {
-      builtObjects.add(new RepoObjectMetadata(bucketName, rawObject));
+      builtObjects.add(new RepoObjectMetadata(bucketName, MetadataFields.fromMap(rawObject, true)));
     }
-    return ImmutableList.copyOf(builtObjects);
+    return builtObjects.build();
   }
 
   public ImmutableList<RepoObjectMetadata> getObjects() {
@@ -33,4 +33,8 @@ public class RepoCollectionMetadata extends RepoMetadata {
     super(bucketName, raw);
   }
 
+  RepoCollectionMetadata(String bucketName, MetadataFields fields) {
+    super(bucketName, fields);
+  }
+
 }
@@ -24,7 +24,6 @@ package org.plos.crepo.model.metadata;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
@@ -49,90 +48,75 @@ import java.util.Set;
 
 /**
  * Represents metadata about a repo entity, to output to the client.
+ * <p>
+ * Fields are held in typed form and decoded at most once. The map view is only built if it is asked for.
  */
 public abstract class RepoMetadata {
   private final String bucketName;
-  protected final ImmutableMap<String, Object> raw;
+  final MetadataFields fields;
 
-  @SuppressWarnings("unchecked")
-    // recursiveImmutableCopy guarantees type safety
   RepoMetadata(String bucketName, Map<String, Object> raw) {
-    this.bucketName = Objects.requireNonNull(bucketName);
-    this.raw = (ImmutableMap<String, Object>) recursiveImmutableCopy(raw);
+    this(bucketName, MetadataFields.fromMap(raw, false));
   }
 
-  private static ImmutableMap<String, Object> defensiveCopy(Map<String, Object> raw) {
-    ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
-    for (Map.Entry<String, Object> entry : raw.entrySet()) {
-      builder.put(entry.getKey(), recursiveImmutableCopy(entry.getValue()));
-    }
-    return builder.build();
+  RepoMetadata(String bucketName, MetadataFields fields) {
+    this.bucketName = Objects.requireNonNull(bucketName);
+    this.fields = Objects.requireNonNull(fields);
   }
 
-  /**
-   * Make a deep immutable copy of the raw metadata. Requires all elements to be non-null. Because it was parsed from
-   * JSON, require all maps to have only {@code String}s as keys.
-   */
-  private static Object recursiveImmutableCopy(Object obj) {
-    Preconditions.checkNotNull(obj);
-    if (obj instanceof Iterable) {
-      ImmutableList.Builder<Object> builder = ImmutableList.builder();
-      for (Object element : (Iterable<?>) obj) {
-        builder.add(recursiveImmutableCopy(element));
-      }
-      return builder.build();
-    }
-    if (obj instanceof Map) {
-      ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
-      for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
-        String key = (String) entry.getKey();
-        Object value = recursiveImmutableCopy(entry.getValue());
-        builder.put(key, value);
-      }
-      return builder.build();
-    }
-    if (!(obj instanceof String || obj instanceof Number || obj instanceof Boolean)) {
-      // TODO: Throw an exception if a non-JSON-compatible, possibly mutable type is detected?
-    }
-    return obj;
-  }
+  // Store to avoid redundant building and parsing. Null means uninitialized.
+  private transient ImmutableMap<String, Object> mapView = null;
+  private transient RepoVersion version = null;
+  private transient RepoVersionNumber versionNumber = null;
+  private transient Status status = null;
+  private transient volatile Timestamp timestamp = null; // Timestamp is mutable, so it must be published safely
+  private transient volatile Timestamp creationDate = null;
 
   public ImmutableMap<String, Object> getMapView() {
-    return raw;
+    if (mapView != null) return mapView;
+    return mapView = fields.toMap();
   }
 
   public RepoVersion getVersion() {
-    String key = (String) raw.get("key");
-    String uuid = (String) raw.get("uuid");
-    return RepoVersion.create(bucketName, key, uuid);
+    if (version != null) return version;
+    return version = RepoVersion.create(bucketName, fields.getKey(), fields.getUuid());
   }
 
   public RepoVersionNumber getVersionNumber() {
-    String key = (String) raw.get("key");
-    int versionNumber = ((Number) raw.get("versionNumber")).intValue();
-    return RepoVersionNumber.create(bucketName, key, versionNumber);
+    if (versionNumber != null) return versionNumber;
+    int number = fields.getVersionNumber().intValue();
+    return versionNumber = RepoVersionNumber.create(bucketName, fields.getKey(), number);
   }
 
   public Optional<RepoVersionTag> getTag() {
-    String key = (String) raw.get("key");
-    return Optional.ofNullable((String) raw.get("tag"))
+    String key = fields.getKey();
+    return Optional.ofNullable(fields.getTag())
         .map((String tag) -> RepoVersionTag.create(bucketName, key, tag));
   }
 
   public Timestamp getTimestamp() {
-    return Timestamp.valueOf((String) raw.get("timestamp"));
+    Timestamp parsed = timestamp;
+    if (parsed == null) {
+      timestamp = parsed = Timestamp.valueOf(fields.getTimestamp());
+    }
+    return (Timestamp) parsed.clone();
   }
 
   public Timestamp getCreationDate() {
-    return Timestamp.valueOf((String) raw.get("creationDate"));
+    Timestamp parsed = creationDate;
+    if (parsed == null) {
+      creationDate = parsed = Timestamp.valueOf(fields.getCreationDate());
+    }
+    return (Timestamp) parsed.clone();
   }
 
   public Status getStatus() {
-    return Status.valueOf((String) raw.get("status"));
+    if (status != null) return status;
+    return status = Status.valueOf(fields.getStatus());
   }
 
   public Optional<String> getRawUserMetadata() {
-    return Optional.ofNullable((String) raw.get("userMetadata"));
+    return Optional.ofNullable(fields.getUserMetadata());
   }
 
   // Store to avoid redundant parsing. Null means uninitialized; absent means this has no userMetadata.
@@ -220,7 +204,7 @@ public abstract class RepoMetadata {
   }
 
   public Map<String, Object> inlineJsonUserMetadata() {
-    Map<String, Object> thisMetadata = new LinkedHashMap<>(raw);
+    Map<String, Object> thisMetadata = new LinkedHashMap<>(getMapView());
     Optional<Object> userMetadata = getJsonUserMetadata();
     if (userMetadata.isPresent()) {
       thisMetadata.put("userMetadata", userMetadata.get());
@@ -234,16 +218,16 @@ public abstract class RepoMetadata {
   public boolean equals(Object o) {
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
-    return raw.equals(((RepoMetadata) o).raw);
+    return getMapView().equals(((RepoMetadata) o).getMapView());
   }
 
   @Override
   public int hashCode() {
-    return raw.hashCode();
+    return getMapView().hashCode();
   }
 
   @Override
   public String toString() {
-    return getClass().getSimpleName() + raw;
+    return getClass().getSimpleName() + getMapView();
   }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.model.metadata;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+/**
+ * Reads and writes metadata as JSON, decoding each field directly from the stream into its typed form instead of
+ * building an intermediate map. Because the JSON does not name its bucket, an adapter is created for the bucket that
+ * the metadata belongs to.
+ * <p>
+ * Reading produces metadata equal to what the {@code Map} constructors produce from a map parsed by {@link
+ * com.google.gson.Gson}: numbers are read as {@code Double}s, and fields with null values are omitted.
+ *
+ * @param <T> the type of metadata
+ */
+public class RepoMetadataTypeAdapter<T extends RepoMetadata> extends TypeAdapter<T> {
+
+  private final String bucketName;
+  private final BiFunction<String, MetadataFields, T> constructor;
+
+  private RepoMetadataTypeAdapter(String bucketName, BiFunction<String, MetadataFields, T> constructor) {
+    this.bucketName = Objects.requireNonNull(bucketName);
+    this.constructor = Objects.requireNonNull(constructor);
+  }
+
+  public static RepoMetadataTypeAdapter<RepoObjectMetadata> forObjects(String bucketName) {
+    return new RepoMetadataTypeAdapter<>(bucketName, RepoObjectMetadata::new);
+  }
+
+  public static RepoMetadataTypeAdapter<RepoCollectionMetadata> forCollections(String bucketName) {
+    return new RepoMetadataTypeAdapter<>(bucketName, RepoCollectionMetadata::new);
+  }
+
+  public static RepoMetadataTypeAdapter<RepoCollectionList> forCollectionLists(String bucketName) {
+    return new RepoMetadataTypeAdapter<>(bucketName, RepoCollectionList::new);
+  }
+
+  @Override
+  public T read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return constructor.apply(bucketName, MetadataFields.read(in));
+  }
+
+  @Override
+  public void write(JsonWriter out, T value) throws IOException {
+    if (value == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginObject();
+    for (Map.Entry<String, Object> entry : value.getMapView().entrySet()) {
+      out.name(entry.getKey());
+      MetadataFields.writeValue(out, entry.getValue());
+    }
+    out.endObject();
+  }
+
+}
@@ -41,20 +41,28 @@ public class RepoObjectMetadata extends RepoMetadata {
     super(bucketName, raw);
   }
 
+  RepoObjectMetadata(String bucketName, MetadataFields fields) {
+    super(bucketName, fields);
+  }
+
   public long getSize() {
-    return ((Number) raw.get("size")).longValue();
+    return fields.getSize().longValue();
+  }
+
+  public Optional<String> getChecksum() {
+    return Optional.ofNullable(fields.getChecksum());
   }
 
   public Optional<String> getContentType() {
-    return Optional.ofNullable((String) raw.get("contentType"));
+    return Optional.ofNullable(fields.getContentType());
   }
 
   public Optional<String> getDownloadName() {
-    return Optional.ofNullable((String) raw.get("downloadName"));
+    return Optional.ofNullable(fields.getDownloadName());
   }
 
   public List<URL> getReproxyUrls() {
-    List<String> rawUrls = (List<String>) raw.get("reproxyURL");
+    List<String> rawUrls = fields.getReproxyUrls();
     if (rawUrls == null) return new ArrayList<>(0);
     List<URL> urls = new ArrayList<>(rawUrls.size());
     for (String rawUrl : rawUrls) {
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionNumber;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.input.RepoCollectionInput;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoCollectionMetadata;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A non-blocking counterpart of {@link ContentRepoService}. Each method has the same meaning as the method of the same
+ * name in {@code ContentRepoService}, but returns immediately with a future. Exceptions that the blocking method would
+ * have thrown complete the future exceptionally instead.
+ * <p>
+ * The streaming listings, {@link ContentRepoService#streamRepoObjects} and {@link
+ * ContentRepoService#streamCollections}, have no counterpart here, because their streams parse the response lazily on
+ * the consuming thread; use {@link #getRepoObjects} and {@link #getCollections} instead.
+ */
+public interface AsyncContentRepoService {
+
+  // ------------------------ Config ------------------------
+
+  /**
+   * @see ContentRepoService#hasXReproxy()
+   */
+  CompletableFuture<Boolean> hasXReproxy();
+
+  /**
+   * @see ContentRepoService#getRepoConfig()
+   */
+  CompletableFuture<Map<String, Object>> getRepoConfig();
+
+  /**
+   * @see ContentRepoService#getRepoStatus()
+   */
+  CompletableFuture<Map<String, Object>> getRepoStatus();
+
+
+  // ------------------------ Buckets ------------------------
+
+  /**
+   * @see ContentRepoService#getBuckets()
+   */
+  CompletableFuture<List<Map<String, Object>>> getBuckets();
+
+  /**
+   * @see ContentRepoService#getBucket(String)
+   */
+  CompletableFuture<Map<String, Object>> getBucket(String key);
+
+  /**
+   * @see ContentRepoService#createBucket(String)
+   */
+  CompletableFuture<Map<String, Object>> createBucket(String key);
+
+
+  // ------------------------ Objects ------------------------
+
+  /**
+   * @see ContentRepoService#getLatestRepoObject(RepoId)
+   * @deprecated use {@link #getRepoObject(RepoVersion)} or {@link #getRepoObject(RepoVersionNumber)} instead.
+   */
+  @Deprecated
+  CompletableFuture<InputStream> getLatestRepoObject(RepoId id);
+
+  /**
+   * @see ContentRepoService#getRepoObject(RepoVersion)
+   */
+  CompletableFuture<InputStream> getRepoObject(RepoVersion version);
+
+  /**
+   * @see ContentRepoService#getRepoObject(RepoVersionNumber)
+   */
+  CompletableFuture<InputStream> getRepoObject(RepoVersionNumber number);
+
+  /**
+   * @see ContentRepoService#getRepoObjectRange(RepoVersion, long, long)
+   */
+  CompletableFuture<InputStream> getRepoObjectRange(RepoVersion version, long offset, long length);
+
+  /**
+   * @see ContentRepoService#getVerifiedRepoObject(RepoObjectMetadata)
+   */
+  CompletableFuture<InputStream> getVerifiedRepoObject(RepoObjectMetadata metadata);
+
+  /**
+   * @see ContentRepoService#getResumableRepoObject(RepoObjectMetadata, int)
+   */
+  CompletableFuture<InputStream> getResumableRepoObject(RepoObjectMetadata metadata, int retryBudget);
+
+  /**
+   * @see ContentRepoService#getReproxiedRepoObject(RepoObjectMetadata)
+   */
+  CompletableFuture<InputStream> getReproxiedRepoObject(RepoObjectMetadata metadata);
+
+  /**
+   * @see ContentRepoService#getLatestRepoObjectMetadata(RepoId)
+   * @deprecated use {@link #getRepoObjectMetadata(RepoVersion)} or {@link #getRepoObjectMetadata(RepoVersionNumber)}
+   * instead.
+   */
+  @Deprecated
+  CompletableFuture<RepoObjectMetadata> getLatestRepoObjectMetadata(RepoId id);
+
+  /**
+   * @see ContentRepoService#getRepoObjectMetadata(RepoVersion)
+   */
+  CompletableFuture<RepoObjectMetadata> getRepoObjectMetadata(RepoVersion version);
+
+  /**
+   * @see ContentRepoService#getRepoObjectMetadata(RepoVersionNumber)
+   */
+  CompletableFuture<RepoObjectMetadata> getRepoObjectMetadata(RepoVersionNumber number);
+
+  /**
+   * @see ContentRepoService#getRepoObjectMetadata(RepoVersionTag)
+   */
+  CompletableFuture<RepoObjectMetadata> getRepoObjectMetadata(RepoVersionTag tagObj);
+
+  /**
+   * @see ContentRepoService#getRepoObjectVersions(RepoId)
+   */
+  CompletableFuture<List<RepoObjectMetadata>> getRepoObjectVersions(RepoId id);
+
+  /**
+   * @see ContentRepoService#getRepoObjectMetadataForVersions(Collection)
+   */
+  CompletableFuture<BatchResult<RepoVersion, RepoObjectMetadata>> getRepoObjectMetadataForVersions(Collection<RepoVersion> versions);
+
+  /**
+   * @see ContentRepoService#getRepoObjectMetadataForVersionNumbers(Collection)
+   */
+  CompletableFuture<BatchResult<RepoVersionNumber, RepoObjectMetadata>> getRepoObjectMetadataForVersionNumbers(Collection<RepoVersionNumber> numbers);
+
+  /**
+   * @see ContentRepoService#getRepoObjectMetadataForVersionTags(Collection)
+   */
+  CompletableFuture<BatchResult<RepoVersionTag, RepoObjectMetadata>> getRepoObjectMetadataForVersionTags(Collection<RepoVersionTag> tags);
+
+  /**
+   * @see ContentRepoService#deleteLatestRepoObject(RepoId)
+   * @deprecated use {@link #deleteRepoObject(RepoVersion)} or {@link #deleteRepoObject(RepoVersionNumber)} instead.
+   */
+  @Deprecated
+  CompletableFuture<Boolean> deleteLatestRepoObject(RepoId id);
+
+  /**
+   * @see ContentRepoService#deleteRepoObject(RepoVersion)
+   */
+  CompletableFuture<Boolean> deleteRepoObject(RepoVersion version);
+
+  /**
+   * @see ContentRepoService#deleteRepoObject(RepoVersionNumber)
+   */
+  CompletableFuture<Boolean> deleteRepoObject(RepoVersionNumber number);
+
+  /**
+   * @see ContentRepoService#createRepoObject(RepoObjectInput)
+   */
+  CompletableFuture<RepoObjectMetadata> createRepoObject(RepoObjectInput repoObjectInput);
+
+  /**
+   * @see ContentRepoService#versionRepoObject(RepoObjectInput)
+   */
+  CompletableFuture<RepoObjectMetadata> versionRepoObject(RepoObjectInput repoObjectInput);
+
+  /**
+   * @see ContentRepoService#autoCreateRepoObject(RepoObjectInput)
+   */
+  CompletableFuture<RepoObjectMetadata> autoCreateRepoObject(RepoObjectInput repoObjectInput);
+
+  /**
+   * @see ContentRepoService#getRepoObjects(String, int, int, boolean, String)
+   */
+  CompletableFuture<List<RepoObjectMetadata>> getRepoObjects(String bucketName, int offset, int limit, boolean includeDeleted, String tag);
+
+
+  // ------------------------ Collections ------------------------
+
+  /**
+   * @see ContentRepoService#createCollection(RepoCollectionInput)
+   */
+  CompletableFuture<RepoCollectionList> createCollection(RepoCollectionInput repoCollectionInput);
+
+  /**
+   * @see ContentRepoService#versionCollection(RepoCollectionInput)
+   */
+  CompletableFuture<RepoCollectionList> versionCollection(RepoCollectionInput repoCollectionInput);
+
+  /**
+   * @see ContentRepoService#autoCreateCollection(RepoCollectionInput)
+   */
+  CompletableFuture<RepoCollectionList> autoCreateCollection(RepoCollectionInput repoCollectionInput);
+
+  /**
+   * @see ContentRepoService#deleteCollection(RepoVersion)
+   */
+  CompletableFuture<Boolean> deleteCollection(RepoVersion version);
+
+  /**
+   * @see ContentRepoService#deleteCollection(RepoVersionNumber)
+   */
+  CompletableFuture<Boolean> deleteCollection(RepoVersionNumber number);
+
+  /**
+   * @see ContentRepoService#getCollection(RepoVersion)
+   */
+  CompletableFuture<RepoCollectionList> getCollection(RepoVersion version);
+
+  /**
+   * @see ContentRepoService#getCollection(RepoVersionNumber)
+   */
+  CompletableFuture<RepoCollectionList> getCollection(RepoVersionNumber number);
+
+  /**
+   * @see ContentRepoService#getCollection(RepoVersionTag)
+   */
+  CompletableFuture<RepoCollectionList> getCollection(RepoVersionTag tagObj);
+
+  /**
+   * @see ContentRepoService#getLatestCollection(RepoId)
+   */
+  CompletableFuture<RepoCollectionMetadata> getLatestCollection(RepoId id);
+
+  /**
+   * @see ContentRepoService#getCollectionVersions(RepoId)
+   */
+  CompletableFuture<List<RepoCollectionList>> getCollectionVersions(RepoId id);
+
+  /**
+   * @see ContentRepoService#getCollections(String, int, int, boolean, String)
+   */
+  CompletableFuture<List<RepoCollectionMetadata>> getCollections(String bucketName, int offset, int limit, boolean includeDeleted, String tag);
+
+}
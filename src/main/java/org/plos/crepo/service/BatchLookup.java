@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Runs a batch of independent lookups with bounded concurrency.
+ */
+class BatchLookup {
+
+  private BatchLookup() {
+    throw new AssertionError("Not instantiable");
+  }
+
+  /**
+   * Runs a worker on the executor's thread, unless the calling thread has already finished the batch.
+   */
+  private static class HelperTask implements Runnable {
+    private final Runnable worker;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+
+    private HelperTask(Runnable worker) {
+      this.worker = worker;
+    }
+
+    /**
+     * @return {@code true} if the task had not started, and now never will
+     */
+    private boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
+
+    @Override
+    public void run() {
+      if (!claim()) return;
+      try {
+        worker.run();
+      } finally {
+        finished.complete(null);
+      }
+    }
+  }
+
+  /**
+   * Look up each distinct key in the calling thread, one at a time.
+   */
+  static <K, V> BatchResult<K, V> lookUp(Collection<? extends K> keys, Function<? super K, ? extends V> lookup) {
+    Map<K, V> results = new LinkedHashMap<>();
+    Map<K, RuntimeException> failures = new LinkedHashMap<>();
+    for (K key : ImmutableSet.copyOf(keys)) {
+      try {
+        results.put(key, Objects.requireNonNull(lookup.apply(key)));
+      } catch (RuntimeException e) {
+        failures.put(key, e);
+      }
+    }
+    return new BatchResult<>(results, failures);
+  }
+
+  /**
+   * Look up each distinct key, running at most {@code maxConcurrency} lookups at a time. The calling thread performs
+   * lookups alongside the executor's threads, so the batch makes progress even if the executor is saturated. If a lookup
+   * throws an {@link Error}, the rest of the batch is abandoned and the error is thrown once the lookups in flight are
+   * done.
+   *
+   * @param keys           the keys to look up; duplicates are looked up once
+   * @param lookup         the blocking lookup to perform for each key
+   * @param executor       the executor that runs the additional workers
+   * @param maxConcurrency the maximum number of lookups in flight, including the calling thread
+   */
+  static <K, V> BatchResult<K, V> lookUp(Collection<? extends K> keys, Function<? super K, ? extends V> lookup,
+                                         Executor executor, int maxConcurrency) {
+    Preconditions.checkArgument(maxConcurrency > 0);
+    ImmutableSet<K> distinctKeys = ImmutableSet.copyOf(keys);
+    int workerCount = Math.min(maxConcurrency, distinctKeys.size());
+    if (workerCount <= 1) {
+      return lookUp(distinctKeys, lookup);
+    }
+
+    Queue<K> queue = new ConcurrentLinkedQueue<>(distinctKeys);
+    Map<K, V> results = new ConcurrentHashMap<>();
+    Map<K, RuntimeException> failures = new ConcurrentHashMap<>();
+    AtomicReference<Error> error = new AtomicReference<>(); // the first, which is thrown to the caller
+    Runnable worker = () -> {
+      K key;
+      while ((key = queue.poll()) != null) {
+        try {
+          results.put(key, Objects.requireNonNull(lookup.apply(key)));
+        } catch (RuntimeException e) {
+          failures.put(key, e);
+        } catch (Error e) {
+          error.compareAndSet(null, e);
+          queue.clear(); // abandon the batch
+        }
+      }
+    };
+
+    List<HelperTask> helpers = new ArrayList<>(workerCount - 1);
+    for (int i = 1; i < workerCount; i++) {
+      HelperTask helper = new HelperTask(worker);
+      executor.execute(helper);
+      helpers.add(helper);
+    }
+    worker.run();
+
+    // The queue is drained. Wait only for helpers that are still finishing a lookup, and not for those that never got
+    // a thread, which may never get one if the executor is saturated or is running this call.
+    List<CompletableFuture<Void>> running = new ArrayList<>(helpers.size());
+    for (HelperTask helper : helpers) {
+      if (!helper.claim()) {
+        running.add(helper.finished);
+      }
+    }
+    CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0])).join();
+    if (error.get() != null) {
+      throw error.get();
+    }
+
+    // Restore the requested order
+    Map<K, V> orderedResults = new LinkedHashMap<>();
+    Map<K, RuntimeException> orderedFailures = new LinkedHashMap<>();
+    for (K key : distinctKeys) {
+      V result = results.get(key);
+      if (result != null) {
+        orderedResults.put(key, result);
+      } else {
+        orderedFailures.put(key, failures.get(key));
+      }
+    }
+    return new BatchResult<>(orderedResults, orderedFailures);
+  }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import com.google.common.collect.ForwardingMap;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+/**
+ * The outcome of a batch of lookups. As a map, contains the keys whose lookups succeeded, mapped to their results, in
+ * the order that the keys were requested. Keys whose lookups failed are instead mapped to the thrown exception by
+ * {@link #getFailures()}. Every requested key appears in exactly one of the two maps.
+ *
+ * @param <K> the type of key that was looked up
+ * @param <V> the type of result
+ */
+public class BatchResult<K, V> extends ForwardingMap<K, V> {
+
+  private final ImmutableMap<K, V> results;
+  private final ImmutableMap<K, RuntimeException> failures;
+
+  public BatchResult(Map<K, V> results, Map<K, RuntimeException> failures) {
+    this.results = ImmutableMap.copyOf(results);
+    this.failures = ImmutableMap.copyOf(failures);
+  }
+
+  @Override
+  protected ImmutableMap<K, V> delegate() {
+    return results;
+  }
+
+  /**
+   * @return the keys whose lookups failed, mapped to the exception thrown for each
+   */
+  public ImmutableMap<K, RuntimeException> getFailures() {
+    return failures;
+  }
+
+  /**
+   * @return {@code true} if every lookup in the batch succeeded
+   */
+  public boolean isComplete() {
+    return failures.isEmpty();
+  }
+
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.primitives.Ints;
+import org.plos.crepo.model.metadata.RepoCollectionMetadata;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks every object or collection in a bucket by paging through {@link ContentRepoService#getRepoObjects} or {@link
+ * ContentRepoService#getCollections}.
+ * <p>
+ * Pages are requested lazily as the returned stream is consumed. As soon as one page arrives, the next one is requested
+ * on the executor, so that the server's latency overlaps with the caller's work on the current page. The page size is
+ * adjusted after every page, aiming for each request to take about the target page latency: fast pages grow the next
+ * request and slow pages shrink it, by at most a factor of two each time.
+ * <p>
+ * For scanning with several threads and connections at once, {@link #parallelScanRepoObjects} splits the bucket into
+ * offset ranges that are paged independently. The number of pages in flight across all ranges of one scan is capped by
+ * {@link Builder#setMaxConcurrentPages}.
+ * <p>
+ * The scan is not a snapshot. Objects created or deleted while a scan is in progress may shift the offsets of other
+ * objects, so that they are skipped or returned twice.
+ */
+public class BucketScanner {
+
+  public static final int DEFAULT_INITIAL_PAGE_SIZE = 100;
+  public static final int DEFAULT_MIN_PAGE_SIZE = 10;
+  public static final int DEFAULT_MAX_PAGE_SIZE = 1000;
+  public static final long DEFAULT_TARGET_PAGE_MILLIS = 500L;
+  public static final int DEFAULT_MAX_CONCURRENT_PAGES = 4;
+
+  private final ContentRepoService service;
+  private final Executor executor;
+  private final int initialPageSize;
+  private final int minPageSize;
+  private final int maxPageSize;
+  private final long targetPageNanos;
+  private final int maxConcurrentPages;
+  private final Ticker ticker;
+
+  private BucketScanner(Builder builder) {
+    this.service = Objects.requireNonNull(builder.service);
+    this.executor = Objects.requireNonNull(builder.executor);
+    this.minPageSize = builder.minPageSize;
+    this.maxPageSize = builder.maxPageSize;
+    this.initialPageSize = builder.initialPageSize;
+    this.targetPageNanos = builder.targetPageNanos;
+    this.maxConcurrentPages = builder.maxConcurrentPages;
+    this.ticker = builder.ticker;
+    Preconditions.checkArgument(minPageSize > 0 && minPageSize <= maxPageSize);
+    Preconditions.checkArgument(initialPageSize >= minPageSize && initialPageSize <= maxPageSize);
+    Preconditions.checkArgument(targetPageNanos > 0L);
+    Preconditions.checkArgument(maxConcurrentPages > 0);
+  }
+
+  /**
+   * @param service  the service to scan
+   * @param executor the executor on which pages are fetched
+   */
+  public static Builder builder(ContentRepoService service, Executor executor) {
+    return new Builder(service, executor);
+  }
+
+  public static class Builder {
+    private final ContentRepoService service;
+    private final Executor executor;
+    private int initialPageSize = DEFAULT_INITIAL_PAGE_SIZE;
+    private int minPageSize = DEFAULT_MIN_PAGE_SIZE;
+    private int maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+    private long targetPageNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TARGET_PAGE_MILLIS);
+    private int maxConcurrentPages = DEFAULT_MAX_CONCURRENT_PAGES;
+    private Ticker ticker = Ticker.systemTicker();
+
+    private Builder(ContentRepoService service, Executor executor) {
+      this.service = Objects.requireNonNull(service);
+      this.executor = Objects.requireNonNull(executor);
+    }
+
+    public Builder setInitialPageSize(int initialPageSize) {
+      this.initialPageSize = initialPageSize;
+      return this;
+    }
+
+    public Builder setMinPageSize(int minPageSize) {
+      this.minPageSize = minPageSize;
+      return this;
+    }
+
+    public Builder setMaxPageSize(int maxPageSize) {
+      this.maxPageSize = maxPageSize;
+      return this;
+    }
+
+    public Builder setTargetPageLatency(long duration, TimeUnit unit) {
+      this.targetPageNanos = unit.toNanos(duration);
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of pages that one parallel scan may be fetching at once, regardless of how many threads
+     * are consuming it.
+     */
+    public Builder setMaxConcurrentPages(int maxConcurrentPages) {
+      this.maxConcurrentPages = maxConcurrentPages;
+      return this;
+    }
+
+    Builder setTicker(Ticker ticker) {
+      this.ticker = Objects.requireNonNull(ticker);
+      return this;
+    }
+
+    public BucketScanner build() {
+      return new BucketScanner(this);
+    }
+  }
+
+  /**
+   * Fetches one page of a listing.
+   */
+  @FunctionalInterface
+  static interface PageFetcher<T> {
+    List<T> fetch(int offset, int limit);
+  }
+
+  /**
+   * Returns every object in a bucket.
+   *
+   * @param bucketName     the bucket to scan
+   * @param includeDeleted if true the scan includes deleted objects
+   * @param tag            if not null, only objects with this tag are returned
+   * @return a lazily paged stream of the objects, which should be closed if it is not consumed to the end
+   */
+  public Stream<RepoObjectMetadata> scanRepoObjects(String bucketName, boolean includeDeleted, String tag) {
+    Objects.requireNonNull(bucketName);
+    return scan((offset, limit) -> service.getRepoObjects(bucketName, offset, limit, includeDeleted, tag));
+  }
+
+  /**
+   * Returns every collection in a bucket.
+   *
+   * @param bucketName     the bucket to scan
+   * @param includeDeleted if true the scan includes deleted collections
+   * @param tag            if not null, only collections with this tag are returned
+   * @return a lazily paged stream of the collections, which should be closed if it is not consumed to the end
+   */
+  public Stream<RepoCollectionMetadata> scanCollections(String bucketName, boolean includeDeleted, String tag) {
+    Objects.requireNonNull(bucketName);
+    return scan((offset, limit) -> service.getCollections(bucketName, offset, limit, includeDeleted, tag));
+  }
+
+  /**
+   * Returns every object in a bucket, split into offset ranges that can be paged in parallel. The ranges are sized from
+   * the bucket's {@code totalObjects} count. The last range also pages past that count, so objects added since the
+   * count was read are still reached.
+   * <p>
+   * Pages are fetched on the threads that consume the spliterator, such as the fork/join pool of a parallel stream,
+   * but no more than the maximum number of concurrent pages are in flight at once.
+   *
+   * @param bucketName     the bucket to scan
+   * @param includeDeleted if true the scan includes deleted objects
+   * @param tag            if not null, only objects with this tag are returned
+   * @param ordered        if true the spliterator reports {@link Spliterator#ORDERED}, so that a parallel stream
+   *                       preserves the order of the listing; if false, streams may skip the work of preserving it
+   * @return a splittable spliterator of the objects
+   */
+  public Spliterator<RepoObjectMetadata> repoObjectSpliterator(String bucketName, boolean includeDeleted, String tag,
+                                                               boolean ordered) {
+    Objects.requireNonNull(bucketName);
+    Object totalObjects = service.getBucket(bucketName).get("totalObjects");
+    int total = (totalObjects instanceof Number) ? ((Number) totalObjects).intValue() : 0;
+    PageFetcher<RepoObjectMetadata> fetcher =
+        (offset, limit) -> service.getRepoObjects(bucketName, offset, limit, includeDeleted, tag);
+    return new OffsetRangeSpliterator<>(fetcher, new Semaphore(maxConcurrentPages), ordered, 0, total, true);
+  }
+
+  /**
+   * Returns a parallel stream over {@link #repoObjectSpliterator}.
+   *
+   * @param bucketName     the bucket to scan
+   * @param includeDeleted if true the scan includes deleted objects
+   * @param tag            if not null, only objects with this tag are returned
+   * @param ordered        whether the stream preserves the order of the listing
+   * @return a parallel stream of the objects
+   */
+  public Stream<RepoObjectMetadata> parallelScanRepoObjects(String bucketName, boolean includeDeleted, String tag,
+                                                            boolean ordered) {
+    return StreamSupport.stream(repoObjectSpliterator(bucketName, includeDeleted, tag, ordered), true);
+  }
+
+  <T> Stream<T> scan(PageFetcher<T> fetcher) {
+    PagingIterator<T> iterator = new PagingIterator<>(fetcher);
+    Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL);
+    return StreamSupport.stream(spliterator, false).onClose(iterator::close);
+  }
+
+  /**
+   * Chooses the size of the next page from how long the previous page took.
+   *
+   * @param pageSize     the size of the previous page
+   * @param elapsedNanos how long the previous page took to fetch
+   * @return the size of the next page
+   */
+  int adaptPageSize(int pageSize, long elapsedNanos) {
+    double ratio = (double) targetPageNanos / Math.max(elapsedNanos, 1L);
+    ratio = Math.max(0.5, Math.min(2.0, ratio));
+    int adapted = Ints.saturatedCast((long) (pageSize * ratio));
+    return Math.max(minPageSize, Math.min(maxPageSize, adapted));
+  }
+
+  private static class Page<T> {
+    private final int offset;
+    private final List<T> items;
+    private final long elapsedNanos;
+
+    private Page(int offset, List<T> items, long elapsedNanos) {
+      this.offset = offset;
+      this.items = items;
+      this.elapsedNanos = elapsedNanos;
+    }
+  }
+
+  private class PagingIterator<T> implements Iterator<T> {
+    private final PageFetcher<T> fetcher;
+
+    private int pageSize = initialPageSize;
+    private Iterator<T> current = Collections.emptyIterator();
+    private CompletableFuture<Page<T>> pending;
+
+    private PagingIterator(PageFetcher<T> fetcher) {
+      this.fetcher = fetcher;
+      this.pending = fetch(0, pageSize);
+    }
+
+    private CompletableFuture<Page<T>> fetch(int offset, int limit) {
+      return CompletableFuture.supplyAsync(() -> {
+        long start = ticker.read();
+        List<T> items = fetcher.fetch(offset, limit);
+        return new Page<>(offset, items, ticker.read() - start);
+      }, executor);
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        if (pending == null) {
+          return false;
+        }
+        Page<T> page = await(pending);
+        if (page.items.isEmpty()) {
+          pending = null;
+          return false;
+        }
+
+        // Advance by the number actually returned, in case the server caps the limit below what was requested.
+        // A short page usually means the end of the bucket, but only an empty page proves it.
+        pageSize = adaptPageSize(pageSize, page.elapsedNanos);
+        pending = fetch(page.offset + page.items.size(), pageSize);
+        current = page.items.iterator();
+      }
+      return true;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.next();
+    }
+
+    private void close() {
+      if (pending != null) {
+        pending.cancel(false);
+        pending = null;
+      }
+      current = Collections.emptyIterator();
+    }
+  }
+
+  /**
+   * Pages through the offsets from {@code offset} up to {@code fence}. An open range continues past the fence until it
+   * reads an empty page. Splitting hands off the first half of the unread range, so that the encounter order stays the
+   * order of the listing.
+   */
+  private class OffsetRangeSpliterator<T> implements Spliterator<T> {
+    private final PageFetcher<T> fetcher;
+    private final Semaphore inFlight;
+    private final boolean ordered;
+    private final int fence;
+    private final boolean open;
+
+    private int offset;
+    private int pageSize = initialPageSize;
+    private Iterator<T> buffer = Collections.emptyIterator();
+    private boolean exhausted = false;
+
+    private OffsetRangeSpliterator(PageFetcher<T> fetcher, Semaphore inFlight, boolean ordered,
+                                   int offset, int fence, boolean open) {
+      this.fetcher = fetcher;
+      this.inFlight = inFlight;
+      this.ordered = ordered;
+      this.offset = offset;
+      this.fence = fence;
+      this.open = open;
+    }
+
+    private boolean fetchNextPage() {
+      if (exhausted || (!open && offset >= fence)) {
+        exhausted = true;
+        return false;
+      }
+      int limit = (offset < fence) ? Math.min(pageSize, fence - offset) : pageSize;
+      List<T> items;
+      long elapsed;
+      inFlight.acquireUninterruptibly();
+      try {
+        long start = ticker.read();
+        items = fetcher.fetch(offset, limit);
+        elapsed = ticker.read() - start;
+      } finally {
+        inFlight.release();
+      }
+      if (items.isEmpty()) {
+        exhausted = true;
+        return false;
+      }
+      offset += items.size();
+      pageSize = adaptPageSize(pageSize, elapsed);
+      buffer = items.iterator();
+      return true;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      Objects.requireNonNull(action);
+      if (!buffer.hasNext() && !fetchNextPage()) {
+        return false;
+      }
+      action.accept(buffer.next());
+      return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      if (exhausted || buffer.hasNext()) {
+        return null; // The buffered items precede any range that could be split off
+      }
+      int remaining = fence - offset;
+      if (remaining < 2 * pageSize) {
+        return null;
+      }
+      int mid = offset + remaining / 2;
+      OffsetRangeSpliterator<T> prefix = new OffsetRangeSpliterator<>(fetcher, inFlight, ordered, offset, mid, false);
+      prefix.pageSize = pageSize;
+      offset = mid;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return Math.max(fence - offset, 0);
+    }
+
+    @Override
+    public int characteristics() {
+      return ordered ? (Spliterator.ORDERED | Spliterator.NONNULL) : Spliterator.NONNULL;
+    }
+  }
+
+  /**
+   * Waits for a future, rethrowing the exception that failed it as it would have been thrown by a direct call. Also
+   * used by {@link CoalescingContentRepoService} to wait for an in-flight call.
+   */
+  static <T> T await(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+}
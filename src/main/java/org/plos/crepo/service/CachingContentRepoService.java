@@ -0,0 +1,319 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionNumber;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.input.RepoCollectionInput;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoMetadata;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+/**
+ * A service that caches metadata for UUID-addressed versions of objects and collections.
+ * <p>
+ * A version identified by a {@link RepoVersion} is immutable on the server, except for its status. This class holds
+ * the results of {@link #getRepoObjectMetadata(RepoVersion)} and {@link #getCollection(RepoVersion)} in bounded,
+ * approximately least-recently-used caches and serves repeated lookups locally. Entries are invalidated when a
+ * version is deleted <em>through this service</em>. A deletion made by another client will not be seen until the entry
+ * is evicted, so the {@link RepoMetadata#getStatus() status} of a cached entry may be stale.
+ * <p>
+ * Each cache is bounded by total weight rather than entry count. An object's metadata weighs one unit; a collection
+ * weighs one unit plus one for each member object, because its metadata embeds the metadata of every member.
+ * <p>
+ * Thread-safe if the delegate is.
+ */
+public class CachingContentRepoService extends ForwardingContentRepoService {
+
+  /**
+   * The default maximum weight for each of the object and collection caches.
+   */
+  public static final long DEFAULT_MAXIMUM_WEIGHT = 10000L;
+
+  private static final Weigher<RepoVersion, RepoObjectMetadata> OBJECT_WEIGHER =
+      (RepoVersion version, RepoObjectMetadata metadata) -> 1;
+  private static final Weigher<RepoVersion, RepoCollectionList> COLLECTION_WEIGHER =
+      (RepoVersion version, RepoCollectionList collection) -> 1 + collection.getObjects().size();
+
+  private final ContentRepoService delegate;
+  private final Cache<RepoVersion, RepoObjectMetadata> objectMetadataCache;
+  private final Cache<RepoVersion, RepoCollectionList> collectionCache;
+
+  public CachingContentRepoService(ContentRepoService delegate) {
+    this(delegate, DEFAULT_MAXIMUM_WEIGHT);
+  }
+
+  /**
+   * @param delegate      the service to decorate
+   * @param maximumWeight the maximum total weight of each of the object and collection caches
+   */
+  public CachingContentRepoService(ContentRepoService delegate, long maximumWeight) {
+    Preconditions.checkArgument(maximumWeight >= 0);
+    this.delegate = Objects.requireNonNull(delegate);
+    this.objectMetadataCache = CacheBuilder.newBuilder()
+        .maximumWeight(maximumWeight).weigher(OBJECT_WEIGHER)
+        .recordStats().build();
+    this.collectionCache = CacheBuilder.newBuilder()
+        .maximumWeight(maximumWeight).weigher(COLLECTION_WEIGHER)
+        .recordStats().build();
+  }
+
+  @Override
+  protected ContentRepoService delegate() {
+    return delegate;
+  }
+
+  /**
+   * @return hit, miss, and eviction counts for the object metadata cache
+   */
+  public CacheStats getObjectMetadataStats() {
+    return objectMetadataCache.stats();
+  }
+
+  /**
+   * @return hit, miss, and eviction counts for the collection cache
+   */
+  public CacheStats getCollectionStats() {
+    return collectionCache.stats();
+  }
+
+  /**
+   * Discard all cached metadata.
+   */
+  public void invalidateAll() {
+    objectMetadataCache.invalidateAll();
+    collectionCache.invalidateAll();
+  }
+
+  /**
+   * Look up a value in a cache, unwrapping any exception thrown by the loader so that callers see the same exceptions
+   * as from the delegate.
+   */
+  static <K, V> V getFromCache(Cache<K, V> cache, K key, Callable<? extends V> loader) {
+    try {
+      return cache.get(key, loader);
+    } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private static <M extends RepoMetadata> void invalidateIf(Cache<RepoVersion, M> cache, Predicate<? super M> predicate) {
+    cache.asMap().values().removeIf(predicate);
+  }
+
+  private static Predicate<RepoMetadata> hasVersionNumber(RepoVersionNumber number) {
+    return (RepoMetadata metadata) -> metadata.getVersionNumber().equals(number);
+  }
+
+  private static Predicate<RepoMetadata> hasId(RepoId id) {
+    return (RepoMetadata metadata) -> metadata.getVersion().getId().equals(id);
+  }
+
+  /**
+   * A collection's metadata embeds the metadata of its member objects, so deleting an object makes it stale.
+   */
+  private void invalidateCollectionsContaining(Predicate<RepoMetadata> objectPredicate) {
+    invalidateIf(collectionCache, (RepoCollectionList collection) -> collection.getObjects().stream().anyMatch(objectPredicate));
+  }
+
+  private RepoObjectMetadata cacheObject(RepoObjectMetadata metadata) {
+    objectMetadataCache.put(metadata.getVersion(), metadata);
+    return metadata;
+  }
+
+  private RepoCollectionList cacheCollection(RepoCollectionList collection) {
+    collectionCache.put(collection.getVersion(), collection);
+    return collection;
+  }
+
+
+  // ------------------------ Objects ------------------------
+
+  @Override
+  public RepoObjectMetadata getRepoObjectMetadata(RepoVersion version) {
+    return getFromCache(objectMetadataCache, version, () -> delegate.getRepoObjectMetadata(version));
+  }
+
+  /**
+   * Serves cached versions locally and passes only the remainder to the delegate as one batch.
+   */
+  @Override
+  public BatchResult<RepoVersion, RepoObjectMetadata> getRepoObjectMetadataForVersions(Collection<RepoVersion> versions) {
+    Map<RepoVersion, RepoObjectMetadata> cached = new LinkedHashMap<>();
+    Set<RepoVersion> misses = new LinkedHashSet<>();
+    for (RepoVersion version : versions) {
+      if (cached.containsKey(version) || misses.contains(version)) continue;
+      RepoObjectMetadata metadata = objectMetadataCache.getIfPresent(version);
+      if (metadata != null) {
+        cached.put(version, metadata);
+      } else {
+        misses.add(version);
+      }
+    }
+    if (misses.isEmpty()) {
+      return new BatchResult<>(cached, ImmutableMap.of());
+    }
+
+    BatchResult<RepoVersion, RepoObjectMetadata> fetched = delegate.getRepoObjectMetadataForVersions(misses);
+    objectMetadataCache.putAll(fetched);
+
+    Map<RepoVersion, RepoObjectMetadata> results = new LinkedHashMap<>();
+    for (RepoVersion version : versions) {
+      RepoObjectMetadata metadata = cached.containsKey(version) ? cached.get(version) : fetched.get(version);
+      if (metadata != null) {
+        results.put(version, metadata);
+      }
+    }
+    return new BatchResult<>(results, fetched.getFailures());
+  }
+
+  @Override
+  public RepoObjectMetadata getRepoObjectMetadata(RepoVersionNumber number) {
+    return cacheObject(delegate.getRepoObjectMetadata(number));
+  }
+
+  @Override
+  public RepoObjectMetadata getRepoObjectMetadata(RepoVersionTag tagObj) {
+    return cacheObject(delegate.getRepoObjectMetadata(tagObj));
+  }
+
+  @Override
+  public RepoObjectMetadata createRepoObject(RepoObjectInput repoObjectInput) {
+    return cacheObject(delegate.createRepoObject(repoObjectInput));
+  }
+
+  @Override
+  public RepoObjectMetadata versionRepoObject(RepoObjectInput repoObjectInput) {
+    return cacheObject(delegate.versionRepoObject(repoObjectInput));
+  }
+
+  @Override
+  public RepoObjectMetadata autoCreateRepoObject(RepoObjectInput repoObjectInput) {
+    return cacheObject(delegate.autoCreateRepoObject(repoObjectInput));
+  }
+
+  @Override
+  @Deprecated
+  public boolean deleteLatestRepoObject(RepoId id) {
+    try {
+      return delegate.deleteLatestRepoObject(id);
+    } finally {
+      invalidateIf(objectMetadataCache, hasId(id));
+      invalidateCollectionsContaining(hasId(id));
+    }
+  }
+
+  @Override
+  public boolean deleteRepoObject(RepoVersion version) {
+    try {
+      return delegate.deleteRepoObject(version);
+    } finally {
+      objectMetadataCache.invalidate(version);
+      invalidateCollectionsContaining((RepoMetadata object) -> object.getVersion().equals(version));
+    }
+  }
+
+  @Override
+  public boolean deleteRepoObject(RepoVersionNumber number) {
+    try {
+      return delegate.deleteRepoObject(number);
+    } finally {
+      invalidateIf(objectMetadataCache, hasVersionNumber(number));
+      invalidateCollectionsContaining(hasVersionNumber(number));
+    }
+  }
+
+
+  // ------------------------ Collections ------------------------
+
+  @Override
+  public RepoCollectionList getCollection(RepoVersion version) {
+    return getFromCache(collectionCache, version, () -> delegate.getCollection(version));
+  }
+
+  @Override
+  public RepoCollectionList getCollection(RepoVersionNumber number) {
+    return cacheCollection(delegate.getCollection(number));
+  }
+
+  @Override
+  public RepoCollectionList getCollection(RepoVersionTag tagObj) {
+    return cacheCollection(delegate.getCollection(tagObj));
+  }
+
+  @Override
+  public RepoCollectionList createCollection(RepoCollectionInput repoCollectionInput) {
+    return cacheCollection(delegate.createCollection(repoCollectionInput));
+  }
+
+  @Override
+  public RepoCollectionList versionCollection(RepoCollectionInput repoCollectionInput) {
+    return cacheCollection(delegate.versionCollection(repoCollectionInput));
+  }
+
+  @Override
+  public RepoCollectionList autoCreateCollection(RepoCollectionInput repoCollectionInput) {
+    return cacheCollection(delegate.autoCreateCollection(repoCollectionInput));
+  }
+
+  @Override
+  public boolean deleteCollection(RepoVersion version) {
+    try {
+      return delegate.deleteCollection(version);
+    } finally {
+      collectionCache.invalidate(version);
+    }
+  }
+
+  @Override
+  public boolean deleteCollection(RepoVersionNumber number) {
+    try {
+      return delegate.deleteCollection(number);
+    } finally {
+      invalidateIf(collectionCache, hasVersionNumber(number));
+    }
+  }
+
+}
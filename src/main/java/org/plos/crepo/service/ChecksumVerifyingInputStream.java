@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import com.google.common.io.BaseEncoding;
+import org.plos.crepo.exceptions.ContentRepoException;
+import org.plos.crepo.exceptions.ErrorType;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Passes through an object's content while hashing it, and checks the hash against the checksum in the object's
+ * metadata when the end of the stream is reached. The bytes are hashed from the caller's buffer as they are read, so
+ * there is no extra buffering or pass over the data.
+ * <p>
+ * A mismatch is reported by throwing a {@link ContentRepoException} with {@link ErrorType#ChecksumMismatch} from the
+ * read that hits the end of the stream, and again from every later read. A stream that is closed before the end is not checked.
+ */
+class ChecksumVerifyingInputStream extends FilterInputStream {
+
+  /**
+   * The algorithm of the checksums that the repo reports in object metadata. Every checksum and content hash in this
+   * package is computed with it.
+   */
+  static final String CHECKSUM_ALGORITHM = "SHA-1";
+
+  private final MessageDigest digest;
+  private final String expectedChecksum;
+  private final RepoObjectMetadata metadata;
+  private boolean verified = false;
+  private ContentRepoException mismatch; // thrown again by every later read
+
+  /**
+   * @param in       the object's content
+   * @param metadata the object's metadata, which must have a checksum
+   */
+  ChecksumVerifyingInputStream(InputStream in, RepoObjectMetadata metadata) {
+    super(Preconditions.checkNotNull(in));
+    this.metadata = metadata;
+    this.expectedChecksum = metadata.getChecksum().orElseThrow(() ->
+        new IllegalArgumentException("Metadata has no checksum: " + metadata.getVersion()));
+    this.digest = newDigest();
+  }
+
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e); // every Java platform is required to support SHA-1
+    }
+  }
+
+  /**
+   * @return a stream that hashes the content of {@code in} with the checksum algorithm as it is read
+   * @see #hash(DigestInputStream)
+   */
+  static DigestInputStream digesting(InputStream in) {
+    return new DigestInputStream(in, newDigest());
+  }
+
+  /**
+   * @return the hash of the content read so far from a stream returned by {@link #digesting(InputStream)}
+   */
+  static HashCode hash(DigestInputStream in) {
+    return HashCode.fromBytes(in.getMessageDigest().digest());
+  }
+
+  private void verify() {
+    if (mismatch != null) throw mismatch;
+    if (verified) return;
+    verified = true;
+    String actual = BaseEncoding.base16().lowerCase().encode(digest.digest());
+    if (!actual.equalsIgnoreCase(expectedChecksum)) {
+      mismatch = new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ChecksumMismatch)
+          .key(metadata.getVersion().getId().getKey())
+          .repoMessage("Downloaded content of " + metadata.getVersion() + " has checksum " + actual
+              + "; expected " + expectedChecksum)
+          .build();
+      throw mismatch;
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = in.read();
+    if (b < 0) {
+      verify();
+    } else {
+      digest.update((byte) b);
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int n = in.read(b, off, len);
+    if (n < 0) {
+      verify();
+    } else {
+      digest.update(b, off, n);
+    }
+    return n;
+  }
+
+  /**
+   * Skipped bytes still have to be hashed, so they are read through a small scratch buffer.
+   */
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0L) return 0L;
+    byte[] scratch = new byte[(int) Math.min(n, 4096L)];
+    long skipped = 0L;
+    while (skipped < n) {
+      int read = read(scratch, 0, (int) Math.min(scratch.length, n - skipped));
+      if (read < 0) break;
+      skipped += read;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {
+  }
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+
+}
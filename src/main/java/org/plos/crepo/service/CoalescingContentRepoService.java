@@ -0,0 +1,277 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.io.IOUtils;
+import org.plos.crepo.exceptions.ContentRepoException;
+import org.plos.crepo.exceptions.ErrorType;
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionNumber;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoCollectionMetadata;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A service that merges concurrent identical lookups into one call to the delegate.
+ * <p>
+ * When a lookup arrives while an identical one (same method and argument) is in flight, it waits for the in-flight
+ * call instead of making its own, and receives the same result or exception. Nothing is cached: a lookup that starts
+ * after the in-flight call has finished goes to the delegate again. This covers the metadata lookups by ID, version,
+ * version number and tag for objects and collections, and the content lookups.
+ * <p>
+ * Content is shared by reading it into memory, which is only done for small objects. The caller that makes the call
+ * reads up to {@code maxBufferedContentBytes} of the content; if the content ends within that limit, every waiting
+ * caller gets its own stream over the shared bytes. Otherwise the first caller streams the content as usual and each
+ * waiting caller makes its own call.
+ * <p>
+ * Thread-safe if the delegate is.
+ */
+public class CoalescingContentRepoService extends ForwardingContentRepoService {
+
+  /**
+   * The default size, in bytes, of the largest content that is shared between concurrent callers.
+   */
+  public static final int DEFAULT_MAX_BUFFERED_CONTENT_BYTES = 64 * 1024;
+
+  /**
+   * Stands in for content that was too large to share.
+   */
+  private static final Object UNSHARED_CONTENT = new Object();
+
+  private static enum Operation {
+    GET_LATEST_OBJECT, GET_OBJECT, GET_OBJECT_BY_NUMBER,
+    GET_LATEST_OBJECT_METADATA, GET_OBJECT_METADATA, GET_OBJECT_METADATA_BY_NUMBER, GET_OBJECT_METADATA_BY_TAG,
+    GET_LATEST_COLLECTION, GET_COLLECTION, GET_COLLECTION_BY_NUMBER, GET_COLLECTION_BY_TAG
+  }
+
+  private static final class Call {
+    private final Operation operation;
+    private final Object argument;
+
+    private Call(Operation operation, Object argument) {
+      this.operation = operation;
+      this.argument = Objects.requireNonNull(argument);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Call that = (Call) o;
+      return operation == that.operation && argument.equals(that.argument);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * operation.hashCode() + argument.hashCode();
+    }
+  }
+
+  private final ContentRepoService delegate;
+  private final int maxBufferedContentBytes;
+  private final ConcurrentMap<Call, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+  private final AtomicLong coalescedCount = new AtomicLong();
+
+  public CoalescingContentRepoService(ContentRepoService delegate) {
+    this(delegate, DEFAULT_MAX_BUFFERED_CONTENT_BYTES);
+  }
+
+  /**
+   * @param delegate                the service to decorate
+   * @param maxBufferedContentBytes the size of the largest content that is read into memory to share between callers;
+   *                                zero to never share content
+   */
+  public CoalescingContentRepoService(ContentRepoService delegate, int maxBufferedContentBytes) {
+    Preconditions.checkArgument(maxBufferedContentBytes >= 0);
+    this.delegate = Objects.requireNonNull(delegate);
+    this.maxBufferedContentBytes = maxBufferedContentBytes;
+  }
+
+  @Override
+  protected ContentRepoService delegate() {
+    return delegate;
+  }
+
+  /**
+   * @return the number of lookups that waited for an identical call instead of calling the delegate
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /**
+   * Make a call to the delegate, unless an identical call is in flight, in which case wait for its result.
+   *
+   * @param call   identifies the call
+   * @param leader makes the call and returns the result for the calling thread
+   * @param shared converts the calling thread's result to the result for waiting threads
+   * @param joined converts the shared result to the result for a waiting thread
+   */
+  private <T> T coalesce(Call call, Supplier<T> leader, Function<T, Object> shared,
+                         Function<Object, T> joined) {
+    CompletableFuture<Object> flight = new CompletableFuture<>();
+    CompletableFuture<Object> existing = inFlight.putIfAbsent(call, flight);
+    if (existing != null) {
+      coalescedCount.incrementAndGet();
+      return joined.apply(BucketScanner.await(existing)); // throws the call's exception as this caller's own
+    }
+
+    try {
+      T result = leader.get();
+      flight.complete(shared.apply(result));
+      return result;
+    } catch (RuntimeException | Error e) {
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(call, flight);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T coalesce(Operation operation, Object argument, Supplier<T> supplier) {
+    return coalesce(new Call(operation, argument), supplier, result -> result, result -> (T) result);
+  }
+
+  /**
+   * Coalesce a content lookup, sharing the content if it is small enough to buffer.
+   */
+  private InputStream coalesceContent(Operation operation, Object argument, Supplier<InputStream> supplier) {
+    Object result = coalesce(new Call(operation, argument),
+        () -> readContent(supplier.get(), argument),
+        (Object content) -> (content instanceof byte[]) ? content : UNSHARED_CONTENT,
+        Function.identity());
+    if (result instanceof byte[]) {
+      return new ByteArrayInputStream((byte[]) result);
+    }
+    return (result == UNSHARED_CONTENT) ? supplier.get() : (InputStream) result;
+  }
+
+  /**
+   * Buffer the content if it fits within the limit.
+   *
+   * @return the content as a {@code byte[]} if it fits; otherwise a stream of the full content
+   */
+  private Object readContent(InputStream content, Object argument) {
+    byte[] prefix = readPrefix(content, argument);
+    if (prefix.length <= maxBufferedContentBytes) {
+      IOUtils.closeQuietly(content);
+      return prefix;
+    }
+    return new SequenceInputStream(new ByteArrayInputStream(prefix), content);
+  }
+
+  /**
+   * Read the content up to one byte past the buffer limit, to find out whether it fits.
+   */
+  private byte[] readPrefix(InputStream content, Object argument) {
+    try {
+      return ByteStreams.toByteArray(ByteStreams.limit(content, maxBufferedContentBytes + 1L));
+    } catch (IOException e) {
+      IOUtils.closeQuietly(content);
+      throw new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ErrorFetchingObject)
+          .baseException(e)
+          .repoMessage("Error reading the content of " + argument)
+          .build();
+    }
+  }
+
+
+  // ------------------------ Objects ------------------------
+
+  @Override
+  @Deprecated
+  public InputStream getLatestRepoObject(RepoId id) {
+    return coalesceContent(Operation.GET_LATEST_OBJECT, id, () -> delegate.getLatestRepoObject(id));
+  }
+
+  @Override
+  public InputStream getRepoObject(RepoVersion version) {
+    return coalesceContent(Operation.GET_OBJECT, version, () -> delegate.getRepoObject(version));
+  }
+
+  @Override
+  public InputStream getRepoObject(RepoVersionNumber number) {
+    return coalesceContent(Operation.GET_OBJECT_BY_NUMBER, number, () -> delegate.getRepoObject(number));
+  }
+
+  @Override
+  @Deprecated
+  public RepoObjectMetadata getLatestRepoObjectMetadata(RepoId id) {
+    return coalesce(Operation.GET_LATEST_OBJECT_METADATA, id, () -> delegate.getLatestRepoObjectMetadata(id));
+  }
+
+  @Override
+  public RepoObjectMetadata getRepoObjectMetadata(RepoVersion version) {
+    return coalesce(Operation.GET_OBJECT_METADATA, version, () -> delegate.getRepoObjectMetadata(version));
+  }
+
+  @Override
+  public RepoObjectMetadata getRepoObjectMetadata(RepoVersionNumber number) {
+    return coalesce(Operation.GET_OBJECT_METADATA_BY_NUMBER, number, () -> delegate.getRepoObjectMetadata(number));
+  }
+
+  @Override
+  public RepoObjectMetadata getRepoObjectMetadata(RepoVersionTag tagObj) {
+    return coalesce(Operation.GET_OBJECT_METADATA_BY_TAG, tagObj, () -> delegate.getRepoObjectMetadata(tagObj));
+  }
+
+
+  // ------------------------ Collections ------------------------
+
+  @Override
+  public RepoCollectionMetadata getLatestCollection(RepoId id) {
+    return coalesce(Operation.GET_LATEST_COLLECTION, id, () -> delegate.getLatestCollection(id));
+  }
+
+  @Override
+  public RepoCollectionList getCollection(RepoVersion version) {
+    return coalesce(Operation.GET_COLLECTION, version, () -> delegate.getCollection(version));
+  }
+
+  @Override
+  public RepoCollectionList getCollection(RepoVersionNumber number) {
+    return coalesce(Operation.GET_COLLECTION_BY_NUMBER, number, () -> delegate.getCollection(number));
+  }
+
+  @Override
+  public RepoCollectionList getCollection(RepoVersionTag tagObj) {
+    return coalesce(Operation.GET_COLLECTION_BY_TAG, tagObj, () -> delegate.getCollection(tagObj));
+  }
+
+}
@@ -0,0 +1,737 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import org.plos.crepo.model.Status;
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionNumber;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.input.RepoCollectionInput;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoCollectionMetadata;
+import org.plos.crepo.model.metadata.RepoMetadata;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+import org.plos.crepo.service.InMemoryContentRepoService.InMemoryContentRepoServiceException;
+import org.plos.crepo.service.InMemoryContentRepoService.NullSafeMapBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * A thread-safe, indexed counterpart to {@link InMemoryContentRepoService}, for use as a stand-in backend in
+ * multi-threaded load tests. It behaves the same as {@link InMemoryContentRepoService}, including throwing {@link
+ * InMemoryContentRepoServiceException} where that class does, and likewise does not guarantee a perfect simulation of
+ * an actual Content Repo server.
+ * <p>
+ * Each bucket has its own read-write lock, so operations on different buckets never contain each other, and lookups in
+ * the same bucket run in parallel. Each key's versions are indexed by UUID, version number and tag, so lookups do not
+ * scan the key's history (except for the latest version, which is found by scanning back past deleted versions). The
+ * lists of a bucket's objects and collections are paged in O(limit log n) time with {@link PagedIndex}, with or without
+ * a tag filter and whether or not deleted entries are included. As in {@link InMemoryContentRepoService}, content is
+ * stored once per distinct hash.
+ * <p>
+ * Metadata is built outside of any lock from the entity's immutable fields and an atomically replaced status, so a
+ * result reflects a consistent state of each entity but not necessarily of the whole bucket.
+ * <p>
+ * Thread-safe.
+ */
+public class ConcurrentInMemoryContentRepoService implements ContentRepoService {
+
+  /**
+   * The part of an entity that changes when it is deleted. Replaced as a whole so that readers see both fields change
+   * together.
+   */
+  private static final class EntityState {
+    private final Status status;
+    private final Timestamp timestamp;
+
+    private EntityState(Status status, Timestamp timestamp) {
+      this.status = status;
+      this.timestamp = timestamp;
+    }
+  }
+
+  /**
+   * In-memory representation of a persisted object or collection.
+   *
+   * @param <M> the metadata type for output representing the entity
+   */
+  private abstract class StoredEntity<M extends RepoMetadata> {
+    protected final RepoVersion version;
+    protected final int number;
+    protected final String tag;
+    protected final String userMetadata;
+    protected final Timestamp creationDate;
+    protected volatile EntityState state;
+
+    // Positions in the bucket's paged indexes; written under the bucket's write lock before the entity is published
+    protected int bucketPosition;
+    protected int tagPosition;
+
+    private StoredEntity(String bucketName, String key, int number, String tag, String userMetadata) {
+      this.version = RepoVersion.create(bucketName, key, uuidGenerator.get());
+      this.number = number;
+      this.tag = tag;
+      this.userMetadata = userMetadata;
+      this.creationDate = clock.get();
+      this.state = new EntityState(Status.USED, creationDate);
+    }
+
+    protected NullSafeMapBuilder<String, Object> buildMetadata() {
+      EntityState state = this.state;
+      return new NullSafeMapBuilder<String, Object>()
+          .put("key", version.getId().getKey())
+          .put("uuid", version.getUuid().toString())
+          .put("versionNumber", number)
+          .put("tag", tag)
+          .put("userMetadata", userMetadata)
+          .put("status", state.status.toString())
+          .put("creationDate", creationDate == null ? null : creationDate.toString())
+          .put("timestamp", state.timestamp == null ? null : state.timestamp.toString());
+    }
+
+    protected boolean isUsed() {
+      return state.status == Status.USED;
+    }
+
+    public abstract M getMetadata();
+  }
+
+  private final class StoredObject extends StoredEntity<RepoObjectMetadata> {
+    private final ContentStore.StoredContent content;
+    private final HashCode contentHash;
+    private final String downloadName;
+    private final String contentType;
+
+    private StoredObject(RepoObjectInput input, int number, ContentStore.StoredContent content, HashCode contentHash) {
+      super(input.getBucketName(), input.getKey(), number, input.getTag(), input.getUserMetadata());
+      this.content = content;
+      this.contentHash = contentHash;
+      this.downloadName = input.getDownloadName();
+      this.contentType = input.getContentType();
+    }
+
+    private InputStream open() {
+      return content.open();
+    }
+
+    @Override
+    public RepoObjectMetadata getMetadata() {
+      return new RepoObjectMetadata(version.getId().getBucketName(), buildMetadata()
+          .put("checksum", contentHash.toString())
+          .put("size", content.size())
+          .put("downloadName", downloadName)
+          .put("contentType", contentType)
+          .build());
+    }
+  }
+
+  private final class StoredCollection extends StoredEntity<RepoCollectionList> {
+    private final List<RepoVersion> objectIds;
+
+    private StoredCollection(RepoCollectionInput input, int number, List<RepoVersion> objectIds) {
+      super(input.getBucketName(), input.getKey(), number, input.getTag(), input.getUserMetadata());
+      this.objectIds = objectIds;
+    }
+
+    @Override
+    public RepoCollectionList getMetadata() {
+      List<Map<String, Object>> rawObjectMetadata = new ArrayList<>(objectIds.size());
+      for (RepoVersion objectId : objectIds) {
+        StoredObject storedObject = find(objectId.getId(), OBJECTS, history -> history.byUuid.get(objectId.getUuid()));
+        rawObjectMetadata.add(storedObject.getMetadata().getMapView());
+      }
+      return new RepoCollectionList(version.getId().getBucketName(), buildMetadata()
+          .put("objects", rawObjectMetadata)
+          .build());
+    }
+  }
+
+  /**
+   * The versions of one key, indexed for lookup.
+   */
+  private static final class KeyHistory<E extends StoredEntity<?>> {
+    private final List<E> versions = new ArrayList<>(); // a version's number is its index
+    private final Map<UUID, E> byUuid = new HashMap<>();
+    private final Map<String, E> byTag = new HashMap<>(); // the earliest version with each tag
+
+    private int getNextVersionNumber() {
+      return versions.size();
+    }
+
+    private E getNumber(int number) {
+      return (number >= 0 && number < versions.size()) ? versions.get(number) : null;
+    }
+
+    private E getLatest() {
+      for (E entity : Lists.reverse(versions)) {
+        if (entity.isUsed()) {
+          return entity;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * The objects or the collections in a bucket.
+   */
+  private static final class EntityTable<E extends StoredEntity<?>> {
+    private final Map<String, KeyHistory<E>> byKey = new HashMap<>();
+    private final PagedIndex<E> all = new PagedIndex<>();
+    private final Map<String, PagedIndex<E>> byTag = new HashMap<>();
+
+    private void add(E entity) {
+      KeyHistory<E> history = byKey.computeIfAbsent(entity.version.getId().getKey(), key -> new KeyHistory<>());
+      history.versions.add(entity);
+      history.byUuid.put(entity.version.getUuid(), entity);
+      entity.bucketPosition = all.add(entity, true);
+      if (entity.tag != null) {
+        history.byTag.putIfAbsent(entity.tag, entity);
+        entity.tagPosition = byTag.computeIfAbsent(entity.tag, tag -> new PagedIndex<>()).add(entity, true);
+      }
+    }
+
+    private boolean delete(E entity, Timestamp timestamp) {
+      if (!entity.isUsed()) return false;
+      entity.state = new EntityState(Status.DELETED, timestamp);
+      all.hide(entity.bucketPosition);
+      if (entity.tag != null) {
+        byTag.get(entity.tag).hide(entity.tagPosition);
+      }
+      return true;
+    }
+
+    private List<E> slice(int offset, int limit, boolean includeDeleted, String tag) {
+      PagedIndex<E> index = (tag == null) ? all : byTag.get(tag);
+      return (index == null) ? new ArrayList<>(0) : index.slice(offset, limit, includeDeleted);
+    }
+  }
+
+  /**
+   * In-memory representation of a bucket. All of its fields are guarded by its lock.
+   */
+  private static final class Bucket {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final EntityTable<StoredObject> objects = new EntityTable<>();
+    private final EntityTable<StoredCollection> collections = new EntityTable<>();
+  }
+
+  private static final Function<Bucket, EntityTable<StoredObject>> OBJECTS = bucket -> bucket.objects;
+  private static final Function<Bucket, EntityTable<StoredCollection>> COLLECTIONS = bucket -> bucket.collections;
+
+
+  private final Supplier<UUID> uuidGenerator;
+  private final Supplier<Timestamp> clock;
+  private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+  private final ImmutableSet<String> initialBuckets;
+  private final ContentStore contentStore;
+  private final ContentIndex contentIndex = new ContentIndex();
+
+  public ConcurrentInMemoryContentRepoService() {
+    this(ImmutableSet.of());
+  }
+
+  public ConcurrentInMemoryContentRepoService(String... initialBuckets) {
+    this(ImmutableSet.copyOf(initialBuckets));
+  }
+
+  public ConcurrentInMemoryContentRepoService(Iterable<String> initialBuckets) {
+    this(new HeapContentStore(), initialBuckets);
+  }
+
+  /**
+   * @param contentStore   holds the content of objects; for example, a {@link MappedContentStore} keeps large amounts
+   *                       of content off the heap
+   * @param initialBuckets the buckets that exist when the service is created or cleared
+   */
+  public ConcurrentInMemoryContentRepoService(ContentStore contentStore, Iterable<String> initialBuckets) {
+    this(contentStore, initialBuckets, new FakeUuidGenerator(), () -> new Timestamp(new Date().getTime()));
+  }
+
+  /**
+   * @param uuidGenerator supplies the UUID of each new version
+   * @param clock         supplies the creation date of each new version and the timestamp of each deletion
+   */
+  ConcurrentInMemoryContentRepoService(ContentStore contentStore, Iterable<String> initialBuckets,
+                                       Supplier<UUID> uuidGenerator, Supplier<Timestamp> clock) {
+    this.uuidGenerator = Objects.requireNonNull(uuidGenerator);
+    this.clock = Objects.requireNonNull(clock);
+    this.contentStore = Objects.requireNonNull(contentStore);
+    this.initialBuckets = ImmutableSet.copyOf(initialBuckets);
+    clear();
+  }
+
+  /**
+   * Discard all buckets except the initial ones, which are emptied, and release their content. Operations that run
+   * concurrently with this may see the service partly cleared.
+   */
+  public void clear() {
+    for (Iterator<Bucket> iterator = buckets.values().iterator(); iterator.hasNext(); ) {
+      Bucket bucket = iterator.next();
+      iterator.remove();
+      Lock lock = bucket.lock.writeLock();
+      lock.lock();
+      try {
+        for (KeyHistory<StoredObject> history : bucket.objects.byKey.values()) {
+          for (StoredObject object : history.versions) {
+            contentIndex.release(object.contentHash);
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    for (String bucketName : initialBuckets) {
+      createBucket(bucketName);
+    }
+  }
+
+  private Bucket get(String key) {
+    Bucket bucket = buckets.get(key);
+    if (bucket == null) {
+      throw new InMemoryContentRepoServiceException();
+    }
+    return bucket;
+  }
+
+  /**
+   * Run an action on a bucket while holding one of its locks.
+   */
+  private static <T> T withLock(Lock lock, Supplier<T> action) {
+    lock.lock();
+    try {
+      return action.get();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static <T> T read(Bucket bucket, Supplier<T> action) {
+    return withLock(bucket.lock.readLock(), action);
+  }
+
+  private static <T> T write(Bucket bucket, Supplier<T> action) {
+    return withLock(bucket.lock.writeLock(), action);
+  }
+
+  /**
+   * Find an entity by its key's history.
+   *
+   * @throws InMemoryContentRepoServiceException if the bucket or entity does not exist
+   */
+  private <E extends StoredEntity<?>> E find(RepoId id, Function<Bucket, EntityTable<E>> table,
+                                             Function<KeyHistory<E>, E> finder) {
+    Bucket bucket = get(id.getBucketName());
+    E entity = read(bucket, () -> {
+      KeyHistory<E> history = table.apply(bucket).byKey.get(id.getKey());
+      return (history == null) ? null : finder.apply(history);
+    });
+    if (entity == null) {
+      throw new InMemoryContentRepoServiceException();
+    }
+    return entity;
+  }
+
+  private <E extends StoredEntity<?>> E find(Function<Bucket, EntityTable<E>> table, RepoVersion version) {
+    return find(version.getId(), table, history -> history.byUuid.get(version.getUuid()));
+  }
+
+  private <E extends StoredEntity<?>> E find(Function<Bucket, EntityTable<E>> table, RepoVersionNumber number) {
+    return find(number.getId(), table, history -> history.getNumber(number.getNumber()));
+  }
+
+  private <E extends StoredEntity<?>> E find(Function<Bucket, EntityTable<E>> table, RepoVersionTag tagObj) {
+    return find(tagObj.getId(), table, history -> history.byTag.get(tagObj.getTag()));
+  }
+
+  private <E extends StoredEntity<?>> E findLatest(Function<Bucket, EntityTable<E>> table, RepoId id) {
+    return find(id, table, KeyHistory::getLatest);
+  }
+
+  private <E extends StoredEntity<?>> List<E> getVersions(Function<Bucket, EntityTable<E>> table, RepoId id) {
+    Bucket bucket = get(id.getBucketName());
+    return read(bucket, () -> {
+      KeyHistory<E> history = table.apply(bucket).byKey.get(id.getKey());
+      return (history == null) ? new ArrayList<E>(0) : new ArrayList<>(history.versions);
+    });
+  }
+
+  private static <M extends RepoMetadata, E extends StoredEntity<? extends M>> List<M> toMetadata(List<E> entities) {
+    List<M> metadata = new ArrayList<>(entities.size());
+    for (E entity : entities) {
+      metadata.add(entity.getMetadata());
+    }
+    return metadata;
+  }
+
+  private <E extends StoredEntity<?>> boolean delete(Function<Bucket, EntityTable<E>> table, E entity) {
+    Bucket bucket = get(entity.version.getId().getBucketName());
+    return write(bucket, () -> table.apply(bucket).delete(entity, clock.get()));
+  }
+
+  /**
+   * Add a new version under a bucket's write lock.
+   *
+   * @param mustExist {@code true} if the key must already have a version, {@code false} if it must not, or {@code
+   *                  null} for either
+   * @param factory   creates the entity, given its version number
+   */
+  private <E extends StoredEntity<?>> E add(String bucketName, String key, Function<Bucket, EntityTable<E>> table,
+                                            Boolean mustExist, Function<Integer, E> factory) {
+    Bucket bucket = get(bucketName);
+    return write(bucket, () -> {
+      EntityTable<E> entities = table.apply(bucket);
+      KeyHistory<E> history = entities.byKey.get(key);
+      boolean exists = (history != null) && !history.versions.isEmpty();
+      if (mustExist != null && mustExist != exists) {
+        throw new InMemoryContentRepoServiceException();
+      }
+      E created = factory.apply(exists ? history.getNextVersionNumber() : 0);
+      entities.add(created);
+      return created;
+    });
+  }
+
+  private <M extends RepoMetadata, E extends StoredEntity<? extends M>>
+  List<M> getEntitySlice(String bucketName, Function<Bucket, EntityTable<E>> table,
+                         int offset, int limit, boolean includeDeleted, String tag) {
+    Preconditions.checkArgument(offset >= 0);
+    Preconditions.checkArgument(limit >= 0);
+    Bucket bucket = get(bucketName);
+    return toMetadata(read(bucket, () -> table.apply(bucket).slice(offset, limit, includeDeleted, tag)));
+  }
+
+
+  // ------------------------ Config ------------------------
+
+  @Override
+  public boolean hasXReproxy() {
+    return false;
+  }
+
+  @Override
+  public Map<String, Object> getRepoConfig() {
+    return ImmutableMap.<String, Object>builder()
+        .put("version", getClass().toString())
+        .put("hasXReproxy", hasXReproxy())
+        .build();
+  }
+
+  @Override
+  public Map<String, Object> getRepoStatus() {
+    return ImmutableMap.<String, Object>builder()
+        .put("bucketCount", buckets.size())
+        .build();
+  }
+
+
+  // ------------------------ Buckets ------------------------
+
+  @Override
+  public List<Map<String, Object>> getBuckets() {
+    List<Map<String, Object>> result = new ArrayList<>(buckets.size());
+    for (String bucketKey : buckets.keySet()) {
+      try {
+        result.add(getBucket(bucketKey));
+      } catch (InMemoryContentRepoServiceException e) {
+        // removed by a concurrent clear
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Object> getBucket(String key) {
+    Bucket bucket = get(key);
+    int totalObjects = read(bucket, bucket.objects.all::size);
+    return ImmutableMap.<String, Object>builder()
+        .put("bucketName", key)
+        .put("totalObjects", totalObjects)
+        .build();
+  }
+
+  @Override
+  public Map<String, Object> createBucket(String key) {
+    buckets.put(key, new Bucket());
+    return getBucket(key);
+  }
+
+
+  // ------------------------ Objects ------------------------
+
+  @Override
+  @Deprecated
+  public InputStream getLatestRepoObject(RepoId id) {
+    return findLatest(OBJECTS, id).open();
+  }
+
+  @Override
+  public InputStream getRepoObject(RepoVersion version) {
+    return find(OBJECTS, version).open();
+  }
+
+  @Override
+  public InputStream getRepoObject(RepoVersionNumber number) {
+    return find(OBJECTS, number).open();
+  }
+
+  @Override
+  public InputStream getRepoObjectRange(RepoVersion version, long offset, long length) {
+    Preconditions.checkArgument(offset >= 0L);
+    Preconditions.checkArgument(length >= 0L);
+    if (length == 0L) return new ByteArrayInputStream(new byte[0]); // as ContentRepoServiceImpl sends no request
+    ContentStore.StoredContent content = find(OBJECTS, version).content;
+    if (offset >= content.size()) {
+      throw new InMemoryContentRepoServiceException(); // as the server responds 416 Range Not Satisfiable
+    }
+    return content.open(offset, length);
+  }
+
+  @Override
+  @Deprecated
+  public RepoObjectMetadata getLatestRepoObjectMetadata(RepoId id) {
+    return findLatest(OBJECTS, id).getMetadata();
+  }
+
+  @Override
+  public RepoObjectMetadata getRepoObjectMetadata(RepoVersion version) {
+    return find(OBJECTS, version).getMetadata();
+  }
+
+  @Override
+  public RepoObjectMetadata getRepoObjectMetadata(RepoVersionNumber number) {
+    return find(OBJECTS, number).getMetadata();
+  }
+
+  @Override
+  public RepoObjectMetadata getRepoObjectMetadata(RepoVersionTag tagObj) {
+    return find(OBJECTS, tagObj).getMetadata();
+  }
+
+  @Override
+  public List<RepoObjectMetadata> getRepoObjectVersions(RepoId id) {
+    return toMetadata(getVersions(OBJECTS, id));
+  }
+
+  @Override
+  public BatchResult<RepoVersion, RepoObjectMetadata> getRepoObjectMetadataForVersions(Collection<RepoVersion> versions) {
+    return BatchLookup.lookUp(versions, this::getRepoObjectMetadata);
+  }
+
+  @Override
+  public BatchResult<RepoVersionNumber, RepoObjectMetadata> getRepoObjectMetadataForVersionNumbers(Collection<RepoVersionNumber> numbers) {
+    return BatchLookup.lookUp(numbers, this::getRepoObjectMetadata);
+  }
+
+  @Override
+  public BatchResult<RepoVersionTag, RepoObjectMetadata> getRepoObjectMetadataForVersionTags(Collection<RepoVersionTag> tags) {
+    return BatchLookup.lookUp(tags, this::getRepoObjectMetadata);
+  }
+
+  @Override
+  @Deprecated
+  public boolean deleteLatestRepoObject(RepoId id) {
+    Bucket bucket = get(id.getBucketName());
+    return write(bucket, () -> {
+      KeyHistory<StoredObject> history = bucket.objects.byKey.get(id.getKey());
+      if (history == null) return false;
+      Timestamp timestamp = clock.get();
+      for (StoredObject object : Lists.reverse(history.versions)) {
+        if (bucket.objects.delete(object, timestamp)) return true;
+      }
+      return false;
+    });
+  }
+
+  @Override
+  public boolean deleteRepoObject(RepoVersion version) {
+    return delete(OBJECTS, find(OBJECTS, version));
+  }
+
+  @Override
+  public boolean deleteRepoObject(RepoVersionNumber number) {
+    return delete(OBJECTS, find(OBJECTS, number));
+  }
+
+  private RepoObjectMetadata addObject(RepoObjectInput repoObjectInput, Boolean mustExist) {
+    ContentStore.StoredContent stored;
+    HashCode contentHash;
+    try (InputStream stream = repoObjectInput.getContentAccessor().open()) {
+      DigestInputStream hashingStream = ChecksumVerifyingInputStream.digesting(stream);
+      stored = contentStore.store(hashingStream);
+      contentHash = ChecksumVerifyingInputStream.hash(hashingStream);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return addObject(repoObjectInput, mustExist, stored, contentHash);
+  }
+
+  /**
+   * Add an object version whose content has already been stored. The input's content accessor is not used.
+   *
+   * @param stored      the newly stored content, which is released if the same content is already stored
+   * @param contentHash the hash of the content
+   */
+  RepoObjectMetadata addObject(RepoObjectInput repoObjectInput, Boolean mustExist,
+                               ContentStore.StoredContent stored, HashCode contentHash) {
+    ContentStore.StoredContent content = contentIndex.retain(contentHash, stored);
+    StoredObject created;
+    try {
+      created = add(repoObjectInput.getBucketName(), repoObjectInput.getKey(), OBJECTS, mustExist,
+          number -> new StoredObject(repoObjectInput, number, content, contentHash));
+    } catch (RuntimeException e) {
+      contentIndex.release(contentHash);
+      throw e;
+    }
+    return created.getMetadata();
+  }
+
+  @Override
+  public RepoObjectMetadata createRepoObject(RepoObjectInput repoObjectInput) {
+    return addObject(repoObjectInput, false);
+  }
+
+  @Override
+  public RepoObjectMetadata versionRepoObject(RepoObjectInput repoObjectInput) {
+    return addObject(repoObjectInput, true);
+  }
+
+  @Override
+  public RepoObjectMetadata autoCreateRepoObject(RepoObjectInput repoObjectInput) {
+    return addObject(repoObjectInput, null);
+  }
+
+  @Override
+  public List<RepoObjectMetadata> getRepoObjects(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    return getEntitySlice(bucketName, OBJECTS, offset, limit, includeDeleted, tag);
+  }
+
+  @Override
+  public Stream<RepoObjectMetadata> streamRepoObjects(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    return getRepoObjects(bucketName, offset, limit, includeDeleted, tag).stream();
+  }
+
+
+  // ------------------------ Collections ------------------------
+
+  private RepoCollectionList addCollection(RepoCollectionInput repoCollectionInput, Boolean mustExist) {
+    for (RepoVersion objectVersion : repoCollectionInput.getObjects()) {
+      find(OBJECTS, objectVersion); // throws if the object does not exist
+    }
+    List<RepoVersion> objectIds = ImmutableList.copyOf(new LinkedHashSet<>(repoCollectionInput.getObjects()));
+    return add(repoCollectionInput.getBucketName(), repoCollectionInput.getKey(), COLLECTIONS, mustExist,
+        number -> new StoredCollection(repoCollectionInput, number, objectIds))
+        .getMetadata();
+  }
+
+  @Override
+  public RepoCollectionList createCollection(RepoCollectionInput repoCollectionInput) {
+    return addCollection(repoCollectionInput, false);
+  }
+
+  @Override
+  public RepoCollectionList versionCollection(RepoCollectionInput repoCollectionInput) {
+    return addCollection(repoCollectionInput, true);
+  }
+
+  @Override
+  public RepoCollectionList autoCreateCollection(RepoCollectionInput repoCollectionInput) {
+    return addCollection(repoCollectionInput, null);
+  }
+
+  @Override
+  public boolean deleteCollection(RepoVersion version) {
+    return delete(COLLECTIONS, find(COLLECTIONS, version));
+  }
+
+  @Override
+  public boolean deleteCollection(RepoVersionNumber number) {
+    return delete(COLLECTIONS, find(COLLECTIONS, number));
+  }
+
+  @Override
+  public RepoCollectionList getCollection(RepoVersion version) {
+    return find(COLLECTIONS, version).getMetadata();
+  }
+
+  @Override
+  public RepoCollectionList getCollection(RepoVersionNumber number) {
+    return find(COLLECTIONS, number).getMetadata();
+  }
+
+  @Override
+  public RepoCollectionList getCollection(RepoVersionTag tagObj) {
+    return find(COLLECTIONS, tagObj).getMetadata();
+  }
+
+  @Override
+  public RepoCollectionMetadata getLatestCollection(RepoId id) {
+    return findLatest(COLLECTIONS, id).getMetadata();
+  }
+
+  @Override
+  public List<RepoCollectionList> getCollectionVersions(RepoId id) {
+    return toMetadata(getVersions(COLLECTIONS, id));
+  }
+
+  @Override
+  public List<RepoCollectionMetadata> getCollections(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    return this.<RepoCollectionMetadata, StoredCollection>getEntitySlice(
+        bucketName, COLLECTIONS, offset, limit, includeDeleted, tag);
+  }
+
+  @Override
+  public Stream<RepoCollectionMetadata> streamCollections(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    return getCollections(bucketName, offset, limit, includeDeleted, tag).stream();
+  }
+
+}
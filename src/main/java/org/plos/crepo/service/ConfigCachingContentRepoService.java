@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A service that caches the repo's configuration, status and bucket list, which change rarely but may be read on
+ * every request.
+ * <p>
+ * The results of {@link #hasXReproxy()}, {@link #getRepoConfig()}, {@link #getRepoStatus()} and {@link #getBuckets()}
+ * are loaded from the delegate on first use. Once an entry is older than the refresh interval, the next read starts a
+ * reload on the refresh executor and returns the old value without waiting for it. Only the first read of each value
+ * blocks. If a reload fails, the old value is kept and the reload is tried again on a later read. {@link #refresh()}
+ * reloads every value immediately, and creating a bucket through this service discards the cached bucket list.
+ * <p>
+ * The maps and lists returned, and those nested in them, are shared between callers and cannot be modified.
+ * <p>
+ * Thread-safe if the delegate is.
+ */
+public class ConfigCachingContentRepoService extends ForwardingContentRepoService {
+
+  /**
+   * The default age, in seconds, after which a cached value is reloaded in the background.
+   */
+  public static final long DEFAULT_REFRESH_INTERVAL_SECONDS = 60L;
+
+  /**
+   * Runs background reloads if no executor is provided. Threads are created on demand and are not kept alive.
+   */
+  private static class DefaultRefreshExecutor {
+    private static final Executor INSTANCE = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setNameFormat("content-repo-config-refresh-%d").setDaemon(true).build());
+  }
+
+  private static enum ConfigKey {
+    HAS_X_REPROXY(ContentRepoService::hasXReproxy),
+    REPO_CONFIG(service -> deepCopy(service.getRepoConfig())),
+    REPO_STATUS(service -> deepCopy(service.getRepoStatus())),
+    BUCKETS(service -> deepCopy(service.getBuckets()));
+
+    private final Function<ContentRepoService, Object> loader;
+
+    private ConfigKey(Function<ContentRepoService, Object> loader) {
+      this.loader = loader;
+    }
+  }
+
+  /**
+   * Copy the maps and lists in a parsed JSON value, at every level, into ones that cannot be modified. Unlike Guava's
+   * immutable collections, these allow the null values that Gson reads.
+   */
+  private static Object deepCopy(Object value) {
+    if (value instanceof Map) {
+      Map<Object, Object> copy = new LinkedHashMap<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        copy.put(entry.getKey(), deepCopy(entry.getValue()));
+      }
+      return Collections.unmodifiableMap(copy);
+    }
+    if (value instanceof Collection) {
+      List<Object> copy = new ArrayList<>(((Collection<?>) value).size());
+      for (Object element : (Collection<?>) value) {
+        copy.add(deepCopy(element));
+      }
+      return Collections.unmodifiableList(copy);
+    }
+    return value;
+  }
+
+  private final ContentRepoService delegate;
+  private final LoadingCache<ConfigKey, Object> cache;
+
+  public ConfigCachingContentRepoService(ContentRepoService delegate) {
+    this(delegate, DEFAULT_REFRESH_INTERVAL_SECONDS, TimeUnit.SECONDS, DefaultRefreshExecutor.INSTANCE);
+  }
+
+  /**
+   * @param delegate        the service to decorate
+   * @param refreshInterval the age after which a cached value is reloaded in the background
+   * @param unit            the unit of {@code refreshInterval}
+   * @param refreshExecutor the executor that runs background reloads
+   */
+  public ConfigCachingContentRepoService(ContentRepoService delegate, long refreshInterval, TimeUnit unit,
+                                         Executor refreshExecutor) {
+    this(delegate, refreshInterval, unit, refreshExecutor, Ticker.systemTicker());
+  }
+
+  ConfigCachingContentRepoService(ContentRepoService delegate, long refreshInterval, TimeUnit unit,
+                                  Executor refreshExecutor, Ticker ticker) {
+    Preconditions.checkArgument(refreshInterval > 0);
+    this.delegate = Objects.requireNonNull(delegate);
+    CacheLoader<ConfigKey, Object> loader = CacheLoader.asyncReloading(new CacheLoader<ConfigKey, Object>() {
+      @Override
+      public Object load(ConfigKey key) {
+        return key.loader.apply(delegate);
+      }
+    }, refreshExecutor);
+    this.cache = CacheBuilder.newBuilder()
+        .refreshAfterWrite(refreshInterval, unit)
+        .ticker(ticker)
+        .recordStats()
+        .build(loader);
+  }
+
+  @Override
+  protected ContentRepoService delegate() {
+    return delegate;
+  }
+
+  /**
+   * @return hit, miss, and load counts for the configuration cache
+   */
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  /**
+   * Reload every cached value from the delegate now, blocking until the reloads are done. Values that have never been
+   * read are not loaded.
+   */
+  public void refresh() {
+    for (ConfigKey key : cache.asMap().keySet()) {
+      cache.put(key, key.loader.apply(delegate));
+    }
+  }
+
+  /**
+   * Discard all cached values, so that the next read of each one blocks on the delegate.
+   */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  private Object get(ConfigKey key) {
+    try {
+      return cache.get(key);
+    } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+
+  // ------------------------ Config ------------------------
+
+  @Override
+  public boolean hasXReproxy() {
+    return (Boolean) get(ConfigKey.HAS_X_REPROXY);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public Map<String, Object> getRepoConfig() {
+    return (Map<String, Object>) get(ConfigKey.REPO_CONFIG);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public Map<String, Object> getRepoStatus() {
+    return (Map<String, Object>) get(ConfigKey.REPO_STATUS);
+  }
+
+
+  // ------------------------ Buckets ------------------------
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public List<Map<String, Object>> getBuckets() {
+    return (List<Map<String, Object>>) get(ConfigKey.BUCKETS);
+  }
+
+  @Override
+  public Map<String, Object> createBucket(String key) {
+    try {
+      return delegate.createBucket(key);
+    } finally {
+      cache.invalidate(ConfigKey.BUCKETS);
+    }
+  }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Content-addressed, reference-counted index of the content held by an in-memory content repo service, so that every
+ * version, in any bucket, whose content has the same hash shares one copy in the {@link ContentStore}.
+ * <p>
+ * Thread-safe.
+ */
+class ContentIndex {
+
+  private static class Entry {
+    private final ContentStore.StoredContent content;
+    private int references = 1;
+
+    private Entry(ContentStore.StoredContent content) {
+      this.content = content;
+    }
+  }
+
+  private final Map<HashCode, Entry> entries = new HashMap<>();
+
+  /**
+   * Add a reference to content. If content with the same hash is already indexed, the new copy is discarded and the
+   * existing one is returned instead.
+   *
+   * @param hash    the hash of the content
+   * @param content a newly stored copy of the content
+   * @return the copy to keep a reference to
+   */
+  public synchronized ContentStore.StoredContent retain(HashCode hash, ContentStore.StoredContent content) {
+    Entry entry = entries.get(hash);
+    if (entry == null) {
+      entries.put(hash, new Entry(content));
+      return content;
+    }
+    Preconditions.checkState(entry.content.size() == content.size(), "Hash collision on %s", hash);
+    entry.references++;
+    content.discard();
+    return entry.content;
+  }
+
+  /**
+   * Remove a reference to content, releasing it from the store when no references remain.
+   *
+   * @param hash the hash of the content
+   */
+  public synchronized void release(HashCode hash) {
+    Entry entry = entries.get(hash);
+    Preconditions.checkState(entry != null, "Content is not indexed: %s", hash);
+    if (--entry.references == 0) {
+      entries.remove(hash);
+      entry.content.release();
+    }
+  }
+
+  /**
+   * @return the number of distinct pieces of content
+   */
+  public synchronized int getContentCount() {
+    return entries.size();
+  }
+
+  /**
+   * @param hash the hash of the content
+   * @return the number of references to the content, or 0 if it is not indexed
+   */
+  public synchronized int getReferenceCount(HashCode hash) {
+    Entry entry = entries.get(hash);
+    return (entry == null) ? 0 : entry.references;
+  }
+
+}
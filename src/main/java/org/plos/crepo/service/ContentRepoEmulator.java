@@ -0,0 +1,642 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+import com.google.common.net.HttpHeaders;
+import com.google.common.primitives.Bytes;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.plos.crepo.exceptions.ContentRepoException;
+import org.plos.crepo.exceptions.NotFoundException;
+import org.plos.crepo.model.CreationMethod;
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionNumber;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.input.RepoCollectionInput;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoMetadata;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+import org.plos.crepo.service.InMemoryContentRepoService.InMemoryContentRepoServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An HTTP server on a local socket that serves the content repo's REST endpoints, as addressed by {@link
+ * org.plos.crepo.util.ObjectUrlGenerator}, {@link org.plos.crepo.util.CollectionUrlGenerator}, {@link
+ * org.plos.crepo.util.BucketUrlGenerator} and {@link org.plos.crepo.util.ConfigUrlGenerator}, from a backend service.
+ * Pointing a {@link ContentRepoServiceImpl} at {@link #getRepoServer()} exercises the client and its DAOs end-to-end
+ * over real sockets, for integration tests and benchmarks, without a live content repo.
+ * <p>
+ * The backend is typically a {@link ConcurrentInMemoryContentRepoService}; it must be thread-safe, because requests are
+ * handled concurrently. Its {@link InMemoryContentRepoServiceException}s are sent as 404 Not Found in response to
+ * {@code GET} and {@code DELETE} requests and as 400 Bad Request in response to {@code POST} requests. Error responses
+ * have a JSON body with a {@code message} field, as the content repo's do. Object content supports single byte ranges.
+ * <p>
+ * Like the in-memory services, this does not guarantee a perfect simulation of the content repo in edge cases or error
+ * conditions.
+ * <p>
+ * For benchmarks, call {@link #enableNoDelay()} before the first server in the JVM starts.
+ */
+public class ContentRepoEmulator implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(ContentRepoEmulator.class);
+
+  private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+  private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+
+  /**
+   * Thrown to send a response with an error status.
+   */
+  private static class ErrorResponse extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    private ErrorResponse(int status, String message) {
+      super(message);
+      this.status = status;
+    }
+  }
+
+  private final ContentRepoService backend;
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Gson gson = new Gson();
+
+  /**
+   * Turn on {@code TCP_NODELAY} for every {@link HttpServer} in the JVM, by setting the system property {@code
+   * sun.net.httpserver.nodelay} unless it is already set. Without it, the JDK's server leaves Nagle's algorithm on,
+   * which stalls small responses on delayed ACKs and would dominate any benchmark.
+   * <p>
+   * The property is read once, when the JDK's server is first used, so this has no effect after any server has
+   * started.
+   */
+  public static void enableNoDelay() {
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+  }
+
+  /**
+   * Start a server on an ephemeral port of the loopback address.
+   *
+   * @param backend the service that handles requests
+   * @throws IOException if the server cannot be started
+   */
+  public ContentRepoEmulator(ContentRepoService backend) throws IOException {
+    this(backend, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+  }
+
+  /**
+   * Start a server.
+   *
+   * @param backend the service that handles requests
+   * @param address the address to listen on
+   * @throws IOException if the server cannot be started
+   */
+  public ContentRepoEmulator(ContentRepoService backend, InetSocketAddress address) throws IOException {
+    this.backend = Objects.requireNonNull(backend);
+    this.server = HttpServer.create(address, 0);
+    this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setNameFormat("content-repo-emulator-%d").setDaemon(true).build());
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  /**
+   * @return the root URL of the server, for a {@link ContentRepoServiceImpl}
+   */
+  public String getRepoServer() {
+    InetSocketAddress address = server.getAddress();
+    return "http://" + address.getHostString() + ":" + address.getPort();
+  }
+
+  /**
+   * Stop the server, without waiting for requests in progress.
+   */
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+
+  // ------------------------ Requests ------------------------
+
+  /**
+   * A request's path segments and query parameters, decoded.
+   */
+  private static class Request {
+    private final HttpExchange exchange;
+    private final String method;
+    private final List<String> path = new ArrayList<>();
+    private final Map<String, String> parameters = new HashMap<>();
+
+    private Request(HttpExchange exchange) {
+      this.exchange = exchange;
+      this.method = exchange.getRequestMethod();
+      for (String segment : Splitter.on('/').omitEmptyStrings().split(exchange.getRequestURI().getRawPath())) {
+        path.add(decode(segment));
+      }
+      String query = exchange.getRequestURI().getRawQuery();
+      if (query != null) {
+        parameters.putAll(parseForm(query));
+      }
+    }
+
+    private boolean matches(String method, String... path) {
+      return this.method.equals(method) && this.path.equals(Arrays.asList(path));
+    }
+
+    private String require(String parameter) {
+      String value = parameters.get(parameter);
+      if (value == null) {
+        throw new ErrorResponse(400, "Missing parameter: " + parameter);
+      }
+      return value;
+    }
+
+    private int requireInt(String parameter) {
+      try {
+        return Integer.parseInt(require(parameter));
+      } catch (NumberFormatException e) {
+        throw new ErrorResponse(400, "Invalid parameter: " + parameter);
+      }
+    }
+
+    private RepoId getId() {
+      return RepoId.create(path.get(path.size() - 1), require("key"));
+    }
+  }
+
+  private static String decode(String value) {
+    try {
+      return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static Map<String, String> parseForm(String form) {
+    Map<String, String> parameters = new HashMap<>();
+    for (String parameter : Splitter.on('&').omitEmptyStrings().split(form)) {
+      int equals = parameter.indexOf('=');
+      if (equals < 0) {
+        parameters.put(decode(parameter), "");
+      } else {
+        parameters.put(decode(parameter.substring(0, equals)), decode(parameter.substring(equals + 1)));
+      }
+    }
+    return parameters;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      Request request = new Request(exchange);
+      try {
+        route(request);
+      } catch (InMemoryContentRepoServiceException | NotFoundException e) {
+        sendError(exchange, request.method.equals("POST") ? 400 : 404, "Not found or not allowed: " + request.path);
+      } catch (IllegalArgumentException | ContentRepoException e) {
+        sendError(exchange, 400, e.getMessage());
+      }
+    } catch (ErrorResponse e) {
+      sendError(exchange, e.status, e.getMessage());
+    } catch (RuntimeException e) {
+      log.error("Error handling " + exchange.getRequestMethod() + " " + exchange.getRequestURI(), e);
+      sendError(exchange, 500, String.valueOf(e));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void route(Request request) throws IOException {
+    List<String> path = request.path;
+    String resource = path.isEmpty() ? "" : path.get(0);
+    switch (resource) {
+      case "hasXReproxy":
+        if (request.matches("GET", "hasXReproxy")) {
+          sendText(request.exchange, 200, Boolean.toString(backend.hasXReproxy()));
+          return;
+        }
+        break;
+      case "config":
+        if (request.matches("GET", "config")) {
+          sendJson(request.exchange, 200, backend.getRepoConfig());
+          return;
+        }
+        break;
+      case "status":
+        if (request.matches("GET", "status")) {
+          sendJson(request.exchange, 200, backend.getRepoStatus());
+          return;
+        }
+        break;
+      case "buckets":
+        if (routeBuckets(request)) return;
+        break;
+      case "objects":
+        if (routeObjects(request)) return;
+        break;
+      case "collections":
+        if (routeCollections(request)) return;
+        break;
+      default:
+        break;
+    }
+    throw new ErrorResponse(404, "No such resource: " + request.method + " " + request.exchange.getRequestURI());
+  }
+
+
+  // ------------------------ Buckets ------------------------
+
+  private boolean routeBuckets(Request request) throws IOException {
+    if (request.matches("GET", "buckets")) {
+      sendJson(request.exchange, 200, backend.getBuckets());
+    } else if (request.matches("POST", "buckets")) {
+      String form = new String(readBody(request.exchange), StandardCharsets.UTF_8);
+      String name = parseForm(form).get("name");
+      if (name == null) {
+        throw new ErrorResponse(400, "Missing parameter: name");
+      }
+      sendJson(request.exchange, 201, backend.createBucket(name));
+    } else if (request.method.equals("GET") && request.path.size() == 2) {
+      sendJson(request.exchange, 200, backend.getBucket(request.path.get(1)));
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+
+  // ------------------------ Objects ------------------------
+
+  private boolean routeObjects(Request request) throws IOException {
+    List<String> path = request.path;
+    if (request.matches("GET", "objects")) {
+      sendMetadata(request.exchange, 200, backend.getRepoObjects(request.require("bucketName"),
+          request.requireInt("offset"), request.requireInt("limit"),
+          Boolean.parseBoolean(request.require("includeDeleted")), request.parameters.get("tag")));
+    } else if (request.matches("POST", "objects")) {
+      sendMetadata(request.exchange, 201, createObject(request));
+    } else if (request.method.equals("GET") && path.size() == 2) {
+      sendContent(request, findObject(request));
+    } else if (request.method.equals("DELETE") && path.size() == 2) {
+      RepoId id = request.getId();
+      boolean deleted = request.parameters.containsKey("uuid")
+          ? backend.deleteRepoObject(RepoVersion.create(id, request.require("uuid")))
+          : backend.deleteRepoObject(RepoVersionNumber.create(id, request.requireInt("version")));
+      sendDeleted(request.exchange, deleted);
+    } else if (request.method.equals("GET") && path.size() == 3 && path.get(1).equals("meta")) {
+      sendMetadata(request.exchange, 200, findObject(request));
+    } else if (request.method.equals("GET") && path.size() == 3 && path.get(1).equals("versions")) {
+      sendMetadata(request.exchange, 200, backend.getRepoObjectVersions(request.getId()));
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  @SuppressWarnings("deprecation")
+  private RepoObjectMetadata findObject(Request request) {
+    RepoId id = request.getId();
+    Map<String, String> parameters = request.parameters;
+    if (parameters.containsKey("uuid")) {
+      return backend.getRepoObjectMetadata(RepoVersion.create(id, parameters.get("uuid")));
+    } else if (parameters.containsKey("version")) {
+      return backend.getRepoObjectMetadata(RepoVersionNumber.create(id, request.requireInt("version")));
+    } else if (parameters.containsKey("tag")) {
+      return backend.getRepoObjectMetadata(RepoVersionTag.create(id, parameters.get("tag")));
+    }
+    return backend.getLatestRepoObjectMetadata(id);
+  }
+
+  private RepoObjectMetadata createObject(Request request) throws IOException {
+    Map<String, byte[]> parts = parseMultipart(request.exchange);
+    Map<String, String> fields = new HashMap<>();
+    for (Map.Entry<String, byte[]> part : parts.entrySet()) {
+      fields.put(part.getKey(), new String(part.getValue(), StandardCharsets.UTF_8));
+    }
+    byte[] content = parts.get("file");
+    String bucketName = fields.get("bucketName");
+    String key = fields.get("key");
+    if (content == null || bucketName == null || key == null) {
+      throw new ErrorResponse(400, "Missing bucketName, key or file");
+    }
+    RepoObjectInput input = RepoObjectInput.builder(bucketName, key)
+        .setByteContent(content)
+        .setContentType(fields.get("contentType"))
+        .setDownloadName(fields.get("downloadName"))
+        .setTag(fields.get("tag"))
+        .setUserMetadata(fields.get("userMetadata"))
+        .setTimestamp(parseTimestamp(fields.get("timestamp")))
+        .setCreationDate(parseTimestamp(fields.get("creationDateTime")))
+        .build();
+    switch (getCreationMethod(fields.get("create"))) {
+      case NEW:
+        return backend.createRepoObject(input);
+      case VERSION:
+        return backend.versionRepoObject(input);
+      default:
+        return backend.autoCreateRepoObject(input);
+    }
+  }
+
+  private static Timestamp parseTimestamp(String value) {
+    return (value == null) ? null : Timestamp.valueOf(value);
+  }
+
+  private static CreationMethod getCreationMethod(String value) {
+    for (CreationMethod method : CreationMethod.values()) {
+      if (method.toString().equals(value)) {
+        return method;
+      }
+    }
+    throw new ErrorResponse(400, "Invalid creation method: " + value);
+  }
+
+  /**
+   * Send an object's content, or the byte range of it that the request asks for.
+   */
+  private void sendContent(Request request, RepoObjectMetadata metadata) throws IOException {
+    HttpExchange exchange = request.exchange;
+    long size = metadata.getSize();
+    metadata.getContentType().ifPresent(type -> exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, type));
+    exchange.getResponseHeaders().set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+    String range = exchange.getRequestHeaders().getFirst(HttpHeaders.RANGE);
+    Matcher matcher = (range == null) ? null : RANGE_PATTERN.matcher(range);
+    if (matcher == null || !matcher.matches()) {
+      try (InputStream content = backend.getRepoObject(metadata.getVersion())) {
+        sendStream(exchange, 200, size, content);
+      }
+      return;
+    }
+
+    long first = Long.parseLong(matcher.group(1));
+    long last = matcher.group(2).isEmpty() ? size - 1 : Math.min(Long.parseLong(matcher.group(2)), size - 1);
+    if (first >= size || last < first) {
+      exchange.getResponseHeaders().set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+      throw new ErrorResponse(416, "Range not satisfiable: " + range);
+    }
+    exchange.getResponseHeaders().set(HttpHeaders.CONTENT_RANGE, "bytes " + first + "-" + last + "/" + size);
+    long length = last - first + 1;
+    try (InputStream content = backend.getRepoObjectRange(metadata.getVersion(), first, length)) {
+      sendStream(exchange, 206, length, content);
+    }
+  }
+
+
+  // ------------------------ Collections ------------------------
+
+  private boolean routeCollections(Request request) throws IOException {
+    List<String> path = request.path;
+    if (request.matches("GET", "collections")) {
+      sendMetadata(request.exchange, 200, backend.getCollections(request.require("bucketName"),
+          request.requireInt("offset"), request.requireInt("limit"),
+          Boolean.parseBoolean(request.require("includeDeleted")), request.parameters.get("tag")));
+    } else if (request.matches("POST", "collections")) {
+      sendMetadata(request.exchange, 201, createCollection(request));
+    } else if (request.method.equals("GET") && path.size() == 2) {
+      sendMetadata(request.exchange, 200, findCollection(request));
+    } else if (request.method.equals("DELETE") && path.size() == 2) {
+      RepoId id = request.getId();
+      boolean deleted = request.parameters.containsKey("uuid")
+          ? backend.deleteCollection(RepoVersion.create(id, request.require("uuid")))
+          : backend.deleteCollection(RepoVersionNumber.create(id, request.requireInt("version")));
+      sendDeleted(request.exchange, deleted);
+    } else if (request.method.equals("GET") && path.size() == 3 && path.get(1).equals("versions")) {
+      sendMetadata(request.exchange, 200, backend.getCollectionVersions(request.getId()));
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  private RepoMetadata findCollection(Request request) {
+    RepoId id = request.getId();
+    Map<String, String> parameters = request.parameters;
+    if (parameters.containsKey("uuid")) {
+      return backend.getCollection(RepoVersion.create(id, parameters.get("uuid")));
+    } else if (parameters.containsKey("version")) {
+      return backend.getCollection(RepoVersionNumber.create(id, request.requireInt("version")));
+    } else if (parameters.containsKey("tag")) {
+      return backend.getCollection(RepoVersionTag.create(id, parameters.get("tag")));
+    }
+    return backend.getLatestCollection(id);
+  }
+
+  private static String getString(JsonObject object, String member) {
+    JsonElement element = object.get(member);
+    return (element == null || element.isJsonNull()) ? null : element.getAsString();
+  }
+
+  /**
+   * Read a collection from the JSON that {@link org.plos.crepo.model.input.RepoCollectionEntity} serializes to. Each
+   * member object may be written either as a {@link RepoVersion}, with a nested {@code id}, or with a flat {@code key}.
+   */
+  private RepoCollectionList createCollection(Request request) throws IOException {
+    JsonObject entity;
+    try {
+      entity = gson.fromJson(new String(readBody(request.exchange), StandardCharsets.UTF_8), JsonObject.class);
+    } catch (RuntimeException e) {
+      throw new ErrorResponse(400, "Invalid JSON: " + e.getMessage());
+    }
+    String bucketName = getString(entity, "bucketName");
+    String key = getString(entity, "key");
+    if (bucketName == null || key == null) {
+      throw new ErrorResponse(400, "Missing bucketName or key");
+    }
+    List<RepoVersion> objects = new ArrayList<>();
+    if (entity.has("objects")) {
+      for (JsonElement element : entity.getAsJsonArray("objects")) {
+        JsonObject object = element.getAsJsonObject();
+        JsonObject id = object.has("id") ? object.getAsJsonObject("id") : object;
+        String objectBucketName = getString(id, "bucketName");
+        objects.add(RepoVersion.create((objectBucketName == null) ? bucketName : objectBucketName,
+            getString(id, "key"), getString(object, "uuid")));
+      }
+    }
+    RepoCollectionInput input = RepoCollectionInput.builder(bucketName, key)
+        .setObjects(objects)
+        .setTag(getString(entity, "tag"))
+        .setUserMetadata(getString(entity, "userMetadata"))
+        .setTimestamp(getString(entity, "timestamp"))
+        .setCreationDateTime(getString(entity, "creationDateTime"))
+        .build();
+    switch (getCreationMethod(getString(entity, "create"))) {
+      case NEW:
+        return backend.createCollection(input);
+      case VERSION:
+        return backend.versionCollection(input);
+      default:
+        return backend.autoCreateCollection(input);
+    }
+  }
+
+
+  // ------------------------ Bodies ------------------------
+
+  private static byte[] readBody(HttpExchange exchange) throws IOException {
+    try (InputStream body = exchange.getRequestBody()) {
+      return ByteStreams.toByteArray(body);
+    }
+  }
+
+  /**
+   * Parse a {@code multipart/form-data} body into the content of each part, by name.
+   */
+  private static Map<String, byte[]> parseMultipart(HttpExchange exchange) throws IOException {
+    String contentType = exchange.getRequestHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
+    Matcher boundaryMatcher = (contentType == null) ? null
+        : Pattern.compile("boundary=\"?([^\";]+)\"?").matcher(contentType);
+    if (boundaryMatcher == null || !boundaryMatcher.find()) {
+      throw new ErrorResponse(400, "Expected multipart/form-data");
+    }
+    byte[] delimiter = ("\r\n--" + boundaryMatcher.group(1)).getBytes(StandardCharsets.US_ASCII);
+    byte[] headerEnd = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    Pattern namePattern = Pattern.compile("name=\"([^\"]*)\"");
+
+    // Prefix a line break so that the first delimiter looks like the others
+    byte[] body = Bytes.concat("\r\n".getBytes(StandardCharsets.US_ASCII), readBody(exchange));
+    Map<String, byte[]> parts = new HashMap<>();
+    int start = indexOf(body, delimiter, 0);
+    while (start >= 0) {
+      int partStart = start + delimiter.length;
+      if (partStart + 2 > body.length || (body[partStart] == '-' && body[partStart + 1] == '-')) {
+        break; // the closing delimiter
+      }
+      int headersEnd = indexOf(body, headerEnd, partStart);
+      int partEnd = indexOf(body, delimiter, partStart);
+      if (headersEnd < 0 || partEnd < 0 || headersEnd > partEnd) {
+        throw new ErrorResponse(400, "Malformed multipart body");
+      }
+      String headers = new String(body, partStart, headersEnd - partStart, StandardCharsets.UTF_8);
+      Matcher nameMatcher = namePattern.matcher(headers);
+      if (nameMatcher.find()) {
+        int contentStart = headersEnd + headerEnd.length;
+        parts.put(nameMatcher.group(1), Arrays.copyOfRange(body, contentStart, partEnd));
+      }
+      start = partEnd;
+    }
+    return parts;
+  }
+
+  private static int indexOf(byte[] array, byte[] target, int from) {
+    outer:
+    for (int i = from; i <= array.length - target.length; i++) {
+      for (int j = 0; j < target.length; j++) {
+        if (array[i + j] != target[j]) continue outer;
+      }
+      return i;
+    }
+    return -1;
+  }
+
+
+  // ------------------------ Responses ------------------------
+
+  private static void sendStream(HttpExchange exchange, int status, long length, InputStream content)
+      throws IOException {
+    exchange.sendResponseHeaders(status, (length == 0L) ? -1L : length);
+    try (OutputStream body = exchange.getResponseBody()) {
+      ByteStreams.copy(content, body);
+    }
+  }
+
+  private static void sendBytes(HttpExchange exchange, int status, String contentType, byte[] body)
+      throws IOException {
+    exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, contentType);
+    exchange.sendResponseHeaders(status, (body.length == 0) ? -1L : body.length);
+    try (OutputStream stream = exchange.getResponseBody()) {
+      stream.write(body);
+    }
+  }
+
+  private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+    sendBytes(exchange, status, "text/plain; charset=UTF-8", text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void sendJson(HttpExchange exchange, int status, Object value) throws IOException {
+    sendBytes(exchange, status, JSON_CONTENT_TYPE, gson.toJson(value).getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void sendMetadata(HttpExchange exchange, int status, RepoMetadata metadata) throws IOException {
+    sendJson(exchange, status, metadata.getMapView());
+  }
+
+  private void sendMetadata(HttpExchange exchange, int status, List<? extends RepoMetadata> metadata)
+      throws IOException {
+    List<Map<String, Object>> maps = new ArrayList<>(metadata.size());
+    for (RepoMetadata element : metadata) {
+      maps.add(element.getMapView());
+    }
+    sendJson(exchange, status, maps);
+  }
+
+  private void sendDeleted(HttpExchange exchange, boolean deleted) throws IOException {
+    if (!deleted) {
+      throw new ErrorResponse(404, "Already deleted");
+    }
+    sendBytes(exchange, 200, JSON_CONTENT_TYPE, new byte[0]);
+  }
+
+  private void sendError(HttpExchange exchange, int status, String message) {
+    Map<String, Object> body = new HashMap<>();
+    body.put("message", message);
+    try {
+      sendJson(exchange, status, body);
+    } catch (IOException | IllegalStateException e) {
+      log.debug("Could not send an error response; the response may have been started", e);
+    }
+  }
+
+}
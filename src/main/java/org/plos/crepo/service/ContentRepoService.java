@@ -22,6 +22,11 @@
 
 package org.plos.crepo.service;
 
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.io.IOUtils;
+import org.plos.crepo.exceptions.ContentRepoException;
+import org.plos.crepo.exceptions.ErrorType;
 import org.plos.crepo.model.identity.RepoId;
 import org.plos.crepo.model.identity.RepoVersion;
 import org.plos.crepo.model.identity.RepoVersionNumber;
@@ -32,10 +37,19 @@ import org.plos.crepo.model.metadata.RepoCollectionList;
 import org.plos.crepo.model.metadata.RepoCollectionMetadata;
 import org.plos.crepo.model.metadata.RepoObjectMetadata;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
+/**
+ * Client for the content repo. Methods added since the first release have default implementations built on the
+ * original ones, so that existing implementations keep compiling. Implementations override them where they can do
+ * better.
+ */
 public interface ContentRepoService {
 
   // ------------------------ Config ------------------------
@@ -117,6 +131,74 @@ public interface ContentRepoService {
    */
   InputStream getRepoObject(RepoVersionNumber number);
 
+  /**
+   * Returns part of the content of a repo object version, fetching only the requested bytes if the repo supports range
+   * requests.
+   *
+   * @param version the version of the repo object
+   * @param offset  the index of the first byte to return; must be less than the size of the content
+   * @param length  the maximum number of bytes to return, or {@link Long#MAX_VALUE} to read through the end of the
+   *                content; fewer bytes are returned if the content ends first
+   * @return an InputStream of the requested range of the content
+   */
+  default InputStream getRepoObjectRange(RepoVersion version, long offset, long length) {
+    Preconditions.checkArgument(offset >= 0L);
+    Preconditions.checkArgument(length >= 0L);
+    if (length == 0L) return new ByteArrayInputStream(new byte[0]);
+    InputStream content = getRepoObject(version); // the whole content, for a repo that cannot fetch a range
+    try {
+      ByteStreams.skipFully(content, offset);
+    } catch (IOException e) {
+      IOUtils.closeQuietly(content);
+      throw new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ErrorFetchingObject)
+          .key(version.getId().getKey())
+          .baseException(e)
+          .build();
+    }
+    return ByteStreams.limit(content, length);
+  }
+
+  /**
+   * Returns the content of a repo object version, checking it against the checksum in the version's metadata as it is
+   * read. When the end of the stream is reached, a read fails with a {@link
+   * org.plos.crepo.exceptions.ContentRepoException} of type {@link
+   * org.plos.crepo.exceptions.ErrorType#ChecksumMismatch} if the content was corrupted. The check costs no extra
+   * request or pass over the data.
+   *
+   * @param metadata the metadata of the repo object version, which must have a checksum
+   * @return an InputStream representing the repo object content
+   */
+  default InputStream getVerifiedRepoObject(RepoObjectMetadata metadata) {
+    return new ChecksumVerifyingInputStream(getRepoObject(metadata.getVersion()), metadata);
+  }
+
+  /**
+   * Returns the content of a repo object version, resuming from the last byte delivered if the connection fails before
+   * the end. Each resume is a range request (see {@link #getRepoObjectRange}) for the rest of the content, so a broken
+   * download of a large object does not have to start over. The content is checked against the size in the version's
+   * metadata; a response that ends early is resumed like a failed connection.
+   *
+   * @param metadata    the metadata of the repo object version
+   * @param retryBudget the number of times the download may be resumed before a failure is thrown to the caller
+   * @return an InputStream representing the repo object content
+   */
+  default InputStream getResumableRepoObject(RepoObjectMetadata metadata, int retryBudget) {
+    return new ResumableInputStream(this, metadata, retryBudget);
+  }
+
+  /**
+   * Returns the content of a repo object version, streaming it directly from the repo's backing storage when the
+   * metadata has reproxy URLs (see {@link RepoObjectMetadata#getReproxyUrls()}), so that the bytes do not pass through
+   * the repo server. The URLs are tried in order, and the content is fetched from the repo server if none of them
+   * respond or the metadata has none.
+   *
+   * @param metadata the metadata of the repo object version, as returned by a repo with reproxying enabled
+   * @return an InputStream representing the repo object content
+   */
+  default InputStream getReproxiedRepoObject(RepoObjectMetadata metadata) {
+    return getRepoObject(metadata.getVersion()); // without reproxying, which needs to know how to reach the storage
+  }
+
   /**
    * Returns the meta data of the latest version of an object using the most recent creation date time.
    *
@@ -160,6 +242,44 @@ public interface ContentRepoService {
    */
   List<RepoObjectMetadata> getRepoObjectVersions(RepoId id);
 
+  /**
+   * Returns the meta data of many repo object versions, specified by key and UUID. Repeated versions are looked up
+   * once. A failure to look up one version does not fail the batch; it is reported by {@link
+   * BatchResult#getFailures()}.
+   *
+   * @param versions the versions of the repo objects
+   * @return the meta data of each version that was found
+   */
+  default BatchResult<RepoVersion, RepoObjectMetadata> getRepoObjectMetadataForVersions(
+      Collection<RepoVersion> versions) {
+    return BatchLookup.lookUp(versions, this::getRepoObjectMetadata);
+  }
+
+  /**
+   * Returns the meta data of many repo objects specified by key and version number. Repeated version numbers are
+   * looked up once. A failure to look up one version does not fail the batch; it is reported by {@link
+   * BatchResult#getFailures()}.
+   *
+   * @param numbers the version numbers of the repo objects
+   * @return the meta data of each version that was found
+   */
+  default BatchResult<RepoVersionNumber, RepoObjectMetadata> getRepoObjectMetadataForVersionNumbers(
+      Collection<RepoVersionNumber> numbers) {
+    return BatchLookup.lookUp(numbers, this::getRepoObjectMetadata);
+  }
+
+  /**
+   * Returns the meta data of many repo objects specified by key and tag. Repeated tags are looked up once. A failure
+   * to look up one version does not fail the batch; it is reported by {@link BatchResult#getFailures()}.
+   *
+   * @param tags the tags of the repo objects
+   * @return the meta data of each version that was found
+   */
+  default BatchResult<RepoVersionTag, RepoObjectMetadata> getRepoObjectMetadataForVersionTags(
+      Collection<RepoVersionTag> tags) {
+    return BatchLookup.lookUp(tags, this::getRepoObjectMetadata);
+  }
+
   /**
    * Deletes the latest version of the repo object using object key <code>key</code>
    *
@@ -222,6 +342,23 @@ public interface ContentRepoService {
    */
   List<RepoObjectMetadata> getRepoObjects(String bucketName, int offset, int limit, boolean includeDeleted, String tag);
 
+  /**
+   * Returns the same objects as {@link #getRepoObjects}, parsing each one only when the stream reaches it. This keeps
+   * memory use constant for large pages. The stream holds the underlying response open until it is consumed or
+   * closed, so it should be closed, for example in a try-with-resources statement.
+   *
+   * @param offset         an int value to indicate the page number of the pagination
+   * @param limit          an int value representing the number of objects for each page
+   * @param includeDeleted if true the response include deleted objects
+   * @param tag            a single string representing the collection tag to filter the response. If it is null, it
+   *                       will be ignore.
+   * @return a stream of the object metadata, which must be closed
+   */
+  default Stream<RepoObjectMetadata> streamRepoObjects(String bucketName, int offset, int limit, boolean includeDeleted,
+                                                       String tag) {
+    return getRepoObjects(bucketName, offset, limit, includeDeleted, tag).stream();
+  }
+
 
   // ------------------------ Collections ------------------------
 
@@ -320,4 +457,21 @@ public interface ContentRepoService {
    */
   List<RepoCollectionMetadata> getCollections(String bucketName, int offset, int limit, boolean includeDeleted, String tag);
 
+  /**
+   * Returns the same collections as {@link #getCollections}, parsing each one only when the stream reaches it. This
+   * keeps memory use constant for large pages. The stream holds the underlying response open until it is consumed or
+   * closed, so it should be closed, for example in a try-with-resources statement.
+   *
+   * @param offset         an int value to indicate the page number of the pagination
+   * @param limit          an int value representing the number of collections for each page
+   * @param includeDeleted if true the response include deleted collections
+   * @param tag            a single string representing the collection tag to filter the response. If it is null, it
+   *                       will be ignore.
+   * @return a stream of the collection metadata, which must be closed
+   */
+  default Stream<RepoCollectionMetadata> streamCollections(String bucketName, int offset, int limit,
+                                                           boolean includeDeleted, String tag) {
+    return getCollections(bucketName, offset, limit, includeDeleted, tag).stream();
+  }
+
 }
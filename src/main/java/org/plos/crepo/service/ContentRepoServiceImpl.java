@@ -23,10 +23,20 @@
 package org.plos.crepo.service;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.HttpResponse;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.plos.crepo.config.ContentRepoAccessConfig;
 import org.plos.crepo.config.HttpClientFunction;
@@ -48,24 +58,39 @@ import org.plos.crepo.model.input.RepoCollectionInput;
 import org.plos.crepo.model.input.RepoObjectInput;
 import org.plos.crepo.model.metadata.RepoCollectionList;
 import org.plos.crepo.model.metadata.RepoCollectionMetadata;
+import org.plos.crepo.model.metadata.RepoMetadataTypeAdapter;
 import org.plos.crepo.model.metadata.RepoObjectMetadata;
 import org.plos.crepo.model.validator.RepoObjectValidator;
 import org.plos.crepo.util.HttpResponseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.reflect.Type;
+import java.net.URL;
 import java.nio.charset.Charset;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 public class ContentRepoServiceImpl implements ContentRepoService {
   private static final Logger log = LoggerFactory.getLogger(ContentRepoServiceImpl.class);
 
+  private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(?:\\d+|\\*)");
+
   private static final Type MAP_TOKEN = new TypeToken<Map<String, Object>>() {
   }.getType();
   public static final Type LIST_OF_MAPS_TOKENS = new TypeToken<List<Map<String, Object>>>() {
@@ -74,19 +99,66 @@ public class ContentRepoServiceImpl implements ContentRepoService {
   private final ContentRepoAccessConfig accessConfig;
   private final Gson gson;
 
+  /**
+   * The default maximum number of requests that one batch lookup may have in flight.
+   */
+  public static final int DEFAULT_BATCH_CONCURRENCY = 8;
+
+  /**
+   * Runs the workers of batch lookups if no executor is provided. Threads are created on demand and are not kept
+   * alive, so this costs nothing if batch lookups are never used.
+   */
+  private static class DefaultBatchExecutor {
+    private static final Executor INSTANCE = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setNameFormat("content-repo-batch-%d").setDaemon(true).build());
+  }
+
   private final ContentRepoConfigDao configDao;
   private final ContentRepoBucketsDao bucketsDao;
   private final ContentRepoObjectDao objectDao;
   private final ContentRepoCollectionDao collectionDao;
 
+  private final Executor batchExecutor;
+  private final int batchConcurrency;
+
   public ContentRepoServiceImpl(String repoServer, HttpClientFunction client) {
-    this.accessConfig = new ContentRepoAccessConfig(repoServer, client);
+    this(repoServer, client, DefaultBatchExecutor.INSTANCE, DEFAULT_BATCH_CONCURRENCY);
+  }
+
+  /**
+   * @param repoServer       the root URL of the content repo server
+   * @param client           the client that opens HTTP requests
+   * @param batchExecutor    the executor that runs batch lookups in parallel
+   * @param batchConcurrency the maximum number of requests that one batch lookup may have in flight
+   */
+  public ContentRepoServiceImpl(String repoServer, HttpClientFunction client, Executor batchExecutor, int batchConcurrency) {
+    this(new ContentRepoAccessConfig(repoServer, client), batchExecutor, batchConcurrency);
+  }
+
+  /**
+   * @param accessConfig the repo server, HTTP client and request metrics to use
+   */
+  public ContentRepoServiceImpl(ContentRepoAccessConfig accessConfig) {
+    this(accessConfig, DefaultBatchExecutor.INSTANCE, DEFAULT_BATCH_CONCURRENCY);
+  }
+
+  /**
+   * @param accessConfig     the repo server, HTTP client and request metrics to use
+   * @param batchExecutor    the executor that runs batch lookups in parallel
+   * @param batchConcurrency the maximum number of requests that one batch lookup may have in flight
+   */
+  public ContentRepoServiceImpl(ContentRepoAccessConfig accessConfig, Executor batchExecutor, int batchConcurrency) {
+    Preconditions.checkArgument(batchConcurrency > 0);
+    this.accessConfig = Objects.requireNonNull(accessConfig);
     gson = new Gson();
 
     configDao = new ContentRepoConfigDaoImpl(accessConfig);
     bucketsDao = new ContentRepoBucketDaoImpl(accessConfig);
     objectDao = new ContentRepoObjectDaoImpl(accessConfig);
     collectionDao = new ContentRepoCollectionDaoImpl(accessConfig);
+
+    this.batchExecutor = Objects.requireNonNull(batchExecutor);
+    this.batchConcurrency = batchConcurrency;
   }
 
   ContentRepoServiceImpl(TestContentRepoServiceBuilder builder) {
@@ -96,6 +168,8 @@ public class ContentRepoServiceImpl implements ContentRepoService {
     this.bucketsDao = builder.getBucketsDao();
     this.objectDao = builder.getObjectDao();
     this.collectionDao = builder.getCollectionDao();
+    this.batchExecutor = DefaultBatchExecutor.INSTANCE;
+    this.batchConcurrency = DEFAULT_BATCH_CONCURRENCY;
   }
 
   private ContentRepoException serviceServerException(Exception e, String logMessage) {
@@ -114,6 +188,56 @@ public class ContentRepoServiceImpl implements ContentRepoService {
     }
   }
 
+  private <T> T readJsonResponse(CloseableHttpResponse response, TypeAdapter<T> adapter) throws IOException {
+    final Charset charset = Charsets.UTF_8; // TODO: Read from response Content-Type?
+    try (InputStream stream = response.getEntity().getContent()) {
+      return adapter.fromJson(new InputStreamReader(stream, charset));
+    } finally {
+      response.close();
+    }
+  }
+
+  /**
+   * Opens a response whose body is a JSON array for reading one element at a time. Closing the returned iterator
+   * closes the response.
+   */
+  private <T> JsonArrayIterator<T> openJsonArray(CloseableHttpResponse response,
+                                                 JsonArrayIterator.ElementParser<T> parser) throws IOException {
+    final Charset charset = Charsets.UTF_8; // TODO: Read from response Content-Type?
+    JsonReader reader;
+    try {
+      reader = new JsonReader(new InputStreamReader(response.getEntity().getContent(), charset));
+    } catch (IOException | RuntimeException e) {
+      response.close();
+      throw e;
+    }
+    return new JsonArrayIterator<>(reader, parser, response);
+  }
+
+  /**
+   * Reads a JSON array response into a list, parsing each element as it is read instead of building an intermediate
+   * list of maps.
+   */
+  private <T> List<T> readJsonArray(CloseableHttpResponse response,
+                                    JsonArrayIterator.ElementParser<T> parser) throws IOException {
+    List<T> list = new ArrayList<>();
+    try (JsonArrayIterator<T> iterator = openJsonArray(response, parser)) {
+      while (iterator.hasNext()) {
+        list.add(iterator.next());
+      }
+    }
+    return list;
+  }
+
+  private <T> Stream<T> streamJsonArray(CloseableHttpResponse response,
+                                        JsonArrayIterator.ElementParser<T> parser, String logMessage) {
+    try {
+      return openJsonArray(response, parser).stream();
+    } catch (IOException e) {
+      throw serviceServerException(e, logMessage);
+    }
+  }
+
 
   // ------------------------ Config ------------------------
 
@@ -245,18 +369,124 @@ public class ContentRepoServiceImpl implements ContentRepoService {
     }
   }
 
+  @Override
+  public InputStream getRepoObjectRange(RepoVersion version, long offset, long length) {
+    Preconditions.checkArgument(offset >= 0L);
+    Preconditions.checkArgument(length >= 0L);
+    if (length == 0L) return new ByteArrayInputStream(new byte[0]);
+
+    String key = version.getId().getKey();
+    String uuid = version.getUuid().toString();
+    CloseableHttpResponse response = objectDao.getRepoObjRangeUsingUuid(version.getId().getBucketName(), key, uuid,
+        offset, length);
+    try {
+      InputStream content = response.getEntity().getContent();
+      if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+        return slice(response, content, offset, length); // the server ignored the range and sent the full content
+      }
+      long[] range = parseContentRange(response);
+      if (range == null || range[0] > offset || range[1] < offset) {
+        IOUtils.closeQuietly(response);
+        throw new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ErrorFetchingObject)
+            .key(key)
+            .repoMessage("Partial content does not start at offset " + offset + ": "
+                + response.getFirstHeader(HttpHeaders.CONTENT_RANGE))
+            .build();
+      }
+      if (range[0] == offset && range[1] - range[0] < length) {
+        return content;
+      }
+      return slice(response, content, offset - range[0], length);
+    } catch (IOException e) {
+      IOUtils.closeQuietly(response);
+      log.error("Error getting a range of the repoObj content from the response, when using the UUID." +
+          "  key " + key + " uuid: " + uuid + " offset: " + offset + " length: " + length, e);
+      throw new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ErrorFetchingObject)
+          .baseException(e)
+          .key(key)
+          .build();
+    }
+  }
+
+  /**
+   * @return the first and last byte positions of a partial response's {@code Content-Range}, or {@code null} if it is
+   * missing or malformed
+   */
+  private static long[] parseContentRange(CloseableHttpResponse response) {
+    Header header = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+    Matcher matcher = (header == null) ? null : CONTENT_RANGE.matcher(header.getValue().trim());
+    if (matcher == null || !matcher.matches()) return null;
+    try {
+      long[] range = {Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))};
+      return (range[0] <= range[1]) ? range : null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Extract a range from a response that starts before it: the full content, if the server ignored the range, or a
+   * partial response that starts early. Closing the returned stream closes the response instead of draining the rest
+   * of the content.
+   */
+  private static InputStream slice(CloseableHttpResponse response, InputStream content,
+                                   long offset, long length) throws IOException {
+    try {
+      ByteStreams.skipFully(content, offset);
+    } catch (EOFException e) {
+      IOUtils.closeQuietly(response);
+      throw new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ErrorFetchingObject)
+          .repoMessage("Range starts past the end of the content: " + offset)
+          .build();
+    }
+    return new FilterInputStream(ByteStreams.limit(content, length)) {
+      @Override
+      public void close() throws IOException {
+        response.close();
+      }
+    };
+  }
+
+  @Override
+  public InputStream getReproxiedRepoObject(RepoObjectMetadata metadata) {
+    RepoVersion version = metadata.getVersion();
+    String bucketName = version.getId().getBucketName();
+    List<URL> reproxyUrls;
+    try {
+      reproxyUrls = metadata.getReproxyUrls();
+    } catch (ContentRepoException e) {
+      log.warn("Invalid reproxy URL in the metadata of " + version + "; fetching it from the repo", e);
+      reproxyUrls = ImmutableList.of();
+    }
+
+    for (URL reproxyUrl : reproxyUrls) {
+      CloseableHttpResponse response;
+      try {
+        response = objectDao.getReproxiedContent(bucketName, reproxyUrl);
+      } catch (ContentRepoException e) {
+        log.warn("Could not fetch " + version + " from reproxy URL " + reproxyUrl, e);
+        continue;
+      }
+      try {
+        return response.getEntity().getContent();
+      } catch (IOException e) {
+        IOUtils.closeQuietly(response);
+        log.warn("Error getting the content of " + version + " from reproxy URL " + reproxyUrl, e);
+      }
+    }
+    return getRepoObject(version);
+  }
+
   private RepoObjectMetadata buildRepoObjectMetadata(String bucketName, CloseableHttpResponse response) throws IOException {
-    Map<String, Object> raw = readJsonResponse(response, MAP_TOKEN);
-    return new RepoObjectMetadata(bucketName, raw);
+    return readJsonResponse(response, RepoMetadataTypeAdapter.forObjects(bucketName));
+  }
+
+  private JsonArrayIterator.ElementParser<RepoObjectMetadata> objectMetadataParser(String bucketName) {
+    return RepoMetadataTypeAdapter.forObjects(bucketName)::read;
   }
 
   private List<RepoObjectMetadata> buildRepoObjectMetadataList(String bucketName, CloseableHttpResponse response) throws IOException {
-    List<Map<String, Object>> rawList = readJsonResponse(response, LIST_OF_MAPS_TOKENS);
-    List<RepoObjectMetadata> list = new ArrayList<>(rawList.size());
-    for (Map<String, Object> rawObj : rawList) {
-      list.add(new RepoObjectMetadata(bucketName, rawObj));
-    }
-    return list;
+    return readJsonArray(response, objectMetadataParser(bucketName));
   }
 
   @Override
@@ -345,6 +575,21 @@ public class ContentRepoServiceImpl implements ContentRepoService {
 
   }
 
+  @Override
+  public BatchResult<RepoVersion, RepoObjectMetadata> getRepoObjectMetadataForVersions(Collection<RepoVersion> versions) {
+    return BatchLookup.lookUp(versions, this::getRepoObjectMetadata, batchExecutor, batchConcurrency);
+  }
+
+  @Override
+  public BatchResult<RepoVersionNumber, RepoObjectMetadata> getRepoObjectMetadataForVersionNumbers(Collection<RepoVersionNumber> numbers) {
+    return BatchLookup.lookUp(numbers, this::getRepoObjectMetadata, batchExecutor, batchConcurrency);
+  }
+
+  @Override
+  public BatchResult<RepoVersionTag, RepoObjectMetadata> getRepoObjectMetadataForVersionTags(Collection<RepoVersionTag> tags) {
+    return BatchLookup.lookUp(tags, this::getRepoObjectMetadata, batchExecutor, batchConcurrency);
+  }
+
 
   @Override
   public boolean deleteLatestRepoObject(RepoId id) {
@@ -400,13 +645,41 @@ public class ContentRepoServiceImpl implements ContentRepoService {
 
   }
 
+  private static MessageDigest newContentDigest(RepoObjectInput repoObjectInput) {
+    return repoObjectInput.isVerifyChecksum() ? ChecksumVerifyingInputStream.newDigest() : null;
+  }
+
+  /**
+   * Check that the checksum of a created object matches the digest of the content that was uploaded for it.
+   *
+   * @param contentDigest the digest that the content was fed to while uploading, or {@code null} to skip the check
+   * @return {@code created}
+   */
+  private static RepoObjectMetadata verifyChecksum(RepoObjectInput repoObjectInput, RepoObjectMetadata created,
+                                                   MessageDigest contentDigest) {
+    if (contentDigest == null) return created;
+    String uploaded = BaseEncoding.base16().lowerCase().encode(contentDigest.digest());
+    String stored = created.getChecksum().orElse(null);
+    if (!uploaded.equalsIgnoreCase(stored)) {
+      String message = "Uploaded content has checksum " + uploaded + "; repo reported " + stored;
+      log.error(message);
+      throw new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ChecksumMismatch)
+          .key(repoObjectInput.getKey())
+          .repoMessage(message)
+          .build();
+    }
+    return created;
+  }
+
   @Override
   public RepoObjectMetadata createRepoObject(RepoObjectInput repoObjectInput) {
     RepoObjectValidator.validate(repoObjectInput);
     String bucketName = repoObjectInput.getBucketName();
-    try (CloseableHttpResponse response =
-             objectDao.createRepoObj(bucketName, repoObjectInput, repoObjectInput.probeContentType())) {
-      return buildRepoObjectMetadata(bucketName, response);
+    MessageDigest contentDigest = newContentDigest(repoObjectInput);
+    try (CloseableHttpResponse response = (contentDigest == null)
+        ? objectDao.createRepoObj(bucketName, repoObjectInput, repoObjectInput.probeContentType())
+        : objectDao.createRepoObj(bucketName, repoObjectInput, repoObjectInput.probeContentType(), contentDigest)) {
+      return verifyChecksum(repoObjectInput, buildRepoObjectMetadata(bucketName, response), contentDigest);
     } catch (IOException e) {
       throw serviceServerException(e, "Error handling the response when creating an object. RepoMessage: ");
     }
@@ -416,8 +689,11 @@ public class ContentRepoServiceImpl implements ContentRepoService {
   public RepoObjectMetadata versionRepoObject(RepoObjectInput repoObjectInput) {
     RepoObjectValidator.validate(repoObjectInput);
     String bucketName = repoObjectInput.getBucketName();
-    try (CloseableHttpResponse response = objectDao.versionRepoObj(bucketName, repoObjectInput, repoObjectInput.probeContentType())) {
-      return buildRepoObjectMetadata(bucketName, response);
+    MessageDigest contentDigest = newContentDigest(repoObjectInput);
+    try (CloseableHttpResponse response = (contentDigest == null)
+        ? objectDao.versionRepoObj(bucketName, repoObjectInput, repoObjectInput.probeContentType())
+        : objectDao.versionRepoObj(bucketName, repoObjectInput, repoObjectInput.probeContentType(), contentDigest)) {
+      return verifyChecksum(repoObjectInput, buildRepoObjectMetadata(bucketName, response), contentDigest);
     } catch (IOException e) {
       throw serviceServerException(e, "Error handling the response when versioning an object. RepoMessage: ");
     }
@@ -427,8 +703,11 @@ public class ContentRepoServiceImpl implements ContentRepoService {
   public RepoObjectMetadata autoCreateRepoObject(RepoObjectInput repoObjectInput) {
     RepoObjectValidator.validate(repoObjectInput);
     String bucketName = repoObjectInput.getBucketName();
-    try (CloseableHttpResponse response = objectDao.autoCreateRepoObj(bucketName, repoObjectInput, repoObjectInput.probeContentType())) {
-      return buildRepoObjectMetadata(bucketName, response);
+    MessageDigest contentDigest = newContentDigest(repoObjectInput);
+    try (CloseableHttpResponse response = (contentDigest == null)
+        ? objectDao.autoCreateRepoObj(bucketName, repoObjectInput, repoObjectInput.probeContentType())
+        : objectDao.autoCreateRepoObj(bucketName, repoObjectInput, repoObjectInput.probeContentType(), contentDigest)) {
+      return verifyChecksum(repoObjectInput, buildRepoObjectMetadata(bucketName, response), contentDigest);
     } catch (IOException e) {
       throw serviceServerException(e, "Error handling the response when trying to auto create an object. RepoMessage: ");
     }
@@ -444,6 +723,13 @@ public class ContentRepoServiceImpl implements ContentRepoService {
 
   }
 
+  @Override
+  public Stream<RepoObjectMetadata> streamRepoObjects(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    CloseableHttpResponse response = getObjectsCloseableResp(bucketName, offset, limit, includeDeleted, tag);
+    return streamJsonArray(response, objectMetadataParser(bucketName),
+        "Error handling the response when streaming a list of objects. RepoMessage: ");
+  }
+
   private CloseableHttpResponse getObjectsCloseableResp(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
     if (StringUtils.isEmpty(tag)) {
       return objectDao.getObjects(bucketName, offset, limit, includeDeleted);
@@ -454,27 +740,20 @@ public class ContentRepoServiceImpl implements ContentRepoService {
 
   // ------------------------ Collections ------------------------
 
-  private RepoCollectionList buildRepoCollectionMetadata(String bucketName, HttpResponse response) {
-    Map<String, Object> raw = gson.fromJson(HttpResponseUtil.getResponseAsString(response), MAP_TOKEN);
-    return new RepoCollectionList(bucketName, raw);
+  private RepoCollectionList buildRepoCollectionMetadata(String bucketName, CloseableHttpResponse response) throws IOException {
+    return readJsonResponse(response, RepoMetadataTypeAdapter.forCollectionLists(bucketName));
   }
 
-  private List<RepoCollectionList> buildRepoCollectionMetadataList(String bucketName, HttpResponse response) {
-    List<Map<String, Object>> rawList = gson.fromJson(HttpResponseUtil.getResponseAsString(response), LIST_OF_MAPS_TOKENS);
-    List<RepoCollectionList> list = new ArrayList<>(rawList.size());
-    for (Map<String, Object> rawObj : rawList) {
-      list.add(new RepoCollectionList(bucketName, rawObj));
-    }
-    return list;
+  private List<RepoCollectionList> buildRepoCollectionMetadataList(String bucketName, CloseableHttpResponse response) throws IOException {
+    return readJsonArray(response, RepoMetadataTypeAdapter.forCollectionLists(bucketName)::read);
   }
 
-  private List<RepoCollectionMetadata> buildRepoCollectionObjectsMetadataList(String bucketName, HttpResponse response) {
-    List<Map<String, Object>> rawList = gson.fromJson(HttpResponseUtil.getResponseAsString(response), LIST_OF_MAPS_TOKENS);
-    List<RepoCollectionMetadata> list = new ArrayList<>(rawList.size());
-    for (Map<String, Object> rawObj : rawList) {
-      list.add(new RepoCollectionMetadata(bucketName, rawObj));
-    }
-    return list;
+  private JsonArrayIterator.ElementParser<RepoCollectionMetadata> collectionMetadataParser(String bucketName) {
+    return RepoMetadataTypeAdapter.forCollections(bucketName)::read;
+  }
+
+  private List<RepoCollectionMetadata> buildRepoCollectionObjectsMetadataList(String bucketName, CloseableHttpResponse response) throws IOException {
+    return readJsonArray(response, collectionMetadataParser(bucketName));
   }
 
   @Override
@@ -634,6 +913,13 @@ public class ContentRepoServiceImpl implements ContentRepoService {
 
   }
 
+  @Override
+  public Stream<RepoCollectionMetadata> streamCollections(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    CloseableHttpResponse response = getCollectionsCloseableResp(bucketName, offset, limit, includeDeleted, tag);
+    return streamJsonArray(response, collectionMetadataParser(bucketName),
+        "Error handling the response when streaming the collections. RepoMessage: ");
+  }
+
   private CloseableHttpResponse getCollectionsCloseableResp(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
     if (StringUtils.isEmpty(tag)) {
       return collectionDao.getCollections(bucketName, offset, limit, includeDeleted);
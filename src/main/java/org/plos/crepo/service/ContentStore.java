@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Holds the content of objects in an in-memory content repo service.
+ *
+ * @see InMemoryContentRepoService
+ * @see ConcurrentInMemoryContentRepoService
+ */
+public interface ContentStore {
+
+  /**
+   * Content that has been copied into a store. Immutable.
+   */
+  public static interface StoredContent {
+
+    /**
+     * @return the length of the content in bytes
+     */
+    long size();
+
+    /**
+     * @return a new stream of the content
+     */
+    InputStream open();
+
+    /**
+     * @param offset the index of the first byte to read; must not be greater than the size
+     * @param length the maximum number of bytes to read
+     * @return a new stream of part of the content
+     */
+    InputStream open(long offset, long length);
+
+    /**
+     * Signal that the content is no longer referenced, so that the store may reclaim its space. The content must not be
+     * opened afterward.
+     */
+    void release();
+
+    /**
+     * Release a copy that was just stored and has never been opened or handed out, such as a duplicate of content that
+     * is already stored. Unlike {@link #release()}, this allows the store to reuse the copy's space right away.
+     */
+    default void discard() {
+      release();
+    }
+  }
+
+  /**
+   * Copy content into the store. Must be thread-safe.
+   *
+   * @param content the content to copy, which the caller remains responsible for closing
+   * @return a handle to the stored copy
+   * @throws IOException if the content cannot be read or stored
+   */
+  StoredContent store(InputStream content) throws IOException;
+
+}
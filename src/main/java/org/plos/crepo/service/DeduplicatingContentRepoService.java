@@ -0,0 +1,238 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import org.plos.crepo.exceptions.ContentRepoException;
+import org.plos.crepo.exceptions.ErrorType;
+import org.plos.crepo.exceptions.NotFoundException;
+import org.plos.crepo.model.Status;
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionNumber;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A service that skips uploads whose content is already stored as the latest version of the same object.
+ * <p>
+ * {@link #autoCreateRepoObject} and {@link #versionRepoObject} hash the input's content locally and compare the hash
+ * with the checksum of the object's latest version. If they match, and every attribute that the input sets (content
+ * type, download name, tag and user metadata) also matches, the latest version's metadata is returned and nothing is
+ * uploaded. Otherwise the input is passed to the delegate as usual. The content is hashed only if the object has a
+ * latest version whose other attributes match, so checking costs one extra local read of the content at most, and
+ * none for a new object.
+ * <p>
+ * The latest version's metadata is cached per {@link RepoId}, so that repeated submissions of the same object need no
+ * metadata lookup at all. The cache is updated by writes and invalidated by deletions <em>through this service</em>.
+ * If another client versions the same object, this service may go on comparing against its own last write and skip
+ * an upload that would have made that content the latest again; use it only where this client owns the objects it
+ * writes, or call {@link #invalidateAll} when that is not known.
+ * <p>
+ * Thread-safe if the delegate is.
+ */
+public class DeduplicatingContentRepoService extends ForwardingContentRepoService {
+
+  /**
+   * The default maximum number of objects whose latest version is cached.
+   */
+  public static final long DEFAULT_MAXIMUM_SIZE = 10000L;
+
+  private final ContentRepoService delegate;
+  private final Cache<RepoId, RepoObjectMetadata> latestVersions;
+  private final AtomicLong skippedUploads = new AtomicLong();
+
+  public DeduplicatingContentRepoService(ContentRepoService delegate) {
+    this(delegate, DEFAULT_MAXIMUM_SIZE);
+  }
+
+  /**
+   * @param delegate    the service to decorate
+   * @param maximumSize the maximum number of objects whose latest version is cached
+   */
+  public DeduplicatingContentRepoService(ContentRepoService delegate, long maximumSize) {
+    Preconditions.checkArgument(maximumSize >= 0);
+    this.delegate = Objects.requireNonNull(delegate);
+    this.latestVersions = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+  }
+
+  @Override
+  protected ContentRepoService delegate() {
+    return delegate;
+  }
+
+  /**
+   * @return hit, miss, and eviction counts for the cache of latest versions
+   */
+  public CacheStats getLatestVersionStats() {
+    return latestVersions.stats();
+  }
+
+  /**
+   * @return the number of uploads that were skipped because the content was already stored
+   */
+  public long getSkippedUploadCount() {
+    return skippedUploads.get();
+  }
+
+  /**
+   * Discard all cached metadata.
+   */
+  public void invalidateAll() {
+    latestVersions.invalidateAll();
+  }
+
+  private static HashCode hashContent(RepoObjectInput input) {
+    try (DigestInputStream stream = ChecksumVerifyingInputStream.digesting(input.getContentAccessor().open())) {
+      ByteStreams.copy(stream, ByteStreams.nullOutputStream());
+      return ChecksumVerifyingInputStream.hash(stream);
+    } catch (IOException e) {
+      throw new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ErrorAccessingFile)
+          .key(input.getKey())
+          .baseException(e)
+          .build();
+    }
+  }
+
+  /**
+   * @return the metadata of the object's latest version, or {@code null} if the object does not exist
+   */
+  @SuppressWarnings("deprecation") // there is no other lookup of the latest version
+  private RepoObjectMetadata getLatestVersion(RepoId id) {
+    RepoObjectMetadata latest = latestVersions.getIfPresent(id);
+    if (latest != null) return latest;
+    try {
+      latest = delegate.getLatestRepoObjectMetadata(id);
+    } catch (NotFoundException e) {
+      return null;
+    }
+    latestVersions.put(id, latest);
+    return latest;
+  }
+
+  private static boolean matchesIfSet(String inputValue, Optional<String> storedValue) {
+    return inputValue == null || inputValue.equals(storedValue.orElse(null));
+  }
+
+  /**
+   * Check whether uploading the input would store nothing new beyond the given version. The content is hashed last,
+   * and only if everything else matches.
+   */
+  private static boolean isStored(RepoObjectInput input, RepoObjectMetadata latest) {
+    if (latest.getStatus() != Status.USED) return false;
+    Optional<String> checksum = latest.getChecksum();
+    if (!checksum.isPresent()) return false;
+
+    String contentType;
+    try {
+      contentType = input.canGetContentType() ? input.probeContentType() : null;
+    } catch (IOException e) {
+      return false;
+    }
+    return matchesIfSet(contentType, latest.getContentType())
+        && matchesIfSet(input.getDownloadName(), latest.getDownloadName())
+        && matchesIfSet(input.getTag(), latest.getTag().map(RepoVersionTag::getTag))
+        && matchesIfSet(input.getUserMetadata(), latest.getRawUserMetadata())
+        && checksum.get().equalsIgnoreCase(hashContent(input).toString());
+  }
+
+  private RepoObjectMetadata uploadIfChanged(RepoObjectInput input,
+                                             Function<RepoObjectInput, RepoObjectMetadata> upload) {
+    RepoId id = RepoId.create(input.getBucketName(), input.getKey());
+    RepoObjectMetadata latest = getLatestVersion(id);
+    if (latest != null && isStored(input, latest)) {
+      skippedUploads.incrementAndGet();
+      return latest;
+    }
+    return cacheLatest(upload.apply(input));
+  }
+
+  private RepoObjectMetadata cacheLatest(RepoObjectMetadata created) {
+    latestVersions.put(created.getVersion().getId(), created);
+    return created;
+  }
+
+  @Override
+  @Deprecated
+  public RepoObjectMetadata getLatestRepoObjectMetadata(RepoId id) {
+    return cacheLatest(delegate.getLatestRepoObjectMetadata(id));
+  }
+
+  @Override
+  public RepoObjectMetadata createRepoObject(RepoObjectInput repoObjectInput) {
+    return cacheLatest(delegate.createRepoObject(repoObjectInput));
+  }
+
+  @Override
+  public RepoObjectMetadata versionRepoObject(RepoObjectInput repoObjectInput) {
+    return uploadIfChanged(repoObjectInput, delegate::versionRepoObject);
+  }
+
+  @Override
+  public RepoObjectMetadata autoCreateRepoObject(RepoObjectInput repoObjectInput) {
+    return uploadIfChanged(repoObjectInput, delegate::autoCreateRepoObject);
+  }
+
+  @Override
+  @Deprecated
+  public boolean deleteLatestRepoObject(RepoId id) {
+    try {
+      return delegate.deleteLatestRepoObject(id);
+    } finally {
+      latestVersions.invalidate(id);
+    }
+  }
+
+  @Override
+  public boolean deleteRepoObject(RepoVersion version) {
+    try {
+      return delegate.deleteRepoObject(version);
+    } finally {
+      latestVersions.invalidate(version.getId());
+    }
+  }
+
+  @Override
+  public boolean deleteRepoObject(RepoVersionNumber number) {
+    try {
+      return delegate.deleteRepoObject(number);
+    } finally {
+      latestVersions.invalidate(number.getId());
+    }
+  }
+
+}
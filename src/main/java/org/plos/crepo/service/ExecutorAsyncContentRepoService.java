@@ -0,0 +1,281 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionNumber;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.input.RepoCollectionInput;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoCollectionMetadata;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Adapts a blocking {@link ContentRepoService} to {@link AsyncContentRepoService} by running each call on an {@link
+ * Executor}.
+ * <p>
+ * The executor bounds how many requests are in flight at once: a fan-out of N lookups occupies at most as many
+ * threads as the executor provides, not N caller threads. It should normally be sized to match the connection pool
+ * behind the delegate's {@link org.plos.crepo.config.HttpClientFunction}, since a thread beyond that limit would only
+ * wait for a connection.
+ */
+public class ExecutorAsyncContentRepoService implements AsyncContentRepoService {
+
+  private final ContentRepoService delegate;
+  private final Executor executor;
+
+  /**
+   * @param delegate the blocking service that performs each request
+   * @param executor the executor on which blocking calls are run
+   */
+  public ExecutorAsyncContentRepoService(ContentRepoService delegate, Executor executor) {
+    this.delegate = Objects.requireNonNull(delegate);
+    this.executor = Objects.requireNonNull(executor);
+  }
+
+  private <T> CompletableFuture<T> submit(Supplier<T> call) {
+    return CompletableFuture.supplyAsync(call, executor);
+  }
+
+
+  // ------------------------ Config ------------------------
+
+  @Override
+  public CompletableFuture<Boolean> hasXReproxy() {
+    return submit(delegate::hasXReproxy);
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Object>> getRepoConfig() {
+    return submit(delegate::getRepoConfig);
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Object>> getRepoStatus() {
+    return submit(delegate::getRepoStatus);
+  }
+
+
+  // ------------------------ Buckets ------------------------
+
+  @Override
+  public CompletableFuture<List<Map<String, Object>>> getBuckets() {
+    return submit(delegate::getBuckets);
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Object>> getBucket(String key) {
+    return submit(() -> delegate.getBucket(key));
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Object>> createBucket(String key) {
+    return submit(() -> delegate.createBucket(key));
+  }
+
+
+  // ------------------------ Objects ------------------------
+
+  @Override
+  @Deprecated
+  public CompletableFuture<InputStream> getLatestRepoObject(RepoId id) {
+    return submit(() -> delegate.getLatestRepoObject(id));
+  }
+
+  @Override
+  public CompletableFuture<InputStream> getRepoObject(RepoVersion version) {
+    return submit(() -> delegate.getRepoObject(version));
+  }
+
+  @Override
+  public CompletableFuture<InputStream> getRepoObject(RepoVersionNumber number) {
+    return submit(() -> delegate.getRepoObject(number));
+  }
+
+  @Override
+  public CompletableFuture<InputStream> getRepoObjectRange(RepoVersion version, long offset, long length) {
+    return submit(() -> delegate.getRepoObjectRange(version, offset, length));
+  }
+
+  @Override
+  public CompletableFuture<InputStream> getVerifiedRepoObject(RepoObjectMetadata metadata) {
+    return submit(() -> delegate.getVerifiedRepoObject(metadata));
+  }
+
+  @Override
+  public CompletableFuture<InputStream> getResumableRepoObject(RepoObjectMetadata metadata, int retryBudget) {
+    return submit(() -> delegate.getResumableRepoObject(metadata, retryBudget));
+  }
+
+  @Override
+  public CompletableFuture<InputStream> getReproxiedRepoObject(RepoObjectMetadata metadata) {
+    return submit(() -> delegate.getReproxiedRepoObject(metadata));
+  }
+
+  @Override
+  @Deprecated
+  public CompletableFuture<RepoObjectMetadata> getLatestRepoObjectMetadata(RepoId id) {
+    return submit(() -> delegate.getLatestRepoObjectMetadata(id));
+  }
+
+  @Override
+  public CompletableFuture<RepoObjectMetadata> getRepoObjectMetadata(RepoVersion version) {
+    return submit(() -> delegate.getRepoObjectMetadata(version));
+  }
+
+  @Override
+  public CompletableFuture<RepoObjectMetadata> getRepoObjectMetadata(RepoVersionNumber number) {
+    return submit(() -> delegate.getRepoObjectMetadata(number));
+  }
+
+  @Override
+  public CompletableFuture<RepoObjectMetadata> getRepoObjectMetadata(RepoVersionTag tagObj) {
+    return submit(() -> delegate.getRepoObjectMetadata(tagObj));
+  }
+
+  @Override
+  public CompletableFuture<List<RepoObjectMetadata>> getRepoObjectVersions(RepoId id) {
+    return submit(() -> delegate.getRepoObjectVersions(id));
+  }
+
+  @Override
+  public CompletableFuture<BatchResult<RepoVersion, RepoObjectMetadata>> getRepoObjectMetadataForVersions(Collection<RepoVersion> versions) {
+    return submit(() -> delegate.getRepoObjectMetadataForVersions(versions));
+  }
+
+  @Override
+  public CompletableFuture<BatchResult<RepoVersionNumber, RepoObjectMetadata>> getRepoObjectMetadataForVersionNumbers(Collection<RepoVersionNumber> numbers) {
+    return submit(() -> delegate.getRepoObjectMetadataForVersionNumbers(numbers));
+  }
+
+  @Override
+  public CompletableFuture<BatchResult<RepoVersionTag, RepoObjectMetadata>> getRepoObjectMetadataForVersionTags(Collection<RepoVersionTag> tags) {
+    return submit(() -> delegate.getRepoObjectMetadataForVersionTags(tags));
+  }
+
+  @Override
+  @Deprecated
+  public CompletableFuture<Boolean> deleteLatestRepoObject(RepoId id) {
+    return submit(() -> delegate.deleteLatestRepoObject(id));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> deleteRepoObject(RepoVersion version) {
+    return submit(() -> delegate.deleteRepoObject(version));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> deleteRepoObject(RepoVersionNumber number) {
+    return submit(() -> delegate.deleteRepoObject(number));
+  }
+
+  @Override
+  public CompletableFuture<RepoObjectMetadata> createRepoObject(RepoObjectInput repoObjectInput) {
+    return submit(() -> delegate.createRepoObject(repoObjectInput));
+  }
+
+  @Override
+  public CompletableFuture<RepoObjectMetadata> versionRepoObject(RepoObjectInput repoObjectInput) {
+    return submit(() -> delegate.versionRepoObject(repoObjectInput));
+  }
+
+  @Override
+  public CompletableFuture<RepoObjectMetadata> autoCreateRepoObject(RepoObjectInput repoObjectInput) {
+    return submit(() -> delegate.autoCreateRepoObject(repoObjectInput));
+  }
+
+  @Override
+  public CompletableFuture<List<RepoObjectMetadata>> getRepoObjects(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    return submit(() -> delegate.getRepoObjects(bucketName, offset, limit, includeDeleted, tag));
+  }
+
+
+  // ------------------------ Collections ------------------------
+
+  @Override
+  public CompletableFuture<RepoCollectionList> createCollection(RepoCollectionInput repoCollectionInput) {
+    return submit(() -> delegate.createCollection(repoCollectionInput));
+  }
+
+  @Override
+  public CompletableFuture<RepoCollectionList> versionCollection(RepoCollectionInput repoCollectionInput) {
+    return submit(() -> delegate.versionCollection(repoCollectionInput));
+  }
+
+  @Override
+  public CompletableFuture<RepoCollectionList> autoCreateCollection(RepoCollectionInput repoCollectionInput) {
+    return submit(() -> delegate.autoCreateCollection(repoCollectionInput));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> deleteCollection(RepoVersion version) {
+    return submit(() -> delegate.deleteCollection(version));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> deleteCollection(RepoVersionNumber number) {
+    return submit(() -> delegate.deleteCollection(number));
+  }
+
+  @Override
+  public CompletableFuture<RepoCollectionList> getCollection(RepoVersion version) {
+    return submit(() -> delegate.getCollection(version));
+  }
+
+  @Override
+  public CompletableFuture<RepoCollectionList> getCollection(RepoVersionNumber number) {
+    return submit(() -> delegate.getCollection(number));
+  }
+
+  @Override
+  public CompletableFuture<RepoCollectionList> getCollection(RepoVersionTag tagObj) {
+    return submit(() -> delegate.getCollection(tagObj));
+  }
+
+  @Override
+  public CompletableFuture<RepoCollectionMetadata> getLatestCollection(RepoId id) {
+    return submit(() -> delegate.getLatestCollection(id));
+  }
+
+  @Override
+  public CompletableFuture<List<RepoCollectionList>> getCollectionVersions(RepoId id) {
+    return submit(() -> delegate.getCollectionVersions(id));
+  }
+
+  @Override
+  public CompletableFuture<List<RepoCollectionMetadata>> getCollections(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    return submit(() -> delegate.getCollections(bucketName, offset, limit, includeDeleted, tag));
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Makes test-friendly UUIDs that must <em>not</em> be used for real purposes.
+ * <p>
+ * The first eight digits of each generated value increment from {@code 00000001}. This is a convenience for human
+ * inspection during debugging. Tests should not rely on these numbers for validation (they are unstable if the system
+ * under test does things in a different order).
+ * <p>
+ * The remaining digits are produced by {@link ThreadLocalRandom}, which avoids the overhead of {@link
+ * java.security.SecureRandom} but does not adequately prevent collisions. (Of course, tampering with the first eight
+ * digits also increases the risk of collisions, so if this is a concern something is wrong.)
+ * <p>
+ * Thread-safe.
+ */
+class FakeUuidGenerator implements Supplier<UUID> {
+  private final AtomicInteger counter = new AtomicInteger();
+
+  @Override
+  public UUID get() {
+    ThreadLocalRandom random = ThreadLocalRandom.current(); // insecure
+
+    // Leave the highest 4 bytes blank to hold the counter. Randomize the next 4 bytes.
+    long high = ((1L << 32) - 1) & (long) random.nextInt();
+
+    high |= (long) counter.incrementAndGet() << 32; // Fill in the counter and increment
+    high = high & ~(0xfL << 12) | (0x4L << 12); // Set the version number
+
+    long low = random.nextLong(); // Randomize the lowest 8 bytes
+    low = low & ~(0xcL << 60) | (0x8L << 60); // Set 2 bits to signify the variant
+
+    return new UUID(high, low);
+  }
+}
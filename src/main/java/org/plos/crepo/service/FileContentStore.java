@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.util.Objects;
+
+/**
+ * Stores content durably in files named by the content's hash, so that identical content is stored only once. Content
+ * is first written to a temporary file, then synced and moved into place, so a file under its hash's name is always
+ * complete. The directory entries are synced after the move, so a stored file survives a crash.
+ * <p>
+ * Files are never deleted by the store, because the content may be referenced by a durable record elsewhere; see
+ * {@link FileSystemContentRepoService}.
+ * <p>
+ * Thread-safe.
+ */
+public class FileContentStore implements ContentStore {
+
+  private static final String TEMPORARY_FILE_PREFIX = "upload-";
+
+  /**
+   * Content in a file named by its hash.
+   */
+  public static class Blob implements StoredContent {
+    private final Path file;
+    private final HashCode hash;
+    private final long size;
+
+    private Blob(Path file, HashCode hash, long size) {
+      this.file = file;
+      this.hash = hash;
+      this.size = size;
+    }
+
+    /**
+     * @return the hash of the content, computed with {@link ChecksumVerifyingInputStream#CHECKSUM_ALGORITHM}
+     */
+    public HashCode getHash() {
+      return hash;
+    }
+
+    @Override
+    public long size() {
+      return size;
+    }
+
+    @Override
+    public InputStream open() {
+      try {
+        return Files.newInputStream(file);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public InputStream open(long offset, long length) {
+      Preconditions.checkPositionIndex((int) Math.min(offset, Integer.MAX_VALUE), (int) Math.min(size, Integer.MAX_VALUE));
+      Preconditions.checkArgument(length >= 0L);
+      try {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channel.position(offset);
+        return ByteStreams.limit(Channels.newInputStream(channel), length);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void release() {
+      // the file is kept for any durable references to it
+    }
+  }
+
+  private final Path directory;
+
+  /**
+   * @param directory the directory in which to keep the files, which is created if it does not exist
+   * @throws IOException if the directory cannot be created
+   */
+  public FileContentStore(Path directory) throws IOException {
+    this.directory = Files.createDirectories(Objects.requireNonNull(directory));
+  }
+
+  /**
+   * @return the file for content with the given hash, in a subdirectory named by the first two digits of the hash
+   */
+  private Path getFile(HashCode hash) {
+    String name = hash.toString();
+    return directory.resolve(name.substring(0, 2)).resolve(name.substring(2));
+  }
+
+  @Override
+  public Blob store(InputStream content) throws IOException {
+    Path temporaryFile = Files.createTempFile(directory, TEMPORARY_FILE_PREFIX, ".tmp");
+    try {
+      DigestInputStream hashingStream = ChecksumVerifyingInputStream.digesting(content);
+      long size;
+      try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+        size = ByteStreams.copy(hashingStream, Channels.newOutputStream(channel));
+        channel.force(false);
+      }
+      HashCode hash = ChecksumVerifyingInputStream.hash(hashingStream);
+      Path file = getFile(hash);
+      if (!Files.exists(file)) {
+        Path subdirectory = file.getParent();
+        boolean newSubdirectory = !Files.isDirectory(subdirectory);
+        Files.createDirectories(subdirectory);
+        try {
+          Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+          // stored concurrently
+        }
+        syncDirectory(subdirectory);
+        if (newSubdirectory) {
+          syncDirectory(directory);
+        }
+      }
+      return new Blob(file, hash, size);
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+  }
+
+  /**
+   * Sync a directory's entries to disk, so that a file moved into it survives a crash. Platforms that cannot open a
+   * directory as a channel, such as Windows, are skipped.
+   */
+  private static void syncDirectory(Path directory) throws IOException {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(directory, StandardOpenOption.READ);
+    } catch (IOException e) {
+      return;
+    }
+    try (FileChannel c = channel) {
+      c.force(true);
+    }
+  }
+
+  /**
+   * Get content that has already been stored, without checking that its file exists.
+   *
+   * @param hash the hash of the content
+   * @param size the length of the content in bytes
+   */
+  public Blob get(HashCode hash, long size) {
+    return new Blob(getFile(hash), hash, size);
+  }
+
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.gson.Gson;
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionNumber;
+import org.plos.crepo.model.input.RepoCollectionInput;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+import org.plos.crepo.service.InMemoryContentRepoService.InMemoryContentRepoServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A durable, local stand-in for the content repo, for developer machines and offline CI. It keeps its state in a
+ * directory, which survives restarts:
+ * <ul>
+ * <li>{@value #CONTENT_DIRECTORY_NAME}: object content, stored once per distinct hash by a {@link
+ * FileContentStore}</li>
+ * <li>{@value #JOURNAL_FILE_NAME}: an append-only log with one JSON entry per line for each change: a bucket created,
+ * an object or collection version added, or a version deleted</li>
+ * </ul>
+ * <p>
+ * Lookups are served from indexes in memory, held by a {@link ConcurrentInMemoryContentRepoService}, so this class has
+ * the same semantics for versions, tags, {@link org.plos.crepo.model.Status#DELETED} and paging. At startup, the
+ * indexes are rebuilt by replaying the journal, which reads only the journal and not the content. Each change is
+ * appended to the journal and synced to disk before it is applied to the indexes, so lookups never see a change that
+ * would be lost in a crash. A change that then fails validation, such as a new object under a key that already exists,
+ * is cut from the journal again. If the process dies while appending, the incomplete last line is discarded at the
+ * next startup, and if it dies before cutting a failed change, the change fails again and is skipped.
+ * <p>
+ * Content files are never deleted, including those of deleted versions or of uploads that failed validation.
+ * <p>
+ * Thread-safe. Changes are serialized, while lookups run concurrently. Only one instance, in any process, may use a
+ * directory at a time.
+ */
+public class FileSystemContentRepoService extends ForwardingContentRepoService implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(FileSystemContentRepoService.class);
+
+  public static final String CONTENT_DIRECTORY_NAME = "content";
+  public static final String JOURNAL_FILE_NAME = "journal.log";
+
+  private static enum Operation {
+    CREATE_BUCKET, ADD_OBJECT, ADD_COLLECTION, DELETE_OBJECT, DELETE_COLLECTION
+  }
+
+  /**
+   * A version that a journaled collection contains.
+   */
+  private static class VersionEntry {
+    private String bucket;
+    private String key;
+    private String uuid;
+  }
+
+  /**
+   * A line of the journal. Fields that do not apply to the operation are null, and omitted from the JSON.
+   */
+  private static class JournalEntry {
+    private Operation operation;
+    private Boolean mustExist; // for an added version; see ConcurrentInMemoryContentRepoService#addObject
+    private String bucket;
+    private String key;
+    private String uuid;
+    private Long time; // in epoch milliseconds: the creation date of an added version, or the timestamp of a deletion
+    private String tag;
+    private String userMetadata;
+    private String downloadName;
+    private String contentType;
+    private String hash;
+    private Long size;
+    private List<VersionEntry> objects;
+
+    private JournalEntry(Operation operation, String bucket, String key) {
+      this.operation = operation;
+      this.bucket = bucket;
+      this.key = key;
+    }
+  }
+
+  private final Gson gson = new Gson();
+  private final FileContentStore contentStore;
+  private final ConcurrentInMemoryContentRepoService index;
+  private final FileChannel journal; // guarded by this
+
+  // The values for the index to use for the entry being applied. Guarded by this.
+  private UUID nextUuid;
+  private Timestamp nextTime;
+
+  /**
+   * Open a repo, creating it if the directory is empty or does not exist.
+   *
+   * @param directory the directory that holds the repo's state
+   * @throws IOException if the directory cannot be read or created, the journal is corrupt, or the repo is in use
+   */
+  public FileSystemContentRepoService(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    this.contentStore = new FileContentStore(directory.resolve(CONTENT_DIRECTORY_NAME));
+    this.index = new ConcurrentInMemoryContentRepoService(contentStore, ImmutableSet.of(),
+        () -> Objects.requireNonNull(nextUuid), () -> Objects.requireNonNull(nextTime));
+    this.journal = FileChannel.open(directory.resolve(JOURNAL_FILE_NAME),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      lock();
+      replay();
+    } catch (IOException | RuntimeException e) {
+      journal.close();
+      throw e;
+    }
+  }
+
+  @Override
+  protected ContentRepoService delegate() {
+    return index;
+  }
+
+  private void lock() throws IOException {
+    boolean locked;
+    try {
+      locked = journal.tryLock() != null;
+    } catch (OverlappingFileLockException e) {
+      locked = false;
+    }
+    if (!locked) {
+      throw new IOException("The repo is in use by another instance");
+    }
+  }
+
+  /**
+   * Rebuild the indexes from the journal, and leave it positioned for appending.
+   */
+  private synchronized void replay() throws IOException {
+    InputStream stream = new BufferedInputStream(Channels.newInputStream(journal));
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    long position = 0L;
+    long lineStart = 0L;
+    int lineNumber = 0;
+    int b;
+    while ((b = stream.read()) >= 0) {
+      position++;
+      if (b != '\n') {
+        line.write(b);
+        continue;
+      }
+      lineNumber++;
+      JournalEntry entry;
+      try {
+        entry = gson.fromJson(new String(line.toByteArray(), StandardCharsets.UTF_8), JournalEntry.class);
+      } catch (RuntimeException e) {
+        throw new IOException("Corrupt journal entry at line " + lineNumber, e);
+      }
+      try {
+        if (Boolean.FALSE.equals(apply(entry))) {
+          log.warn("Skipping a journal entry that changed nothing at line {}", lineNumber);
+        }
+      } catch (InMemoryContentRepoServiceException e) {
+        log.warn("Skipping a journal entry that failed validation at line {}", lineNumber);
+      } catch (RuntimeException e) {
+        throw new IOException("Corrupt journal entry at line " + lineNumber, e);
+      }
+      line.reset();
+      lineStart = position;
+    }
+    if (line.size() > 0) {
+      log.warn("Discarding an incomplete journal entry at line {}", lineNumber + 1);
+      journal.truncate(lineStart);
+    }
+    journal.position(lineStart);
+  }
+
+  /**
+   * Apply a change to the indexes.
+   *
+   * @return the result of the index's method
+   */
+  private Object apply(JournalEntry entry) {
+    nextUuid = (entry.uuid == null) ? null : UUID.fromString(entry.uuid);
+    nextTime = (entry.time == null) ? null : new Timestamp(entry.time);
+    switch (entry.operation) {
+      case CREATE_BUCKET:
+        return index.createBucket(entry.bucket);
+      case ADD_OBJECT:
+        RepoObjectInput objectInput = RepoObjectInput.builder(entry.bucket, entry.key)
+            .setTag(entry.tag)
+            .setUserMetadata(entry.userMetadata)
+            .setDownloadName(entry.downloadName)
+            .setContentType(entry.contentType)
+            .build();
+        HashCode hash = HashCode.fromString(entry.hash);
+        return index.addObject(objectInput, entry.mustExist, contentStore.get(hash, entry.size), hash);
+      case ADD_COLLECTION:
+        List<RepoVersion> objects = new ArrayList<>(entry.objects.size());
+        for (VersionEntry object : entry.objects) {
+          objects.add(RepoVersion.create(object.bucket, object.key, object.uuid));
+        }
+        RepoCollectionInput collectionInput = RepoCollectionInput.builder(entry.bucket, entry.key)
+            .setTag(entry.tag)
+            .setUserMetadata(entry.userMetadata)
+            .setObjects(objects)
+            .build();
+        return (entry.mustExist == null) ? index.autoCreateCollection(collectionInput)
+            : entry.mustExist ? index.versionCollection(collectionInput)
+            : index.createCollection(collectionInput);
+      case DELETE_OBJECT:
+        return index.deleteRepoObject(RepoVersion.create(entry.bucket, entry.key, entry.uuid));
+      case DELETE_COLLECTION:
+        return index.deleteCollection(RepoVersion.create(entry.bucket, entry.key, entry.uuid));
+      default:
+        throw new IllegalArgumentException("Unknown operation: " + entry.operation);
+    }
+  }
+
+  /**
+   * Append a change to the journal and then apply it to the indexes. If it fails or changes nothing, cut it from the
+   * journal again.
+   *
+   * @param mustExist for an added version, whether the key must already have a version; see {@link
+   *                  ConcurrentInMemoryContentRepoService#addObject}
+   */
+  @SuppressWarnings("unchecked")
+  private synchronized <T> T record(JournalEntry entry, Boolean mustExist) {
+    entry.mustExist = mustExist;
+    ByteBuffer line = ByteBuffer.wrap((gson.toJson(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+    long start;
+    try {
+      start = journal.position();
+      try {
+        while (line.hasRemaining()) {
+          journal.write(line);
+        }
+        journal.force(false);
+      } catch (IOException e) {
+        try {
+          cut(start);
+        } catch (IOException suppressed) {
+          e.addSuppressed(suppressed);
+        }
+        throw e;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    T result;
+    try {
+      result = (T) apply(entry);
+    } catch (RuntimeException e) {
+      cutQuietly(start);
+      throw e;
+    }
+    if (Boolean.FALSE.equals(result)) {
+      cutQuietly(start);
+    }
+    return result;
+  }
+
+  /**
+   * Remove the end of the journal, from an entry that was not applied.
+   */
+  private void cut(long start) throws IOException {
+    journal.truncate(start);
+    journal.position(start);
+    journal.force(false);
+  }
+
+  private void cutQuietly(long start) {
+    try {
+      cut(start);
+    } catch (IOException e) {
+      // The entry fails again when the journal is replayed, and is skipped then
+      log.warn("Could not remove an entry that was not applied from the journal", e);
+    }
+  }
+
+  private static JournalEntry newVersionEntry(Operation operation, String bucketName, String key) {
+    JournalEntry entry = new JournalEntry(operation, bucketName, key);
+    entry.uuid = UUID.randomUUID().toString();
+    entry.time = System.currentTimeMillis();
+    return entry;
+  }
+
+  private static JournalEntry newDeletionEntry(Operation operation, RepoVersion version) {
+    JournalEntry entry = new JournalEntry(operation, version.getId().getBucketName(), version.getId().getKey());
+    entry.uuid = version.getUuid().toString();
+    entry.time = System.currentTimeMillis();
+    return entry;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    journal.close();
+  }
+
+
+  // ------------------------ Buckets ------------------------
+
+  @Override
+  public Map<String, Object> createBucket(String key) {
+    return record(new JournalEntry(Operation.CREATE_BUCKET, key, null), null);
+  }
+
+
+  // ------------------------ Objects ------------------------
+
+  private RepoObjectMetadata addObject(RepoObjectInput repoObjectInput, Boolean mustExist) {
+    FileContentStore.Blob blob;
+    try (InputStream stream = repoObjectInput.getContentAccessor().open()) {
+      blob = contentStore.store(stream); // outside of the lock, so that uploads run concurrently
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    JournalEntry entry = newVersionEntry(Operation.ADD_OBJECT, repoObjectInput.getBucketName(), repoObjectInput.getKey());
+    entry.tag = repoObjectInput.getTag();
+    entry.userMetadata = repoObjectInput.getUserMetadata();
+    entry.downloadName = repoObjectInput.getDownloadName();
+    entry.contentType = repoObjectInput.getContentType();
+    entry.hash = blob.getHash().toString();
+    entry.size = blob.size();
+    return record(entry, mustExist);
+  }
+
+  @Override
+  public RepoObjectMetadata createRepoObject(RepoObjectInput repoObjectInput) {
+    return addObject(repoObjectInput, false);
+  }
+
+  @Override
+  public RepoObjectMetadata versionRepoObject(RepoObjectInput repoObjectInput) {
+    return addObject(repoObjectInput, true);
+  }
+
+  @Override
+  public RepoObjectMetadata autoCreateRepoObject(RepoObjectInput repoObjectInput) {
+    return addObject(repoObjectInput, null);
+  }
+
+  @Override
+  public boolean deleteRepoObject(RepoVersion version) {
+    return record(newDeletionEntry(Operation.DELETE_OBJECT, version), null);
+  }
+
+  @Override
+  public boolean deleteRepoObject(RepoVersionNumber number) {
+    return deleteRepoObject(index.getRepoObjectMetadata(number).getVersion());
+  }
+
+  @Override
+  @Deprecated
+  public synchronized boolean deleteLatestRepoObject(RepoId id) {
+    RepoObjectMetadata latest;
+    try {
+      latest = index.getLatestRepoObjectMetadata(id);
+    } catch (InMemoryContentRepoServiceException e) {
+      return index.deleteLatestRepoObject(id); // fails in the same way, without changing anything
+    }
+    return deleteRepoObject(latest.getVersion());
+  }
+
+
+  // ------------------------ Collections ------------------------
+
+  private RepoCollectionList addCollection(RepoCollectionInput repoCollectionInput, Boolean mustExist) {
+    JournalEntry entry = newVersionEntry(Operation.ADD_COLLECTION,
+        repoCollectionInput.getBucketName(), repoCollectionInput.getKey());
+    entry.tag = repoCollectionInput.getTag();
+    entry.userMetadata = repoCollectionInput.getUserMetadata();
+    entry.objects = new ArrayList<>(repoCollectionInput.getObjects().size());
+    for (RepoVersion object : repoCollectionInput.getObjects()) {
+      VersionEntry objectEntry = new VersionEntry();
+      objectEntry.bucket = object.getId().getBucketName();
+      objectEntry.key = object.getId().getKey();
+      objectEntry.uuid = object.getUuid().toString();
+      entry.objects.add(objectEntry);
+    }
+    return record(entry, mustExist);
+  }
+
+  @Override
+  public RepoCollectionList createCollection(RepoCollectionInput repoCollectionInput) {
+    return addCollection(repoCollectionInput, false);
+  }
+
+  @Override
+  public RepoCollectionList versionCollection(RepoCollectionInput repoCollectionInput) {
+    return addCollection(repoCollectionInput, true);
+  }
+
+  @Override
+  public RepoCollectionList autoCreateCollection(RepoCollectionInput repoCollectionInput) {
+    return addCollection(repoCollectionInput, null);
+  }
+
+  @Override
+  public boolean deleteCollection(RepoVersion version) {
+    return record(newDeletionEntry(Operation.DELETE_COLLECTION, version), null);
+  }
+
+  @Override
+  public boolean deleteCollection(RepoVersionNumber number) {
+    return deleteCollection(index.getCollection(number).getVersion());
+  }
+
+}
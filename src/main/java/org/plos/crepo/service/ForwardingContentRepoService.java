@@ -0,0 +1,261 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionNumber;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.input.RepoCollectionInput;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoCollectionMetadata;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A service that forwards all method calls to another service. Subclasses override only the methods they decorate, in
+ * the manner of Guava's {@code Forwarding*} classes.
+ */
+public abstract class ForwardingContentRepoService implements ContentRepoService {
+
+  /**
+   * @return the backing service instance that methods are forwarded to
+   */
+  protected abstract ContentRepoService delegate();
+
+
+  @Override
+  public boolean hasXReproxy() {
+    return delegate().hasXReproxy();
+  }
+
+  @Override
+  public Map<String, Object> getRepoConfig() {
+    return delegate().getRepoConfig();
+  }
+
+  @Override
+  public Map<String, Object> getRepoStatus() {
+    return delegate().getRepoStatus();
+  }
+
+  @Override
+  public List<Map<String, Object>> getBuckets() {
+    return delegate().getBuckets();
+  }
+
+  @Override
+  public Map<String, Object> getBucket(String key) {
+    return delegate().getBucket(key);
+  }
+
+  @Override
+  public Map<String, Object> createBucket(String key) {
+    return delegate().createBucket(key);
+  }
+
+  @Override
+  @Deprecated
+  public InputStream getLatestRepoObject(RepoId id) {
+    return delegate().getLatestRepoObject(id);
+  }
+
+  @Override
+  public InputStream getRepoObject(RepoVersion version) {
+    return delegate().getRepoObject(version);
+  }
+
+  @Override
+  public InputStream getRepoObject(RepoVersionNumber number) {
+    return delegate().getRepoObject(number);
+  }
+
+  @Override
+  public InputStream getRepoObjectRange(RepoVersion version, long offset, long length) {
+    return delegate().getRepoObjectRange(version, offset, length);
+  }
+
+  @Override
+  public InputStream getVerifiedRepoObject(RepoObjectMetadata metadata) {
+    return delegate().getVerifiedRepoObject(metadata);
+  }
+
+  @Override
+  public InputStream getResumableRepoObject(RepoObjectMetadata metadata, int retryBudget) {
+    return delegate().getResumableRepoObject(metadata, retryBudget);
+  }
+
+  @Override
+  public InputStream getReproxiedRepoObject(RepoObjectMetadata metadata) {
+    return delegate().getReproxiedRepoObject(metadata);
+  }
+
+  @Override
+  @Deprecated
+  public RepoObjectMetadata getLatestRepoObjectMetadata(RepoId id) {
+    return delegate().getLatestRepoObjectMetadata(id);
+  }
+
+  @Override
+  public RepoObjectMetadata getRepoObjectMetadata(RepoVersion version) {
+    return delegate().getRepoObjectMetadata(version);
+  }
+
+  @Override
+  public RepoObjectMetadata getRepoObjectMetadata(RepoVersionNumber number) {
+    return delegate().getRepoObjectMetadata(number);
+  }
+
+  @Override
+  public RepoObjectMetadata getRepoObjectMetadata(RepoVersionTag tagObj) {
+    return delegate().getRepoObjectMetadata(tagObj);
+  }
+
+  @Override
+  public List<RepoObjectMetadata> getRepoObjectVersions(RepoId id) {
+    return delegate().getRepoObjectVersions(id);
+  }
+
+  @Override
+  public BatchResult<RepoVersion, RepoObjectMetadata> getRepoObjectMetadataForVersions(Collection<RepoVersion> versions) {
+    return delegate().getRepoObjectMetadataForVersions(versions);
+  }
+
+  @Override
+  public BatchResult<RepoVersionNumber, RepoObjectMetadata> getRepoObjectMetadataForVersionNumbers(Collection<RepoVersionNumber> numbers) {
+    return delegate().getRepoObjectMetadataForVersionNumbers(numbers);
+  }
+
+  @Override
+  public BatchResult<RepoVersionTag, RepoObjectMetadata> getRepoObjectMetadataForVersionTags(Collection<RepoVersionTag> tags) {
+    return delegate().getRepoObjectMetadataForVersionTags(tags);
+  }
+
+  @Override
+  @Deprecated
+  public boolean deleteLatestRepoObject(RepoId id) {
+    return delegate().deleteLatestRepoObject(id);
+  }
+
+  @Override
+  public boolean deleteRepoObject(RepoVersion version) {
+    return delegate().deleteRepoObject(version);
+  }
+
+  @Override
+  public boolean deleteRepoObject(RepoVersionNumber number) {
+    return delegate().deleteRepoObject(number);
+  }
+
+  @Override
+  public RepoObjectMetadata createRepoObject(RepoObjectInput repoObjectInput) {
+    return delegate().createRepoObject(repoObjectInput);
+  }
+
+  @Override
+  public RepoObjectMetadata versionRepoObject(RepoObjectInput repoObjectInput) {
+    return delegate().versionRepoObject(repoObjectInput);
+  }
+
+  @Override
+  public RepoObjectMetadata autoCreateRepoObject(RepoObjectInput repoObjectInput) {
+    return delegate().autoCreateRepoObject(repoObjectInput);
+  }
+
+  @Override
+  public List<RepoObjectMetadata> getRepoObjects(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    return delegate().getRepoObjects(bucketName, offset, limit, includeDeleted, tag);
+  }
+
+  @Override
+  public Stream<RepoObjectMetadata> streamRepoObjects(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    return delegate().streamRepoObjects(bucketName, offset, limit, includeDeleted, tag);
+  }
+
+  @Override
+  public RepoCollectionList createCollection(RepoCollectionInput repoCollectionInput) {
+    return delegate().createCollection(repoCollectionInput);
+  }
+
+  @Override
+  public RepoCollectionList versionCollection(RepoCollectionInput repoCollectionInput) {
+    return delegate().versionCollection(repoCollectionInput);
+  }
+
+  @Override
+  public RepoCollectionList autoCreateCollection(RepoCollectionInput repoCollectionInput) {
+    return delegate().autoCreateCollection(repoCollectionInput);
+  }
+
+  @Override
+  public boolean deleteCollection(RepoVersion version) {
+    return delegate().deleteCollection(version);
+  }
+
+  @Override
+  public boolean deleteCollection(RepoVersionNumber number) {
+    return delegate().deleteCollection(number);
+  }
+
+  @Override
+  public RepoCollectionList getCollection(RepoVersion version) {
+    return delegate().getCollection(version);
+  }
+
+  @Override
+  public RepoCollectionList getCollection(RepoVersionNumber number) {
+    return delegate().getCollection(number);
+  }
+
+  @Override
+  public RepoCollectionList getCollection(RepoVersionTag tagObj) {
+    return delegate().getCollection(tagObj);
+  }
+
+  @Override
+  public RepoCollectionMetadata getLatestCollection(RepoId id) {
+    return delegate().getLatestCollection(id);
+  }
+
+  @Override
+  public List<RepoCollectionList> getCollectionVersions(RepoId id) {
+    return delegate().getCollectionVersions(id);
+  }
+
+  @Override
+  public List<RepoCollectionMetadata> getCollections(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    return delegate().getCollections(bucketName, offset, limit, includeDeleted, tag);
+  }
+
+  @Override
+  public Stream<RepoCollectionMetadata> streamCollections(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    return delegate().streamCollections(bucketName, offset, limit, includeDeleted, tag);
+  }
+
+}
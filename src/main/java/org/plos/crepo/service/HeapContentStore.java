@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stores each object's content in a byte array on the heap. Suited to unit tests with small amounts of content.
+ * <p>
+ * Thread-safe.
+ */
+public class HeapContentStore implements ContentStore {
+
+  private static class HeapContent implements StoredContent {
+    private final byte[] content;
+
+    private HeapContent(byte[] content) {
+      this.content = content;
+    }
+
+    @Override
+    public long size() {
+      return content.length;
+    }
+
+    @Override
+    public InputStream open() {
+      return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public InputStream open(long offset, long length) {
+      Preconditions.checkPositionIndex((int) Math.min(offset, Integer.MAX_VALUE), content.length);
+      Preconditions.checkArgument(length >= 0L);
+      int start = (int) offset;
+      return new ByteArrayInputStream(content, start, (int) Math.min(length, content.length - start));
+    }
+
+    @Override
+    public void release() {
+      // the garbage collector reclaims the array
+    }
+  }
+
+  @Override
+  public StoredContent store(InputStream content) throws IOException {
+    return new HeapContent(ByteStreams.toByteArray(content));
+  }
+
+}
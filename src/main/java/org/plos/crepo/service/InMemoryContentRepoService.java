@@ -29,9 +29,6 @@ import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.hash.HashCode;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
-import com.google.common.io.ByteStreams;
 import org.plos.crepo.model.Status;
 import org.plos.crepo.model.identity.RepoId;
 import org.plos.crepo.model.identity.RepoVersion;
@@ -47,6 +44,7 @@ import org.plos.crepo.model.metadata.RepoObjectMetadata;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.DigestInputStream;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -55,17 +53,21 @@ import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * An implementation of the client-side service interface with a local, in-memory implementation behind it. Intended for
  * unit tests. The service implementation is rudimentary, is not performant, and does not guarantee a perfect simulation
  * of an actual Content Repo server in edge cases or error conditions.
  * <p>
- * Not thread-safe.
+ * Content is stored once per distinct hash, so versions, copies in other buckets and re-uploads of the same content
+ * share one copy.
+ * <p>
+ * Not thread-safe. See {@link ConcurrentInMemoryContentRepoService} for a thread-safe, indexed variant.
  */
 public class InMemoryContentRepoService implements ContentRepoService {
 
@@ -74,19 +76,14 @@ public class InMemoryContentRepoService implements ContentRepoService {
    * This class does not guarantee that it will simulate every real-life validation failure.
    */
   public static class InMemoryContentRepoServiceException extends RuntimeException {
-    private InMemoryContentRepoServiceException() {
+    InMemoryContentRepoServiceException() {
     }
   }
 
-  /**
-   * The hash function that the fake service uses to produce content checksums.
-   */
-  private static final HashFunction CONTENT_HASH_FUNCTION = Hashing.sha1();
-
   /**
    * Behaves the same as ImmutableMap.Builder, except that it ignores null values.
    */
-  private static class NullSafeMapBuilder<K, V> {
+  static class NullSafeMapBuilder<K, V> {
     private final ImmutableMap.Builder<K, V> delegate = ImmutableMap.builder();
 
     public ImmutableMap<K, V> build() {
@@ -150,26 +147,27 @@ public class InMemoryContentRepoService implements ContentRepoService {
   }
 
   private class FakeObject extends FakeEntity<RepoObjectMetadata> {
-    private final byte[] content;
+    private final ContentStore.StoredContent content;
     private final HashCode contentHash;
     private String downloadName;
     private String contentType;
 
-    private FakeObject(String bucketName, String key, int number, String tag, byte[] content) {
+    private FakeObject(String bucketName, String key, int number, String tag,
+                       ContentStore.StoredContent content, HashCode contentHash) {
       super(bucketName, key, number, tag);
-      this.content = content; // must be created internally
-      this.contentHash = CONTENT_HASH_FUNCTION.hashBytes(this.content);
+      this.content = content; // must be created internally; may be shared with other objects that have the same hash
+      this.contentHash = contentHash;
     }
 
     private InputStream open() {
-      return new ByteArrayInputStream(content);
+      return content.open();
     }
 
     @Override
     public RepoObjectMetadata getMetadata() {
       return new RepoObjectMetadata(version.getId().getBucketName(), buildMetadata()
           .put("checksum", contentHash.toString())
-          .put("size", content.length)
+          .put("size", content.size())
           .put("downloadName", downloadName)
           .put("contentType", contentType)
           .build());
@@ -197,36 +195,6 @@ public class InMemoryContentRepoService implements ContentRepoService {
   }
 
 
-  /**
-   * Makes test-friendly UUIDs that must <em>not</em> be used for real purposes.
-   * <p>
-   * The first eight digits of each generated value increment from {@code 00000001}. This is a convenience for human
-   * inspection during debugging. Tests should not rely on these numbers for validation (they are unstable if the system
-   * under test does things in a different order).
-   * <p>
-   * The remaining digits are produced by {@link java.util.Random}, which avoids the overhead of {@link
-   * java.security.SecureRandom} but does not adequately prevent collisions. (Of course, tampering with the first eight
-   * digits also increases the risk of collisions, so if this is a concern something is wrong.)
-   */
-  private static class FakeUuidGenerator implements Supplier<UUID> {
-    private final Random random = new Random(); // insecure
-    private int counter = 0;
-
-    @Override
-    public UUID get() {
-      // Leave the highest 4 bytes blank to hold the counter. Randomize the next 4 bytes.
-      long high = ((1L << 32) - 1) & (long) random.nextInt();
-
-      high |= (long) (++counter) << 32; // Fill in the counter and increment
-      high = high & ~(0xfL << 12) | (0x4L << 12); // Set the version number
-
-      long low = random.nextLong(); // Randomize the lowest 8 bytes
-      low = low & ~(0xcL << 60) | (0x8L << 60); // Set 2 bits to signify the variant
-
-      return new UUID(high, low);
-    }
-  }
-
   /**
    * This can replace the FakeUuidGenerator, in case this in-memory implementation is ever needed outside of a testing
    * context for some reason.
@@ -237,6 +205,8 @@ public class InMemoryContentRepoService implements ContentRepoService {
   private final Supplier<UUID> uuidGenerator = new FakeUuidGenerator();
   private final Map<String, FakeBucket> buckets = new HashMap<>();
   private final ImmutableSet<String> initialBuckets;
+  private final ContentStore contentStore;
+  private final ContentIndex contentIndex = new ContentIndex();
 
   public InMemoryContentRepoService() {
     this(ImmutableSet.of());
@@ -247,11 +217,26 @@ public class InMemoryContentRepoService implements ContentRepoService {
   }
 
   public InMemoryContentRepoService(Iterable<String> initialBuckets) {
+    this(new HeapContentStore(), initialBuckets);
+  }
+
+  /**
+   * @param contentStore   holds the content of objects; for example, a {@link MappedContentStore} keeps large amounts
+   *                       of content off the heap
+   * @param initialBuckets the buckets that exist when the service is created or cleared
+   */
+  public InMemoryContentRepoService(ContentStore contentStore, Iterable<String> initialBuckets) {
+    this.contentStore = Objects.requireNonNull(contentStore);
     this.initialBuckets = ImmutableSet.copyOf(initialBuckets);
     clear();
   }
 
   public void clear() {
+    for (FakeBucket bucket : buckets.values()) {
+      for (FakeObject object : bucket.objects.values()) {
+        contentIndex.release(object.contentHash);
+      }
+    }
     buckets.clear();
     for (String bucketName : initialBuckets) {
       createBucket(bucketName);
@@ -384,6 +369,18 @@ public class InMemoryContentRepoService implements ContentRepoService {
     return getFrom(this::lookUpObjects, number).open();
   }
 
+  @Override
+  public InputStream getRepoObjectRange(RepoVersion version, long offset, long length) {
+    Preconditions.checkArgument(offset >= 0L);
+    Preconditions.checkArgument(length >= 0L);
+    if (length == 0L) return new ByteArrayInputStream(new byte[0]); // as ContentRepoServiceImpl sends no request
+    ContentStore.StoredContent content = getFrom(this::lookUpObjects, version).content;
+    if (offset >= content.size()) {
+      throw new InMemoryContentRepoServiceException(); // as the server responds 416 Range Not Satisfiable
+    }
+    return content.open(offset, length);
+  }
+
   @Override
   public RepoObjectMetadata getLatestRepoObjectMetadata(RepoId id) {
     return getLatest(this::lookUpObjects, id).getMetadata();
@@ -414,6 +411,21 @@ public class InMemoryContentRepoService implements ContentRepoService {
     return metadata;
   }
 
+  @Override
+  public BatchResult<RepoVersion, RepoObjectMetadata> getRepoObjectMetadataForVersions(Collection<RepoVersion> versions) {
+    return BatchLookup.lookUp(versions, this::getRepoObjectMetadata);
+  }
+
+  @Override
+  public BatchResult<RepoVersionNumber, RepoObjectMetadata> getRepoObjectMetadataForVersionNumbers(Collection<RepoVersionNumber> numbers) {
+    return BatchLookup.lookUp(numbers, this::getRepoObjectMetadata);
+  }
+
+  @Override
+  public BatchResult<RepoVersionTag, RepoObjectMetadata> getRepoObjectMetadataForVersionTags(Collection<RepoVersionTag> tags) {
+    return BatchLookup.lookUp(tags, this::getRepoObjectMetadata);
+  }
+
   private boolean delete(FakeEntity entity) {
     if (entity.status != Status.USED) return false;
     entity.status = Status.DELETED;
@@ -474,14 +486,19 @@ public class InMemoryContentRepoService implements ContentRepoService {
     List<FakeObject> existing = get(bucketName).objects.get(key);
     int versionNumber = getNextVersionNumber(existing);
 
-    byte[] content;
+    ContentStore.StoredContent content;
+    HashCode contentHash;
     try (InputStream stream = repoObjectInput.getContentAccessor().open()) {
-      content = ByteStreams.toByteArray(stream);
+      DigestInputStream hashingStream = ChecksumVerifyingInputStream.digesting(stream);
+      ContentStore.StoredContent stored = contentStore.store(hashingStream);
+      contentHash = ChecksumVerifyingInputStream.hash(hashingStream);
+      content = contentIndex.retain(contentHash, stored);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
 
-    FakeObject created = new FakeObject(bucketName, key, versionNumber, repoObjectInput.getTag(), content);
+    FakeObject created = new FakeObject(bucketName, key, versionNumber, repoObjectInput.getTag(),
+        content, contentHash);
     created.userMetadata = repoObjectInput.getUserMetadata();
     created.downloadName = repoObjectInput.getDownloadName();
     created.contentType = repoObjectInput.getContentType();
@@ -514,6 +531,11 @@ public class InMemoryContentRepoService implements ContentRepoService {
     return getEntitySlice(get(bucketName).objects.values(), offset, limit, includeDeleted, tag);
   }
 
+  @Override
+  public Stream<RepoObjectMetadata> streamRepoObjects(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    return getRepoObjects(bucketName, offset, limit, includeDeleted, tag).stream();
+  }
+
   @Override
   public RepoCollectionList createCollection(RepoCollectionInput repoCollectionInput) {
     if (get(repoCollectionInput.getBucketName()).collections.containsKey(repoCollectionInput.getKey())) {
@@ -594,4 +616,9 @@ public class InMemoryContentRepoService implements ContentRepoService {
         get(bucketName).collections.values(), offset, limit, includeDeleted, tag);
   }
 
+  @Override
+  public Stream<RepoCollectionMetadata> streamCollections(String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
+    return getCollections(bucketName, offset, limit, includeDeleted, tag).stream();
+  }
+
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import org.plos.crepo.exceptions.ContentRepoException;
+import org.plos.crepo.exceptions.ErrorType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the elements of a JSON array one at a time, so that only the current element is held in memory. The
+ * underlying resource is closed as soon as the end of the array is reached, or when {@link #close()} is called.
+ * <p>
+ * A null element is rejected with a {@link JsonSyntaxException}, so that the iterator never returns null.
+ *
+ * @param <T> the type each array element is parsed into
+ */
+class JsonArrayIterator<T> implements Iterator<T>, Closeable {
+
+  /**
+   * Parses one array element. Implementations must consume exactly one JSON value from the reader.
+   */
+  @FunctionalInterface
+  static interface ElementParser<T> {
+    T parse(JsonReader reader) throws IOException;
+  }
+
+  private final JsonReader reader;
+  private final ElementParser<? extends T> parser;
+  private final Closeable resource;
+
+  private boolean started = false;
+  private boolean closed = false;
+
+  /**
+   * @param reader   a reader positioned before the opening bracket of the array
+   * @param parser   parses each element
+   * @param resource closed along with the reader, such as the HTTP response that the reader's input came from
+   */
+  JsonArrayIterator(JsonReader reader, ElementParser<? extends T> parser, Closeable resource) {
+    this.reader = Objects.requireNonNull(reader);
+    this.parser = Objects.requireNonNull(parser);
+    this.resource = Objects.requireNonNull(resource);
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (closed) {
+      return false;
+    }
+    try {
+      if (!started) {
+        reader.beginArray();
+        started = true;
+      }
+      if (reader.hasNext()) {
+        return true;
+      }
+      reader.endArray();
+      close();
+      return false;
+    } catch (IOException e) {
+      throw streamingException(e);
+    }
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    T element;
+    try {
+      element = parser.parse(reader);
+    } catch (IOException e) {
+      throw streamingException(e);
+    }
+    if (element == null) {
+      throw new JsonSyntaxException("Unexpected null element " + reader);
+    }
+    return element;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      reader.close();
+    } finally {
+      resource.close();
+    }
+  }
+
+  /**
+   * Wraps this iterator in a sequential stream. Closing the stream closes this iterator.
+   */
+  Stream<T> stream() {
+    Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+    return StreamSupport.stream(spliterator, false).onClose(() -> {
+      try {
+        close();
+      } catch (IOException e) {
+        throw streamingException(e);
+      }
+    });
+  }
+
+  private static ContentRepoException streamingException(IOException e) {
+    return new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ServerError)
+        .baseException(e)
+        .build();
+  }
+
+}
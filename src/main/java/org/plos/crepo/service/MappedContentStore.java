@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Stores content off the heap, in memory-mapped temporary files, so that large amounts of content neither fill the
+ * heap nor slow down garbage collection. The operating system pages the content to and from disk as needed.
+ * <p>
+ * Content smaller than 64 KB is packed into slabs: files of a fixed size that are mapped whole. Larger content, and
+ * content that does not fit in an empty slab, gets a file of its own, mapped to its exact size. Streams read straight
+ * from the mapped buffers. The caller's stream is read before any slab space is reserved, into a buffer if the content
+ * is small or otherwise straight into its own file, so a slow upload does not hold up others and no content is written
+ * twice. Each file is deleted as soon as it is mapped, so its disk space is released when the store and all of its
+ * content are garbage-collected.
+ * <p>
+ * Each object's content is limited to {@link Integer#MAX_VALUE} bytes, the size of one mapping.
+ * <p>
+ * Thread-safe.
+ */
+public class MappedContentStore implements ContentStore {
+  private static final Logger log = LoggerFactory.getLogger(MappedContentStore.class);
+
+  /**
+   * The default size, in bytes, of the files into which content is packed.
+   */
+  public static final int DEFAULT_SLAB_SIZE = 64 * 1024 * 1024;
+
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+  private class MappedContent implements StoredContent {
+    private final ByteBuffer content; // read-only; duplicated for each reader
+    private final ByteBuffer source; // the slab that holds the content, or null if it has its own file
+    private final int slabPosition; // the content's position in the slab
+
+    private MappedContent(ByteBuffer content, ByteBuffer source, int slabPosition) {
+      this.content = content;
+      this.source = source;
+      this.slabPosition = slabPosition;
+    }
+
+    @Override
+    public long size() {
+      return content.capacity();
+    }
+
+    @Override
+    public InputStream open() {
+      return new ByteBufferInputStream(content.duplicate());
+    }
+
+    @Override
+    public InputStream open(long offset, long length) {
+      Preconditions.checkPositionIndex((int) Math.min(offset, Integer.MAX_VALUE), content.capacity());
+      Preconditions.checkArgument(length >= 0L);
+      int start = (int) offset;
+      return new ByteBufferInputStream(slice(content, start, start + (int) Math.min(length, content.capacity() - start)));
+    }
+
+    /**
+     * Leave the space alone, because streams opened earlier may still be reading it. Space is reclaimed only when its
+     * whole file is garbage-collected.
+     */
+    @Override
+    public void release() {
+    }
+
+    /**
+     * Give back the content's space if it is still the last thing in the current slab, as it is when a duplicate is
+     * discarded right after being stored.
+     */
+    @Override
+    public void discard() {
+      synchronized (MappedContentStore.this) {
+        if (source != null && source == slab && slab.position() == slabPosition + content.capacity()) {
+          slab.position(slabPosition);
+        }
+      }
+    }
+  }
+
+  private final Path directory;
+  private final int slabSize;
+  private ByteBuffer slab; // guarded by this
+
+  /**
+   * Create a store in the system's temporary directory, with the default slab size.
+   */
+  public MappedContentStore() {
+    this(Paths.get(System.getProperty("java.io.tmpdir")), DEFAULT_SLAB_SIZE);
+  }
+
+  /**
+   * @param directory the directory in which to create the temporary files
+   * @param slabSize  the size of the files into which content is packed
+   */
+  public MappedContentStore(Path directory, int slabSize) {
+    Preconditions.checkArgument(slabSize > 0);
+    this.directory = Objects.requireNonNull(directory);
+    this.slabSize = slabSize;
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int start, int end) {
+    ByteBuffer view = buffer.duplicate();
+    view.limit(end);
+    view.position(start);
+    return view.slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * Map a new temporary file, and delete it, leaving only the mapping.
+   */
+  private MappedByteBuffer mapTemporaryFile(long size, FileChannelWriter writer) throws IOException {
+    Path file = Files.createTempFile(directory, "crepo-content-", ".bin");
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      if (writer == null) {
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+      }
+      writer.write(channel);
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Content is larger than " + Integer.MAX_VALUE + " bytes");
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+    } finally {
+      try {
+        Files.delete(file);
+      } catch (IOException e) {
+        log.warn("Could not delete " + file + "; it will be deleted on exit", e);
+        file.toFile().deleteOnExit();
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private static interface FileChannelWriter {
+    void write(FileChannel channel) throws IOException;
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  @Override
+  public StoredContent store(InputStream content) throws IOException {
+    // Read the caller's stream without holding the lock: small content into a buffer, the rest into a file of its own
+    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+    int length = ByteStreams.read(content, buffer, 0, buffer.length);
+    ByteBuffer read = ByteBuffer.wrap(buffer, 0, length);
+    if (length == buffer.length || length > slabSize) {
+      return new MappedContent(storeInOwnFile(read, buffer, content), null, 0);
+    }
+    return copyToSlab(read);
+  }
+
+  /**
+   * Reserve space for content in the current slab, or in a new one if it does not fit, and copy the content into it.
+   * Only the reservation holds the lock.
+   */
+  private StoredContent copyToSlab(ByteBuffer content) throws IOException {
+    int length = content.remaining();
+    ByteBuffer target;
+    int start;
+    synchronized (this) {
+      if (slab == null || slab.remaining() < length) {
+        slab = mapTemporaryFile(slabSize, null);
+      }
+      target = slab;
+      start = slab.position();
+      slab.position(start + length);
+    }
+    ByteBuffer region = target.duplicate();
+    region.limit(start + length);
+    region.position(start);
+    region = region.slice();
+    region.duplicate().put(content);
+    return new MappedContent(region.asReadOnlyBuffer(), target, start);
+  }
+
+  /**
+   * Write content to its own file, starting with the part that has already been read.
+   */
+  private ByteBuffer storeInOwnFile(ByteBuffer partial, byte[] buffer, InputStream rest) throws IOException {
+    MappedByteBuffer mapped = mapTemporaryFile(0L, (FileChannel channel) -> {
+      writeFully(channel, partial);
+      int n;
+      while ((n = rest.read(buffer)) >= 0) {
+        writeFully(channel, ByteBuffer.wrap(buffer, 0, n));
+      }
+    });
+    return mapped.asReadOnlyBuffer();
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * An append-only list in which each element is either visible or hidden, supporting pages of only the visible
+ * elements without scanning past the hidden ones or the ones before the page.
+ * <p>
+ * The visible elements are counted in a Fenwick (binary indexed) tree, so the position of the n-th visible element is
+ * found in O(log size). A page of {@code limit} elements costs O(limit log size) regardless of its offset, and
+ * appending or hiding an element costs O(log size).
+ * <p>
+ * Not thread-safe.
+ *
+ * @param <E> the element type
+ */
+class PagedIndex<E> {
+
+  private final List<E> elements = new ArrayList<>();
+
+  /**
+   * {@code tree[i]} holds the number of visible elements among positions {@code (i - lowestOneBit(i), i]}, one-based.
+   */
+  private int[] tree = new int[16];
+  private final BitSet hidden = new BitSet();
+
+  int size() {
+    return elements.size();
+  }
+
+  int visibleCount() {
+    return prefixCount(elements.size());
+  }
+
+  /**
+   * @return the number of visible elements among the first {@code n}
+   */
+  private int prefixCount(int n) {
+    int count = 0;
+    for (int i = n; i > 0; i -= Integer.lowestOneBit(i)) {
+      count += tree[i];
+    }
+    return count;
+  }
+
+  /**
+   * Append an element.
+   *
+   * @return the element's position, which identifies it to {@link #hide}
+   */
+  int add(E element, boolean visible) {
+    int position = elements.size();
+    int i = position + 1;
+    if (i >= tree.length) {
+      tree = Arrays.copyOf(tree, tree.length * 2);
+    }
+    // The new node covers (i - lowestOneBit(i), i], all of which but i itself is already counted
+    tree[i] = prefixCount(i - 1) - prefixCount(i - Integer.lowestOneBit(i)) + (visible ? 1 : 0);
+    elements.add(element);
+    hidden.set(position, !visible);
+    return position;
+  }
+
+  /**
+   * Hide the element at a position, if it is visible.
+   */
+  void hide(int position) {
+    Preconditions.checkElementIndex(position, elements.size());
+    if (hidden.get(position)) return;
+    hidden.set(position);
+    for (int i = position + 1; i <= elements.size(); i += Integer.lowestOneBit(i)) {
+      tree[i]--;
+    }
+  }
+
+  /**
+   * @return the position of the visible element that has {@code rank} visible elements before it
+   */
+  private int findVisible(int rank) {
+    int position = 0;
+    for (int step = Integer.highestOneBit(elements.size()); step > 0; step >>= 1) {
+      int next = position + step;
+      if (next <= elements.size() && tree[next] <= rank) {
+        position = next;
+        rank -= tree[next];
+      }
+    }
+    return position;
+  }
+
+  /**
+   * Get a page of elements in the order they were added.
+   *
+   * @param offset        the number of elements to skip
+   * @param limit         the maximum number of elements to return
+   * @param includeHidden whether to include hidden elements in the page and in the offset
+   */
+  List<E> slice(int offset, int limit, boolean includeHidden) {
+    Preconditions.checkArgument(offset >= 0);
+    Preconditions.checkArgument(limit >= 0);
+    int total = includeHidden ? elements.size() : visibleCount();
+    int end = (int) Math.min((long) offset + limit, total);
+    if (offset >= end) return new ArrayList<>(0);
+
+    List<E> page = new ArrayList<>(end - offset);
+    if (includeHidden) {
+      page.addAll(elements.subList(offset, end));
+    } else {
+      for (int rank = offset; rank < end; rank++) {
+        page.add(elements.get(findVisible(rank)));
+      }
+    }
+    return page;
+  }
+
+}
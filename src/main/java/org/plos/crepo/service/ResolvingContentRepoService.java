@@ -0,0 +1,418 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.plos.crepo.exceptions.NotFoundException;
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionNumber;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.input.RepoCollectionInput;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoCollectionMetadata;
+import org.plos.crepo.model.metadata.RepoMetadata;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A service that caches which version a tag or an object's latest version points to.
+ * <p>
+ * Lookups by {@link RepoVersionTag} and of the latest version of a {@link RepoId} follow a pointer that can move, so
+ * their results cannot be cached like those of UUID-addressed lookups. This class remembers the {@link RepoVersion}
+ * that each pointer resolved to, and serves later lookups through the delegate by that version instead. Layered over a
+ * {@link CachingContentRepoService}, which caches UUID-addressed metadata, repeated lookups by tag or of the latest
+ * version need no request to the repo.
+ * <p>
+ * A resolution is trusted for the time-to-live. After that, the next lookup still uses it but starts re-resolving the
+ * pointer on the refresh executor; this stale value may be served for up to {@code maxStale} past the time-to-live,
+ * after which the lookup blocks on resolving the pointer again. A resolution is also dropped when the version it points
+ * to is not found, and when an object or collection is created or deleted through this service.
+ * <p>
+ * Thread-safe if the delegate is.
+ */
+public class ResolvingContentRepoService extends ForwardingContentRepoService {
+
+  /**
+   * The default time, in milliseconds, for which a resolution is used without checking it again.
+   */
+  public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 5000L;
+
+  /**
+   * The default time, in milliseconds, after the time-to-live for which a resolution may be used while it is checked
+   * in the background.
+   */
+  public static final long DEFAULT_MAX_STALE_MILLIS = 60000L;
+
+  /**
+   * Runs background resolutions if no executor is provided. Threads are created on demand and are not kept alive.
+   */
+  private static class DefaultRefreshExecutor {
+    private static final Executor INSTANCE = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setNameFormat("content-repo-resolution-refresh-%d").setDaemon(true).build());
+  }
+
+  /**
+   * The tags of each ID that have a cached resolution, so that an ID's tags can be dropped without scanning the cache.
+   * A tag is added when its resolution is cached and removed by the cache's removal listener. Adding a tag together
+   * with its resolution, and dropping an ID's tags, hold the index's lock, so that a resolution cached while its ID is
+   * invalidated is never left out of the index.
+   */
+  private static class TagIndex implements RemovalListener<RepoVersionTag, RepoVersion> {
+    private final Map<RepoId, Set<RepoVersionTag>> tags = new HashMap<>(); // guarded by this
+    private LoadingCache<RepoVersionTag, RepoVersion> cache;
+
+    /**
+     * Cache a tag's resolution and add the tag to the index.
+     */
+    synchronized void put(RepoVersionTag tag, RepoVersion version) {
+      tags.computeIfAbsent(tag.getId(), (RepoId id) -> new HashSet<>()).add(tag);
+      cache.put(tag, version);
+    }
+
+    /**
+     * Remove an ID's tags from the index and discard their resolutions.
+     */
+    synchronized void invalidate(RepoId id) {
+      Set<RepoVersionTag> idTags = tags.remove(id);
+      if (idTags != null) {
+        cache.invalidateAll(idTags);
+      }
+    }
+
+    @Override
+    public synchronized void onRemoval(RemovalNotification<RepoVersionTag, RepoVersion> notification) {
+      RepoVersionTag tag = notification.getKey();
+      Set<RepoVersionTag> idTags = tags.get(tag.getId());
+      // An expired entry may be reported after a put that replaced it, so the tag may have a resolution again
+      if (notification.getCause() == RemovalCause.REPLACED || idTags == null || cache.asMap().containsKey(tag)) {
+        return;
+      }
+      idTags.remove(tag);
+      if (idTags.isEmpty()) {
+        tags.remove(tag.getId());
+      }
+    }
+  }
+
+  private final ContentRepoService delegate;
+  private final long timeToLive;
+  private final long maxStale;
+  private final TimeUnit unit;
+  private final Executor refreshExecutor;
+  private final Ticker ticker;
+
+  private final LoadingCache<RepoVersionTag, RepoVersion> objectTags;
+  private final TagIndex objectTagIndex = new TagIndex();
+  private final LoadingCache<RepoId, RepoVersion> latestObjects;
+  private final LoadingCache<RepoVersionTag, RepoVersion> collectionTags;
+  private final TagIndex collectionTagIndex = new TagIndex();
+  private final LoadingCache<RepoId, RepoVersion> latestCollections;
+
+  public ResolvingContentRepoService(ContentRepoService delegate) {
+    this(delegate, DEFAULT_TIME_TO_LIVE_MILLIS, DEFAULT_MAX_STALE_MILLIS, TimeUnit.MILLISECONDS,
+        DefaultRefreshExecutor.INSTANCE);
+  }
+
+  /**
+   * @param delegate        the service to decorate
+   * @param timeToLive      the time for which a resolution is used without checking it again
+   * @param maxStale        the time after {@code timeToLive} for which a resolution may be used while it is checked in
+   *                        the background; zero to always block on checking an expired resolution
+   * @param unit            the unit of {@code timeToLive} and {@code maxStale}
+   * @param refreshExecutor the executor that checks resolutions in the background
+   */
+  public ResolvingContentRepoService(ContentRepoService delegate, long timeToLive, long maxStale, TimeUnit unit,
+                                     Executor refreshExecutor) {
+    this(delegate, timeToLive, maxStale, unit, refreshExecutor, Ticker.systemTicker());
+  }
+
+  @SuppressWarnings("deprecation") // resolving the latest object version is what this class caches
+  ResolvingContentRepoService(ContentRepoService delegate, long timeToLive, long maxStale, TimeUnit unit,
+                              Executor refreshExecutor, Ticker ticker) {
+    Preconditions.checkArgument(timeToLive > 0);
+    Preconditions.checkArgument(maxStale >= 0);
+    this.delegate = Objects.requireNonNull(delegate);
+    this.timeToLive = timeToLive;
+    this.maxStale = maxStale;
+    this.unit = Objects.requireNonNull(unit);
+    this.refreshExecutor = Objects.requireNonNull(refreshExecutor);
+    this.ticker = Objects.requireNonNull(ticker);
+
+    this.objectTags = newResolutionCache(objectTagIndex,
+        (RepoVersionTag tag) -> delegate.getRepoObjectMetadata(tag).getVersion());
+    this.latestObjects = newResolutionCache(null, (RepoId id) -> delegate.getLatestRepoObjectMetadata(id).getVersion());
+    this.collectionTags = newResolutionCache(collectionTagIndex,
+        (RepoVersionTag tag) -> delegate.getCollection(tag).getVersion());
+    this.latestCollections = newResolutionCache(null, (RepoId id) -> delegate.getLatestCollection(id).getVersion());
+    objectTagIndex.cache = objectTags;
+    collectionTagIndex.cache = collectionTags;
+  }
+
+  /**
+   * @param removalListener notified when a resolution is removed; may be null
+   * @param resolver        resolves a pointer to the version it points to
+   */
+  private <K> LoadingCache<K, RepoVersion> newResolutionCache(
+      RemovalListener<? super K, ? super RepoVersion> removalListener, Function<K, RepoVersion> resolver) {
+    CacheLoader<K, RepoVersion> loader = new CacheLoader<K, RepoVersion>() {
+      @Override
+      public RepoVersion load(K key) {
+        return resolver.apply(key);
+      }
+    };
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+        .ticker(ticker)
+        .expireAfterWrite(timeToLive + maxStale, unit)
+        .recordStats();
+    if (removalListener != null) {
+      builder.removalListener(removalListener);
+    }
+    if (maxStale > 0) {
+      builder.refreshAfterWrite(timeToLive, unit);
+    }
+    return builder.build(CacheLoader.asyncReloading(loader, refreshExecutor));
+  }
+
+  @Override
+  protected ContentRepoService delegate() {
+    return delegate;
+  }
+
+  /**
+   * @return hit, miss, and refresh counts summed over the tag and latest-version resolutions of objects and collections
+   */
+  public CacheStats getResolutionStats() {
+    return objectTags.stats().plus(latestObjects.stats())
+        .plus(collectionTags.stats()).plus(latestCollections.stats());
+  }
+
+  /**
+   * Discard all resolutions.
+   */
+  public void invalidateAll() {
+    objectTags.invalidateAll();
+    latestObjects.invalidateAll();
+    collectionTags.invalidateAll();
+    latestCollections.invalidateAll();
+  }
+
+  /**
+   * Look up metadata through a cached resolution of a pointer if there is one, or else by the pointer itself.
+   *
+   * @param cache     the resolutions of the pointer type
+   * @param pointer   the tag or ID to resolve
+   * @param byVersion looks up metadata by a resolved version
+   * @param byPointer looks up metadata by the pointer
+   * @param store     caches the resolution of the pointer
+   */
+  private static <K, M extends RepoMetadata> M resolve(LoadingCache<K, RepoVersion> cache, K pointer,
+                                                        Function<RepoVersion, ? extends M> byVersion,
+                                                        Function<K, ? extends M> byPointer,
+                                                        BiConsumer<K, RepoVersion> store) {
+    RepoVersion version = cache.getIfPresent(pointer);
+    if (version != null) {
+      try {
+        return byVersion.apply(version);
+      } catch (NotFoundException e) {
+        cache.invalidate(pointer); // the version was deleted; the pointer may have moved
+      }
+    }
+    M metadata = byPointer.apply(pointer);
+    store.accept(pointer, metadata.getVersion());
+    return metadata;
+  }
+
+  private void invalidateObject(RepoId id) {
+    latestObjects.invalidate(id);
+    objectTagIndex.invalidate(id);
+  }
+
+  private void invalidateCollection(RepoId id) {
+    latestCollections.invalidate(id);
+    collectionTagIndex.invalidate(id);
+  }
+
+  private RepoObjectMetadata objectCreated(RepoObjectMetadata metadata) {
+    RepoId id = metadata.getVersion().getId();
+    invalidateObject(id);
+    latestObjects.put(id, metadata.getVersion());
+    return metadata;
+  }
+
+  private RepoCollectionList collectionCreated(RepoCollectionList collection) {
+    RepoId id = collection.getVersion().getId();
+    invalidateCollection(id);
+    latestCollections.put(id, collection.getVersion());
+    return collection;
+  }
+
+
+  // ------------------------ Objects ------------------------
+
+  /**
+   * If the latest version has not been resolved, it is resolved with {@link #getLatestRepoObjectMetadata(RepoId)}
+   * before its content is fetched, so that later calls fetch the content by version.
+   */
+  @Override
+  @Deprecated
+  public InputStream getLatestRepoObject(RepoId id) {
+    RepoVersion version = latestObjects.getIfPresent(id);
+    if (version != null) {
+      try {
+        return delegate.getRepoObject(version);
+      } catch (NotFoundException e) {
+        latestObjects.invalidate(id);
+      }
+    }
+    return delegate.getRepoObject(getLatestRepoObjectMetadata(id).getVersion());
+  }
+
+  @Override
+  @Deprecated
+  public RepoObjectMetadata getLatestRepoObjectMetadata(RepoId id) {
+    return resolve(latestObjects, id, delegate::getRepoObjectMetadata, delegate::getLatestRepoObjectMetadata,
+        latestObjects::put);
+  }
+
+  @Override
+  public RepoObjectMetadata getRepoObjectMetadata(RepoVersionTag tagObj) {
+    return resolve(objectTags, tagObj, delegate::getRepoObjectMetadata, delegate::getRepoObjectMetadata,
+        objectTagIndex::put);
+  }
+
+  @Override
+  public RepoObjectMetadata createRepoObject(RepoObjectInput repoObjectInput) {
+    return objectCreated(delegate.createRepoObject(repoObjectInput));
+  }
+
+  @Override
+  public RepoObjectMetadata versionRepoObject(RepoObjectInput repoObjectInput) {
+    return objectCreated(delegate.versionRepoObject(repoObjectInput));
+  }
+
+  @Override
+  public RepoObjectMetadata autoCreateRepoObject(RepoObjectInput repoObjectInput) {
+    return objectCreated(delegate.autoCreateRepoObject(repoObjectInput));
+  }
+
+  @Override
+  @Deprecated
+  public boolean deleteLatestRepoObject(RepoId id) {
+    try {
+      return delegate.deleteLatestRepoObject(id);
+    } finally {
+      invalidateObject(id);
+    }
+  }
+
+  @Override
+  public boolean deleteRepoObject(RepoVersion version) {
+    try {
+      return delegate.deleteRepoObject(version);
+    } finally {
+      invalidateObject(version.getId());
+    }
+  }
+
+  @Override
+  public boolean deleteRepoObject(RepoVersionNumber number) {
+    try {
+      return delegate.deleteRepoObject(number);
+    } finally {
+      invalidateObject(number.getId());
+    }
+  }
+
+
+  // ------------------------ Collections ------------------------
+
+  /**
+   * Once resolved, the latest version is looked up with {@link #getCollection(RepoVersion)}, so the result includes
+   * the collection's member objects.
+   */
+  @Override
+  public RepoCollectionMetadata getLatestCollection(RepoId id) {
+    return resolve(latestCollections, id, delegate::getCollection, delegate::getLatestCollection,
+        latestCollections::put);
+  }
+
+  @Override
+  public RepoCollectionList getCollection(RepoVersionTag tagObj) {
+    return resolve(collectionTags, tagObj, delegate::getCollection, delegate::getCollection, collectionTagIndex::put);
+  }
+
+  @Override
+  public RepoCollectionList createCollection(RepoCollectionInput repoCollectionInput) {
+    return collectionCreated(delegate.createCollection(repoCollectionInput));
+  }
+
+  @Override
+  public RepoCollectionList versionCollection(RepoCollectionInput repoCollectionInput) {
+    return collectionCreated(delegate.versionCollection(repoCollectionInput));
+  }
+
+  @Override
+  public RepoCollectionList autoCreateCollection(RepoCollectionInput repoCollectionInput) {
+    return collectionCreated(delegate.autoCreateCollection(repoCollectionInput));
+  }
+
+  @Override
+  public boolean deleteCollection(RepoVersion version) {
+    try {
+      return delegate.deleteCollection(version);
+    } finally {
+      invalidateCollection(version.getId());
+    }
+  }
+
+  @Override
+  public boolean deleteCollection(RepoVersionNumber number) {
+    try {
+      return delegate.deleteCollection(number);
+    } finally {
+      invalidateCollection(number.getId());
+    }
+  }
+
+}
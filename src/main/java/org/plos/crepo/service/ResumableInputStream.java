@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.io.IOUtils;
+import org.plos.crepo.exceptions.ContentRepoException;
+import org.plos.crepo.exceptions.ErrorType;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.OptionalInt;
+
+/**
+ * Reads an object's content and, if the connection fails partway, reopens it with a range request that starts at the
+ * first byte not yet delivered. This is safe because a UUID-addressed version is immutable, so the bytes from a later
+ * request line up with the ones already read.
+ * <p>
+ * The stream knows the content's size from the object's metadata. A response that ends before that size is treated
+ * like a failed connection and resumed, and one that runs past it fails with {@link ErrorType#ErrorFetchingObject}.
+ * Each resume, and each failed attempt to reopen the connection, counts against a retry budget for the whole stream;
+ * once the budget is spent, the next failure is thrown to the caller. Retries wait for a backoff that doubles with each
+ * attempt, so that a struggling server is not hit in a tight loop.
+ * <p>
+ * Only transient failures are retried: a broken connection, a server error, or a request timeout or throttling
+ * response. Any other error response, such as a range the server cannot satisfy, would fail again the same way and is
+ * thrown at once.
+ */
+class ResumableInputStream extends InputStream {
+
+  private static final Logger log = LoggerFactory.getLogger(ResumableInputStream.class);
+
+  private static final long DEFAULT_BACKOFF_MILLIS = 100L;
+  private static final long MAX_BACKOFF_MILLIS = 2000L;
+
+  private final ContentRepoService service;
+  private final RepoVersion version;
+  private final long size;
+  private final int retryBudget;
+  private final long backoffMillis;
+
+  private final byte[] singleByte = new byte[1];
+
+  private InputStream current;
+  private long position = 0L;
+  private int retries = 0;
+  private boolean closed = false;
+
+  /**
+   * @param service     the service to fetch the content from
+   * @param metadata    the metadata of the version to read
+   * @param retryBudget the number of times the stream may be reopened after a failure
+   */
+  ResumableInputStream(ContentRepoService service, RepoObjectMetadata metadata, int retryBudget) {
+    this(service, metadata, retryBudget, DEFAULT_BACKOFF_MILLIS);
+  }
+
+  /**
+   * @param service       the service to fetch the content from
+   * @param metadata      the metadata of the version to read
+   * @param retryBudget   the number of times the stream may be reopened after a failure
+   * @param backoffMillis the time to wait before the first retry, in milliseconds
+   */
+  ResumableInputStream(ContentRepoService service, RepoObjectMetadata metadata, int retryBudget, long backoffMillis) {
+    Preconditions.checkArgument(retryBudget >= 0);
+    Preconditions.checkArgument(backoffMillis >= 0L);
+    this.service = Preconditions.checkNotNull(service);
+    this.version = metadata.getVersion();
+    this.size = metadata.getSize();
+    this.retryBudget = retryBudget;
+    this.backoffMillis = backoffMillis;
+  }
+
+  int getRetryCount() {
+    return retries;
+  }
+
+  private InputStream open() {
+    if (current == null) {
+      current = (position == 0L) ? service.getRepoObject(version)
+          : service.getRepoObjectRange(version, position, size - position);
+    }
+    return current;
+  }
+
+  /**
+   * Whether a failure to reopen the connection may succeed on another attempt. A failure without an error response is
+   * transient only if the connection itself failed.
+   */
+  private static boolean isTransient(ContentRepoException failure) {
+    OptionalInt statusCode = failure.getStatusCode();
+    if (!statusCode.isPresent()) {
+      return failure.getCause() instanceof IOException;
+    }
+    int status = statusCode.getAsInt();
+    return status >= 500 || status == 408 || status == 429;
+  }
+
+  /**
+   * Drop the current connection after a failure and wait out the backoff, or rethrow the failure if the retry budget is
+   * spent. Failures to reopen the connection, such as a refused connection, count against the same budget.
+   */
+  private <E extends Exception> void resume(E failure) throws E {
+    IOUtils.closeQuietly(current);
+    current = null;
+    if (retries >= retryBudget) {
+      throw failure;
+    }
+    long backoff = Math.min(backoffMillis << Math.min(retries, 16), MAX_BACKOFF_MILLIS);
+    retries++;
+    log.warn("Resuming download of " + version + " at byte " + position + " of " + size
+        + " in " + backoff + " ms (retry " + retries + " of " + retryBudget + ")", failure);
+    try {
+      Thread.sleep(backoff);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw failure;
+    }
+  }
+
+  private IOException truncated() {
+    return new EOFException("Content of " + version + " ended after " + position + " of " + size + " bytes");
+  }
+
+  /**
+   * Read one byte past the expected end to make sure the server sent no more than the metadata promised. A failure at
+   * this point is ignored, because all of the content has already been delivered.
+   */
+  private void checkEnd() {
+    if (current == null) return;
+    boolean overrun;
+    try {
+      overrun = current.read() >= 0;
+    } catch (IOException e) {
+      overrun = false;
+    } finally {
+      IOUtils.closeQuietly(current);
+      current = null;
+    }
+    if (!overrun) return;
+    throw new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ErrorFetchingObject)
+        .key(version.getId().getKey())
+        .repoMessage("Content of " + version + " is longer than its size in metadata: " + size)
+        .build();
+  }
+
+  @Override
+  public int read() throws IOException {
+    int n = read(singleByte, 0, 1);
+    return (n < 0) ? -1 : (singleByte[0] & 0xff);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    Preconditions.checkPositionIndexes(off, off + len, b.length);
+    if (closed) throw new IOException("Stream closed");
+    if (len == 0) return 0;
+    while (true) {
+      if (position >= size) {
+        checkEnd();
+        return -1;
+      }
+      InputStream stream;
+      try {
+        stream = open();
+      } catch (ContentRepoException e) {
+        if (!isTransient(e)) throw e;
+        resume(e);
+        continue;
+      }
+      try {
+        int n = stream.read(b, off, (int) Math.min(len, size - position));
+        if (n < 0) {
+          resume(truncated());
+          continue;
+        }
+        position += n;
+        return n;
+      } catch (IOException e) {
+        resume(e);
+      }
+    }
+  }
+
+  @Override
+  public int available() throws IOException {
+    return (current == null) ? 0 : current.available();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) return;
+    closed = true;
+    if (current != null) {
+      current.close();
+      current = null;
+    }
+  }
+
+}
@@ -22,43 +22,23 @@
 
 package org.plos.crepo.util;
 
-import org.apache.commons.lang3.text.StrSubstitutor;
-
-import java.util.HashMap;
-import java.util.Map;
-
 class BaseUrlGenerator {
 
-  static String replaceUrl(String url, Map<String, String> values){
-    StrSubstitutor sub = new StrSubstitutor(values);
-    return sub.replace(url);
+  static final String REPO_SERVER = UrlTemplate.REPO_SERVER;
+  static final String BUCKET_NAME = "bucketName";
+  static final String OFFSET = "offset";
+  static final String LIMIT = "limit";
+  static final String INCLUDE_DELETED = "includeDeleted";
+  static final String TAG = "tag";
+  static final String VERSION_NUMBER = "versionNumber";
+  static final String UUID = "uuid";
+
+  static UrlTemplate compile(String url, String... parameterNames) {
+    return UrlTemplate.compile(url, parameterNames);
   }
 
-  static Map<String, String> getUrlBasicMap(String repoServer){
-    Map<String, String> values = new HashMap<String, String>();
-    values.put("repoServer", repoServer);
-   return values;
+  static String replaceUrl(UrlTemplate url, Object... values) {
+    return url.expand(values);
   }
 
-  static Map<String, String> getBucketBasicMap(String repoServer, String bucketName){
-    Map<String, String> values = getUrlBasicMap(repoServer);
-    values.put("bucketName", bucketName);
-    return values;
-  }
-
-  static Map<String,String> getContentInBucketMap(String repoServer, String bucketName, int offset, int limit, boolean includeDelete) {
-    Map<String, String> values = getBucketBasicMap(repoServer, bucketName);
-    values.put("offset", String.valueOf(offset));
-    values.put("limit", String.valueOf(limit));
-    values.put("includeDeleted", String.valueOf(includeDelete));
-    return values;
-  }
-
-  static Map<String,String> getContentInBucketMap(String repoServer, String bucketName, int offset, int limit, boolean includeDeleted, String tag) {
-    Map<String, String> values = getContentInBucketMap(repoServer, bucketName, offset, limit, includeDeleted);
-    values.put("tag", tag);
-    return values;
-  }
-
-
 }
@@ -29,20 +29,20 @@ import static org.plos.crepo.util.BaseUrlGenerator.*;
  */
 public class BucketUrlGenerator {
 
-  private static final String CREATE_BUCKET = "${repoServer}/buckets";
-  private static final String BUCKETS_URL = "${repoServer}/buckets";
-  private static final String BUCKET_URL = "${repoServer}/buckets/${bucketName}";
+  private static final UrlTemplate CREATE_BUCKET = compile("${repoServer}/buckets", REPO_SERVER);
+  private static final UrlTemplate BUCKETS_URL = compile("${repoServer}/buckets", REPO_SERVER);
+  private static final UrlTemplate BUCKET_URL = compile("${repoServer}/buckets/${bucketName}", REPO_SERVER, BUCKET_NAME);
 
   public static String getCreateBucketUrl(String repoServer) {
-    return replaceUrl(CREATE_BUCKET, getUrlBasicMap(repoServer));
+    return replaceUrl(CREATE_BUCKET, repoServer);
   }
 
   public static String getBucketsUrl(String repoServer) {
-    return replaceUrl(BUCKETS_URL, getUrlBasicMap(repoServer));
+    return replaceUrl(BUCKETS_URL, repoServer);
   }
 
   public static String getBucketUrl(String repoServer, String key) {
-    return replaceUrl(BUCKET_URL, getBucketBasicMap(repoServer, key));
+    return replaceUrl(BUCKET_URL, repoServer, key);
   }
 
 }
@@ -22,28 +22,27 @@
 
 package org.plos.crepo.util;
 
-import static org.plos.crepo.util.BaseUrlGenerator.getUrlBasicMap;
-import static org.plos.crepo.util.BaseUrlGenerator.replaceUrl;
+import static org.plos.crepo.util.BaseUrlGenerator.*;
 
 /**
  * Generates the content repo urls for config services.
  */
 public class ConfigUrlGenerator {
 
-  private static final String HAS_REPROXY_URL = "${repoServer}/hasXReproxy";
-  private static final String REPO_CONFIG_URL = "${repoServer}/config";
-  private static final String REPO_STATUS_URL = "${repoServer}/status";
+  private static final UrlTemplate HAS_REPROXY_URL = compile("${repoServer}/hasXReproxy", REPO_SERVER);
+  private static final UrlTemplate REPO_CONFIG_URL = compile("${repoServer}/config", REPO_SERVER);
+  private static final UrlTemplate REPO_STATUS_URL = compile("${repoServer}/status", REPO_SERVER);
 
   public static String getHasReproxyUrl(String repoServer) {
-    return replaceUrl(HAS_REPROXY_URL, getUrlBasicMap(repoServer));
+    return replaceUrl(HAS_REPROXY_URL, repoServer);
   }
 
   public static String getRepoConfigUrl(String repoServer) {
-    return replaceUrl(REPO_CONFIG_URL, getUrlBasicMap(repoServer));
+    return replaceUrl(REPO_CONFIG_URL, repoServer);
   }
 
   public static String getRepoStatusUrl(String repoServer) {
-    return replaceUrl(REPO_STATUS_URL, getUrlBasicMap(repoServer));
+    return replaceUrl(REPO_STATUS_URL, repoServer);
   }
 
 }
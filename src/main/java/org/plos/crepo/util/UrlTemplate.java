@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A URL template with {@code ${name}} placeholders, parsed once into literal and placeholder segments.
+ * <p>
+ * Expanding the template writes each segment into a per-thread {@code StringBuilder} that is reused between calls.
+ * Placeholder values are percent-encoded as UTF-8 according to where they appear: before the {@code ?} a value is
+ * encoded as a path segment, and after it as a query parameter value. The {@code repoServer} placeholder is the root URL
+ * of the server and is inserted without encoding.
+ */
+final class UrlTemplate {
+
+  static final String REPO_SERVER = "repoServer";
+
+  private static final int MAX_RETAINED_CAPACITY = 4096;
+  private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder(256);
+    }
+  };
+
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+  // RFC 3986 unreserved characters
+  private static final BitSet UNRESERVED = new BitSet(128);
+  // Characters that may appear unencoded in a path segment
+  private static final BitSet PATH_SAFE = new BitSet(128);
+  // Characters that may appear unencoded in a query parameter value; excludes the delimiters "&", "=", "+" and "#"
+  private static final BitSet QUERY_SAFE = new BitSet(128);
+
+  static {
+    UNRESERVED.set('a', 'z' + 1);
+    UNRESERVED.set('A', 'Z' + 1);
+    UNRESERVED.set('0', '9' + 1);
+    for (char c : "-._~".toCharArray()) {
+      UNRESERVED.set(c);
+    }
+    PATH_SAFE.or(UNRESERVED);
+    for (char c : "!$'()*,;:@".toCharArray()) {
+      PATH_SAFE.set(c);
+    }
+    QUERY_SAFE.or(UNRESERVED);
+    for (char c : "!$'()*,;:@/?".toCharArray()) {
+      QUERY_SAFE.set(c);
+    }
+  }
+
+  private static enum Encoding {
+    NONE, PATH, QUERY
+  }
+
+  private static final class Segment {
+    private final String literal; // null for a placeholder
+    private final int parameterIndex;
+    private final Encoding encoding;
+
+    private Segment(String literal, int parameterIndex, Encoding encoding) {
+      this.literal = literal;
+      this.parameterIndex = parameterIndex;
+      this.encoding = encoding;
+    }
+  }
+
+  private final String template;
+  private final ImmutableList<String> parameterNames;
+  private final Segment[] segments;
+
+  private UrlTemplate(String template, ImmutableList<String> parameterNames, Segment[] segments) {
+    this.template = template;
+    this.parameterNames = parameterNames;
+    this.segments = segments;
+  }
+
+  /**
+   * Parses a template.
+   *
+   * @param template       the template, with placeholders of the form {@code ${name}}
+   * @param parameterNames the names of the placeholders, in the order that their values are passed to {@link #expand}
+   * @return the compiled template
+   * @throws IllegalArgumentException if the template has a placeholder that is not named in {@code parameterNames}, or
+   *                                  an unclosed placeholder
+   */
+  static UrlTemplate compile(String template, String... parameterNames) {
+    List<String> names = Arrays.asList(parameterNames);
+    ImmutableList.Builder<Segment> segments = ImmutableList.builder();
+    boolean inQuery = false;
+    int position = 0;
+    while (position < template.length()) {
+      int start = template.indexOf("${", position);
+      int literalEnd = (start < 0) ? template.length() : start;
+      if (literalEnd > position) {
+        String literal = template.substring(position, literalEnd);
+        segments.add(new Segment(literal, -1, null));
+        inQuery |= literal.indexOf('?') >= 0;
+      }
+      if (start < 0) {
+        break;
+      }
+      int end = template.indexOf('}', start);
+      Preconditions.checkArgument(end > 0, "Unclosed placeholder in %s", template);
+      String name = template.substring(start + 2, end);
+      int index = names.indexOf(name);
+      Preconditions.checkArgument(index >= 0, "Placeholder %s is not a parameter of %s", name, template);
+      Encoding encoding = name.equals(REPO_SERVER) ? Encoding.NONE : inQuery ? Encoding.QUERY : Encoding.PATH;
+      segments.add(new Segment(null, index, encoding));
+      position = end + 1;
+    }
+    return new UrlTemplate(template, ImmutableList.copyOf(names), segments.build().toArray(new Segment[0]));
+  }
+
+  /**
+   * Builds a URL from this template.
+   *
+   * @param values the value of each parameter, in the order given when the template was compiled; converted with
+   *               {@link String#valueOf(Object)}
+   * @return the URL
+   */
+  String expand(Object... values) {
+    Preconditions.checkArgument(values.length == parameterNames.size(),
+        "Expected %s values for %s", parameterNames.size(), template);
+    StringBuilder url = BUFFER.get();
+    url.setLength(0);
+    for (Segment segment : segments) {
+      if (segment.literal != null) {
+        url.append(segment.literal);
+        continue;
+      }
+      String value = String.valueOf(values[segment.parameterIndex]);
+      switch (segment.encoding) {
+        case NONE:
+          url.append(value);
+          break;
+        case PATH:
+          appendEncoded(url, value, PATH_SAFE);
+          break;
+        case QUERY:
+          appendEncoded(url, value, QUERY_SAFE);
+          break;
+        default:
+          throw new AssertionError();
+      }
+    }
+    String result = url.toString();
+    if (url.capacity() > MAX_RETAINED_CAPACITY) {
+      BUFFER.remove(); // Don't hold on to a buffer grown by an unusually long URL
+    }
+    return result;
+  }
+
+  private static void appendEncoded(StringBuilder url, String value, BitSet safe) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 128) {
+        if (safe.get(c)) {
+          url.append(c);
+        } else {
+          appendEscaped(url, (byte) c);
+        }
+      } else {
+        // Encode the whole code point as UTF-8, so that a surrogate pair is not split
+        int codePointEnd = i + Character.charCount(value.codePointAt(i));
+        for (byte b : value.substring(i, codePointEnd).getBytes(StandardCharsets.UTF_8)) {
+          appendEscaped(url, b);
+        }
+        i = codePointEnd - 1;
+      }
+    }
+  }
+
+  private static void appendEscaped(StringBuilder url, byte b) {
+    url.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+  }
+
+  @Override
+  public String toString() {
+    return template;
+  }
+
+}
@@ -25,13 +25,19 @@ package org.plos.crepo.dao;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.plos.crepo.config.ContentRepoAccessConfig;
 import org.plos.crepo.exceptions.ContentRepoException;
 import org.plos.crepo.exceptions.ErrorType;
+import org.plos.crepo.metrics.RequestMetrics;
+import org.plos.crepo.metrics.RequestOutcome;
+import org.plos.crepo.metrics.RequestTags;
 import org.plos.crepo.util.HttpResponseUtil;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
@@ -43,6 +49,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.isA;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -63,12 +72,14 @@ public class ContentRepoBaseDaoTest extends BaseDaoTest {
   public void setUp() {
     contentRepoBaseDao = new TestContentRepoBaseDaoImpl(repoAccessConfig);
     when(repoAccessConfig.getRepoServer()).thenReturn(REPO_SERVER);
+    when(repoAccessConfig.getMetrics()).thenReturn(mock(RequestMetrics.class));
   }
 
   @Test
   public void executeRequestTest() throws IOException {
     HttpRequestBase httpRequest = mock(HttpRequestBase.class);
     when(httpRequest.getURI()).thenReturn(uri);
+    when(httpRequest.getMethod()).thenReturn("GET");
 
     mockCommonCalls(repoAccessConfig, HttpStatus.SC_OK);
 
@@ -89,6 +100,7 @@ public class ContentRepoBaseDaoTest extends BaseDaoTest {
   public void executeRequestThrowsExcTest() throws IOException {
     HttpRequestBase httpRequest = mock(HttpRequestBase.class);
     when(httpRequest.getURI()).thenReturn(uri);
+    when(httpRequest.getMethod()).thenReturn("GET");
 
     mockCommonCalls(repoAccessConfig, HttpStatus.SC_BAD_REQUEST);
     mockHttpResponseUtilCalls(mockResponse);
@@ -115,6 +127,7 @@ public class ContentRepoBaseDaoTest extends BaseDaoTest {
   public void executeRequestIOThrowsExcTest() throws IOException {
     HttpRequestBase httpRequest = mock(HttpRequestBase.class);
     when(httpRequest.getURI()).thenReturn(uri);
+    when(httpRequest.getMethod()).thenReturn("GET");
     IOException exception = mock(IOException.class);
     when(repoAccessConfig.open(isA(HttpRequestBase.class))).thenThrow(exception);
 
@@ -136,4 +149,75 @@ public class ContentRepoBaseDaoTest extends BaseDaoTest {
 
   }
 
+  @Test
+  public void executeRequestReportsMetricsTest() throws IOException {
+    RequestMetrics metrics = mock(RequestMetrics.class);
+    when(repoAccessConfig.getMetrics()).thenReturn(metrics);
+    HttpRequestBase httpRequest = mock(HttpRequestBase.class);
+    when(httpRequest.getURI()).thenReturn(uri);
+    when(httpRequest.getMethod()).thenReturn("GET");
+
+    mockCommonCalls(repoAccessConfig, HttpStatus.SC_OK);
+    when(mockResponse.getEntity()).thenReturn(new ByteArrayEntity(new byte[42]));
+
+    contentRepoBaseDao.executeRequest(httpRequest, "getObjectMeta", ErrorType.ErrorFetchingObjectMeta, BUCKET_NAME);
+
+    RequestTags expectedTags = new RequestTags("getObjectMeta", "GET", BUCKET_NAME);
+    ArgumentCaptor<RequestOutcome> outcome = ArgumentCaptor.forClass(RequestOutcome.class);
+    InOrder inOrder = inOrder(metrics, repoAccessConfig);
+    inOrder.verify(metrics).requestStarted(expectedTags);
+    inOrder.verify(repoAccessConfig).open(httpRequest);
+    inOrder.verify(metrics).requestCompleted(eq(expectedTags), outcome.capture());
+    assertEquals(HttpStatus.SC_OK, outcome.getValue().getStatusCode());
+    assertEquals(0L, outcome.getValue().getBytesSent());
+    assertEquals(42L, outcome.getValue().getBytesReceived());
+    assertTrue(outcome.getValue().getLatencyNanos() >= 0L);
+  }
+
+  @Test
+  public void executeRequestReportsFailureMetricsTest() throws IOException {
+    RequestMetrics metrics = mock(RequestMetrics.class);
+    when(repoAccessConfig.getMetrics()).thenReturn(metrics);
+    HttpRequestBase httpRequest = mock(HttpRequestBase.class);
+    when(httpRequest.getURI()).thenReturn(uri);
+    when(httpRequest.getMethod()).thenReturn("GET");
+    when(repoAccessConfig.open(isA(HttpRequestBase.class))).thenThrow(new IOException());
+
+    try {
+      contentRepoBaseDao.executeRequest(httpRequest, ErrorType.ErrorFetchingBucketMeta);
+      fail(EXCEPTION_EXPECTED);
+    } catch (ContentRepoException expected) {
+    }
+
+    RequestTags expectedTags = new RequestTags(ErrorType.ErrorFetchingBucketMeta.name(), "GET", null);
+    ArgumentCaptor<RequestOutcome> outcome = ArgumentCaptor.forClass(RequestOutcome.class);
+    verify(metrics).requestStarted(expectedTags);
+    verify(metrics).requestCompleted(eq(expectedTags), outcome.capture());
+    assertEquals(RequestOutcome.NO_RESPONSE, outcome.getValue().getStatusCode());
+  }
+
+  @Test
+  public void executeRequestReportsRuntimeFailureMetricsTest() throws IOException {
+    RequestMetrics metrics = mock(RequestMetrics.class);
+    when(repoAccessConfig.getMetrics()).thenReturn(metrics);
+    HttpRequestBase httpRequest = mock(HttpRequestBase.class);
+    when(httpRequest.getURI()).thenReturn(uri);
+    when(httpRequest.getMethod()).thenReturn("GET");
+    IllegalStateException failure = new IllegalStateException("Connection pool shut down");
+    when(repoAccessConfig.open(isA(HttpRequestBase.class))).thenThrow(failure);
+
+    try {
+      contentRepoBaseDao.executeRequest(httpRequest, "getBucket", ErrorType.ErrorFetchingBucketMeta, BUCKET_NAME);
+      fail(EXCEPTION_EXPECTED);
+    } catch (IllegalStateException expected) {
+      assertEquals(failure, expected);
+    }
+
+    RequestTags expectedTags = new RequestTags("getBucket", "GET", BUCKET_NAME);
+    ArgumentCaptor<RequestOutcome> outcome = ArgumentCaptor.forClass(RequestOutcome.class);
+    verify(metrics).requestStarted(expectedTags);
+    verify(metrics).requestCompleted(eq(expectedTags), outcome.capture());
+    assertEquals(RequestOutcome.NO_RESPONSE, outcome.getValue().getStatusCode());
+  }
+
 }
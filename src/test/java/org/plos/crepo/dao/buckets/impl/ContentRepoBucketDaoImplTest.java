@@ -38,6 +38,7 @@ import org.plos.crepo.config.ContentRepoAccessConfig;
 import org.plos.crepo.dao.BaseDaoTest;
 import org.plos.crepo.exceptions.ContentRepoException;
 import org.plos.crepo.exceptions.ErrorType;
+import org.plos.crepo.metrics.RequestMetrics;
 import org.plos.crepo.util.BucketUrlGenerator;
 import org.plos.crepo.util.HttpResponseUtil;
 import org.powermock.api.mockito.PowerMockito;
@@ -50,6 +51,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 @RunWith(PowerMockRunner.class)
@@ -65,6 +67,7 @@ public class ContentRepoBucketDaoImplTest extends BaseDaoTest {
   public void setUp() {
     contentRepoBucketDaoImpl = new ContentRepoBucketDaoImpl(repoAccessConfig);
     when(repoAccessConfig.getRepoServer()).thenReturn(REPO_SERVER);
+    when(repoAccessConfig.getMetrics()).thenReturn(mock(RequestMetrics.class));
     PowerMockito.mockStatic(BucketUrlGenerator.class);
   }
 
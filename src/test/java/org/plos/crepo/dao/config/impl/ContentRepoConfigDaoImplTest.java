@@ -34,6 +34,7 @@ import org.plos.crepo.config.ContentRepoAccessConfig;
 import org.plos.crepo.dao.BaseDaoTest;
 import org.plos.crepo.exceptions.ContentRepoException;
 import org.plos.crepo.exceptions.ErrorType;
+import org.plos.crepo.metrics.RequestMetrics;
 import org.plos.crepo.util.ConfigUrlGenerator;
 import org.plos.crepo.util.HttpResponseUtil;
 import org.powermock.api.mockito.PowerMockito;
@@ -45,6 +46,7 @@ import java.io.IOException;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 @RunWith(PowerMockRunner.class)
@@ -60,6 +62,7 @@ public class ContentRepoConfigDaoImplTest extends BaseDaoTest {
   public void setUp() {
     contentRepoConfigDaoImpl = new ContentRepoConfigDaoImpl(repoAccessConfig);
     when(repoAccessConfig.getRepoServer()).thenReturn(REPO_SERVER);
+    when(repoAccessConfig.getMetrics()).thenReturn(mock(RequestMetrics.class));
     PowerMockito.mockStatic(ConfigUrlGenerator.class);
   }
 
@@ -37,6 +37,7 @@ import org.plos.crepo.config.ContentRepoAccessConfig;
 import org.plos.crepo.dao.BaseDaoTest;
 import org.plos.crepo.exceptions.ContentRepoException;
 import org.plos.crepo.exceptions.ErrorType;
+import org.plos.crepo.metrics.RequestMetrics;
 import org.plos.crepo.model.input.RepoObjectInput;
 import org.plos.crepo.util.HttpResponseUtil;
 import org.plos.crepo.util.ObjectUrlGenerator;
@@ -45,14 +46,19 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.URL;
+import java.security.MessageDigest;
 import java.sql.Timestamp;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -83,6 +89,7 @@ public class ContentRepoObjectInputDaoImplTest extends BaseDaoTest {
   public void setUp() {
     contentRepoObjectDaoImpl = new ContentRepoObjectDaoImpl(repoAccessConfig);
     when(repoAccessConfig.getRepoServer()).thenReturn(REPO_SERVER);
+    when(repoAccessConfig.getMetrics()).thenReturn(mock(RequestMetrics.class));
     PowerMockito.mockStatic(ObjectUrlGenerator.class);
   }
 
@@ -169,6 +176,46 @@ public class ContentRepoObjectInputDaoImplTest extends BaseDaoTest {
 
   }
 
+  @Test
+  public void getObjectRangeUsingUuidTest() throws IOException {
+
+    when(ObjectUrlGenerator.getObjectUsingUuidUrl(REPO_SERVER, BUCKET_NAME, OBJECT_KEY, VERSION_UUID)).thenReturn(SOME_URL);
+    ArgumentCaptor<HttpGet> httpGettArgument = ArgumentCaptor.forClass(HttpGet.class);
+    mockCommonCalls(repoAccessConfig, HttpStatus.SC_PARTIAL_CONTENT);
+
+    HttpResponse response = contentRepoObjectDaoImpl.getRepoObjRangeUsingUuid(BUCKET_NAME, OBJECT_KEY, VERSION_UUID, 100L, 50L);
+
+    verifyCommonCalls(repoAccessConfig, httpGettArgument, statusLine, 1, 1);
+    PowerMockito.verifyStatic();
+
+    assertEquals(mockResponse, response);
+    assertEquals("bytes=100-149", httpGettArgument.getValue().getFirstHeader("Range").getValue());
+
+  }
+
+  @Test
+  public void getReproxiedContentTest() throws IOException {
+
+    ArgumentCaptor<HttpGet> httpGettArgument = ArgumentCaptor.forClass(HttpGet.class);
+    mockCommonCalls(repoAccessConfig, HttpStatus.SC_OK);
+
+    HttpResponse response = contentRepoObjectDaoImpl.getReproxiedContent(BUCKET_NAME, new URL(SOME_URL));
+
+    verifyCommonCalls(repoAccessConfig, httpGettArgument, statusLine, 1, 1);
+
+    assertEquals(mockResponse, response);
+
+  }
+
+  @Test
+  public void getRangeHeaderTest() {
+    assertEquals("bytes=0-0", ContentRepoObjectDaoImpl.getRangeHeader(0L, 1L));
+    assertEquals("bytes=10-19", ContentRepoObjectDaoImpl.getRangeHeader(10L, 10L));
+    assertEquals("bytes=10-", ContentRepoObjectDaoImpl.getRangeHeader(10L, Long.MAX_VALUE));
+    assertEquals("bytes=0-", ContentRepoObjectDaoImpl.getRangeHeader(0L, Long.MAX_VALUE));
+    assertEquals("bytes=" + (Long.MAX_VALUE - 1) + "-", ContentRepoObjectDaoImpl.getRangeHeader(Long.MAX_VALUE - 1, 5L));
+  }
+
   @Test
   public void getObjectUsingVersionNumTest() throws IOException {
 
@@ -572,6 +619,24 @@ public class ContentRepoObjectInputDaoImplTest extends BaseDaoTest {
 
   }
 
+  @Test
+  public void createObjectWithDigestTest() throws Exception {
+    byte[] content = "test content".getBytes("UTF-8");
+    RepoObjectInput repoObjectInput = RepoObjectInput.builder(BUCKET_NAME, OBJECT_KEY).setByteContent(content).build();
+    when(ObjectUrlGenerator.getCreateObjectUrl(REPO_SERVER)).thenReturn(SOME_URL);
+    when(repoAccessConfig.open(isA(HttpPost.class))).thenAnswer(invocation -> {
+      ((HttpPost) invocation.getArguments()[0]).getEntity().writeTo(new ByteArrayOutputStream());
+      return mockResponse;
+    });
+    when(mockResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_CREATED);
+
+    MessageDigest digest = MessageDigest.getInstance("SHA-1");
+    contentRepoObjectDaoImpl.createRepoObj(BUCKET_NAME, repoObjectInput, CONTENT_TYPE, digest);
+
+    assertArrayEquals(MessageDigest.getInstance("SHA-1").digest(content), digest.digest());
+  }
+
   private void mockRepoObjectCalls(RepoObjectInput repoObjectInput) {
 
     when(repoObjectInput.getKey()).thenReturn(OBJECT_KEY);
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.dao.objects.impl;
+
+import com.google.common.primitives.Bytes;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.HttpMultipartMode;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FileChannelBodyTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File createFile(int size) throws IOException {
+    byte[] content = new byte[size];
+    new Random(size).nextBytes(content);
+    File file = temporaryFolder.newFile();
+    Files.write(file.toPath(), content);
+    return file;
+  }
+
+  @Test
+  public void testWriteTo() throws IOException {
+    File file = createFile(300_000);
+    FileChannelBody body = new FileChannelBody(file, ContentType.DEFAULT_BINARY);
+    assertEquals(300_000L, body.getContentLength());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    body.writeTo(out);
+    assertArrayEquals(Files.readAllBytes(file.toPath()), out.toByteArray());
+  }
+
+  @Test
+  public void testWriteToWithDigest() throws Exception {
+    File file = createFile(200_000);
+    MessageDigest digest = MessageDigest.getInstance("SHA-1");
+    FileChannelBody body = new FileChannelBody(file, ContentType.DEFAULT_BINARY, digest);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    body.writeTo(out);
+    byte[] content = Files.readAllBytes(file.toPath());
+    assertArrayEquals(content, out.toByteArray());
+    assertArrayEquals(MessageDigest.getInstance("SHA-1").digest(content), digest.digest());
+  }
+
+  @Test
+  public void testRepeatedWriteResetsDigest() throws Exception {
+    File file = createFile(100_000);
+    MessageDigest digest = MessageDigest.getInstance("SHA-1");
+    FileChannelBody body = new FileChannelBody(file, ContentType.DEFAULT_BINARY, digest);
+
+    body.writeTo(new ByteArrayOutputStream()); // as HttpClient does when it retries a repeatable entity
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    body.writeTo(out);
+    byte[] content = Files.readAllBytes(file.toPath());
+    assertArrayEquals(content, out.toByteArray());
+    assertArrayEquals(MessageDigest.getInstance("SHA-1").digest(content), digest.digest());
+  }
+
+  @Test
+  public void testMultipartEntityHasLength() throws IOException {
+    File file = createFile(10_000);
+    HttpEntity entity = MultipartEntityBuilder.create()
+        .setMode(HttpMultipartMode.BROWSER_COMPATIBLE)
+        .addTextBody("key", "testKey")
+        .addPart("file", new FileChannelBody(file, ContentType.DEFAULT_BINARY))
+        .build();
+
+    assertFalse(entity.isChunked());
+    assertTrue(entity.getContentLength() > file.length());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    entity.writeTo(out);
+    byte[] written = out.toByteArray();
+    assertEquals(entity.getContentLength(), written.length);
+    assertTrue(Bytes.indexOf(written, Files.readAllBytes(file.toPath())) >= 0);
+  }
+
+  @Test
+  public void testSendsOnlyInitialLengthIfFileGrows() throws IOException {
+    File file = createFile(1000);
+    byte[] original = Files.readAllBytes(file.toPath());
+    FileChannelBody body = new FileChannelBody(file, ContentType.DEFAULT_BINARY);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(2000);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    body.writeTo(out);
+    assertArrayEquals(original, out.toByteArray());
+  }
+
+  @Test
+  public void testFailsIfFileIsTruncated() throws IOException {
+    File file = createFile(1000);
+    FileChannelBody body = new FileChannelBody(file, ContentType.DEFAULT_BINARY);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(500);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      body.writeTo(out);
+      fail("Expected IOException");
+    } catch (IOException expected) {
+    }
+    assertArrayEquals(Arrays.copyOf(Files.readAllBytes(file.toPath()), 500), out.toByteArray());
+  }
+
+}
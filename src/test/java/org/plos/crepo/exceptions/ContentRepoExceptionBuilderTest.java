@@ -26,6 +26,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -60,7 +61,15 @@ public class ContentRepoExceptionBuilderTest {
     assertTrue(contentRepoExcp.getMessage().contains(REPO_MESSAGE));
     assertTrue(contentRepoExcp.getMessage().contains(KEY));
     assertTrue(contentRepoExcp.getMessage().contains(URL));
+    assertFalse(contentRepoExcp.getStatusCode().isPresent());
 
   }
 
+  @Test
+  public void buildExceptionWithStatusCodeTest() {
+    ContentRepoException contentRepoExcp = builder.statusCode(503).build();
+
+    assertEquals(503, contentRepoExcp.getStatusCode().getAsInt());
+  }
+
 }
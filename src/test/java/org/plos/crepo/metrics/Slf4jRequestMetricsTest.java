@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.metrics;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class Slf4jRequestMetricsTest {
+
+  private static final RequestTags GET_META = new RequestTags("getObjectMeta", "GET", "bucket1");
+  private static final RequestTags CREATE = new RequestTags("createObject", "POST", "bucket1");
+
+  private static RequestOutcome outcome(int statusCode, long latencyMillis, long bytesSent, long bytesReceived) {
+    return new RequestOutcome(statusCode, TimeUnit.MILLISECONDS.toNanos(latencyMillis), bytesSent, bytesReceived);
+  }
+
+  @Test
+  public void testAggregatesByTags() {
+    Slf4jRequestMetrics metrics = new Slf4jRequestMetrics(mock(Logger.class));
+    for (int i = 0; i < 3; i++) {
+      metrics.requestStarted(GET_META);
+    }
+    metrics.requestStarted(CREATE);
+    metrics.requestCompleted(GET_META, outcome(200, 5, 0, 100));
+    metrics.requestCompleted(GET_META, outcome(404, 3, 0, RequestOutcome.UNKNOWN_LENGTH));
+    metrics.requestCompleted(CREATE, outcome(RequestOutcome.NO_RESPONSE, 50, 2048, RequestOutcome.UNKNOWN_LENGTH));
+
+    Slf4jRequestMetrics.Snapshot getMeta = metrics.getSnapshots().get(GET_META);
+    assertEquals(1, getMeta.getInFlight());
+    assertEquals(2L, getMeta.getCount());
+    assertEquals(Long.valueOf(1L), getMeta.getStatusCounts().get(200));
+    assertEquals(Long.valueOf(1L), getMeta.getStatusCounts().get(404));
+    assertEquals(0L, getMeta.getBytesSent());
+    assertEquals(100L, getMeta.getBytesReceived());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(4), getMeta.getMeanLatencyNanos());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(5), getMeta.getMaxLatencyNanos());
+
+    Slf4jRequestMetrics.Snapshot create = metrics.getSnapshots().get(CREATE);
+    assertEquals(0, create.getInFlight());
+    assertEquals(Long.valueOf(1L), create.getStatusCounts().get(RequestOutcome.NO_RESPONSE));
+    assertEquals(2048L, create.getBytesSent());
+  }
+
+  @Test
+  public void testLatencyPercentiles() {
+    Slf4jRequestMetrics metrics = new Slf4jRequestMetrics(mock(Logger.class));
+    for (int i = 1; i <= 100; i++) {
+      metrics.requestStarted(GET_META);
+      metrics.requestCompleted(GET_META, outcome(200, i, 0, 0));
+    }
+    Slf4jRequestMetrics.Snapshot snapshot = metrics.getSnapshots().get(GET_META);
+
+    // Percentiles are upper bounds that are within a factor of two of the true value.
+    long p50 = snapshot.getLatencyPercentileNanos(0.5);
+    assertTrue(p50 >= TimeUnit.MILLISECONDS.toNanos(50) && p50 <= TimeUnit.MILLISECONDS.toNanos(100));
+    long p99 = snapshot.getLatencyPercentileNanos(0.99);
+    assertTrue(p99 >= TimeUnit.MILLISECONDS.toNanos(99) && p99 <= TimeUnit.MILLISECONDS.toNanos(100));
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(100), snapshot.getLatencyPercentileNanos(1.0));
+  }
+
+  @Test
+  public void testLatencyBuckets() {
+    assertEquals(0, Slf4jRequestMetrics.getLatencyBucket(0L));
+    assertEquals(0, Slf4jRequestMetrics.getLatencyBucket(999L));
+    assertEquals(1, Slf4jRequestMetrics.getLatencyBucket(1000L));
+    assertEquals(2, Slf4jRequestMetrics.getLatencyBucket(2000L));
+    assertEquals(2, Slf4jRequestMetrics.getLatencyBucket(3999L));
+    assertEquals(39, Slf4jRequestMetrics.getLatencyBucket(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testReport() {
+    Logger log = mock(Logger.class);
+    when(log.isInfoEnabled()).thenReturn(true);
+    Slf4jRequestMetrics metrics = new Slf4jRequestMetrics(log);
+    metrics.requestStarted(GET_META);
+    metrics.requestCompleted(GET_META, outcome(200, 5, 0, 100));
+    metrics.requestStarted(CREATE);
+    metrics.requestCompleted(CREATE, outcome(201, 20, 10, 100));
+
+    metrics.report();
+
+    verify(log).info(eq("{}: {}"), eq(GET_META), any(Slf4jRequestMetrics.Snapshot.class));
+    verify(log).info(eq("{}: {}"), eq(CREATE), any(Slf4jRequestMetrics.Snapshot.class));
+    verify(log, times(2)).info(eq("{}: {}"), any(), any());
+  }
+
+}
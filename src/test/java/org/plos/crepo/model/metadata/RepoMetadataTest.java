@@ -26,15 +26,21 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.google.gson.reflect.TypeToken;
 import org.junit.Test;
+import org.plos.crepo.model.Status;
 
+import java.io.IOException;
+import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 public class RepoMetadataTest {
@@ -82,4 +88,66 @@ public class RepoMetadataTest {
     assertIsUnmodifiable((Collection<?>) ((List<?>) actual.get("deepNested")).get(0));
   }
 
+  private static final String OBJECT_JSON = "{\"key\": \"obj\", \"uuid\": \"8bd6a5e2-5a3b-4b7c-9c3e-b1f0f7a3c9d1\", " +
+      "\"versionNumber\": 2, \"tag\": \"final\", \"status\": \"USED\", " +
+      "\"timestamp\": \"2017-01-02 03:04:05.6\", \"creationDate\": \"2017-01-01 00:00:00.0\", " +
+      "\"size\": 12, \"checksum\": \"abc\", \"contentType\": \"text/plain\", " +
+      "\"reproxyURL\": [\"http://example.com/a\"], \"unknown\": {\"nested\": [1, \"x\"]}, " +
+      "\"downloadName\": 5, \"userMetadata\": null}";
+
+  @Test
+  public void testTypeAdapterMatchesMapConstructor() throws IOException {
+    Map<String, Object> parsed = new Gson().fromJson(OBJECT_JSON, new TypeToken<Map<String, Object>>() {
+    }.getType());
+    parsed.remove("userMetadata"); // null values are not accepted by the map constructor
+
+    RepoObjectMetadata fromMap = new RepoObjectMetadata("bucket", parsed);
+    RepoObjectMetadata fromAdapter = RepoMetadataTypeAdapter.forObjects("bucket").fromJson(OBJECT_JSON);
+
+    assertEquals(fromMap, fromAdapter);
+    assertEquals(fromMap.getMapView(), fromAdapter.getMapView());
+    assertIsUnmodifiable(fromAdapter.getMapView());
+    assertIsUnmodifiable((Map<?, ?>) fromAdapter.getMapView().get("unknown"));
+
+    assertEquals("obj", fromAdapter.getVersion().getId().getKey());
+    assertEquals(2, fromAdapter.getVersionNumber().getNumber());
+    assertEquals("final", fromAdapter.getTag().get().getTag());
+    assertEquals(Status.USED, fromAdapter.getStatus());
+    assertEquals(12L, fromAdapter.getSize());
+    assertEquals("abc", fromAdapter.getChecksum().get());
+    assertEquals("http://example.com/a", fromAdapter.getReproxyUrls().get(0).toString());
+    assertEquals(5.0, fromAdapter.getMapView().get("downloadName")); // Mistyped known fields are kept as they are
+    assertFalse(fromAdapter.getDownloadName().isPresent());
+    assertFalse(fromAdapter.getRawUserMetadata().isPresent());
+  }
+
+  @Test
+  public void testTimestampIsDecodedOnceAndCopied() {
+    RepoObjectMetadata metadata = RepoMetadataTypeAdapter.forObjects("bucket").fromJsonTree(
+        new Gson().fromJson(OBJECT_JSON, JsonElement.class));
+    Timestamp timestamp = metadata.getTimestamp();
+    assertEquals(Timestamp.valueOf("2017-01-02 03:04:05.6"), timestamp);
+
+    timestamp.setTime(0L);
+    assertEquals(Timestamp.valueOf("2017-01-02 03:04:05.6"), metadata.getTimestamp());
+    assertSame(metadata.getVersion(), metadata.getVersion());
+  }
+
+  @Test
+  public void testTypeAdapterRoundTrip() throws IOException {
+    RepoMetadataTypeAdapter<RepoObjectMetadata> adapter = RepoMetadataTypeAdapter.forObjects("bucket");
+    RepoObjectMetadata metadata = adapter.fromJson(OBJECT_JSON);
+    assertEquals(metadata, adapter.fromJson(adapter.toJson(metadata)));
+  }
+
+  @Test
+  public void testCollectionListObjects() throws IOException {
+    String json = "{\"key\": \"coll\", \"objects\": [" + OBJECT_JSON + "]}";
+    RepoCollectionList collection = RepoMetadataTypeAdapter.forCollectionLists("bucket").fromJson(json);
+
+    RepoObjectMetadata object = collection.getObjects().get(0);
+    assertEquals(RepoMetadataTypeAdapter.forObjects("bucket").fromJson(OBJECT_JSON), object);
+    assertEquals(ImmutableList.of(object.getMapView()), collection.getMapView().get("objects"));
+  }
+
 }
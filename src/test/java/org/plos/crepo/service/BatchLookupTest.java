@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchLookupTest {
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static final Function<Integer, String> FAIL_ON_ODD = (Integer key) -> {
+    if (key % 2 != 0) throw new IllegalArgumentException("odd");
+    return "value" + key;
+  };
+
+  @Test
+  public void testSequential() {
+    BatchResult<Integer, String> result = BatchLookup.lookUp(ImmutableList.of(4, 1, 2, 4), FAIL_ON_ODD);
+
+    assertEquals(ImmutableList.of(4, 2), ImmutableList.copyOf(result.keySet()));
+    assertEquals("value4", result.get(4));
+    assertEquals(ImmutableList.of(1), ImmutableList.copyOf(result.getFailures().keySet()));
+    assertFalse(result.isComplete());
+  }
+
+  @Test
+  public void testParallel() {
+    List<Integer> keys = ImmutableList.of(6, 5, 4, 3, 2, 1, 0, 6, 4);
+    BatchResult<Integer, String> result = BatchLookup.lookUp(keys, FAIL_ON_ODD, executor, 3);
+
+    assertEquals(ImmutableList.of(6, 4, 2, 0), ImmutableList.copyOf(result.keySet()));
+    assertEquals(ImmutableList.of(5, 3, 1), ImmutableList.copyOf(result.getFailures().keySet()));
+    assertTrue(result.getFailures().get(5) instanceof IllegalArgumentException);
+  }
+
+  @Test
+  public void testConcurrencyIsBounded() {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    AtomicInteger calls = new AtomicInteger();
+    Function<Integer, Integer> slowLookup = (Integer key) -> {
+      int current = inFlight.incrementAndGet();
+      maxInFlight.accumulateAndGet(current, Math::max);
+      calls.incrementAndGet();
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      inFlight.decrementAndGet();
+      return key;
+    };
+
+    ImmutableList.Builder<Integer> keys = ImmutableList.builder();
+    for (int i = 0; i < 50; i++) {
+      keys.add(i % 25);
+    }
+    BatchResult<Integer, Integer> result = BatchLookup.lookUp(keys.build(), slowLookup, executor, 4);
+
+    assertTrue(result.isComplete());
+    assertEquals(25, result.size());
+    assertEquals(25, calls.get());
+    assertTrue(maxInFlight.get() <= 4);
+  }
+
+  @Test(timeout = 10000)
+  public void testErrorIsThrown() {
+    Function<Integer, String> lookup = (Integer key) -> {
+      if (key == 3) throw new AssertionError("broken");
+      return FAIL_ON_ODD.apply(key);
+    };
+    try {
+      BatchLookup.lookUp(ImmutableList.of(0, 1, 2, 3, 4, 5), lookup, executor, 3);
+      fail("Expected AssertionError");
+    } catch (AssertionError e) {
+      assertEquals("broken", e.getMessage());
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testSaturatedExecutor() throws InterruptedException {
+    ExecutorService saturated = Executors.newSingleThreadExecutor();
+    CountDownLatch blocked = new CountDownLatch(1);
+    try {
+      saturated.execute(() -> {
+        try {
+          blocked.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+
+      BatchResult<Integer, String> result = BatchLookup.lookUp(ImmutableList.of(0, 2, 4), FAIL_ON_ODD, saturated, 3);
+      assertTrue(result.isComplete());
+      assertEquals(3, result.size());
+    } finally {
+      blocked.countDown();
+      saturated.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Before;
+import org.junit.Test;
+import org.plos.crepo.exceptions.ContentRepoException;
+import org.plos.crepo.exceptions.ErrorType;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class BucketScannerTest {
+
+  private static final String BUCKET_NAME = "bucket";
+  private static final int OBJECT_COUNT = 25;
+
+  private ContentRepoService backend;
+
+  @Before
+  public void setUp() {
+    backend = spy(new InMemoryContentRepoService(BUCKET_NAME));
+    for (int i = 0; i < OBJECT_COUNT; i++) {
+      String key = "obj" + i;
+      backend.createRepoObject(RepoObjectInput.builder(BUCKET_NAME, key)
+          .setByteContent(key.getBytes()).setContentType("text/plain").build());
+    }
+  }
+
+  private static Set<String> expectedKeys() {
+    return IntStream.range(0, OBJECT_COUNT).mapToObj(i -> "obj" + i).collect(Collectors.toSet());
+  }
+
+  private static Set<String> keysOf(Stream<RepoObjectMetadata> stream) {
+    try (Stream<RepoObjectMetadata> s = stream) {
+      return s.map(metadata -> metadata.getVersion().getId().getKey()).collect(Collectors.toSet());
+    }
+  }
+
+  @Test
+  public void testScanVisitsEveryPage() {
+    BucketScanner scanner = BucketScanner.builder(backend, MoreExecutors.directExecutor())
+        .setMinPageSize(10).setInitialPageSize(10).setMaxPageSize(10).build();
+
+    assertEquals(expectedKeys(), keysOf(scanner.scanRepoObjects(BUCKET_NAME, false, null)));
+
+    verify(backend).getRepoObjects(BUCKET_NAME, 0, 10, false, null);
+    verify(backend).getRepoObjects(BUCKET_NAME, 10, 10, false, null);
+    verify(backend).getRepoObjects(BUCKET_NAME, 20, 10, false, null);
+    verify(backend).getRepoObjects(BUCKET_NAME, 25, 10, false, null);
+  }
+
+  @Test
+  public void testScanOnExecutor() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      BucketScanner scanner = BucketScanner.builder(backend, executor).setMinPageSize(1).setInitialPageSize(3).build();
+      assertEquals(expectedKeys(), keysOf(scanner.scanRepoObjects(BUCKET_NAME, false, null)));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testEarlyCloseStopsPaging() {
+    BucketScanner scanner = BucketScanner.builder(backend, MoreExecutors.directExecutor())
+        .setMinPageSize(10).setInitialPageSize(10).setMaxPageSize(10).build();
+
+    try (Stream<RepoObjectMetadata> stream = scanner.scanRepoObjects(BUCKET_NAME, false, null)) {
+      assertEquals(3, stream.limit(3).count());
+    }
+
+    // The first page, and the prefetched second page
+    verify(backend, times(2)).getRepoObjects(eq(BUCKET_NAME), anyInt(), anyInt(), eq(false), anyString());
+  }
+
+  @Test
+  public void testParallelScan() {
+    BucketScanner scanner = BucketScanner.builder(backend, MoreExecutors.directExecutor())
+        .setMinPageSize(2).setInitialPageSize(2).setMaxPageSize(2).build();
+
+    assertEquals(expectedKeys(), keysOf(scanner.parallelScanRepoObjects(BUCKET_NAME, false, null, false)));
+
+    List<RepoObjectMetadata> sequential = backend.getRepoObjects(BUCKET_NAME, 0, OBJECT_COUNT, false, null);
+    List<RepoObjectMetadata> ordered = scanner.parallelScanRepoObjects(BUCKET_NAME, false, null, true)
+        .collect(Collectors.toList());
+    assertEquals(sequential, ordered);
+  }
+
+  @Test
+  public void testSpliteratorSplitsOffsetRanges() {
+    BucketScanner scanner = BucketScanner.builder(backend, MoreExecutors.directExecutor())
+        .setMinPageSize(5).setInitialPageSize(5).setMaxPageSize(5).build();
+
+    Spliterator<RepoObjectMetadata> suffix = scanner.repoObjectSpliterator(BUCKET_NAME, false, null, true);
+    assertEquals(OBJECT_COUNT, suffix.estimateSize());
+    assertTrue(suffix.hasCharacteristics(Spliterator.ORDERED));
+
+    Spliterator<RepoObjectMetadata> prefix = suffix.trySplit();
+    assertNotNull(prefix);
+    assertEquals(12, prefix.estimateSize());
+    assertEquals(13, suffix.estimateSize());
+
+    List<RepoObjectMetadata> combined = new ArrayList<>();
+    prefix.forEachRemaining(combined::add);
+    suffix.forEachRemaining(combined::add);
+    assertEquals(backend.getRepoObjects(BUCKET_NAME, 0, OBJECT_COUNT, false, null), combined);
+
+    assertFalse(scanner.repoObjectSpliterator(BUCKET_NAME, false, null, false).hasCharacteristics(Spliterator.ORDERED));
+  }
+
+  @Test
+  public void testParallelScanCapsPagesInFlight() {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    doAnswer(invocation -> {
+      int current = inFlight.incrementAndGet();
+      maxInFlight.accumulateAndGet(current, Math::max);
+      try {
+        Thread.sleep(5L);
+        return invocation.callRealMethod();
+      } finally {
+        inFlight.decrementAndGet();
+      }
+    }).when(backend).getRepoObjects(eq(BUCKET_NAME), anyInt(), anyInt(), eq(false), anyString());
+
+    BucketScanner scanner = BucketScanner.builder(backend, MoreExecutors.directExecutor())
+        .setMinPageSize(1).setInitialPageSize(1).setMaxPageSize(1).setMaxConcurrentPages(2).build();
+
+    assertEquals(expectedKeys(), keysOf(scanner.parallelScanRepoObjects(BUCKET_NAME, false, null, false)));
+    assertTrue(maxInFlight.get() <= 2);
+  }
+
+  @Test
+  public void testAdaptPageSize() {
+    BucketScanner scanner = BucketScanner.builder(backend, MoreExecutors.directExecutor())
+        .setMinPageSize(10).setMaxPageSize(300).setTargetPageLatency(100, TimeUnit.MILLISECONDS).build();
+
+    assertEquals(100, scanner.adaptPageSize(100, TimeUnit.MILLISECONDS.toNanos(100)));
+    assertEquals(125, scanner.adaptPageSize(100, TimeUnit.MILLISECONDS.toNanos(80)));
+    assertEquals(200, scanner.adaptPageSize(100, TimeUnit.MILLISECONDS.toNanos(1)));
+    assertEquals(50, scanner.adaptPageSize(100, TimeUnit.SECONDS.toNanos(10)));
+    assertEquals(300, scanner.adaptPageSize(200, 0L));
+    assertEquals(10, scanner.adaptPageSize(15, TimeUnit.SECONDS.toNanos(10)));
+  }
+
+  @Test
+  public void testFailurePropagates() {
+    ContentRepoException expected = new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ServerError).build();
+    doThrow(expected).when(backend).getRepoObjects(BUCKET_NAME, 0, BucketScanner.DEFAULT_INITIAL_PAGE_SIZE, true, null);
+    BucketScanner scanner = BucketScanner.builder(backend, MoreExecutors.directExecutor()).build();
+
+    try (Stream<RepoObjectMetadata> stream = scanner.scanRepoObjects(BUCKET_NAME, true, null)) {
+      List<RepoObjectMetadata> unexpected = stream.collect(Collectors.toList());
+      fail("Expected exception; got " + unexpected);
+    } catch (ContentRepoException e) {
+      assertSame(expected, e);
+    }
+  }
+
+}
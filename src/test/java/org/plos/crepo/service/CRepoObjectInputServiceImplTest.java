@@ -22,10 +22,18 @@
 
 package org.plos.crepo.service;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
 import com.google.gson.Gson;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.message.BasicHeader;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -41,25 +49,36 @@ import org.plos.crepo.model.identity.RepoVersion;
 import org.plos.crepo.model.identity.RepoVersionNumber;
 import org.plos.crepo.model.identity.RepoVersionTag;
 import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
 import org.plos.crepo.model.validator.RepoObjectValidator;
 import org.plos.crepo.util.HttpResponseUtil;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.security.MessageDigest;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static junit.framework.TestCase.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -397,6 +416,35 @@ public class CRepoObjectInputServiceImplTest extends BaseServiceTest {
     assertEquals(expectedResponse, objectResponse);
   }
 
+  @Test
+  public void streamRepoObjectsTest() throws IOException {
+    List<Map<String, Object>> expectedResponse = ImmutableList.<Map<String, Object>>of(
+        TEST_METADATA, ImmutableMap.<String, Object>of("testField", "otherValue"));
+    CloseableHttpResponse httpResponse = mockJsonResponse(expectedResponse);
+    when(contentRepoObjectDao.getObjectsUsingTag(BUCKET_NAME, OFFSET, LIMIT, true, TAG)).thenReturn(httpResponse);
+
+    List<Map<String, Object>> objectResponse;
+    try (Stream<RepoObjectMetadata> stream = cRepoObjectServiceImpl.streamRepoObjects(BUCKET_NAME, OFFSET, LIMIT, true, TAG)) {
+      verify(httpResponse, never()).close();
+      objectResponse = stream.map(RepoObjectMetadata::getMapView).collect(Collectors.toList());
+    }
+
+    verify(contentRepoObjectDao).getObjectsUsingTag(BUCKET_NAME, OFFSET, LIMIT, true, TAG);
+    verify(httpResponse, atLeastOnce()).close();
+    assertEquals(expectedResponse, objectResponse);
+  }
+
+  @Test
+  public void streamRepoObjectsClosedEarlyTest() throws IOException {
+    CloseableHttpResponse httpResponse = mockJsonResponse(TEST_METADATA_LIST);
+    when(contentRepoObjectDao.getObjects(BUCKET_NAME, OFFSET, LIMIT, true)).thenReturn(httpResponse);
+
+    Stream<RepoObjectMetadata> stream = cRepoObjectServiceImpl.streamRepoObjects(BUCKET_NAME, OFFSET, LIMIT, true, null);
+    stream.close();
+
+    verify(httpResponse).close();
+  }
+
   @Test
   public void getObjectsUsingTagThrowsExcTest() throws IOException {
     CloseableHttpResponse httpResponse = mock(CloseableHttpResponse.class);
@@ -579,6 +627,201 @@ public class CRepoObjectInputServiceImplTest extends BaseServiceTest {
     assertNull(objectResponse);
   }
 
+  private RepoObjectMetadata createWithChecksum(String reportedChecksum) throws Exception {
+    Map<String, Object> expectedResponse = ImmutableMap.<String, Object>of("checksum", reportedChecksum);
+    CloseableHttpResponse httpResponse = mockJsonResponse(expectedResponse);
+
+    RepoObjectInput repoObjectInput = mock(RepoObjectInput.class);
+    when(repoObjectInput.getBucketName()).thenReturn(BUCKET_NAME);
+    when(repoObjectInput.getKey()).thenReturn(KEY);
+    when(repoObjectInput.isVerifyChecksum()).thenReturn(true);
+    PowerMockito.mockStatic(RepoObjectValidator.class);
+    PowerMockito.doNothing().when(RepoObjectValidator.class, "validate", repoObjectInput);
+    when(repoObjectInput.probeContentType()).thenReturn(CONTENT_TYPE);
+    when(contentRepoObjectDao.createRepoObj(eq(BUCKET_NAME), eq(repoObjectInput), eq(CONTENT_TYPE), any(MessageDigest.class)))
+        .thenAnswer(invocation -> {
+          // Stand in for the DAO feeding the uploaded content to the digest
+          MessageDigest digest = (MessageDigest) invocation.getArguments()[3];
+          digest.update("test content".getBytes(Charsets.UTF_8));
+          return httpResponse;
+        });
+
+    try {
+      return cRepoObjectServiceImpl.createRepoObject(repoObjectInput);
+    } finally {
+      verify(contentRepoObjectDao, never()).createRepoObj(BUCKET_NAME, repoObjectInput, CONTENT_TYPE);
+      verify(httpResponse, atLeastOnce()).close();
+    }
+  }
+
+  @Test
+  public void createRepoObjectVerifiesChecksumTest() throws Exception {
+    String checksum = Hashing.sha1().hashString("test content", Charsets.UTF_8).toString();
+    RepoObjectMetadata created = createWithChecksum(checksum.toUpperCase());
+    assertEquals(checksum.toUpperCase(), created.getChecksum().get());
+  }
+
+  @Test
+  public void createRepoObjectChecksumMismatchTest() throws Exception {
+    String checksum = Hashing.sha1().hashString("other content", Charsets.UTF_8).toString();
+    try {
+      createWithChecksum(checksum);
+      fail("Expected ContentRepoException");
+    } catch (ContentRepoException e) {
+      assertEquals(ErrorType.ChecksumMismatch, e.getErrorType());
+      assertTrue(e.getMessage().contains(checksum));
+    }
+  }
+
+  private CloseableHttpResponse mockContentResponse(int statusCode, byte[] content) throws IOException {
+    CloseableHttpResponse httpResponse = mock(CloseableHttpResponse.class);
+    HttpEntity mockEntity = mock(HttpEntity.class);
+    StatusLine statusLine = mock(StatusLine.class);
+    when(statusLine.getStatusCode()).thenReturn(statusCode);
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(httpResponse.getEntity()).thenReturn(mockEntity);
+    when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(content));
+    return httpResponse;
+  }
+
+  @Test
+  public void getRepoObjectRangePartialContentTest() throws IOException {
+    RepoVersion version = RepoVersion.create(BUCKET_NAME, KEY, UUID.randomUUID().toString());
+    CloseableHttpResponse httpResponse = mockContentResponse(HttpStatus.SC_PARTIAL_CONTENT,
+        "content".getBytes(Charsets.UTF_8));
+    when(httpResponse.getFirstHeader(HttpHeaders.CONTENT_RANGE))
+        .thenReturn(new BasicHeader(HttpHeaders.CONTENT_RANGE, "bytes 5-11/20"));
+    when(contentRepoObjectDao.getRepoObjRangeUsingUuid(BUCKET_NAME, KEY, version.getUuid().toString(), 5L, 7L))
+        .thenReturn(httpResponse);
+
+    try (InputStream range = cRepoObjectServiceImpl.getRepoObjectRange(version, 5L, 7L)) {
+      assertEquals("content", new String(IOUtils.toByteArray(range), Charsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void getRepoObjectRangeEarlyPartialContentTest() throws IOException {
+    RepoVersion version = RepoVersion.create(BUCKET_NAME, KEY, UUID.randomUUID().toString());
+    CloseableHttpResponse httpResponse = mockContentResponse(HttpStatus.SC_PARTIAL_CONTENT,
+        "the whole".getBytes(Charsets.UTF_8));
+    when(httpResponse.getFirstHeader(HttpHeaders.CONTENT_RANGE))
+        .thenReturn(new BasicHeader(HttpHeaders.CONTENT_RANGE, "bytes 0-8/*"));
+    when(contentRepoObjectDao.getRepoObjRangeUsingUuid(BUCKET_NAME, KEY, version.getUuid().toString(), 4L, 3L))
+        .thenReturn(httpResponse);
+
+    try (InputStream range = cRepoObjectServiceImpl.getRepoObjectRange(version, 4L, 3L)) {
+      assertEquals("who", new String(IOUtils.toByteArray(range), Charsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void getRepoObjectRangeMismatchedPartialContentTest() throws IOException {
+    RepoVersion version = RepoVersion.create(BUCKET_NAME, KEY, UUID.randomUUID().toString());
+    CloseableHttpResponse httpResponse = mockContentResponse(HttpStatus.SC_PARTIAL_CONTENT,
+        "content".getBytes(Charsets.UTF_8));
+    when(httpResponse.getFirstHeader(HttpHeaders.CONTENT_RANGE))
+        .thenReturn(new BasicHeader(HttpHeaders.CONTENT_RANGE, "bytes 6-12/20"));
+    when(contentRepoObjectDao.getRepoObjRangeUsingUuid(BUCKET_NAME, KEY, version.getUuid().toString(), 5L, 7L))
+        .thenReturn(httpResponse);
+
+    try {
+      cRepoObjectServiceImpl.getRepoObjectRange(version, 5L, 7L);
+      fail("Expected ContentRepoException");
+    } catch (ContentRepoException e) {
+      assertEquals(ErrorType.ErrorFetchingObject, e.getErrorType());
+    }
+    verify(httpResponse).close();
+  }
+
+  @Test
+  public void getRepoObjectRangeFullContentTest() throws IOException {
+    RepoVersion version = RepoVersion.create(BUCKET_NAME, KEY, UUID.randomUUID().toString());
+    CloseableHttpResponse httpResponse = mockContentResponse(HttpStatus.SC_OK,
+        "the whole content".getBytes(Charsets.UTF_8));
+    when(contentRepoObjectDao.getRepoObjRangeUsingUuid(BUCKET_NAME, KEY, version.getUuid().toString(), 4L, 5L))
+        .thenReturn(httpResponse);
+
+    try (InputStream range = cRepoObjectServiceImpl.getRepoObjectRange(version, 4L, 5L)) {
+      assertEquals("whole", new String(IOUtils.toByteArray(range), Charsets.UTF_8));
+    }
+    verify(httpResponse).close();
+  }
+
+  @Test
+  public void getRepoObjectRangePastEndTest() throws IOException {
+    RepoVersion version = RepoVersion.create(BUCKET_NAME, KEY, UUID.randomUUID().toString());
+    CloseableHttpResponse httpResponse = mockContentResponse(HttpStatus.SC_OK, "short".getBytes(Charsets.UTF_8));
+    when(contentRepoObjectDao.getRepoObjRangeUsingUuid(BUCKET_NAME, KEY, version.getUuid().toString(), 10L, 5L))
+        .thenReturn(httpResponse);
+
+    try {
+      cRepoObjectServiceImpl.getRepoObjectRange(version, 10L, 5L);
+      fail("Expected ContentRepoException");
+    } catch (ContentRepoException e) {
+      assertEquals(ErrorType.ErrorFetchingObject, e.getErrorType());
+    }
+    verify(httpResponse).close();
+  }
+
+  @Test
+  public void getRepoObjectRangeEmptyTest() throws IOException {
+    RepoVersion version = RepoVersion.create(BUCKET_NAME, KEY, UUID.randomUUID().toString());
+    try (InputStream range = cRepoObjectServiceImpl.getRepoObjectRange(version, 3L, 0L)) {
+      assertEquals(-1, range.read());
+    }
+    verify(contentRepoObjectDao, never()).getRepoObjRangeUsingUuid(any(String.class), any(String.class),
+        any(String.class), any(Long.class), any(Long.class));
+  }
+
+  private static RepoObjectMetadata reproxiedMetadata(RepoVersion version, List<String> reproxyUrls) {
+    return new RepoObjectMetadata(BUCKET_NAME, ImmutableMap.<String, Object>of(
+        "key", KEY, "uuid", version.getUuid().toString(), "reproxyURL", reproxyUrls));
+  }
+
+  @Test
+  public void getReproxiedRepoObjectTest() throws IOException {
+    RepoVersion version = RepoVersion.create(BUCKET_NAME, KEY, UUID.randomUUID().toString());
+    CloseableHttpResponse reproxied = mockContentResponse(HttpStatus.SC_OK, "content".getBytes(Charsets.UTF_8));
+    when(contentRepoObjectDao.getReproxiedContent(BUCKET_NAME, new URL("http://storage1/obj")))
+        .thenThrow(new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ErrorFetchingObject).build());
+    when(contentRepoObjectDao.getReproxiedContent(BUCKET_NAME, new URL("http://storage2/obj"))).thenReturn(reproxied);
+
+    RepoObjectMetadata metadata = reproxiedMetadata(version,
+        ImmutableList.of("http://storage1/obj", "http://storage2/obj"));
+    try (InputStream content = cRepoObjectServiceImpl.getReproxiedRepoObject(metadata)) {
+      assertEquals("content", new String(IOUtils.toByteArray(content), Charsets.UTF_8));
+    }
+    verify(contentRepoObjectDao, never()).getRepoObjUsingUuid(any(String.class), any(String.class), any(String.class));
+  }
+
+  @Test
+  public void getReproxiedRepoObjectFallbackTest() throws IOException {
+    RepoVersion version = RepoVersion.create(BUCKET_NAME, KEY, UUID.randomUUID().toString());
+    when(contentRepoObjectDao.getReproxiedContent(BUCKET_NAME, new URL("http://storage1/obj")))
+        .thenThrow(new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ErrorFetchingObject).build());
+    CloseableHttpResponse fromRepo = mockContentResponse(HttpStatus.SC_OK, "content".getBytes(Charsets.UTF_8));
+    when(contentRepoObjectDao.getRepoObjUsingUuid(BUCKET_NAME, KEY, version.getUuid().toString())).thenReturn(fromRepo);
+
+    RepoObjectMetadata metadata = reproxiedMetadata(version, ImmutableList.of("http://storage1/obj"));
+    try (InputStream content = cRepoObjectServiceImpl.getReproxiedRepoObject(metadata)) {
+      assertEquals("content", new String(IOUtils.toByteArray(content), Charsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void getReproxiedRepoObjectWithoutUrlsTest() throws IOException {
+    RepoVersion version = RepoVersion.create(BUCKET_NAME, KEY, UUID.randomUUID().toString());
+    CloseableHttpResponse fromRepo = mockContentResponse(HttpStatus.SC_OK, "content".getBytes(Charsets.UTF_8));
+    when(contentRepoObjectDao.getRepoObjUsingUuid(BUCKET_NAME, KEY, version.getUuid().toString())).thenReturn(fromRepo);
+
+    RepoObjectMetadata metadata = new RepoObjectMetadata(BUCKET_NAME, ImmutableMap.<String, Object>of(
+        "key", KEY, "uuid", version.getUuid().toString()));
+    try (InputStream content = cRepoObjectServiceImpl.getReproxiedRepoObject(metadata)) {
+      assertEquals("content", new String(IOUtils.toByteArray(content), Charsets.UTF_8));
+    }
+    verify(contentRepoObjectDao, never()).getReproxiedContent(any(String.class), any(URL.class));
+  }
+
   @Test
   public void versionRepoObjectTest() throws Exception {
     Map<String, Object> expectedResponse = TEST_METADATA;
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.plos.crepo.model.Status;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.input.RepoCollectionInput;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CachingContentRepoServiceTest {
+
+  private static final String BUCKET_NAME = "bucket";
+
+  private ContentRepoService backend;
+  private CachingContentRepoService cachingService;
+
+  @Before
+  public void setUp() {
+    backend = spy(new InMemoryContentRepoService(BUCKET_NAME));
+    cachingService = new CachingContentRepoService(backend, 3);
+  }
+
+  private RepoVersion createObject(String key) {
+    return backend.autoCreateRepoObject(RepoObjectInput.builder(BUCKET_NAME, key)
+        .setByteContent(key.getBytes()).setContentType("text/plain").build()).getVersion();
+  }
+
+  @Test
+  public void testObjectMetadataHit() {
+    RepoVersion version = createObject("obj");
+
+    RepoObjectMetadata first = cachingService.getRepoObjectMetadata(version);
+    RepoObjectMetadata second = cachingService.getRepoObjectMetadata(version);
+
+    assertSame(first, second);
+    verify(backend, times(1)).getRepoObjectMetadata(version);
+    assertEquals(1, cachingService.getObjectMetadataStats().hitCount());
+    assertEquals(1, cachingService.getObjectMetadataStats().missCount());
+  }
+
+  @Test
+  public void testDeleteInvalidates() {
+    RepoVersion version = createObject("obj");
+    assertEquals(Status.USED, cachingService.getRepoObjectMetadata(version).getStatus());
+
+    cachingService.deleteRepoObject(version);
+
+    assertEquals(Status.DELETED, cachingService.getRepoObjectMetadata(version).getStatus());
+    verify(backend, times(2)).getRepoObjectMetadata(version);
+  }
+
+  @Test
+  public void testDeleteObjectInvalidatesCollection() {
+    RepoVersion object = createObject("obj");
+    RepoVersion collection = backend.autoCreateCollection(
+        RepoCollectionInput.create(BUCKET_NAME, "coll", Collections.singletonList(object))).getVersion();
+    cachingService.getCollection(collection);
+
+    cachingService.deleteRepoObject(object);
+
+    RepoCollectionList reloaded = cachingService.getCollection(collection);
+    assertEquals(Status.DELETED, reloaded.getObjects().get(0).getStatus());
+    verify(backend, times(2)).getCollection(collection);
+  }
+
+  @Test
+  public void testBatchFetchesOnlyMisses() {
+    RepoVersion cached = createObject("obj1");
+    RepoVersion uncached = createObject("obj2");
+    RepoVersion missing = RepoVersion.create(BUCKET_NAME, "missing", UUID.randomUUID());
+    cachingService.getRepoObjectMetadata(cached);
+
+    BatchResult<RepoVersion, RepoObjectMetadata> result =
+        cachingService.getRepoObjectMetadataForVersions(ImmutableList.of(cached, uncached, missing, cached));
+
+    assertEquals(ImmutableList.of(cached, uncached), ImmutableList.copyOf(result.keySet()));
+    assertEquals(ImmutableSet.of(missing), result.getFailures().keySet());
+    verify(backend).getRepoObjectMetadataForVersions(ImmutableSet.of(uncached, missing));
+    assertSame(result.get(uncached), cachingService.getRepoObjectMetadata(uncached));
+  }
+
+  @Test
+  public void testEvictionByWeight() {
+    for (int i = 0; i < 5; i++) {
+      cachingService.getRepoObjectMetadata(createObject("obj" + i));
+    }
+    assertEquals(2, cachingService.getObjectMetadataStats().evictionCount());
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+import org.plos.crepo.exceptions.ContentRepoException;
+import org.plos.crepo.exceptions.ErrorType;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ChecksumVerifyingInputStreamTest {
+
+  private static final byte[] CONTENT = "test content for checksum verification".getBytes(StandardCharsets.UTF_8);
+  private static final RepoVersion VERSION = RepoVersion.create("bucket", "key", UUID.randomUUID());
+
+  private static RepoObjectMetadata metadata(String checksum) {
+    return new RepoObjectMetadata("bucket", ImmutableMap.<String, Object>of(
+        "key", "key", "uuid", VERSION.getUuid().toString(), "checksum", checksum));
+  }
+
+  private static InputStream verifying(byte[] content, String checksum) {
+    return new ChecksumVerifyingInputStream(new ByteArrayInputStream(content), metadata(checksum));
+  }
+
+  private static final String CHECKSUM = Hashing.sha1().hashBytes(CONTENT).toString();
+
+  @Test
+  public void testMatch() throws IOException {
+    try (InputStream stream = verifying(CONTENT, CHECKSUM)) {
+      assertArrayEquals(CONTENT, ByteStreams.toByteArray(stream));
+    }
+  }
+
+  @Test
+  public void testMatchReadingSingleBytesAndSkipping() throws IOException {
+    try (InputStream stream = verifying(CONTENT, CHECKSUM.toUpperCase())) {
+      assertEquals(CONTENT[0], stream.read());
+      assertEquals(10L, stream.skip(10L));
+      assertEquals(CONTENT[11], stream.read());
+      while (stream.read() >= 0) {
+      }
+    }
+  }
+
+  @Test
+  public void testMismatch() throws IOException {
+    byte[] corrupted = CONTENT.clone();
+    corrupted[5] ^= 1;
+    try (InputStream stream = verifying(corrupted, CHECKSUM)) {
+      ByteStreams.toByteArray(stream);
+      fail("Expected ContentRepoException");
+    } catch (ContentRepoException e) {
+      assertEquals(ErrorType.ChecksumMismatch, e.getErrorType());
+    }
+  }
+
+  @Test
+  public void testMismatchIsReportedByLaterReads() throws IOException {
+    byte[] corrupted = CONTENT.clone();
+    corrupted[5] ^= 1;
+    try (InputStream stream = verifying(corrupted, CHECKSUM)) {
+      try {
+        ByteStreams.toByteArray(stream);
+        fail("Expected ContentRepoException");
+      } catch (ContentRepoException expected) {
+      }
+      try {
+        stream.read();
+        fail("Expected ContentRepoException");
+      } catch (ContentRepoException e) {
+        assertEquals(ErrorType.ChecksumMismatch, e.getErrorType());
+      }
+    }
+  }
+
+  @Test
+  public void testSkipNothing() throws IOException {
+    try (InputStream stream = verifying(CONTENT, CHECKSUM)) {
+      assertEquals(0L, stream.skip(0L));
+      assertEquals(0L, stream.skip(-1L));
+      assertArrayEquals(CONTENT, ByteStreams.toByteArray(stream));
+    }
+  }
+
+  @Test
+  public void testPartialReadIsNotChecked() throws IOException {
+    try (InputStream stream = verifying(CONTENT, "0000")) {
+      assertEquals(10, stream.read(new byte[10]));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRequiresChecksum() {
+    new ChecksumVerifyingInputStream(new ByteArrayInputStream(CONTENT),
+        new RepoObjectMetadata("bucket", ImmutableMap.<String, Object>of("key", "key", "uuid", VERSION.getUuid().toString())));
+  }
+
+  @Test
+  public void testInMemoryService() throws IOException {
+    InMemoryContentRepoService service = new InMemoryContentRepoService("bucket");
+    RepoObjectMetadata created = service.autoCreateRepoObject(RepoObjectInput.builder("bucket", "key")
+        .setByteContent(CONTENT).setContentType("text/plain").build());
+    try (InputStream stream = service.getVerifiedRepoObject(created)) {
+      assertArrayEquals(CONTENT, ByteStreams.toByteArray(stream));
+    }
+  }
+
+}
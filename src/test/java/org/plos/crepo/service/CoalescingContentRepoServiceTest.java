@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.plos.crepo.exceptions.ContentRepoException;
+import org.plos.crepo.exceptions.ErrorType;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CoalescingContentRepoServiceTest {
+
+  private static final int THREADS = 8;
+  private static final RepoVersionTag TAG = RepoVersionTag.create("bucket", "key", "published");
+  private static final RepoVersion VERSION = RepoVersion.create("bucket", "key", UUID.randomUUID());
+
+  private ContentRepoService backend;
+  private CoalescingContentRepoService coalescingService;
+  private ExecutorService executor;
+  private CountDownLatch release;
+
+  @Before
+  public void setUp() {
+    backend = mock(ContentRepoService.class);
+    coalescingService = new CoalescingContentRepoService(backend, 16);
+    executor = Executors.newFixedThreadPool(THREADS);
+    release = new CountDownLatch(1);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Block the backend call until every caller has joined it.
+   */
+  private <T> T blockUntilReleased(T result) throws InterruptedException {
+    release.await(10, TimeUnit.SECONDS);
+    return result;
+  }
+
+  /**
+   * Run a lookup on every thread at once, releasing the backend call once the others are waiting for it.
+   */
+  private <T> List<Future<T>> runConcurrently(Callable<T> lookup) throws InterruptedException {
+    List<Future<T>> futures = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      futures.add(executor.submit(lookup));
+    }
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (coalescingService.getCoalescedCount() < THREADS - 1 && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    release.countDown();
+    return futures;
+  }
+
+  @Test
+  public void testCoalescesMetadataLookups() throws Exception {
+    RepoObjectMetadata metadata = new RepoObjectMetadata("bucket", ImmutableMap.<String, Object>of(
+        "key", "key", "uuid", VERSION.getUuid().toString(), "tag", "published"));
+    when(backend.getRepoObjectMetadata(TAG)).thenAnswer(invocation -> blockUntilReleased(metadata));
+
+    for (Future<RepoObjectMetadata> future : runConcurrently(() -> coalescingService.getRepoObjectMetadata(TAG))) {
+      assertSame(metadata, future.get());
+    }
+    verify(backend, times(1)).getRepoObjectMetadata(TAG);
+    assertEquals(THREADS - 1, coalescingService.getCoalescedCount());
+  }
+
+  @Test
+  public void testSharesException() throws Exception {
+    ContentRepoException exception = new ContentRepoException.ContentRepoExceptionBuilder(
+        ErrorType.ErrorFetchingCollection).build();
+    when(backend.getCollection(TAG)).thenAnswer(invocation -> {
+      blockUntilReleased(null);
+      throw exception;
+    });
+
+    for (Future<?> future : runConcurrently(() -> coalescingService.getCollection(TAG))) {
+      try {
+        future.get();
+        fail("Expected ContentRepoException");
+      } catch (ExecutionException e) {
+        assertSame(exception, e.getCause());
+      }
+    }
+    verify(backend, times(1)).getCollection(TAG);
+  }
+
+  @Test
+  public void testSequentialLookupsAreNotCached() {
+    RepoObjectMetadata metadata = new RepoObjectMetadata("bucket", ImmutableMap.<String, Object>of(
+        "key", "key", "uuid", VERSION.getUuid().toString()));
+    when(backend.getRepoObjectMetadata(VERSION)).thenReturn(metadata);
+
+    coalescingService.getRepoObjectMetadata(VERSION);
+    coalescingService.getRepoObjectMetadata(VERSION);
+    verify(backend, times(2)).getRepoObjectMetadata(VERSION);
+    assertEquals(0, coalescingService.getCoalescedCount());
+  }
+
+  @Test
+  public void testSharesSmallContent() throws Exception {
+    byte[] content = "small content".getBytes(StandardCharsets.UTF_8);
+    when(backend.getRepoObject(VERSION)).thenAnswer(invocation -> blockUntilReleased(new ByteArrayInputStream(content)));
+
+    for (Future<InputStream> future : runConcurrently(() -> coalescingService.getRepoObject(VERSION))) {
+      try (InputStream stream = future.get()) {
+        assertArrayEquals(content, ByteStreams.toByteArray(stream));
+      }
+    }
+    verify(backend, times(1)).getRepoObject(VERSION);
+  }
+
+  @Test
+  public void testDoesNotShareLargeContent() throws Exception {
+    byte[] content = "content too large to buffer".getBytes(StandardCharsets.UTF_8);
+    when(backend.getRepoObject(VERSION))
+        .thenAnswer(invocation -> blockUntilReleased(new ByteArrayInputStream(content)))
+        .thenAnswer(invocation -> new ByteArrayInputStream(content));
+
+    for (Future<InputStream> future : runConcurrently(() -> coalescingService.getRepoObject(VERSION))) {
+      try (InputStream stream = future.get()) {
+        assertArrayEquals(content, ByteStreams.toByteArray(stream));
+      }
+    }
+    verify(backend, times(THREADS)).getRepoObject(VERSION);
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import org.junit.Test;
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConcurrentInMemoryContentRepoServiceTest extends InMemoryServiceContractTest {
+
+  @Override
+  protected ContentRepoService createService(ContentStore contentStore, String... initialBuckets) {
+    return new ConcurrentInMemoryContentRepoService(contentStore, Arrays.asList(initialBuckets));
+  }
+
+  @Override
+  protected void clear(ContentRepoService service) {
+    ((ConcurrentInMemoryContentRepoService) service).clear();
+  }
+
+  @Test
+  public void testConcurrentWrites() throws Exception {
+    int threads = 8;
+    int versionsPerThread = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int thread = t;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < versionsPerThread; i++) {
+            createObject("shared", "content", null);
+            createObject("key" + thread, "content", null);
+            service.getLatestRepoObjectMetadata(RepoId.create(BUCKET_NAME, "shared"));
+            service.getRepoObjects(BUCKET_NAME, i, 10, false, null);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    List<RepoObjectMetadata> versions = service.getRepoObjectVersions(RepoId.create(BUCKET_NAME, "shared"));
+    assertEquals(threads * versionsPerThread, versions.size());
+    Set<Integer> numbers = new HashSet<>();
+    for (RepoObjectMetadata version : versions) {
+      numbers.add(version.getVersionNumber().getNumber());
+    }
+    assertEquals(threads * versionsPerThread, numbers.size());
+    assertEquals(2 * threads * versionsPerThread, service.getBucket(BUCKET_NAME).get("totalObjects"));
+  }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConfigCachingContentRepoServiceTest {
+
+  private ContentRepoService backend;
+  private FakeTicker ticker;
+  private PendingExecutor pendingRefreshes;
+  private ConfigCachingContentRepoService cachingService;
+
+  @Before
+  public void setUp() {
+    backend = mock(ContentRepoService.class);
+    ticker = new FakeTicker();
+    pendingRefreshes = new PendingExecutor();
+    cachingService = new ConfigCachingContentRepoService(backend, 1, TimeUnit.MINUTES, pendingRefreshes, ticker);
+  }
+
+  @Test
+  public void testCachesConfig() {
+    when(backend.hasXReproxy()).thenReturn(true);
+    when(backend.getRepoConfig()).thenReturn(ImmutableMap.of("version", "1"));
+    when(backend.getRepoStatus()).thenReturn(ImmutableMap.of("bucketCount", 2));
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(cachingService.hasXReproxy());
+      assertEquals(ImmutableMap.of("version", "1"), cachingService.getRepoConfig());
+      assertEquals(ImmutableMap.of("bucketCount", 2), cachingService.getRepoStatus());
+    }
+    verify(backend, times(1)).hasXReproxy();
+    verify(backend, times(1)).getRepoConfig();
+    verify(backend, times(1)).getRepoStatus();
+    assertEquals(6L, cachingService.getStats().hitCount());
+  }
+
+  @Test
+  public void testRefreshesInBackground() {
+    when(backend.hasXReproxy()).thenReturn(true, false);
+    assertTrue(cachingService.hasXReproxy());
+
+    ticker.advance(2, TimeUnit.MINUTES);
+    assertTrue(cachingService.hasXReproxy()); // the stale value is returned while the reload is pending
+    assertEquals(1, pendingRefreshes.size());
+    verify(backend, times(1)).hasXReproxy();
+
+    pendingRefreshes.runPending();
+    assertFalse(cachingService.hasXReproxy());
+    verify(backend, times(2)).hasXReproxy();
+  }
+
+  @Test
+  public void testKeepsValueWhenRefreshFails() {
+    when(backend.hasXReproxy()).thenReturn(true).thenThrow(new RuntimeException("repo unavailable"));
+    assertTrue(cachingService.hasXReproxy());
+
+    ticker.advance(2, TimeUnit.MINUTES);
+    assertTrue(cachingService.hasXReproxy());
+    pendingRefreshes.runPending();
+    assertTrue(cachingService.hasXReproxy());
+  }
+
+  @Test
+  public void testForcedRefresh() {
+    when(backend.getRepoStatus())
+        .thenReturn(ImmutableMap.of("bucketCount", 1))
+        .thenReturn(ImmutableMap.of("bucketCount", 2));
+    assertEquals(ImmutableMap.of("bucketCount", 1), cachingService.getRepoStatus());
+
+    cachingService.refresh();
+    assertEquals(ImmutableMap.of("bucketCount", 2), cachingService.getRepoStatus());
+    verify(backend, times(2)).getRepoStatus();
+    verify(backend, times(0)).getRepoConfig(); // values that were never read are not loaded
+  }
+
+  @Test
+  public void testCreateBucketInvalidatesBuckets() {
+    List<Map<String, Object>> before = ImmutableList.<Map<String, Object>>of(ImmutableMap.of("bucketName", "a"));
+    List<Map<String, Object>> after = ImmutableList.<Map<String, Object>>of(
+        ImmutableMap.of("bucketName", "a"), ImmutableMap.of("bucketName", "b"));
+    when(backend.getBuckets()).thenReturn(before).thenReturn(after);
+
+    assertEquals(before, cachingService.getBuckets());
+    assertEquals(before, cachingService.getBuckets());
+    cachingService.createBucket("b");
+    assertEquals(after, cachingService.getBuckets());
+    verify(backend).createBucket("b");
+  }
+
+  @Test
+  public void testLoadFailurePropagates() {
+    when(backend.getRepoConfig()).thenThrow(new IllegalStateException("repo unavailable"));
+    try {
+      cachingService.getRepoConfig();
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertEquals("repo unavailable", e.getMessage());
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testCachedValuesAreUnmodifiable() {
+    when(backend.getRepoConfig()).thenReturn(new HashMap<>());
+    cachingService.getRepoConfig().put("key", "value");
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testNestedCachedValuesAreUnmodifiable() {
+    List<Map<String, Object>> buckets = new ArrayList<>();
+    buckets.add(new HashMap<>());
+    when(backend.getBuckets()).thenReturn(buckets);
+    cachingService.getBuckets().get(0).put("bucketName", "changed");
+  }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.plos.crepo.config.HttpClientFunction;
+import org.plos.crepo.exceptions.ContentRepoException;
+import org.plos.crepo.exceptions.NotFoundException;
+import org.plos.crepo.model.Status;
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionNumber;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.input.RepoCollectionInput;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ContentRepoServiceImpl} and its DAOs end-to-end, over HTTP on a local socket, against a {@link
+ * ContentRepoEmulator} backed by a {@link ConcurrentInMemoryContentRepoService}.
+ */
+public class ContentRepoEmulatorTest {
+
+  private static final String BUCKET_NAME = "bucket";
+
+  private ContentRepoEmulator emulator;
+  private CloseableHttpClient httpClient;
+  private ContentRepoService service;
+
+  @BeforeClass
+  public static void enableNoDelay() {
+    ContentRepoEmulator.enableNoDelay();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    emulator = new ContentRepoEmulator(new ConcurrentInMemoryContentRepoService());
+    httpClient = HttpClients.createDefault();
+    service = new ContentRepoServiceImpl(emulator.getRepoServer(), HttpClientFunction.from(httpClient));
+    service.createBucket(BUCKET_NAME);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    httpClient.close();
+    emulator.close();
+  }
+
+  private RepoObjectMetadata createObject(String key, String content, String tag) {
+    return service.autoCreateRepoObject(RepoObjectInput.builder(BUCKET_NAME, key)
+        .setByteContent(content.getBytes(StandardCharsets.UTF_8)).setContentType("text/plain").setTag(tag)
+        .setVerifyChecksum(true).build());
+  }
+
+  private static String read(InputStream stream) throws IOException {
+    try (InputStream s = stream) {
+      return new String(ByteStreams.toByteArray(s), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static List<String> keysOf(List<RepoObjectMetadata> metadata) {
+    return metadata.stream().map(m -> m.getVersion().getId().getKey() + ":" + m.getVersionNumber().getNumber())
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void testConfigAndBuckets() {
+    assertFalse(service.hasXReproxy());
+    assertTrue(service.getRepoConfig().containsKey("version"));
+    assertEquals(1.0, service.getRepoStatus().get("bucketCount"));
+
+    service.createBucket("with space");
+    assertEquals("with space", service.getBucket("with space").get("bucketName"));
+    assertEquals(2, service.getBuckets().size());
+  }
+
+  @Test
+  public void testObjects() throws IOException {
+    RepoObjectMetadata v0 = createObject("a/key", "first", "t");
+    RepoObjectMetadata v1 = service.versionRepoObject(RepoObjectInput.builder(BUCKET_NAME, "a/key")
+        .setByteContent("second".getBytes(StandardCharsets.UTF_8)).setContentType("text/plain")
+        .setDownloadName("second.txt").setUserMetadata("{\"n\":1}").build());
+    createObject("other", "third", "t");
+    RepoId id = RepoId.create(BUCKET_NAME, "a/key");
+
+    assertEquals(1, v1.getVersionNumber().getNumber());
+    assertEquals(6L, v1.getSize());
+    assertEquals("first", read(service.getRepoObject(v0.getVersion())));
+    assertEquals("second", read(service.getLatestRepoObject(id)));
+    assertEquals("first", read(service.getRepoObject(RepoVersionNumber.create(id, 0))));
+    assertEquals("second", read(service.getVerifiedRepoObject(v1)));
+    assertEquals(v0.getVersion(), service.getRepoObjectMetadata(RepoVersionTag.create(id, "t")).getVersion());
+    assertEquals(v1.getMapView(), service.getLatestRepoObjectMetadata(id).getMapView());
+    assertEquals(2, service.getRepoObjectVersions(id).size());
+
+    assertEquals(ImmutableList.of("a/key:0", "a/key:1", "other:0"),
+        keysOf(service.getRepoObjects(BUCKET_NAME, 0, 10, false, null)));
+    assertEquals(ImmutableList.of("a/key:1"), keysOf(service.getRepoObjects(BUCKET_NAME, 1, 1, false, null)));
+    assertEquals(ImmutableList.of("a/key:0", "other:0"), keysOf(service.getRepoObjects(BUCKET_NAME, 0, 10, false, "t")));
+    assertEquals(3L, service.streamRepoObjects(BUCKET_NAME, 0, 10, false, null).count());
+
+    assertTrue(service.deleteRepoObject(v1.getVersion()));
+    assertEquals(Status.DELETED, service.getRepoObjectMetadata(v1.getVersion()).getStatus());
+    assertEquals(v0.getVersion(), service.getLatestRepoObjectMetadata(id).getVersion());
+    assertTrue(service.deleteRepoObject(RepoVersionNumber.create(id, 0)));
+    assertEquals(1, service.getRepoObjects(BUCKET_NAME, 0, 10, false, null).size());
+    assertEquals(3, service.getRepoObjects(BUCKET_NAME, 0, 10, true, null).size());
+  }
+
+  @Test
+  public void testRanges() throws IOException {
+    RepoObjectMetadata created = createObject("key", "0123456789", null);
+
+    assertEquals("345", read(service.getRepoObjectRange(created.getVersion(), 3, 3)));
+    assertEquals("789", read(service.getRepoObjectRange(created.getVersion(), 7, Long.MAX_VALUE)));
+    assertEquals("0123456789", read(service.getResumableRepoObject(created, 1)));
+  }
+
+  @Test(expected = ContentRepoException.class)
+  public void testRangePastEnd() {
+    RepoObjectMetadata created = createObject("key", "0123456789", null);
+    service.getRepoObjectRange(created.getVersion(), 10, 5);
+  }
+
+  @Test
+  public void testCollections() {
+    RepoObjectMetadata object1 = createObject("obj1", "one", null);
+    RepoObjectMetadata object2 = createObject("obj2", "two", null);
+    RepoCollectionList created = service.autoCreateCollection(RepoCollectionInput.builder(BUCKET_NAME, "coll")
+        .setObjects(ImmutableList.of(object1.getVersion(), object2.getVersion())).setTag("c").build());
+    RepoId id = RepoId.create(BUCKET_NAME, "coll");
+
+    assertEquals(ImmutableList.of(object1.getVersion(), object2.getVersion()),
+        created.getObjects().stream().map(RepoObjectMetadata::getVersion).collect(Collectors.toList()));
+    assertEquals(created.getMapView(), service.getCollection(created.getVersion()).getMapView());
+    assertEquals(created.getVersion(), service.getCollection(RepoVersionTag.create(id, "c")).getVersion());
+    assertEquals(created.getVersion(), service.getLatestCollection(id).getVersion());
+
+    RepoCollectionList versioned = service.versionCollection(RepoCollectionInput.create(BUCKET_NAME, "coll",
+        ImmutableList.of(object1.getVersion())));
+    assertEquals(1, versioned.getVersionNumber().getNumber());
+    assertEquals(2, service.getCollectionVersions(id).size());
+    assertEquals(2, service.getCollections(BUCKET_NAME, 0, 10, false, null).size());
+
+    assertTrue(service.deleteCollection(RepoVersionNumber.create(id, 1)));
+    assertEquals(created.getVersion(), service.getLatestCollection(id).getVersion());
+    assertEquals(1, service.getCollections(BUCKET_NAME, 0, 10, false, null).size());
+  }
+
+  @Test(expected = NotFoundException.class)
+  public void testMissingObject() {
+    service.getRepoObjectMetadata(RepoVersion.create(BUCKET_NAME, "missing", "00000000-0000-4000-8000-000000000000"));
+  }
+
+  @Test(expected = ContentRepoException.class)
+  public void testCreateExisting() {
+    createObject("key", "content", null);
+    service.createRepoObject(RepoObjectInput.builder(BUCKET_NAME, "key")
+        .setByteContent(new byte[]{1}).setContentType("application/octet-stream").build());
+  }
+
+  @Test
+  public void testConcurrentClients() throws Exception {
+    int threads = 4;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        String key = "key" + t;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 20; i++) {
+            RepoObjectMetadata created = createObject(key, key + i, null);
+            assertEquals(key + i, read(service.getRepoObject(created.getVersion())));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(80, service.getRepoObjects(BUCKET_NAME, 0, 100, false, null).size());
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.plos.crepo.exceptions.NotFoundException;
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DeduplicatingContentRepoServiceTest {
+
+  private static final String BUCKET_NAME = "bucket";
+  private static final RepoId NEW_ID = RepoId.create(BUCKET_NAME, "new");
+
+  private ContentRepoService backend;
+  private DeduplicatingContentRepoService dedupService;
+
+  @Before
+  public void setUp() {
+    backend = spy(new InMemoryContentRepoService(BUCKET_NAME));
+    // The fake service doesn't simulate a 404 for an absent object, so stand in for the real service
+    doThrow(new NotFoundException("not found")).when(backend).getLatestRepoObjectMetadata(NEW_ID);
+    dedupService = new DeduplicatingContentRepoService(backend);
+  }
+
+  private static RepoObjectInput.Builder input(String key, String content) {
+    return RepoObjectInput.builder(BUCKET_NAME, key).setByteContent(content.getBytes()).setContentType("text/plain");
+  }
+
+  @Test
+  public void testSkipsUnchangedContent() {
+    RepoObjectMetadata first = dedupService.autoCreateRepoObject(input("new", "content").build());
+    RepoObjectMetadata second = dedupService.autoCreateRepoObject(input("new", "content").build());
+
+    assertEquals(first.getVersion(), second.getVersion());
+    verify(backend, times(1)).autoCreateRepoObject(any(RepoObjectInput.class));
+    assertEquals(1L, dedupService.getSkippedUploadCount());
+  }
+
+  @Test
+  public void testUploadsChangedContent() {
+    RepoObjectMetadata first = dedupService.autoCreateRepoObject(input("new", "content").build());
+    RepoObjectMetadata second = dedupService.autoCreateRepoObject(input("new", "changed").build());
+
+    assertNotEquals(first.getVersion(), second.getVersion());
+    assertEquals(1, second.getVersionNumber().getNumber());
+    verify(backend, times(2)).autoCreateRepoObject(any(RepoObjectInput.class));
+    assertEquals(0L, dedupService.getSkippedUploadCount());
+  }
+
+  @Test
+  public void testUploadsChangedAttributes() {
+    dedupService.autoCreateRepoObject(input("new", "content").build());
+    dedupService.autoCreateRepoObject(input("new", "content").setUserMetadata("{\"a\": 1}").build());
+    dedupService.autoCreateRepoObject(input("new", "content").setUserMetadata("{\"a\": 1}").build());
+    dedupService.autoCreateRepoObject(input("new", "content").setContentType("text/xml").build());
+
+    verify(backend, times(3)).autoCreateRepoObject(any(RepoObjectInput.class));
+    assertEquals(1L, dedupService.getSkippedUploadCount());
+  }
+
+  @Test
+  public void testLooksUpLatestVersionOnce() {
+    RepoObjectMetadata existing = backend.autoCreateRepoObject(input("existing", "content").build());
+    RepoId id = existing.getVersion().getId();
+
+    assertEquals(existing.getVersion(), dedupService.versionRepoObject(input("existing", "content").build()).getVersion());
+    assertEquals(existing.getVersion(), dedupService.autoCreateRepoObject(input("existing", "content").build()).getVersion());
+
+    verify(backend, times(1)).getLatestRepoObjectMetadata(id);
+    verify(backend, never()).versionRepoObject(any(RepoObjectInput.class));
+    verify(backend, times(1)).autoCreateRepoObject(any(RepoObjectInput.class));
+    assertEquals(2L, dedupService.getSkippedUploadCount());
+    assertEquals(1L, dedupService.getLatestVersionStats().hitCount());
+  }
+
+  @Test
+  public void testNewObjectIsReadOnce() {
+    AtomicInteger opens = new AtomicInteger();
+    RepoObjectInput newObject = input("new", "content").setContentAccessor(() -> {
+      opens.incrementAndGet();
+      return new ByteArrayInputStream("content".getBytes());
+    }).build();
+    dedupService.autoCreateRepoObject(newObject);
+
+    assertEquals(1, opens.get()); // for the upload, but not to hash it
+  }
+
+  @Test
+  public void testDeleteInvalidates() {
+    RepoObjectMetadata first = dedupService.autoCreateRepoObject(input("new", "content").build());
+    dedupService.deleteRepoObject(first.getVersion());
+    RepoObjectMetadata second = dedupService.autoCreateRepoObject(input("new", "content").build());
+
+    assertNotEquals(first.getVersion(), second.getVersion());
+    verify(backend, times(2)).autoCreateRepoObject(any(RepoObjectInput.class));
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import com.google.common.io.ByteStreams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExecutorAsyncContentRepoServiceTest {
+
+  private static final String BUCKET_NAME = "bucket";
+
+  private ContentRepoService backend;
+  private ExecutorService executor;
+  private AsyncContentRepoService asyncService;
+
+  @Before
+  public void setUp() {
+    backend = new InMemoryContentRepoService(BUCKET_NAME);
+    executor = Executors.newFixedThreadPool(2);
+    asyncService = new ExecutorAsyncContentRepoService(backend, executor);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testFanOut() {
+    List<RepoVersion> versions = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      versions.add(backend.autoCreateRepoObject(RepoObjectInput.builder(BUCKET_NAME, "key" + i)
+          .setByteContent(new byte[]{(byte) i}).setContentType("text/plain").build()).getVersion());
+    }
+
+    List<CompletableFuture<RepoObjectMetadata>> futures = new ArrayList<>();
+    for (RepoVersion version : versions) {
+      futures.add(asyncService.getRepoObjectMetadata(version));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+
+    for (int i = 0; i < versions.size(); i++) {
+      assertEquals(versions.get(i), futures.get(i).join().getVersion());
+    }
+  }
+
+  @Test
+  public void testRange() throws IOException {
+    RepoVersion version = backend.autoCreateRepoObject(RepoObjectInput.builder(BUCKET_NAME, "key")
+        .setByteContent(new byte[]{0, 1, 2, 3, 4}).setContentType("text/plain").build()).getVersion();
+
+    try (InputStream stream = asyncService.getRepoObjectRange(version, 1, 3).join()) {
+      assertArrayEquals(new byte[]{1, 2, 3}, ByteStreams.toByteArray(stream));
+    }
+  }
+
+  @Test
+  public void testExceptionalCompletion() {
+    RepoVersion missing = RepoVersion.create(BUCKET_NAME, "missing", UUID.randomUUID());
+    try {
+      asyncService.getRepoObjectMetadata(missing).join();
+      fail("Expected exception");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof InMemoryContentRepoService.InMemoryContentRepoServiceException);
+    }
+  }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.plos.crepo.model.Status;
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersionNumber;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.input.RepoCollectionInput;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+import org.plos.crepo.service.InMemoryContentRepoService.InMemoryContentRepoServiceException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FileSystemContentRepoServiceTest {
+
+  private static final String BUCKET_NAME = "bucket";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path directory;
+  private FileSystemContentRepoService service;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = folder.getRoot().toPath().resolve("repo");
+    service = new FileSystemContentRepoService(directory);
+    service.createBucket(BUCKET_NAME);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    service.close();
+  }
+
+  private void reopen() throws IOException {
+    service.close();
+    service = new FileSystemContentRepoService(directory);
+  }
+
+  private RepoObjectMetadata createObject(String key, String content, String tag) {
+    return service.autoCreateRepoObject(RepoObjectInput.builder(BUCKET_NAME, key)
+        .setByteContent(content.getBytes(StandardCharsets.UTF_8)).setContentType("text/plain").setTag(tag).build());
+  }
+
+  private static String read(InputStream stream) throws IOException {
+    try (InputStream s = stream) {
+      return new String(ByteStreams.toByteArray(s), StandardCharsets.UTF_8);
+    }
+  }
+
+  private List<Object> describeObjects(boolean includeDeleted) {
+    return service.getRepoObjects(BUCKET_NAME, 0, 100, includeDeleted, null).stream()
+        .map(RepoObjectMetadata::getMapView).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testSurvivesRestart() throws IOException {
+    RepoObjectMetadata v0 = createObject("obj", "first", "a");
+    RepoObjectMetadata v1 = createObject("obj", "second", "b");
+    createObject("other", "first", null);
+    service.deleteRepoObject(v0.getVersion());
+    RepoCollectionList collection = service.autoCreateCollection(RepoCollectionInput.builder(BUCKET_NAME, "coll")
+        .setObjects(ImmutableList.of(v0.getVersion(), v1.getVersion())).setTag("c").build());
+    service.createBucket("empty");
+    List<Object> objects = describeObjects(true);
+
+    reopen();
+
+    assertEquals(objects, describeObjects(true));
+    assertEquals(2, describeObjects(false).size());
+    assertEquals(2, service.getBuckets().size());
+    RepoId id = RepoId.create(BUCKET_NAME, "obj");
+    assertEquals(Status.DELETED, service.getRepoObjectMetadata(v0.getVersion()).getStatus());
+    assertEquals(v1.getVersion(), service.getLatestRepoObjectMetadata(id).getVersion());
+    assertEquals(v0.getVersion(), service.getRepoObjectMetadata(RepoVersionTag.create(id, "a")).getVersion());
+    assertEquals("first", read(service.getRepoObject(v0.getVersion())));
+    assertEquals("cond", read(service.getRepoObjectRange(v1.getVersion(), 2, 4)));
+    assertEquals(collection.getMapView(), service.getCollection(collection.getVersion()).getMapView());
+
+    // New versions continue from the restored state
+    assertEquals(2, createObject("obj", "third", null).getVersionNumber().getNumber());
+    assertTrue(service.deleteLatestRepoObject(id));
+    assertTrue(service.deleteRepoObject(RepoVersionNumber.create(id, 1)));
+    assertFalse(service.deleteRepoObject(v0.getVersion()));
+    assertTrue(service.deleteCollection(collection.getVersion()));
+    objects = describeObjects(true);
+
+    reopen();
+
+    assertEquals(objects, describeObjects(true));
+    assertEquals(1, describeObjects(false).size());
+    assertEquals(Status.DELETED, service.getCollection(collection.getVersion()).getStatus());
+  }
+
+  @Test
+  public void testStoresIdenticalContentOnce() throws IOException {
+    createObject("obj", "same", null);
+    createObject("obj", "same", null);
+    createObject("other", "same", null);
+    createObject("other", "different", null);
+
+    try (Stream<Path> files = Files.walk(directory.resolve(FileSystemContentRepoService.CONTENT_DIRECTORY_NAME))) {
+      assertEquals(2, files.filter(Files::isRegularFile).count());
+    }
+  }
+
+  @Test
+  public void testFailedChangeIsNotJournaled() throws IOException {
+    createObject("obj", "content", null);
+    try {
+      service.createRepoObject(RepoObjectInput.builder(BUCKET_NAME, "obj").setByteContent(new byte[0]).build());
+      fail("Expected the existing key to be rejected");
+    } catch (InMemoryContentRepoServiceException expected) {
+    }
+
+    reopen();
+    assertEquals(1, describeObjects(true).size());
+  }
+
+  @Test
+  public void testSkipsEntryThatFailedValidation() throws IOException {
+    createObject("obj", "content", null);
+    service.close();
+    Path journal = directory.resolve(FileSystemContentRepoService.JOURNAL_FILE_NAME);
+    List<String> lines = Files.readAllLines(journal, StandardCharsets.UTF_8);
+    String rejected = lines.get(lines.size() - 1).replaceFirst("\\{", "{\"mustExist\":false,") + "\n";
+    Files.write(journal, rejected.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    service = new FileSystemContentRepoService(directory);
+    assertEquals(1, describeObjects(true).size());
+  }
+
+  @Test
+  public void testDiscardsIncompleteEntry() throws IOException {
+    createObject("obj", "content", null);
+    service.close();
+    Path journal = directory.resolve(FileSystemContentRepoService.JOURNAL_FILE_NAME);
+    Files.write(journal, "{\"operation\":\"ADD_OBJ".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    service = new FileSystemContentRepoService(directory);
+    assertEquals(1, describeObjects(true).size());
+    createObject("obj", "more", null);
+
+    reopen();
+    assertEquals(2, describeObjects(true).size());
+  }
+
+  @Test(expected = IOException.class)
+  public void testRejectsCorruptEntry() throws IOException {
+    service.close();
+    Path journal = directory.resolve(FileSystemContentRepoService.JOURNAL_FILE_NAME);
+    Files.write(journal, "not json\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    service = new FileSystemContentRepoService(directory);
+  }
+
+  @Test(expected = IOException.class)
+  public void testRejectsConcurrentInstance() throws IOException {
+    new FileSystemContentRepoService(directory);
+  }
+
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import org.junit.Before;
+import org.junit.Test;
+import org.plos.crepo.model.Status;
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionNumber;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.input.RepoCollectionInput;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoCollectionList;
+import org.plos.crepo.model.metadata.RepoMetadata;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+import org.plos.crepo.service.InMemoryContentRepoService.InMemoryContentRepoServiceException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Behavior that every in-memory implementation of {@link ContentRepoService} must share.
+ */
+public abstract class InMemoryServiceContractTest {
+
+  protected static final String BUCKET_NAME = "bucket";
+
+  protected ContentRepoService service;
+
+  protected abstract ContentRepoService createService(ContentStore contentStore, String... initialBuckets);
+
+  protected abstract void clear(ContentRepoService service);
+
+  protected ContentStore createContentStore() {
+    return new HeapContentStore();
+  }
+
+  @Before
+  public void setUp() {
+    service = createService(createContentStore(), BUCKET_NAME);
+  }
+
+  protected RepoObjectMetadata createObject(String key, String content, String tag) {
+    return service.autoCreateRepoObject(RepoObjectInput.builder(BUCKET_NAME, key)
+        .setByteContent(content.getBytes(StandardCharsets.UTF_8)).setContentType("text/plain").setTag(tag).build());
+  }
+
+  private static List<String> keysOf(List<? extends RepoMetadata> metadata) {
+    return metadata.stream().map(m -> m.getVersion().getId().getKey() + ":" + m.getVersionNumber().getNumber())
+        .collect(Collectors.toList());
+  }
+
+  private static String read(InputStream stream) throws IOException {
+    try (InputStream s = stream) {
+      return new String(ByteStreams.toByteArray(s), StandardCharsets.UTF_8);
+    }
+  }
+
+  @Test
+  public void testLookUpObjectVersions() throws IOException {
+    RepoObjectMetadata v0 = createObject("obj", "first", "a");
+    RepoObjectMetadata v1 = createObject("obj", "second", "b");
+    RepoObjectMetadata v2 = createObject("obj", "third", "a");
+    RepoId id = RepoId.create(BUCKET_NAME, "obj");
+
+    assertEquals(0, v0.getVersionNumber().getNumber());
+    assertEquals(2, v2.getVersionNumber().getNumber());
+    assertEquals(v1, service.getRepoObjectMetadata(v1.getVersion()));
+    assertEquals(v1, service.getRepoObjectMetadata(RepoVersionNumber.create(id, 1)));
+    assertEquals(v0, service.getRepoObjectMetadata(RepoVersionTag.create(id, "a"))); // the earliest with the tag
+    assertEquals(v2, service.getLatestRepoObjectMetadata(id));
+    assertEquals("second", read(service.getRepoObject(v1.getVersion())));
+    assertEquals("third", read(service.getLatestRepoObject(id)));
+    assertEquals("hir", read(service.getRepoObjectRange(v2.getVersion(), 1, 3)));
+    assertEquals("", read(service.getRepoObjectRange(v2.getVersion(), 5, 0)));
+    assertEquals("", read(service.getRepoObjectRange(v2.getVersion(), 10, 0)));
+    assertEquals(ImmutableList.of(v0, v1, v2), service.getRepoObjectVersions(id));
+  }
+
+  @Test
+  public void testChecksum() throws IOException {
+    RepoObjectMetadata created = createObject("obj", "content", null);
+    assertEquals("content", read(service.getVerifiedRepoObject(created)));
+    assertEquals(7L, created.getSize());
+  }
+
+  @Test(expected = InMemoryContentRepoServiceException.class)
+  public void testMissingVersion() {
+    createObject("obj", "content", null);
+    service.getRepoObjectMetadata(RepoVersionNumber.create(BUCKET_NAME, "obj", 1));
+  }
+
+  @Test(expected = InMemoryContentRepoServiceException.class)
+  public void testMissingTag() {
+    createObject("obj", "content", "a");
+    service.getRepoObjectMetadata(RepoVersionTag.create(BUCKET_NAME, "obj", "b"));
+  }
+
+  @Test(expected = InMemoryContentRepoServiceException.class)
+  public void testMissingBucket() {
+    service.getLatestRepoObjectMetadata(RepoId.create("nonexistent", "obj"));
+  }
+
+  @Test(expected = InMemoryContentRepoServiceException.class)
+  public void testCreateExisting() {
+    createObject("obj", "content", null);
+    service.createRepoObject(RepoObjectInput.builder(BUCKET_NAME, "obj")
+        .setByteContent(new byte[0]).setContentType("text/plain").build());
+  }
+
+  @Test(expected = InMemoryContentRepoServiceException.class)
+  public void testVersionMissing() {
+    service.versionRepoObject(RepoObjectInput.builder(BUCKET_NAME, "obj")
+        .setByteContent(new byte[0]).setContentType("text/plain").build());
+  }
+
+  @Test
+  public void testDelete() {
+    RepoObjectMetadata v0 = createObject("obj", "first", null);
+    RepoObjectMetadata v1 = createObject("obj", "second", null);
+    RepoId id = RepoId.create(BUCKET_NAME, "obj");
+
+    assertTrue(service.deleteLatestRepoObject(id));
+    assertEquals(Status.DELETED, service.getRepoObjectMetadata(v1.getVersion()).getStatus());
+    assertEquals(v0, service.getLatestRepoObjectMetadata(id));
+    assertFalse(service.deleteRepoObject(v1.getVersion()));
+    assertTrue(service.deleteRepoObject(v0.getVersionNumber()));
+    assertFalse(service.deleteLatestRepoObject(id));
+  }
+
+  @Test(expected = InMemoryContentRepoServiceException.class)
+  public void testLatestOfDeleted() {
+    RepoObjectMetadata created = createObject("obj", "content", null);
+    service.deleteRepoObject(created.getVersion());
+    service.getLatestRepoObjectMetadata(created.getVersion().getId());
+  }
+
+  @Test
+  public void testPaging() {
+    for (int i = 0; i < 10; i++) {
+      createObject("obj" + (i % 4), "content" + i, (i % 3 == 0) ? "t" : null);
+    }
+    service.deleteRepoObject(RepoVersionNumber.create(BUCKET_NAME, "obj0", 0)); // i = 0
+    service.deleteRepoObject(RepoVersionNumber.create(BUCKET_NAME, "obj1", 1)); // i = 5
+    service.deleteRepoObject(RepoVersionNumber.create(BUCKET_NAME, "obj2", 1)); // i = 6
+
+    assertEquals(ImmutableList.of("obj1:0", "obj2:0", "obj3:0", "obj0:1", "obj3:1", "obj0:2", "obj1:2"),
+        keysOf(service.getRepoObjects(BUCKET_NAME, 0, 100, false, null)));
+    assertEquals(ImmutableList.of("obj3:0", "obj0:1", "obj3:1"),
+        keysOf(service.getRepoObjects(BUCKET_NAME, 2, 3, false, null)));
+    assertEquals(ImmutableList.of("obj0:1", "obj1:1", "obj2:1"),
+        keysOf(service.getRepoObjects(BUCKET_NAME, 4, 3, true, null)));
+    assertEquals(ImmutableList.of("obj3:0", "obj1:2"),
+        keysOf(service.getRepoObjects(BUCKET_NAME, 0, 10, false, "t")));
+    assertEquals(ImmutableList.of("obj2:1", "obj1:2"),
+        keysOf(service.streamRepoObjects(BUCKET_NAME, 2, 10, true, "t").collect(Collectors.toList())));
+    assertEquals(ImmutableList.of(), service.getRepoObjects(BUCKET_NAME, 7, 10, false, null));
+    assertEquals(ImmutableList.of(), service.getRepoObjects(BUCKET_NAME, 0, 10, false, "other"));
+  }
+
+  @Test
+  public void testCollections() {
+    RepoObjectMetadata object1 = createObject("obj1", "content1", null);
+    RepoObjectMetadata object2 = createObject("obj2", "content2", null);
+    RepoCollectionList created = service.autoCreateCollection(RepoCollectionInput.builder(BUCKET_NAME, "coll")
+        .setObjects(ImmutableList.of(object1.getVersion(), object2.getVersion(), object1.getVersion()))
+        .setTag("published").build());
+    RepoId id = RepoId.create(BUCKET_NAME, "coll");
+
+    assertEquals(ImmutableList.of(object1, object2), created.getObjects());
+    assertEquals(created, service.getCollection(created.getVersion()));
+    assertEquals(created, service.getCollection(RepoVersionTag.create(id, "published")));
+    assertEquals(created, service.getCollection(RepoVersionNumber.create(id, 0)));
+    assertEquals(created.getVersion(), service.getLatestCollection(id).getVersion());
+
+    service.deleteRepoObject(object2.getVersion());
+    assertEquals(Status.DELETED, service.getCollection(created.getVersion()).getObjects().get(1).getStatus());
+
+    assertTrue(service.deleteCollection(created.getVersion()));
+    assertEquals(1, service.getCollections(BUCKET_NAME, 0, 10, true, null).size());
+    assertEquals(0, service.getCollections(BUCKET_NAME, 0, 10, false, null).size());
+    assertEquals(1, service.getCollectionVersions(id).size());
+  }
+
+  @Test(expected = InMemoryContentRepoServiceException.class)
+  public void testCollectionOfMissingObject() {
+    service.autoCreateCollection(RepoCollectionInput.create(BUCKET_NAME, "coll",
+        ImmutableList.of(RepoVersion.create(BUCKET_NAME, "obj", "00000000-0000-4000-8000-000000000000"))));
+  }
+
+  @Test
+  public void testBuckets() {
+    createObject("obj", "content", null);
+    createObject("obj", "content", null);
+    assertEquals(2, service.getBucket(BUCKET_NAME).get("totalObjects"));
+
+    service.createBucket("other");
+    assertEquals(2, service.getBuckets().size());
+    assertEquals(2, service.getRepoStatus().get("bucketCount"));
+    assertEquals(0, service.getBucket("other").get("totalObjects"));
+  }
+
+  /**
+   * Counts the copies of content that are stored and released.
+   */
+  private static class CountingContentStore implements ContentStore {
+    private final ContentStore delegate;
+    private final AtomicInteger stored = new AtomicInteger();
+    private final AtomicInteger released = new AtomicInteger();
+
+    private CountingContentStore(ContentStore delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public StoredContent store(InputStream content) throws IOException {
+      StoredContent copy = delegate.store(content);
+      stored.incrementAndGet();
+      return new StoredContent() {
+        @Override
+        public long size() {
+          return copy.size();
+        }
+
+        @Override
+        public InputStream open() {
+          return copy.open();
+        }
+
+        @Override
+        public InputStream open(long offset, long length) {
+          return copy.open(offset, length);
+        }
+
+        @Override
+        public void release() {
+          released.incrementAndGet();
+          copy.release();
+        }
+
+        @Override
+        public void discard() {
+          released.incrementAndGet();
+          copy.discard();
+        }
+      };
+    }
+
+    private int getLiveCount() {
+      return stored.get() - released.get();
+    }
+  }
+
+  @Test
+  public void testSharesIdenticalContent() throws IOException {
+    CountingContentStore contentStore = new CountingContentStore(createContentStore());
+    service = createService(contentStore, BUCKET_NAME, "other");
+
+    RepoObjectMetadata v0 = createObject("obj", "same", null);
+    RepoObjectMetadata v1 = createObject("obj", "same", null);
+    RepoObjectMetadata different = createObject("obj", "different", null);
+    RepoObjectMetadata copy = service.autoCreateRepoObject(RepoObjectInput.builder("other", "copy")
+        .setByteContent("same".getBytes(StandardCharsets.UTF_8)).build());
+    assertEquals(4, contentStore.stored.get());
+    assertEquals(2, contentStore.getLiveCount());
+
+    assertEquals(v0.getChecksum(), copy.getChecksum());
+    assertEquals("same", read(service.getRepoObject(v1.getVersion())));
+    assertEquals("different", read(service.getRepoObject(different.getVersion())));
+    assertEquals("same", read(service.getRepoObject(copy.getVersion())));
+
+    service.deleteRepoObject(v0.getVersion());
+    assertEquals("same", read(service.getRepoObject(v0.getVersion())));
+    assertEquals(2, contentStore.getLiveCount());
+
+    clear(service);
+    assertEquals(0, contentStore.getLiveCount());
+    assertEquals("same", read(service.getRepoObject(createObject("obj", "same", null).getVersion())));
+    assertEquals(1, contentStore.getLiveCount());
+  }
+
+}
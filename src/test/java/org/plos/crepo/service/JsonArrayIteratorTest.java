@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.service;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class JsonArrayIteratorTest {
+
+  private static class CountingCloseable implements Closeable {
+    private final AtomicInteger closeCount = new AtomicInteger();
+
+    @Override
+    public void close() {
+      closeCount.incrementAndGet();
+    }
+  }
+
+  private static JsonArrayIterator<String> iterate(String json, Closeable resource) {
+    return new JsonArrayIterator<>(new JsonReader(new StringReader(json)), JsonReader::nextString, resource);
+  }
+
+  @Test
+  public void testReadsElementsInOrder() {
+    CountingCloseable resource = new CountingCloseable();
+    List<String> values;
+    try (Stream<String> stream = iterate("[\"a\", \"b\", \"c\"]", resource).stream()) {
+      values = stream.collect(Collectors.toList());
+      assertEquals(1, resource.closeCount.get()); // closed on reaching the end of the array
+    }
+    assertEquals(ImmutableList.of("a", "b", "c"), values);
+    assertEquals(1, resource.closeCount.get());
+  }
+
+  @Test
+  public void testEmptyArray() throws IOException {
+    CountingCloseable resource = new CountingCloseable();
+    try (JsonArrayIterator<String> iterator = iterate("[]", resource)) {
+      assertFalse(iterator.hasNext());
+    }
+    assertEquals(1, resource.closeCount.get());
+  }
+
+  @Test
+  public void testCloseBeforeEnd() throws IOException {
+    CountingCloseable resource = new CountingCloseable();
+    JsonArrayIterator<String> iterator = iterate("[\"a\", \"b\"]", resource);
+    assertEquals("a", iterator.next());
+    iterator.close();
+    assertFalse(iterator.hasNext());
+    assertEquals(1, resource.closeCount.get());
+  }
+
+  @Test(expected = JsonSyntaxException.class)
+  public void testNullElementRejected() {
+    JsonArrayIterator<String> iterator = new JsonArrayIterator<>(new JsonReader(new StringReader("[\"a\", null]")),
+        reader -> {
+          if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+          }
+          return reader.nextString();
+        },
+        new CountingCloseable());
+    assertEquals("a", iterator.next());
+    iterator.next();
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testNextPastEnd() {
+    JsonArrayIterator<String> iterator = iterate("[\"a\"]", new CountingCloseable());
+    iterator.next();
+    iterator.next();
+  }
+
+}
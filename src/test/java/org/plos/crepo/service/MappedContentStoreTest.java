@@ -0,0 +1,178 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MappedContentStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static byte[] read(InputStream stream) throws IOException {
+    try (InputStream s = stream) {
+      return ByteStreams.toByteArray(s);
+    }
+  }
+
+  private static ContentStore.StoredContent store(ContentStore store, byte[] content) throws IOException {
+    return store.store(new ByteArrayInputStream(content));
+  }
+
+  @Test
+  public void testStoresContentOfEverySize() throws IOException {
+    MappedContentStore store = new MappedContentStore(folder.getRoot().toPath(), 100);
+    Random random = new Random(0);
+    List<byte[]> contents = new ArrayList<>();
+    List<ContentStore.StoredContent> stored = new ArrayList<>();
+    // Sizes that fit in the current slab, need a new slab, and need their own file
+    for (int size : new int[]{0, 10, 60, 50, 100, 1, 250, 99, 70000}) {
+      byte[] content = new byte[size];
+      random.nextBytes(content);
+      contents.add(content);
+      stored.add(store(store, content));
+    }
+    for (int i = 0; i < contents.size(); i++) {
+      assertEquals(contents.get(i).length, stored.get(i).size());
+      assertArrayEquals(contents.get(i), read(stored.get(i).open()));
+    }
+    assertEquals(0, folder.getRoot().listFiles().length); // deleted once mapped
+  }
+
+  @Test
+  public void testOpenRange() throws IOException {
+    MappedContentStore store = new MappedContentStore(folder.getRoot().toPath(), 100);
+    store(store, "padding".getBytes(StandardCharsets.UTF_8));
+    ContentStore.StoredContent stored = store(store, "0123456789".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals("345", new String(read(stored.open(3, 3)), StandardCharsets.UTF_8));
+    assertEquals("789", new String(read(stored.open(7, Long.MAX_VALUE)), StandardCharsets.UTF_8));
+    assertEquals("", new String(read(stored.open(10, 5)), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testDiscardReusesSpace() throws IOException {
+    MappedContentStore store = new MappedContentStore(folder.getRoot().toPath(), 12);
+    ContentStore.StoredContent first = store(store, "first".getBytes(StandardCharsets.UTF_8));
+    ContentStore.StoredContent second = store(store, "second".getBytes(StandardCharsets.UTF_8));
+    second.discard();
+    first.discard(); // no longer the last thing in the slab, so not reclaimed
+    ContentStore.StoredContent third = store(store, "third".getBytes(StandardCharsets.UTF_8));
+    ContentStore.StoredContent fourth = store(store, "fourth".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals("third", new String(read(third.open()), StandardCharsets.UTF_8));
+    assertEquals("fourth", new String(read(fourth.open()), StandardCharsets.UTF_8));
+  }
+
+  @Test(timeout = 10000)
+  public void testSlowStreamDoesNotBlockOtherStores() throws Exception {
+    MappedContentStore store = new MappedContentStore(folder.getRoot().toPath(), 100);
+    CountDownLatch reading = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    InputStream slow = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        reading.countDown();
+        try {
+          finish.await();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+        return -1;
+      }
+    };
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<ContentStore.StoredContent> slowStored = executor.submit(() -> store.store(slow));
+      reading.await();
+      ContentStore.StoredContent fast = store(store, "fast".getBytes(StandardCharsets.UTF_8));
+      assertEquals("fast", new String(read(fast.open()), StandardCharsets.UTF_8));
+      finish.countDown();
+      assertEquals(0L, slowStored.get().size());
+    } finally {
+      finish.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testReleaseKeepsSpace() throws IOException {
+    MappedContentStore store = new MappedContentStore(folder.getRoot().toPath(), 100);
+    ContentStore.StoredContent first = store(store, "first".getBytes(StandardCharsets.UTF_8));
+    InputStream stream = first.open();
+    first.release();
+    store(store, "other".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals("first", new String(read(stream), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testIndependentStreams() throws IOException {
+    MappedContentStore store = new MappedContentStore(folder.getRoot().toPath(), 100);
+    ContentStore.StoredContent stored = store(store, "content".getBytes(StandardCharsets.UTF_8));
+
+    InputStream first = stored.open();
+    InputStream second = stored.open();
+    assertEquals('c', first.read());
+    assertEquals(3, first.skip(3));
+    assertEquals('c', second.read());
+    assertEquals(3, first.available());
+    assertEquals("ent", new String(read(first), StandardCharsets.UTF_8));
+    assertEquals("ontent", new String(read(second), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testInMemoryServiceWithMappedStore() throws IOException {
+    InMemoryContentRepoService service = new InMemoryContentRepoService(
+        new MappedContentStore(folder.getRoot().toPath(), 100), Arrays.asList("bucket"));
+    byte[] content = new byte[1000];
+    new Random(0).nextBytes(content);
+    RepoObjectMetadata created = service.autoCreateRepoObject(
+        RepoObjectInput.builder("bucket", "key")
+            .setByteContent(content).setContentType("application/octet-stream").build());
+    assertArrayEquals(content, read(service.getVerifiedRepoObject(created)));
+    assertEquals(1000L, created.getSize());
+  }
+
+}
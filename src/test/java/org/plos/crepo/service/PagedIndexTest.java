@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PagedIndexTest {
+
+  private static List<Integer> naiveSlice(int size, BitSet hidden, int offset, int limit, boolean includeHidden) {
+    List<Integer> page = new ArrayList<>();
+    for (int i = 0; i < size && page.size() < limit; i++) {
+      if (includeHidden || !hidden.get(i)) {
+        if (offset-- <= 0) {
+          page.add(i);
+        }
+      }
+    }
+    return page;
+  }
+
+  @Test
+  public void testSlice() {
+    PagedIndex<Integer> index = new PagedIndex<>();
+    for (int i = 0; i < 5; i++) {
+      index.add(i, i != 2);
+    }
+    index.hide(0);
+    assertEquals(3, index.visibleCount());
+    assertEquals(5, index.size());
+    assertEquals(Arrays.asList(1, 3, 4), index.slice(0, 10, false));
+    assertEquals(Arrays.asList(3), index.slice(1, 1, false));
+    assertEquals(Arrays.asList(2, 3), index.slice(2, 2, true));
+    assertEquals(new ArrayList<Integer>(), index.slice(3, 10, false));
+  }
+
+  @Test
+  public void testMatchesNaiveSlice() {
+    Random random = new Random(0);
+    PagedIndex<Integer> index = new PagedIndex<>();
+    BitSet hidden = new BitSet();
+    for (int i = 0; i < 1000; i++) {
+      boolean visible = random.nextInt(4) != 0;
+      index.add(i, visible);
+      hidden.set(i, !visible);
+      if (random.nextInt(3) == 0) {
+        int position = random.nextInt(i + 1);
+        index.hide(position);
+        hidden.set(position);
+      }
+      int offset = random.nextInt(i + 2);
+      int limit = random.nextInt(20);
+      assertEquals(naiveSlice(i + 1, hidden, offset, limit, false), index.slice(offset, limit, false));
+      assertEquals(naiveSlice(i + 1, hidden, offset, limit, true), index.slice(offset, limit, true));
+    }
+  }
+
+}
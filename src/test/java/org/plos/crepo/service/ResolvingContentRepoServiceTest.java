@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import org.junit.Before;
+import org.junit.Test;
+import org.plos.crepo.exceptions.NotFoundException;
+import org.plos.crepo.model.identity.RepoId;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.identity.RepoVersionTag;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResolvingContentRepoServiceTest {
+
+  private static final String BUCKET_NAME = "bucket";
+  private static final RepoId ID = RepoId.create(BUCKET_NAME, "key");
+
+  private ContentRepoService backend;
+  private FakeTicker ticker;
+  private PendingExecutor pendingRefreshes;
+  private ResolvingContentRepoService resolvingService;
+
+  @Before
+  public void setUp() {
+    backend = spy(new InMemoryContentRepoService(BUCKET_NAME));
+    ticker = new FakeTicker();
+    pendingRefreshes = new PendingExecutor();
+    resolvingService = createService(backend);
+  }
+
+  private ResolvingContentRepoService createService(ContentRepoService delegate) {
+    return new ResolvingContentRepoService(delegate, 5, 60, TimeUnit.SECONDS, pendingRefreshes, ticker);
+  }
+
+  private RepoVersion createVersion(ContentRepoService service, String tag) {
+    return service.autoCreateRepoObject(RepoObjectInput.builder(BUCKET_NAME, ID.getKey())
+        .setByteContent(UUID.randomUUID().toString().getBytes()).setContentType("text/plain").setTag(tag)
+        .build()).getVersion();
+  }
+
+  @Test
+  public void testResolvesTagOnce() {
+    RepoVersion version = createVersion(backend, "published");
+    RepoVersionTag tag = RepoVersionTag.create(ID, "published");
+
+    assertEquals(version, resolvingService.getRepoObjectMetadata(tag).getVersion());
+    assertEquals(version, resolvingService.getRepoObjectMetadata(tag).getVersion());
+    assertEquals(version, resolvingService.getRepoObjectMetadata(tag).getVersion());
+
+    verify(backend, times(1)).getRepoObjectMetadata(tag);
+    verify(backend, times(2)).getRepoObjectMetadata(version);
+  }
+
+  @Test
+  public void testLatestContentResolvesOnce() throws IOException {
+    RepoVersion version = createVersion(backend, null);
+    byte[] content = ByteStreams.toByteArray(backend.getRepoObject(version));
+
+    for (int i = 0; i < 3; i++) {
+      try (InputStream stream = resolvingService.getLatestRepoObject(ID)) {
+        assertArrayEquals(content, ByteStreams.toByteArray(stream));
+      }
+    }
+    verify(backend, times(1)).getLatestRepoObjectMetadata(ID);
+    verify(backend, times(0)).getLatestRepoObject(ID);
+  }
+
+  @Test
+  public void testServesStaleResolutionWhileRefreshing() {
+    RepoVersion first = createVersion(backend, null);
+    assertEquals(first, resolvingService.getLatestRepoObjectMetadata(ID).getVersion());
+
+    RepoVersion second = createVersion(backend, null); // not through the resolving service, so it is not seen
+    ticker.advance(4, TimeUnit.SECONDS);
+    assertEquals(first, resolvingService.getLatestRepoObjectMetadata(ID).getVersion());
+    assertEquals(0, pendingRefreshes.size());
+
+    ticker.advance(2, TimeUnit.SECONDS);
+    assertEquals(first, resolvingService.getLatestRepoObjectMetadata(ID).getVersion());
+    assertEquals(1, pendingRefreshes.size());
+
+    pendingRefreshes.runPending();
+    assertEquals(second, resolvingService.getLatestRepoObjectMetadata(ID).getVersion());
+  }
+
+  @Test
+  public void testBlocksAfterMaxStale() {
+    RepoVersion first = createVersion(backend, null);
+    assertEquals(first, resolvingService.getLatestRepoObjectMetadata(ID).getVersion());
+
+    RepoVersion second = createVersion(backend, null);
+    ticker.advance(66, TimeUnit.SECONDS);
+    assertEquals(second, resolvingService.getLatestRepoObjectMetadata(ID).getVersion());
+    verify(backend, times(2)).getLatestRepoObjectMetadata(ID);
+  }
+
+  @Test
+  public void testWritesUpdateResolutions() {
+    RepoVersionTag tag = RepoVersionTag.create(ID, "published");
+    RepoVersion first = createVersion(resolvingService, "published");
+    assertEquals(first, resolvingService.getLatestRepoObjectMetadata(ID).getVersion());
+    assertEquals(first, resolvingService.getRepoObjectMetadata(tag).getVersion());
+
+    RepoVersion second = createVersion(resolvingService, null);
+    assertEquals(second, resolvingService.getLatestRepoObjectMetadata(ID).getVersion());
+    assertEquals(first, resolvingService.getRepoObjectMetadata(tag).getVersion());
+    verify(backend, times(0)).getLatestRepoObjectMetadata(ID);
+    verify(backend, times(2)).getRepoObjectMetadata(tag);
+  }
+
+  @Test
+  public void testWritesKeepOtherObjectsResolutions() {
+    RepoVersionTag tag = RepoVersionTag.create(ID, "published");
+    RepoVersion first = createVersion(resolvingService, "published");
+    assertEquals(first, resolvingService.getRepoObjectMetadata(tag).getVersion());
+
+    resolvingService.autoCreateRepoObject(RepoObjectInput.builder(BUCKET_NAME, "other")
+        .setByteContent(new byte[]{0}).setContentType("text/plain").setTag("published").build());
+    assertEquals(first, resolvingService.getRepoObjectMetadata(tag).getVersion());
+    verify(backend, times(1)).getRepoObjectMetadata(tag);
+  }
+
+  @Test
+  public void testResolvesTagAgainAfterExpiry() {
+    RepoVersionTag tag = RepoVersionTag.create(ID, "published");
+    RepoVersion first = createVersion(resolvingService, "published");
+    assertEquals(first, resolvingService.getRepoObjectMetadata(tag).getVersion());
+    ticker.advance(66, TimeUnit.SECONDS);
+    assertEquals(first, resolvingService.getRepoObjectMetadata(tag).getVersion());
+
+    createVersion(resolvingService, null);
+    assertEquals(first, resolvingService.getRepoObjectMetadata(tag).getVersion());
+    verify(backend, times(3)).getRepoObjectMetadata(tag);
+  }
+
+  @Test
+  public void testResolvesAgainWhenVersionIsNotFound() {
+    ContentRepoService mockBackend = mock(ContentRepoService.class);
+    ResolvingContentRepoService service = createService(mockBackend);
+    RepoVersionTag tag = RepoVersionTag.create(ID, "published");
+    RepoObjectMetadata first = metadata(UUID.randomUUID());
+    RepoObjectMetadata second = metadata(UUID.randomUUID());
+    when(mockBackend.getRepoObjectMetadata(tag)).thenReturn(first, second);
+    when(mockBackend.getRepoObjectMetadata(first.getVersion())).thenThrow(new NotFoundException("deleted"));
+
+    assertEquals(first, service.getRepoObjectMetadata(tag));
+    assertEquals(second, service.getRepoObjectMetadata(tag));
+    verify(mockBackend, times(2)).getRepoObjectMetadata(tag);
+  }
+
+  private static RepoObjectMetadata metadata(UUID uuid) {
+    return new RepoObjectMetadata(BUCKET_NAME, ImmutableMap.<String, Object>of(
+        "key", ID.getKey(), "uuid", uuid.toString(), "tag", "published"));
+  }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package org.plos.crepo.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import org.junit.Before;
+import org.junit.Test;
+import org.plos.crepo.exceptions.ContentRepoException;
+import org.plos.crepo.exceptions.ErrorType;
+import org.plos.crepo.model.identity.RepoVersion;
+import org.plos.crepo.model.input.RepoObjectInput;
+import org.plos.crepo.model.metadata.RepoObjectMetadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResumableInputStreamTest {
+
+  private static final byte[] CONTENT = "content of a large object that fails partway".getBytes(StandardCharsets.UTF_8);
+  private static final RepoVersion VERSION = RepoVersion.create("bucket", "key", UUID.randomUUID());
+  private static final RepoObjectMetadata METADATA = new RepoObjectMetadata("bucket", ImmutableMap.<String, Object>of(
+      "key", "key", "uuid", VERSION.getUuid().toString(), "size", CONTENT.length));
+
+  private ContentRepoService service;
+
+  @Before
+  public void setUp() {
+    service = mock(ContentRepoService.class);
+  }
+
+  /**
+   * Serve bytes of {@code CONTENT} from {@code start} and fail with an IOException at {@code failAt}.
+   */
+  private static InputStream failingAt(int start, int failAt) {
+    InputStream content = new ByteArrayInputStream(Arrays.copyOfRange(CONTENT, start, failAt));
+    return new InputStream() {
+      @Override
+      public int read() throws IOException {
+        int b = content.read();
+        if (b < 0) throw new IOException("Connection reset");
+        return b;
+      }
+    };
+  }
+
+  private static InputStream from(int start) {
+    return new ByteArrayInputStream(CONTENT, start, CONTENT.length - start);
+  }
+
+  @Test
+  public void testReadsWithoutFailure() throws IOException {
+    when(service.getRepoObject(VERSION)).thenReturn(from(0));
+    ResumableInputStream stream = new ResumableInputStream(service, METADATA, 3, 0L);
+    assertArrayEquals(CONTENT, ByteStreams.toByteArray(stream));
+    assertEquals(0, stream.getRetryCount());
+    verify(service, never()).getRepoObjectRange(VERSION, 0L, CONTENT.length);
+  }
+
+  @Test
+  public void testResumesAfterFailure() throws IOException {
+    when(service.getRepoObject(VERSION)).thenReturn(failingAt(0, 10));
+    when(service.getRepoObjectRange(VERSION, 10L, CONTENT.length - 10L)).thenReturn(failingAt(10, 25));
+    when(service.getRepoObjectRange(VERSION, 25L, CONTENT.length - 25L)).thenReturn(from(25));
+
+    ResumableInputStream stream = new ResumableInputStream(service, METADATA, 3, 0L);
+    assertArrayEquals(CONTENT, ByteStreams.toByteArray(stream));
+    assertEquals(2, stream.getRetryCount());
+  }
+
+  @Test
+  public void testResumesAfterTruncatedResponse() throws IOException {
+    when(service.getRepoObject(VERSION)).thenReturn(new ByteArrayInputStream(CONTENT, 0, 20));
+    when(service.getRepoObjectRange(VERSION, 20L, CONTENT.length - 20L)).thenReturn(from(20));
+
+    ResumableInputStream stream = new ResumableInputStream(service, METADATA, 1, 0L);
+    assertArrayEquals(CONTENT, ByteStreams.toByteArray(stream));
+    assertEquals(1, stream.getRetryCount());
+  }
+
+  @Test
+  public void testRetryBudgetExhausted() throws IOException {
+    when(service.getRepoObject(VERSION)).thenReturn(failingAt(0, 10));
+    when(service.getRepoObjectRange(VERSION, 10L, CONTENT.length - 10L)).thenReturn(failingAt(10, 25));
+
+    try (InputStream stream = new ResumableInputStream(service, METADATA, 1, 0L)) {
+      ByteStreams.toByteArray(stream);
+      fail("Expected IOException");
+    } catch (IOException e) {
+      assertEquals("Connection reset", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testRetriesFailedReconnect() throws IOException {
+    when(service.getRepoObject(VERSION)).thenReturn(failingAt(0, 10));
+    when(service.getRepoObjectRange(VERSION, 10L, CONTENT.length - 10L))
+        .thenThrow(new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ServerError).statusCode(503).build())
+        .thenReturn(from(10));
+
+    ResumableInputStream stream = new ResumableInputStream(service, METADATA, 2, 0L);
+    assertArrayEquals(CONTENT, ByteStreams.toByteArray(stream));
+    assertEquals(2, stream.getRetryCount());
+  }
+
+  @Test
+  public void testFailedReconnectExhaustsBudget() throws IOException {
+    when(service.getRepoObject(VERSION)).thenReturn(failingAt(0, 10));
+    when(service.getRepoObjectRange(VERSION, 10L, CONTENT.length - 10L))
+        .thenThrow(new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ServerError)
+            .baseException(new IOException("Connection refused")).build());
+
+    try (InputStream stream = new ResumableInputStream(service, METADATA, 1, 0L)) {
+      ByteStreams.toByteArray(stream);
+      fail("Expected ContentRepoException");
+    } catch (ContentRepoException e) {
+      assertEquals(ErrorType.ServerError, e.getErrorType());
+    }
+    verify(service, times(1)).getRepoObjectRange(VERSION, 10L, CONTENT.length - 10L);
+  }
+
+  @Test
+  public void testClientErrorIsNotRetried() throws IOException {
+    when(service.getRepoObject(VERSION)).thenReturn(failingAt(0, 10));
+    when(service.getRepoObjectRange(VERSION, 10L, CONTENT.length - 10L))
+        .thenThrow(new ContentRepoException.ContentRepoExceptionBuilder(ErrorType.ErrorFetchingObject)
+            .statusCode(416).build())
+        .thenReturn(from(10));
+
+    ResumableInputStream stream = new ResumableInputStream(service, METADATA, 3, 0L);
+    try {
+      ByteStreams.toByteArray(stream);
+      fail("Expected ContentRepoException");
+    } catch (ContentRepoException e) {
+      assertEquals(416, e.getStatusCode().getAsInt());
+    }
+    assertEquals(1, stream.getRetryCount());
+  }
+
+  @Test
+  public void testBackoffBetweenRetries() throws IOException {
+    when(service.getRepoObject(VERSION)).thenReturn(failingAt(0, 10));
+    when(service.getRepoObjectRange(VERSION, 10L, CONTENT.length - 10L)).thenReturn(failingAt(10, 25));
+    when(service.getRepoObjectRange(VERSION, 25L, CONTENT.length - 25L)).thenReturn(from(25));
+
+    long start = System.nanoTime();
+    ResumableInputStream stream = new ResumableInputStream(service, METADATA, 3, 20L);
+    assertArrayEquals(CONTENT, ByteStreams.toByteArray(stream));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 20L + 40L);
+  }
+
+  @Test
+  public void testTruncatedWithoutRetries() throws IOException {
+    when(service.getRepoObject(VERSION)).thenReturn(new ByteArrayInputStream(CONTENT, 0, 20));
+
+    try (InputStream stream = new ResumableInputStream(service, METADATA, 0, 0L)) {
+      ByteStreams.toByteArray(stream);
+      fail("Expected EOFException");
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testContentLongerThanSize() throws IOException {
+    byte[] longer = Arrays.copyOf(CONTENT, CONTENT.length + 1);
+    when(service.getRepoObject(VERSION)).thenReturn(new ByteArrayInputStream(longer));
+
+    try (InputStream stream = new ResumableInputStream(service, METADATA, 3, 0L)) {
+      ByteStreams.toByteArray(stream);
+      fail("Expected ContentRepoException");
+    } catch (ContentRepoException e) {
+      assertEquals(ErrorType.ErrorFetchingObject, e.getErrorType());
+    }
+  }
+
+  @Test
+  public void testInMemoryService() throws IOException {
+    InMemoryContentRepoService inMemory = new InMemoryContentRepoService("bucket");
+    RepoObjectMetadata created = inMemory.autoCreateRepoObject(
+        RepoObjectInput.builder("bucket", "key").setByteContent(CONTENT).setContentType("text/plain").build());
+    try (InputStream stream = inMemory.getResumableRepoObject(created, 1)) {
+      assertArrayEquals(CONTENT, ByteStreams.toByteArray(stream));
+    }
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Public Library of Science
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.plos.crepo.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class UrlTemplateTest {
+
+  private static final String REPO_SERVER = "http://testServer:8080/repo";
+
+  @Test
+  public void testExpand() {
+    UrlTemplate template = UrlTemplate.compile("${repoServer}/objects/${bucketName}?key=${objectKey}&version=${versionNumber}",
+        "repoServer", "bucketName", "objectKey", "versionNumber");
+    assertEquals(REPO_SERVER + "/objects/bucket?key=key&version=3", template.expand(REPO_SERVER, "bucket", "key", 3));
+  }
+
+  @Test
+  public void testEncoding() {
+    UrlTemplate template = UrlTemplate.compile("${repoServer}/buckets/${bucketName}?key=${key}",
+        "repoServer", "bucketName", "key");
+    assertEquals(REPO_SERVER + "/buckets/a%2Fb%20c?key=10.1371/a%26b%3Dc%23d%2Be%20f",
+        template.expand(REPO_SERVER, "a/b c", "10.1371/a&b=c#d+e f"));
+    assertEquals(REPO_SERVER + "/buckets/%C3%A9?key=%F0%9F%98%80",
+        template.expand(REPO_SERVER, "\u00E9", "\uD83D\uDE00"));
+  }
+
+  @Test
+  public void testRepeatedParameter() {
+    UrlTemplate template = UrlTemplate.compile("${a}/${b}/${a}", "a", "b");
+    assertEquals("x/y/x", template.expand("x", "y"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUndeclaredParameter() {
+    UrlTemplate.compile("${repoServer}/${bucketName}", "repoServer");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongValueCount() {
+    UrlTemplate.compile("${repoServer}/config", "repoServer").expand(REPO_SERVER, "extra");
+  }
+
+  @Test
+  public void testGenerators() {
+    assertEquals(REPO_SERVER + "/objects/meta/bucket?key=k%26ey&uuid=abc",
+        ObjectUrlGenerator.getObjectMetaUsingUuidUrl(REPO_SERVER, "bucket", "k&ey", "abc"));
+    assertEquals(REPO_SERVER + "/objects?bucketName=bucket&offset=10&limit=20&includeDeleted=true&tag=t",
+        ObjectUrlGenerator.getGetObjectsUrl(REPO_SERVER, "bucket", 10, 20, true, "t"));
+    assertEquals(REPO_SERVER + "/collections/bucket?key=coll&version=2",
+        CollectionUrlGenerator.getCollectionVersionNumUrl(REPO_SERVER, "bucket", "coll", 2));
+    assertEquals(REPO_SERVER + "/buckets/bucket", BucketUrlGenerator.getBucketUrl(REPO_SERVER, "bucket"));
+    assertEquals(REPO_SERVER + "/status", ConfigUrlGenerator.getRepoStatusUrl(REPO_SERVER));
+  }
+
+}